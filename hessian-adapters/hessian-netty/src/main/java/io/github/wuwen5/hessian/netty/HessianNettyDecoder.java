@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.netty;
+
+import io.github.wuwen5.hessian.io.Hessian2SerializerFactory;
+import io.github.wuwen5.hessian.io.HessianDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import java.io.InputStream;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * Decodes Hessian 2 streaming packets written by {@link HessianNettyEncoder}
+ * or {@link io.github.wuwen5.hessian.io.Hessian2StreamingOutput}.
+ *
+ * <p>Inbound buffers are accumulated as a {@link io.netty.buffer.CompositeByteBuf}
+ * and never flattened: packet boundaries are found by scanning the chunk
+ * headers in place, and the chunk bodies are read into the decoder's own
+ * buffer directly from the components.
+ *
+ * <p>A packet longer than the maximum is skipped as its chunks arrive and
+ * reported with a {@link TooLongFrameException}; decoding resumes with the
+ * next packet.
+ *
+ * <p>A <code>null</code> message is dropped, since Netty cannot pass it
+ * down the pipeline.  The decoder keeps per-channel state and must not be
+ * shared between pipelines.
+ */
+public class HessianNettyDecoder extends ByteToMessageDecoder {
+    public static final int DEFAULT_MAX_PACKET_LENGTH = 16 * 1024 * 1024;
+
+    private final Hessian2SerializerFactory serializerFactory;
+    private final PacketInputStream is = new PacketInputStream();
+
+    /**
+     * -- GETTER --
+     * Returns the largest packet accepted, in bytes.
+     */
+    @Getter
+    private final int maxPacketLength;
+
+    private HessianDecoder in;
+
+    // state while skipping a packet which is too long
+    private boolean isDiscarding;
+    private boolean isDiscardLastChunk;
+    private long discardLength;
+
+    public HessianNettyDecoder() {
+        this(null, DEFAULT_MAX_PACKET_LENGTH);
+    }
+
+    public HessianNettyDecoder(Hessian2SerializerFactory serializerFactory) {
+        this(serializerFactory, DEFAULT_MAX_PACKET_LENGTH);
+    }
+
+    /**
+     * @param serializerFactory the serializer factory, or null for the default
+     * @param maxPacketLength the largest packet accepted, in bytes
+     */
+    public HessianNettyDecoder(Hessian2SerializerFactory serializerFactory, int maxPacketLength) {
+        if (maxPacketLength <= 0) {
+            throw new IllegalArgumentException("maxPacketLength must be positive: " + maxPacketLength);
+        }
+
+        this.maxPacketLength = maxPacketLength;
+        this.serializerFactory = serializerFactory;
+        this.in = createDecoder();
+
+        setCumulator(COMPOSITE_CUMULATOR);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
+        if (isDiscarding) {
+            discard(buf);
+            return;
+        }
+
+        int length;
+
+        try {
+            length = packetLength(buf, maxPacketLength);
+
+            if (length < 0 && buf.readableBytes() > maxPacketLength) {
+                throw new TooLongFrameException("hessian packet exceeds " + maxPacketLength + " bytes");
+            }
+        } catch (TooLongFrameException e) {
+            isDiscarding = true;
+            isDiscardLastChunk = false;
+            discardLength = 0;
+
+            discard(buf);
+
+            // reported without throwing, so the packets after it in the
+            // buffer are still decoded
+            ctx.fireExceptionCaught(e);
+            return;
+        }
+
+        if (length < 0) {
+            return;
+        }
+
+        int end = buf.readerIndex() + length;
+
+        try {
+            is.init(buf);
+            in.init(is);
+
+            Object value = in.readObject();
+
+            in.resetBuffer();
+
+            if (value != null) {
+                out.add(value);
+            }
+        } catch (Exception e) {
+            // the decoder may hold part of the bad packet
+            in = createDecoder();
+
+            throw e;
+        } finally {
+            is.buf = null;
+            buf.readerIndex(end);
+        }
+    }
+
+    /**
+     * Skips the chunks of a packet which is too long, as far as the buffer
+     * allows.
+     */
+    private void discard(ByteBuf buf) {
+        while (true) {
+            if (discardLength > 0) {
+                int sublen = (int) Math.min(discardLength, buf.readableBytes());
+
+                buf.skipBytes(sublen);
+                discardLength -= sublen;
+
+                if (discardLength > 0) {
+                    return;
+                }
+            }
+
+            if (isDiscardLastChunk) {
+                isDiscarding = false;
+                return;
+            }
+
+            int offset = buf.readerIndex();
+            int available = buf.readableBytes();
+
+            if (available < 2) {
+                return;
+            }
+
+            int code = buf.getUnsignedByte(offset);
+            int len = buf.getUnsignedByte(offset + 1) & 0x7f;
+
+            if (len < 0x7e) {
+                buf.skipBytes(2);
+                discardLength = len;
+            } else if (len == 0x7e) {
+                if (available < 4) {
+                    return;
+                }
+
+                buf.skipBytes(2);
+                discardLength = buf.readUnsignedShort();
+            } else {
+                if (available < 10) {
+                    return;
+                }
+
+                buf.skipBytes(2);
+                discardLength = buf.readLong();
+
+                if (discardLength < 0) {
+                    throw new CorruptedFrameException("invalid hessian chunk length: " + discardLength);
+                }
+            }
+
+            isDiscardLastChunk = (code & 0x80) == 0;
+        }
+    }
+
+    private HessianDecoder createDecoder() {
+        HessianDecoder decoder = new HessianDecoder();
+
+        if (serializerFactory != null) {
+            decoder.setSerializerFactory(serializerFactory);
+        }
+
+        return decoder;
+    }
+
+    /**
+     * Returns the length of the complete packet at the reader index, or -1
+     * if more data is needed.  The buffer's indices are not changed.
+     */
+    static int packetLength(ByteBuf buf, int maxPacketLength) {
+        int start = buf.readerIndex();
+        int limit = buf.writerIndex();
+        int offset = start;
+
+        while (true) {
+            if (limit - offset < 2) {
+                return -1;
+            }
+
+            int code = buf.getUnsignedByte(offset);
+            int len = buf.getUnsignedByte(offset + 1) & 0x7f;
+
+            long chunkLength;
+            int headerLength;
+
+            if (len < 0x7e) {
+                headerLength = 2;
+                chunkLength = len;
+            } else if (len == 0x7e) {
+                headerLength = 4;
+
+                if (limit - offset < headerLength) {
+                    return -1;
+                }
+
+                chunkLength = buf.getUnsignedShort(offset + 2);
+            } else {
+                headerLength = 10;
+
+                if (limit - offset < headerLength) {
+                    return -1;
+                }
+
+                chunkLength = buf.getLong(offset + 2);
+
+                if (chunkLength < 0) {
+                    throw new CorruptedFrameException("invalid hessian chunk length: " + chunkLength);
+                }
+            }
+
+            if (offset - start + headerLength + chunkLength > maxPacketLength) {
+                throw new TooLongFrameException("hessian packet exceeds " + maxPacketLength + " bytes");
+            }
+
+            if (limit - offset < headerLength + chunkLength) {
+                return -1;
+            }
+
+            offset += headerLength + (int) chunkLength;
+
+            if ((code & 0x80) == 0) {
+                return offset - start;
+            }
+        }
+    }
+
+    /**
+     * Reads the body of one packet, skipping the chunk headers.  The
+     * packet is known to be complete, so reads never wait.
+     */
+    static final class PacketInputStream extends InputStream {
+        private ByteBuf buf;
+        private int chunkLength;
+        private boolean isLastChunk;
+
+        void init(ByteBuf buf) {
+            this.buf = buf;
+            this.chunkLength = 0;
+            this.isLastChunk = false;
+        }
+
+        @Override
+        public int read() {
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            chunkLength--;
+
+            return buf.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            int sublen = Math.min(length, chunkLength);
+
+            buf.readBytes(buffer, offset, sublen);
+            chunkLength -= sublen;
+
+            return sublen;
+        }
+
+        @Override
+        public int available() {
+            return buf != null ? chunkLength : 0;
+        }
+
+        private boolean nextChunk() {
+            while (chunkLength == 0) {
+                if (isLastChunk || buf == null) {
+                    return false;
+                }
+
+                int code = buf.readUnsignedByte();
+                int len = buf.readUnsignedByte() & 0x7f;
+
+                isLastChunk = (code & 0x80) == 0;
+
+                if (len < 0x7e) {
+                    chunkLength = len;
+                } else if (len == 0x7e) {
+                    chunkLength = buf.readUnsignedShort();
+                } else {
+                    chunkLength = (int) buf.readLong();
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.netty;
+
+import io.github.wuwen5.hessian.io.Hessian2SerializerFactory;
+import io.github.wuwen5.hessian.io.HessianEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import java.io.OutputStream;
+
+/**
+ * Encodes each outbound message as one Hessian 2 streaming packet, the
+ * framing written by {@link io.github.wuwen5.hessian.io.Hessian2StreamingOutput}.
+ *
+ * <p>The encoder's chunk buffer is copied straight into the pooled
+ * {@link ByteBuf} allocated by the pipeline, direct when the transport
+ * prefers it, without an intermediate stream.  Every packet is
+ * self-contained: references and class definitions are not shared
+ * between messages.
+ *
+ * <p>The encoder keeps per-channel state and must not be shared between
+ * pipelines.
+ */
+public class HessianNettyEncoder extends MessageToByteEncoder<Object> {
+    private final HessianEncoder out = new HessianEncoder();
+    private final ByteBufOutputStream os = new ByteBufOutputStream();
+
+    public HessianNettyEncoder() {
+        this(null, true);
+    }
+
+    public HessianNettyEncoder(Hessian2SerializerFactory serializerFactory) {
+        this(serializerFactory, true);
+    }
+
+    /**
+     * @param serializerFactory the serializer factory, or null for the default
+     * @param preferDirect true to encode into direct buffers
+     */
+    public HessianNettyEncoder(Hessian2SerializerFactory serializerFactory, boolean preferDirect) {
+        super(preferDirect);
+
+        if (serializerFactory != null) {
+            out.setSerializerFactory(serializerFactory);
+        }
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf buf) throws Exception {
+        os.buf = buf;
+
+        try {
+            out.init(os);
+            out.startPacket();
+            out.writeObject(msg);
+            out.endPacket();
+        } finally {
+            os.buf = null;
+            out.reset();
+        }
+    }
+
+    /**
+     * Appends the encoder's chunks to the current buffer.  Writes are
+     * always whole chunks, so there is no per-byte call.
+     */
+    static final class ByteBufOutputStream extends OutputStream {
+        private ByteBuf buf;
+
+        @Override
+        public void write(int b) {
+            buf.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            buf.writeBytes(buffer, offset, length);
+        }
+    }
+}
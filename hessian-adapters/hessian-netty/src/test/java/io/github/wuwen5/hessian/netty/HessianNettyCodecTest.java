@@ -0,0 +1,162 @@
+package io.github.wuwen5.hessian.netty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.wuwen5.hessian.io.Hessian2StreamingOutput;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class HessianNettyCodecTest {
+
+    @Test
+    void testRoundTrip() {
+        EmbeddedChannel channel = new EmbeddedChannel(new HessianNettyEncoder(), new HessianNettyDecoder());
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 42);
+        map.put("name", "hessian");
+
+        Object[] messages = {"hello", 17, map, new Point(3, 4), new Point(5, 6)};
+
+        for (Object message : messages) {
+            channel.writeOutbound(message);
+        }
+
+        for (Object message : messages) {
+            ByteBuf buf = channel.readOutbound();
+            channel.writeInbound(buf);
+
+            assertEquals(message, channel.readInbound());
+        }
+
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void testFragmentedLargePacket() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new HessianNettyEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new HessianNettyDecoder());
+
+        List<Point> points = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            points.add(new Point(i, -i));
+        }
+
+        encoder.writeOutbound(points, "tail");
+
+        ByteBuf first = encoder.readOutbound();
+        ByteBuf second = encoder.readOutbound();
+        ByteBuf all = Unpooled.wrappedBuffer(first, second);
+
+        // feed 7-byte slices so packet and chunk headers straddle buffers
+        while (all.isReadable()) {
+            decoder.writeInbound(all.readRetainedSlice(Math.min(7, all.readableBytes())));
+        }
+
+        all.release();
+
+        assertEquals(points, decoder.readInbound());
+        assertEquals("tail", decoder.readInbound());
+        assertNull(decoder.readInbound());
+    }
+
+    @Test
+    void testStreamingOutputCompatibility() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Hessian2StreamingOutput out = new Hessian2StreamingOutput(bos);
+        out.writeObject(new Point(1, 2));
+        out.writeObject("second");
+        out.flush();
+
+        EmbeddedChannel channel = new EmbeddedChannel(new HessianNettyDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(bos.toByteArray()));
+
+        assertEquals(new Point(1, 2), channel.readInbound());
+        assertEquals("second", channel.readInbound());
+    }
+
+    @Test
+    void testTooLongPacket() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new HessianNettyEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new HessianNettyDecoder(null, 1024));
+
+        encoder.writeOutbound(new byte[4096], "after");
+
+        ByteBuf tooLong = encoder.readOutbound();
+        ByteBuf after = encoder.readOutbound();
+
+        assertThrows(TooLongFrameException.class, () -> decoder.writeInbound(Unpooled.wrappedBuffer(tooLong, after)));
+
+        // the packet is skipped and the next one still decodes
+        assertEquals("after", decoder.readInbound());
+        assertNull(decoder.readInbound());
+    }
+
+    @Test
+    void testFragmentedTooLongPacket() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new HessianNettyEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new HessianNettyDecoder(null, 1024));
+
+        List<Point> points = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            points.add(new Point(i, -i));
+        }
+
+        encoder.writeOutbound(points, "after");
+
+        ByteBuf first = encoder.readOutbound();
+        ByteBuf second = encoder.readOutbound();
+        ByteBuf all = Unpooled.wrappedBuffer(first, second);
+
+        int failures = 0;
+
+        while (all.isReadable()) {
+            try {
+                decoder.writeInbound(all.readRetainedSlice(Math.min(7, all.readableBytes())));
+            } catch (TooLongFrameException e) {
+                failures++;
+            }
+        }
+
+        all.release();
+
+        assertEquals(1, failures);
+        assertEquals("after", decoder.readInbound());
+        assertNull(decoder.readInbound());
+    }
+
+    static class Point implements Serializable {
+        int x;
+        int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.client;
+
+import com.caucho.hessian.io.HessianRpcInput;
+import io.github.wuwen5.hessian.io.HessianProtocolException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects calls to one service and sends them together, so a client
+ * making many small calls pays one HTTP round trip per batch instead of
+ * one per call.
+ *
+ * <pre>
+ * HessianBatch&lt;BasicAPI&gt; batch = factory.createBatch(BasicAPI.class, url);
+ *
+ * CompletableFuture&lt;String&gt; a = batch.submit(api -&gt; api.hello("a"));
+ * CompletableFuture&lt;String&gt; b = batch.submit(api -&gt; api.hello("b"));
+ * </pre>
+ *
+ * <p>The calls are encoded back-to-back in one request, each as a normal
+ * Hessian call, and the server answers with one reply per call in the
+ * same order.  A batch is sent when it reaches the factory's
+ * <code>maxBatchSize</code> or <code>batchWindow</code> milliseconds after
+ * its first call, whichever comes first.
+ *
+ * <p>A fault completes only its own future.  A transport failure
+ * completes every call of the batch which has not been answered.  The
+ * futures complete on the batch's sender thread, so dependent actions
+ * should not block.
+ */
+@Slf4j
+public class HessianBatch<T> implements Closeable {
+    private static final ThreadLocal<BatchCall> RECORDED = new ThreadLocal<>();
+
+    private final HessianProxy proxy;
+    private final HessianProxyFactory factory;
+    private final T recorder;
+
+    private final int maxBatchSize;
+    private final long batchWindow;
+
+    private final ScheduledExecutorService sender;
+
+    private ArrayList<BatchCall> calls = new ArrayList<>();
+    private ScheduledFuture<?> scheduledSend;
+    private boolean isClosed;
+
+    HessianBatch(HessianProxy proxy, HessianProxyFactory factory, Class<T> api, ClassLoader loader) {
+        this.proxy = proxy;
+        this.factory = factory;
+
+        maxBatchSize = Math.max(1, factory.getMaxBatchSize());
+        batchWindow = factory.getBatchWindow();
+
+        recorder = api.cast(Proxy.newProxyInstance(loader, new Class<?>[] {api}, new Recorder()));
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "hessian-batch-" + proxy.getURL().getPath());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        sender = executor;
+    }
+
+    /**
+     * Adds a call to the current batch.  The function must invoke exactly
+     * one method of the service interface; its return value is ignored.
+     * A method returning a <code>CompletionStage</code> yields a completed
+     * stage, see {@link #submitAsync}.
+     *
+     * @return the future completed with the method's result
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> submit(Function<? super T, R> call) {
+        RECORDED.remove();
+
+        BatchCall batchCall;
+
+        try {
+            call.apply(recorder);
+        } finally {
+            batchCall = RECORDED.get();
+            RECORDED.remove();
+        }
+
+        if (batchCall == null) {
+            throw new IllegalArgumentException("a batched call must invoke a method of the service interface");
+        }
+
+        List<BatchCall> sendCalls = null;
+
+        synchronized (this) {
+            if (isClosed) {
+                throw new IllegalStateException(this + " is closed");
+            }
+
+            calls.add(batchCall);
+
+            if (calls.size() >= maxBatchSize) {
+                sendCalls = takeCalls();
+            } else if (scheduledSend == null) {
+                scheduledSend = sender.schedule(this::flush, batchWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (sendCalls != null) {
+            dispatch(sendCalls);
+        }
+
+        return (CompletableFuture<R>) batchCall.future;
+    }
+
+    /**
+     * Adds a call to a method returning a <code>CompletionStage</code>,
+     * returning a future for the stage's value.
+     */
+    public <R> CompletableFuture<R> submitAsync(Function<? super T, ? extends CompletionStage<R>> call) {
+        CompletableFuture<? extends CompletionStage<R>> stage = submit(call);
+
+        return stage.thenCompose(Function.identity());
+    }
+
+    /**
+     * Sends the current batch without waiting for the window to close.
+     */
+    public void flush() {
+        List<BatchCall> sendCalls;
+
+        synchronized (this) {
+            sendCalls = takeCalls();
+        }
+
+        if (sendCalls != null) {
+            dispatch(sendCalls);
+        }
+    }
+
+    /**
+     * Sends the current batch and stops the sender thread once the
+     * batches already taken are answered.
+     */
+    @Override
+    public void close() {
+        List<BatchCall> sendCalls;
+
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+
+            isClosed = true;
+            sendCalls = takeCalls();
+        }
+
+        if (sendCalls != null) {
+            dispatch(sendCalls);
+        }
+
+        sender.shutdown();
+    }
+
+    private List<BatchCall> takeCalls() {
+        if (scheduledSend != null) {
+            scheduledSend.cancel(false);
+            scheduledSend = null;
+        }
+
+        if (calls.isEmpty()) {
+            return null;
+        }
+
+        List<BatchCall> sendCalls = calls;
+        calls = new ArrayList<>();
+
+        return sendCalls;
+    }
+
+    private void dispatch(List<BatchCall> sendCalls) {
+        try {
+            sender.execute(() -> send(sendCalls));
+        } catch (RejectedExecutionException e) {
+            send(sendCalls);
+        }
+    }
+
+    /**
+     * Sends one batch and completes its futures from the replies.
+     */
+    private void send(List<BatchCall> sendCalls) {
+        int size = sendCalls.size();
+
+        String[] methodNames = new String[size];
+        Object[][] args = new Object[size][];
+
+        for (int i = 0; i < size; i++) {
+            methodNames[i] = sendCalls.get(i).methodName;
+            args[i] = sendCalls.get(i).args;
+        }
+
+        HessianConnection conn = null;
+        InputStream is = null;
+        boolean isKeepalive = false;
+        int i = 0;
+
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace("Hessian[{}] sending batch of {} calls", proxy.getURL(), size);
+            }
+
+            conn = proxy.sendRequest(methodNames, args);
+
+            is = proxy.getInputStream(conn);
+
+            HessianRpcInput in = (HessianRpcInput) factory.getHessian2Input(is);
+            in.setClassRegistry(proxy.getReplyRegistry(conn));
+            proxy.updateColumnarAccepted(conn);
+
+            for (; i < size; i++) {
+                BatchCall call = sendCalls.get(i);
+
+                in.startNextReply();
+
+                try {
+                    Object value = in.readReply(call.valueType);
+
+                    call.future.complete(call.isStage ? CompletableFuture.completedFuture(value) : value);
+                } catch (Throwable e) {
+                    if (e != in.getReplyFault()) {
+                        throw e;
+                    }
+
+                    call.future.completeExceptionally(e);
+                }
+            }
+
+            isKeepalive = true;
+        } catch (Throwable e) {
+            Throwable cause = e instanceof HessianProtocolException ? new HessianRuntimeException(e) : e;
+
+            for (; i < size; i++) {
+                sendCalls.get(i).future.completeExceptionally(cause);
+            }
+        } finally {
+            try {
+                if (is != null) {
+                    is.close();
+                }
+            } catch (IOException e) {
+                log.debug(e.toString(), e);
+            }
+
+            try {
+                if (conn != null && isKeepalive) {
+                    conn.close();
+                } else if (conn != null) {
+                    conn.destroy();
+                }
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HessianBatch[" + proxy.getURL() + "]";
+    }
+
+    /**
+     * Records the method invoked by a submitted function.
+     */
+    private class Recorder implements InvocationHandler {
+        @Override
+        public Object invoke(Object recorderProxy, Method method, Object[] args) {
+            Class<?> returnType = method.getReturnType();
+
+            if (method.getDeclaringClass() == Object.class) {
+                throw new IllegalArgumentException(method + " cannot be batched");
+            } else if (InputStream.class.isAssignableFrom(returnType) || HessianProxy.isResultStream(returnType)) {
+                throw new IllegalArgumentException(method + " returns a stream and cannot be batched");
+            } else if (RECORDED.get() != null) {
+                throw new IllegalStateException("a batched call must invoke only one method");
+            }
+
+            String methodName = factory.isOverloadEnabled() ? proxy.mangleName(method) : method.getName();
+
+            boolean isStage = CompletionStage.class.isAssignableFrom(returnType);
+            Class<?> valueType = isStage ? HessianProxy.getValueType(method) : returnType;
+
+            RECORDED.set(new BatchCall(methodName, args, valueType, isStage));
+
+            return returnType.isPrimitive() && returnType != void.class
+                    ? Array.get(Array.newInstance(returnType, 1), 0)
+                    : null;
+        }
+    }
+
+    private static class BatchCall {
+        private final String methodName;
+        private final Object[] args;
+        private final Class<?> valueType;
+        private final boolean isStage;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        BatchCall(String methodName, Object[] args, Class<?> valueType, boolean isStage) {
+            this.methodName = methodName;
+            this.args = args;
+            this.valueType = valueType;
+            this.isStage = isStage;
+        }
+    }
+}
@@ -87,6 +87,14 @@ public interface HessianConnection {
      */
     String getContentEncoding();
 
+    /**
+     * Returns a header of the reply, or null.  Connections which do not
+     * expose the reply headers return null.
+     */
+    default String getHeaderField(String name) {
+        return null;
+    }
+
     /**
      * Returns the InputStream to the result
      */
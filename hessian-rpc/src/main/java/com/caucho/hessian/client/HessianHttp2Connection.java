@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.client;
+
+import com.caucho.hessian.client.HessianPooledConnectionFactory.HostPool;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Connection sending a call as a single stream of a multiplexed HTTP/2
+ * connection managed by {@link HttpClient}.
+ */
+@Slf4j
+public class HessianHttp2Connection extends AbstractHessianConnection {
+    private final URL url;
+    private final HttpClient client;
+    private final HostPool pool;
+
+    private final HttpRequest.Builder request;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+    private HttpResponse<InputStream> response;
+    private InputStream inputStream;
+
+    private boolean isReleased;
+
+    HessianHttp2Connection(URL url, HttpClient client, HostPool pool, HessianProxyFactory proxyFactory)
+            throws IOException {
+        this.url = url;
+        this.client = client;
+        this.pool = pool;
+
+        try {
+            request = HttpRequest.newBuilder(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new HessianConnectionException(url + ": " + e, e);
+        }
+
+        long readTimeout = proxyFactory.getReadTimeout();
+
+        if (readTimeout > 0) {
+            request.timeout(Duration.ofMillis(readTimeout));
+        }
+    }
+
+    /**
+     * Adds a HTTP header.
+     */
+    @Override
+    public void addHeader(String key, String value) {
+        request.header(key, value);
+    }
+
+    /**
+     * Returns the output stream for the request.
+     */
+    @Override
+    public OutputStream getOutputStream() {
+        return body;
+    }
+
+    /**
+     * Sends the request
+     */
+    @Override
+    public void sendRequest() throws IOException {
+        request.POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted calling " + url);
+        }
+
+        inputStream = response.body();
+
+        if (response.statusCode() != 200) {
+            String message;
+
+            try (InputStream is = inputStream) {
+                message = new String(is.readAllBytes(), StandardCharsets.ISO_8859_1);
+            } catch (IOException e) {
+                throw new HessianConnectionException(response.statusCode() + ": " + e, e);
+            }
+
+            throw new HessianConnectionException(response.statusCode() + ": " + message);
+        }
+    }
+
+    /**
+     * Returns the status code.
+     */
+    @Override
+    public int getStatusCode() {
+        return response != null ? response.statusCode() : 0;
+    }
+
+    /**
+     * Returns the status string.
+     */
+    @Override
+    public String getStatusMessage() {
+        return null;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return response != null
+                ? response.headers().firstValue("Content-Encoding").orElse(null)
+                : null;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return response != null ? response.headers().firstValue(name).orElse(null) : null;
+    }
+
+    /**
+     * Returns the InputStream to the result
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            throw new IOException("request has not been sent");
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * Ends the stream.  The underlying connection stays open for other calls.
+     */
+    @Override
+    public void close() {
+        destroy();
+    }
+
+    @Override
+    public void destroy() {
+        if (isReleased) {
+            return;
+        }
+
+        isReleased = true;
+
+        InputStream is = inputStream;
+        inputStream = null;
+
+        try {
+            if (is != null) {
+                is.close();
+            }
+        } catch (IOException e) {
+            log.debug(e.toString(), e);
+        }
+
+        pool.release();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + url + "]";
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.client;
+
+import com.caucho.hessian.client.HessianPooledConnectionFactory.HostPool;
+import com.caucho.hessian.client.HessianPooledConnectionFactory.PooledSocket;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * HTTP/1.1 keep-alive connection leased from a
+ * {@link HessianPooledConnectionFactory}.
+ *
+ * <p>The request body is buffered until {@link #sendRequest()} so a stale
+ * recycled socket can be replaced transparently before any byte of the
+ * request reaches the server.
+ */
+@Slf4j
+public class HessianPooledConnection extends AbstractHessianConnection {
+    /**
+     * unread reply bytes drained on close before the socket is discarded
+     * instead of recycled
+     */
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private final URL url;
+    private final HessianPooledConnectionFactory factory;
+    private final HostPool pool;
+
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+    private final Map<String, String> responseHeaders = new LinkedHashMap<>();
+
+    private PooledSocket socket;
+    private boolean isReleased;
+
+    private int statusCode;
+    private String statusMessage;
+    private String contentEncoding;
+    private boolean isKeepalive;
+
+    private BodyInputStream inputStream;
+
+    HessianPooledConnection(URL url, HessianPooledConnectionFactory factory, HostPool pool) {
+        this.url = url;
+        this.factory = factory;
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a HTTP header.
+     */
+    @Override
+    public void addHeader(String key, String value) {
+        headers.put(key, value);
+    }
+
+    /**
+     * Returns the output stream for the request.
+     */
+    @Override
+    public OutputStream getOutputStream() {
+        return body;
+    }
+
+    /**
+     * Sends the request
+     */
+    @Override
+    public void sendRequest() throws IOException {
+        socket = factory.lease(url, pool);
+
+        int first = -1;
+
+        try {
+            writeRequest();
+        } catch (IOException e) {
+            if (!socket.isRecycled()) {
+                throw e;
+            }
+
+            retry(e);
+        }
+
+        try {
+            first = socket.getInputStream().read();
+        } catch (SocketException e) {
+            // a reset before any reply byte; a read timeout is not retried,
+            // since the server may still be running the call
+            if (!socket.isRecycled()) {
+                throw e;
+            }
+        }
+
+        if (first < 0) {
+            if (!socket.isRecycled()) {
+                throw new EOFException("unexpected end of stream from " + url);
+            }
+
+            retry(null);
+
+            first = socket.getInputStream().read();
+        }
+
+        readResponseHeaders(first);
+
+        inputStream = new BodyInputStream(socket.getInputStream(), contentLength(), isChunked());
+
+        if (statusCode != 200) {
+            StringBuilder sb = new StringBuilder();
+            int ch;
+
+            try {
+                while ((ch = inputStream.read()) >= 0) {
+                    sb.append((char) ch);
+                }
+            } catch (IOException e) {
+                destroy();
+
+                throw new HessianConnectionException(statusCode + ": " + e, e);
+            }
+
+            statusMessage = sb.toString();
+
+            close();
+
+            throw new HessianConnectionException(statusCode + ": " + statusMessage);
+        }
+    }
+
+    /**
+     * Resends the request on a new connection, after the server closed the
+     * recycled socket while it was idle.  Only called before any byte of
+     * the reply arrived on a socket whose request failed to write or was
+     * closed unanswered, so the call was not run.
+     */
+    private void retry(IOException cause) throws IOException {
+        log.debug("{} retrying on a new connection after {}", this, cause != null ? cause.toString() : "EOF");
+
+        socket.close();
+        socket = null;
+        socket = factory.lease(url, pool);
+
+        writeRequest();
+    }
+
+    private void writeRequest() throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+
+        String file = url.getFile();
+
+        sb.append("POST ").append(file.isEmpty() ? "/" : file).append(" HTTP/1.1\r\n");
+
+        sb.append("Host: ").append(url.getHost());
+        if (url.getPort() >= 0) {
+            sb.append(':').append(url.getPort());
+        }
+        sb.append("\r\n");
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+        }
+
+        sb.append("Content-Length: ").append(body.size()).append("\r\n");
+        sb.append("\r\n");
+
+        OutputStream os = socket.getOutputStream();
+
+        os.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        body.writeTo(os);
+        os.flush();
+    }
+
+    private void readResponseHeaders(int first) throws IOException {
+        InputStream is = socket.getInputStream();
+
+        responseHeaders.clear();
+
+        String statusLine = readLine(is, first);
+
+        if (statusLine == null) {
+            throw new EOFException("unexpected end of stream from " + url);
+        }
+
+        // HTTP/1.1 200 OK
+        int p = statusLine.indexOf(' ');
+
+        if (!statusLine.startsWith("HTTP/") || p < 0 || statusLine.length() < p + 4) {
+            throw new HessianConnectionException("HessianProxy received bad HTTP status line '" + statusLine + "'");
+        }
+
+        statusCode = Integer.parseInt(statusLine.substring(p + 1, p + 4));
+        statusMessage = statusLine.length() > p + 5 ? statusLine.substring(p + 5) : null;
+
+        String line;
+        while ((line = readLine(is)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+
+            if (colon > 0) {
+                responseHeaders.put(
+                        line.substring(0, colon).trim().toLowerCase(),
+                        line.substring(colon + 1).trim());
+            }
+        }
+
+        if (line == null) {
+            throw new EOFException("unexpected end of headers from " + url);
+        }
+
+        contentEncoding = responseHeaders.get("content-encoding");
+
+        String connection = responseHeaders.get("connection");
+
+        isKeepalive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connection)
+                : "keep-alive".equalsIgnoreCase(connection);
+
+        if (contentLength() < 0 && !isChunked()) {
+            // body is delimited by the end of the stream
+            isKeepalive = false;
+        }
+    }
+
+    private long contentLength() {
+        String value = responseHeaders.get("content-length");
+
+        return value != null ? Long.parseLong(value) : -1;
+    }
+
+    private boolean isChunked() {
+        String value = responseHeaders.get("transfer-encoding");
+
+        return value != null && value.toLowerCase().contains("chunked");
+    }
+
+    static String readLine(InputStream is) throws IOException {
+        return readLine(is, is.read());
+    }
+
+    /**
+     * Reads a line whose first byte was already read.
+     */
+    private static String readLine(InputStream is, int ch) throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        for (; ch >= 0; ch = is.read()) {
+            if (ch == '\n') {
+                int len = sb.length();
+
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+
+                return sb.toString();
+            }
+
+            sb.append((char) ch);
+        }
+
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    /**
+     * Returns the status code.
+     */
+    @Override
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the status string.
+     */
+    @Override
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return responseHeaders.get(name.toLowerCase());
+    }
+
+    /**
+     * Returns the InputStream to the result
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            throw new IOException("request has not been sent");
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * Returns the socket to the pool if the reply was completely read.
+     */
+    @Override
+    public void close() {
+        release(isKeepalive && inputStream != null && inputStream.drain());
+    }
+
+    /**
+     * Closes the socket without returning it to the pool.
+     */
+    @Override
+    public void destroy() {
+        release(false);
+    }
+
+    private void release(boolean isReusable) {
+        if (isReleased) {
+            return;
+        }
+
+        isReleased = true;
+
+        PooledSocket socket = this.socket;
+        this.socket = null;
+
+        if (socket != null) {
+            factory.recycle(pool, socket, isReusable);
+        }
+
+        pool.release();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + url + "]";
+    }
+
+    /**
+     * Reply body delimited by Content-Length or chunked transfer encoding.
+     * Closing the stream leaves the underlying socket open.
+     */
+    static class BodyInputStream extends InputStream {
+        private final InputStream is;
+        private final boolean isChunked;
+
+        private long remaining;
+        private boolean isChunkStarted;
+        private boolean isEnd;
+
+        BodyInputStream(InputStream is, long contentLength, boolean isChunked) {
+            this.is = is;
+            this.isChunked = isChunked;
+            this.remaining = isChunked ? 0 : contentLength;
+            this.isEnd = !isChunked && contentLength == 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+
+            int ch = is.read();
+
+            if (ch < 0) {
+                return end();
+            }
+
+            if (remaining > 0) {
+                remaining--;
+            }
+
+            return ch;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+
+            if (remaining > 0 && remaining < length) {
+                length = (int) remaining;
+            }
+
+            int sublen = is.read(buffer, offset, length);
+
+            if (sublen < 0) {
+                return end();
+            }
+
+            if (remaining > 0) {
+                remaining -= sublen;
+            }
+
+            return sublen;
+        }
+
+        private int end() throws IOException {
+            if (remaining < 0) {
+                // body delimited by the end of the stream
+                isEnd = true;
+
+                return -1;
+            }
+
+            throw new EOFException("unexpected end of reply body");
+        }
+
+        /**
+         * Positions the stream at readable data, returning false at the end
+         * of the body.
+         */
+        private boolean fill() throws IOException {
+            if (isEnd) {
+                return false;
+            }
+
+            if (remaining > 0) {
+                return true;
+            }
+
+            if (!isChunked) {
+                // no content-length: read until the server closes the socket
+                if (remaining < 0) {
+                    return true;
+                }
+
+                isEnd = true;
+                return false;
+            }
+
+            if (remaining == 0 && isChunkStarted) {
+                // CRLF after the chunk data
+                readLine(is);
+            }
+
+            String line = readLine(is);
+
+            if (line == null) {
+                throw new EOFException("unexpected end of chunked reply body");
+            }
+
+            int p = line.indexOf(';');
+            remaining = Long.parseLong((p >= 0 ? line.substring(0, p) : line).trim(), 16);
+            isChunkStarted = true;
+
+            if (remaining == 0) {
+                // trailers
+                while ((line = readLine(is)) != null && !line.isEmpty()) {}
+
+                isEnd = true;
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Reads the rest of the body so the socket can be recycled.
+         *
+         * @return true if the body was completely consumed
+         */
+        boolean drain() {
+            if (isEnd) {
+                return true;
+            }
+
+            if (remaining < 0 && !isChunked) {
+                return false;
+            }
+
+            try {
+                long drained = 0;
+
+                while (fill()) {
+                    long sublen = is.skip(Math.min(remaining, MAX_DRAIN));
+
+                    if (sublen <= 0) {
+                        return false;
+                    }
+
+                    remaining -= sublen;
+                    drained += sublen;
+
+                    if (MAX_DRAIN < drained) {
+                        return false;
+                    }
+                }
+
+                return true;
+            } catch (IOException e) {
+                log.debug(e.toString(), e);
+
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            // the socket is owned by the connection
+        }
+    }
+}
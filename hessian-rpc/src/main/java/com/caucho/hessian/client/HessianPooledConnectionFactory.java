@@ -0,0 +1,530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Connection factory backed by an explicit, bounded pool of keep-alive
+ * connections.
+ *
+ * <p>In the default HTTP/1.1 mode each host owns a pool of sockets.  A call
+ * leases a socket, sends the request and returns the socket to the pool
+ * when the reply has been fully read, so later calls skip the TCP connect
+ * and the TLS handshake.  The number of sockets leased per host and in
+ * total is bounded; callers wait up to <code>acquireTimeout</code> for a
+ * free slot.  The limits are read on each lease, so changing them applies
+ * to hosts already in use.  Sockets idle longer than <code>maxIdleTime</code> are evicted
+ * when the pool is next used, or explicitly with {@link #evictIdle()}.
+ *
+ * <p>When <code>http2</code> is enabled, calls are sent through a shared
+ * {@link HttpClient} which multiplexes them as HTTP/2 streams over a single
+ * connection per host.  The per-host limit then bounds the number of
+ * concurrent streams.
+ *
+ * <pre>
+ * HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+ * pool.setMaxConnectionsPerHost(16);
+ *
+ * HessianProxyFactory factory = new HessianProxyFactory();
+ * factory.setConnectionFactory(pool);
+ * </pre>
+ */
+@Slf4j
+public class HessianPooledConnectionFactory extends AbstractHessianConnectionFactory implements Closeable {
+
+    /**
+     * maximum number of connections leased to a single host at once
+     */
+    @Getter
+    private volatile int maxConnectionsPerHost = 8;
+
+    /**
+     * maximum number of connections leased across all hosts at once
+     */
+    @Getter
+    private volatile int maxConnections = 64;
+
+    /**
+     * time in milliseconds after which an idle connection is evicted
+     */
+    @Getter
+    @Setter
+    private long maxIdleTime = 15000L;
+
+    /**
+     * time in milliseconds to wait for a free connection slot
+     */
+    @Getter
+    @Setter
+    private long acquireTimeout = 10000L;
+
+    /**
+     * sends calls as multiplexed HTTP/2 streams through java.net.http
+     */
+    @Getter
+    @Setter
+    private boolean http2;
+
+    @Setter
+    private SSLSocketFactory sslSocketFactory;
+
+    private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+
+    private final LeaseLimit totalPermits = new LeaseLimit(() -> maxConnections);
+
+    private volatile HttpClient httpClient;
+
+    private final AtomicInteger leasedCount = new AtomicInteger();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder reusedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    /**
+     * Sets the maximum number of connections leased to a single host at
+     * once.  Callers waiting for a slot recheck the new limit.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+
+        for (HostPool pool : pools.values()) {
+            pool.permits.limitChanged();
+        }
+    }
+
+    /**
+     * Sets the maximum number of connections leased across all hosts at
+     * once.  Callers waiting for a slot recheck the new limit.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+
+        totalPermits.limitChanged();
+    }
+
+    /**
+     * Opens a recycled connection from the pool, or a new one if no idle
+     * connection is available.
+     */
+    @Override
+    public HessianConnection open(URL url) throws IOException {
+        HostPool pool = getPool(url);
+
+        pool.acquire();
+
+        try {
+            if (http2) {
+                return new HessianHttp2Connection(url, getHttpClient(), pool, getHessianProxyFactory());
+            }
+
+            return new HessianPooledConnection(url, this, pool);
+        } catch (IOException | RuntimeException e) {
+            pool.release();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Closes idle connections which exceeded <code>maxIdleTime</code>.
+     */
+    public void evictIdle() {
+        for (HostPool pool : pools.values()) {
+            pool.evictIdle(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Closes all idle connections.  Leased connections are closed when they
+     * are released.
+     */
+    @Override
+    public void close() {
+        for (HostPool pool : pools.values()) {
+            pool.closeIdle();
+        }
+    }
+
+    /**
+     * Returns the number of connections currently leased to callers.
+     */
+    public int getLeasedCount() {
+        return leasedCount.get();
+    }
+
+    /**
+     * Returns the number of idle connections held by the pool.
+     */
+    public int getIdleCount() {
+        int count = 0;
+
+        for (HostPool pool : pools.values()) {
+            count += pool.idle.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of connections opened since the factory was created.
+     */
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    /**
+     * Returns the number of calls served by a recycled connection.
+     */
+    public long getReusedCount() {
+        return reusedCount.sum();
+    }
+
+    /**
+     * Returns the number of idle connections closed by eviction.
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Returns the number of calls which timed out waiting for a free slot.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    private HostPool getPool(URL url) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + getPort(url);
+
+        return pools.computeIfAbsent(key, HostPool::new);
+    }
+
+    private HttpClient getHttpClient() {
+        HttpClient client = httpClient;
+
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+
+                if (client == null) {
+                    HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+
+                    long connectTimeout = getHessianProxyFactory().getConnectTimeout();
+
+                    if (connectTimeout > 0) {
+                        builder.connectTimeout(Duration.ofMillis(connectTimeout));
+                    }
+
+                    client = builder.build();
+                    httpClient = client;
+                }
+            }
+        }
+
+        return client;
+    }
+
+    static int getPort(URL url) {
+        int port = url.getPort();
+
+        return port >= 0 ? port : url.getDefaultPort();
+    }
+
+    /**
+     * Leases an idle socket or opens a new one.
+     */
+    PooledSocket lease(URL url, HostPool pool) throws IOException {
+        PooledSocket socket;
+
+        while ((socket = pool.idle.pollFirst()) != null) {
+            if (socket.isExpired(System.currentTimeMillis(), maxIdleTime)) {
+                evictedCount.increment();
+                socket.close();
+            } else {
+                reusedCount.increment();
+                socket.isRecycled = true;
+                return socket;
+            }
+        }
+
+        socket = connect(url);
+        createdCount.increment();
+
+        return socket;
+    }
+
+    /**
+     * Returns a socket to its pool, or closes it if it cannot be reused.
+     */
+    void recycle(HostPool pool, PooledSocket socket, boolean isReusable) {
+        long now = System.currentTimeMillis();
+
+        if (isReusable && !socket.isClosed() && pool.idle.size() < maxConnectionsPerHost) {
+            socket.lastUsed = now;
+            pool.idle.offerFirst(socket);
+        } else {
+            socket.close();
+        }
+
+        pool.evictIdle(now);
+    }
+
+    private PooledSocket connect(URL url) throws IOException {
+        HessianProxyFactory proxyFactory = getHessianProxyFactory();
+
+        String host = url.getHost();
+        int port = getPort(url);
+
+        Socket socket = SocketFactory.getDefault().createSocket();
+
+        try {
+            long connectTimeout = proxyFactory.getConnectTimeout();
+
+            socket.connect(new InetSocketAddress(host, port), connectTimeout > 0 ? (int) connectTimeout : 0);
+
+            socket.setTcpNoDelay(true);
+
+            long readTimeout = proxyFactory.getReadTimeout();
+
+            if (readTimeout > 0) {
+                socket.setSoTimeout((int) readTimeout);
+            }
+
+            if ("https".equals(url.getProtocol())) {
+                SSLSocketFactory sslFactory = sslSocketFactory;
+
+                if (sslFactory == null) {
+                    sslFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+                }
+
+                SSLSocket sslSocket = (SSLSocket) sslFactory.createSocket(socket, host, port, true);
+
+                SSLParameters params = sslSocket.getSSLParameters();
+                params.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(params);
+
+                sslSocket.startHandshake();
+
+                socket = sslSocket;
+            }
+
+            return new PooledSocket(socket);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Connections and leases for a single scheme://host:port.
+     */
+    final class HostPool {
+        private final String key;
+
+        private final LeaseLimit permits = new LeaseLimit(() -> maxConnectionsPerHost);
+
+        private final ConcurrentLinkedDeque<PooledSocket> idle = new ConcurrentLinkedDeque<>();
+
+        HostPool(String key) {
+            this.key = key;
+        }
+
+        void acquire() throws IOException {
+            try {
+                long expires = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeout);
+
+                if (!permits.tryAcquire(expires)) {
+                    timeoutCount.increment();
+                    throw new HessianConnectionException("connection pool for " + key + " exhausted after "
+                            + acquireTimeout + "ms, max-connections-per-host=" + maxConnectionsPerHost);
+                }
+
+                if (!totalPermits.tryAcquire(expires)) {
+                    permits.release();
+                    timeoutCount.increment();
+                    throw new HessianConnectionException("connection pool exhausted after " + acquireTimeout
+                            + "ms, max-connections=" + maxConnections);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("interrupted waiting for a connection to " + key);
+            }
+
+            leasedCount.incrementAndGet();
+        }
+
+        void release() {
+            leasedCount.decrementAndGet();
+
+            totalPermits.release();
+            permits.release();
+        }
+
+        void evictIdle(long now) {
+            Iterator<PooledSocket> iter = idle.descendingIterator();
+
+            while (iter.hasNext()) {
+                PooledSocket socket = iter.next();
+
+                if (socket.isExpired(now, maxIdleTime) && idle.removeFirstOccurrence(socket)) {
+                    evictedCount.increment();
+                    socket.close();
+                }
+            }
+        }
+
+        void closeIdle() {
+            PooledSocket socket;
+
+            while ((socket = idle.pollFirst()) != null) {
+                socket.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + key + "]";
+        }
+    }
+
+    /**
+     * A keep-alive socket with its buffered streams, which must stay
+     * attached to the socket across calls.
+     */
+    static final class PooledSocket {
+        private final Socket socket;
+        private final InputStream is;
+        private final OutputStream os;
+
+        private volatile long lastUsed;
+
+        private boolean isRecycled;
+
+        PooledSocket(Socket socket) throws IOException {
+            this.socket = socket;
+            this.is = new BufferedInputStream(socket.getInputStream(), 8 * 1024);
+            this.os = new BufferedOutputStream(socket.getOutputStream(), 8 * 1024);
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        InputStream getInputStream() {
+            return is;
+        }
+
+        OutputStream getOutputStream() {
+            return os;
+        }
+
+        /**
+         * True if the socket served an earlier call and may have been closed
+         * by the server while idle.
+         */
+        boolean isRecycled() {
+            return isRecycled;
+        }
+
+        boolean isExpired(long now, long maxIdleTime) {
+            return socket.isClosed() || maxIdleTime >= 0 && lastUsed + maxIdleTime <= now;
+        }
+
+        boolean isClosed() {
+            return socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug(e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Counts leases against a limit which is read on each acquire, so a
+     * changed limit applies to pools already in use.
+     */
+    private static final class LeaseLimit {
+        private final IntSupplier limit;
+
+        private int leased;
+
+        LeaseLimit(IntSupplier limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Takes a lease, waiting until the <code>System.nanoTime()</code>
+         * deadline for one to be free.
+         */
+        synchronized boolean tryAcquire(long expires) throws InterruptedException {
+            while (leased >= limit.getAsInt()) {
+                long timeout = expires - System.nanoTime();
+
+                if (timeout <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, timeout);
+            }
+
+            leased++;
+
+            return true;
+        }
+
+        synchronized void release() {
+            leased--;
+
+            notify();
+        }
+
+        synchronized void limitChanged() {
+            notifyAll();
+        }
+    }
+}
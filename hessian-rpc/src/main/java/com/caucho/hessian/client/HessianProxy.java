@@ -50,12 +50,18 @@ package com.caucho.hessian.client;
 
 import com.caucho.hessian.io.AbstractHessianInput;
 import com.caucho.hessian.io.AbstractHessianOutput;
+import com.caucho.hessian.io.HessianResultStream;
+import com.caucho.hessian.io.HessianRpcInput;
 import com.caucho.services.server.AbstractSkeleton;
 import io.github.wuwen5.hessian.LineFlushingWriter;
+import io.github.wuwen5.hessian.io.HessianClassRegistry;
 import io.github.wuwen5.hessian.io.HessianDebugInputStream;
 import io.github.wuwen5.hessian.io.HessianDebugOutputStream;
+import io.github.wuwen5.hessian.io.HessianDecoder;
+import io.github.wuwen5.hessian.io.HessianEncoder;
 import io.github.wuwen5.hessian.io.HessianProtocolException;
 import io.github.wuwen5.hessian.io.HessianRemote;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -63,12 +69,22 @@ import java.io.PrintWriter;
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.WeakHashMap;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -82,9 +98,21 @@ public class HessianProxy implements InvocationHandler, Serializable {
 
     private final WeakHashMap<Method, String> mangleMap = new WeakHashMap<>();
 
+    private final ConcurrentHashMap<CallKey, CompletableFuture<Object>> inFlightCalls = new ConcurrentHashMap<>();
+
     private Class<?> type;
     private URL url;
 
+    /**
+     * True once the server has replied with the factory's class registry.
+     */
+    private volatile boolean isClassRegistryAccepted;
+
+    /**
+     * True once the server has replied that it reads columnar lists.
+     */
+    private volatile boolean isColumnarAccepted;
+
     /**
      * Protected constructor for subclassing
      */
@@ -160,8 +188,71 @@ public class HessianProxy implements InvocationHandler, Serializable {
             }
         }
 
+        if (isCoalesced(method)) {
+            return invokeCoalesced(method, mangleName, args);
+        }
+
+        return invokeRemote(method, mangleName, args);
+    }
+
+    /**
+     * True if concurrent identical calls of the method share one request.
+     */
+    private static boolean isCoalesced(Method method) {
+        Class<?> returnType = method.getReturnType();
+
+        return method.isAnnotationPresent(HessianCoalesce.class)
+                && !InputStream.class.isAssignableFrom(returnType)
+                && !CompletionStage.class.isAssignableFrom(returnType)
+                && !isResultStream(returnType);
+    }
+
+    /**
+     * Joins an identical call already in flight, or makes the call and
+     * shares its result with the calls which join it.  Calls are identical
+     * when their encoded method and arguments are equal.
+     */
+    private Object invokeCoalesced(Method method, String mangleName, Object[] args) throws Throwable {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AbstractHessianOutput out = factory.getHessianOutput(bos);
+        out.call(mangleName, args);
+
+        CallKey key = new CallKey(bos.toByteArray());
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightCalls.putIfAbsent(key, call);
+
+        if (inFlight != null) {
+            factory.addCoalescedCall();
+
+            try {
+                return inFlight.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        try {
+            Object value = invokeRemote(method, mangleName, args);
+
+            call.complete(value);
+
+            return value;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            inFlightCalls.remove(key, call);
+        }
+    }
+
+    /**
+     * Sends the call and reads its reply.
+     */
+    private Object invokeRemote(Method method, String mangleName, Object[] args) throws Throwable {
         InputStream is = null;
         HessianConnection conn = null;
+        boolean isKeepalive = true;
 
         try {
             if (log.isTraceEnabled()) {
@@ -172,6 +263,10 @@ public class HessianProxy implements InvocationHandler, Serializable {
 
             is = getInputStream(conn);
 
+            HessianClassRegistry replyRegistry = getReplyRegistry(conn);
+
+            updateColumnarAccepted(conn);
+
             if (log.isTraceEnabled()) {
                 PrintWriter dbg = new PrintWriter(new LineFlushingWriter(log::trace));
                 HessianDebugInputStream dIs = new HessianDebugInputStream(is, dbg);
@@ -191,6 +286,28 @@ public class HessianProxy implements InvocationHandler, Serializable {
 
                 in = factory.getHessian2Input(is);
 
+                if (replyRegistry != null && in instanceof HessianDecoder) {
+                    ((HessianDecoder) in).setClassRegistry(replyRegistry);
+                }
+
+                if (CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+                    return readFutureReply(in, method);
+                }
+
+                if (in instanceof HessianRpcInput && isResultStream(method.getReturnType())) {
+                    HessianRpcInput rpcIn = (HessianRpcInput) in;
+
+                    if (!rpcIn.startStreamReply()) {
+                        return null;
+                    }
+
+                    ResultStream<Object> value = new ResultStream<>(conn, is, rpcIn, getValueType(method));
+                    is = null;
+                    conn = null;
+
+                    return method.getReturnType() == Stream.class ? value.stream() : value;
+                }
+
                 Object value = in.readReply(method.getReturnType());
 
                 if (value instanceof InputStream) {
@@ -223,7 +340,13 @@ public class HessianProxy implements InvocationHandler, Serializable {
                 throw new HessianProtocolException("'" + (char) code + "' is an unknown code");
             }
         } catch (HessianProtocolException e) {
+            isKeepalive = false;
+
             throw new HessianRuntimeException(e);
+        } catch (IOException e) {
+            isKeepalive = false;
+
+            throw e;
         } finally {
             try {
                 if (is != null) {
@@ -233,8 +356,12 @@ public class HessianProxy implements InvocationHandler, Serializable {
                 log.debug(e.toString(), e);
             }
 
+            // a complete reply, including a fault, leaves the connection
+            // reusable for keepalive
             try {
-                if (conn != null) {
+                if (conn != null && isKeepalive) {
+                    conn.close();
+                } else if (conn != null) {
                     conn.destroy();
                 }
             } catch (Exception e) {
@@ -243,11 +370,50 @@ public class HessianProxy implements InvocationHandler, Serializable {
         }
     }
 
+    /**
+     * Returns the type argument of a future or streamed return type.
+     */
+    static Class<?> getValueType(Method method) {
+        Type type = method.getGenericReturnType();
+
+        if (type instanceof ParameterizedType) {
+            Type arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+
+            if (arg instanceof Class) {
+                return (Class<?>) arg;
+            }
+        }
+
+        return Object.class;
+    }
+
+    /**
+     * True for the return types read as a streamed reply.
+     */
+    static boolean isResultStream(Class<?> type) {
+        return type == HessianResultStream.class || type == Iterator.class || type == Stream.class;
+    }
+
+    /**
+     * Reads the reply of a method returning a <code>CompletionStage</code>,
+     * which the server completes before replying.  A fault is returned as
+     * a failed future.
+     */
+    private Object readFutureReply(AbstractHessianInput in, Method method) throws Throwable {
+        try {
+            return CompletableFuture.completedFuture(in.readReply(getValueType(method)));
+        } catch (IOException | HessianRuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     protected InputStream getInputStream(HessianConnection conn) throws IOException {
         InputStream is = conn.getInputStream();
 
         if ("deflate".equals(conn.getContentEncoding())) {
-            is = new InflaterInputStream(is, new Inflater(true));
+            is = factory.getInflaterPool().getInputStream(is);
         }
 
         return is;
@@ -267,14 +433,63 @@ public class HessianProxy implements InvocationHandler, Serializable {
      * Sends the HTTP request to the Hessian connection.
      */
     protected HessianConnection sendRequest(String methodName, Object[] args) throws IOException {
+        return sendRequest(new String[] {methodName}, new Object[][] {args});
+    }
+
+    /**
+     * Sends several calls back-to-back in one request.  Each call is
+     * written by its own output, as an independent message.
+     */
+    HessianConnection sendRequest(String[] methodNames, Object[][] args) throws IOException {
+        HessianClassRegistry classRegistry = factory.getClassRegistry();
+
+        if (classRegistry != null && isClassRegistryAccepted) {
+            try {
+                return sendRequest(methodNames, args, classRegistry);
+            } catch (HessianConnectionException e) {
+                if (isClassRegistryAccepted) {
+                    throw e;
+                }
+
+                // the server no longer has the registry and rejected the
+                // request before reading the calls
+                log.debug("Hessian[{}] class registry {} rejected, resending", url, classRegistry.getId());
+            }
+        }
+
+        return sendRequest(methodNames, args, null);
+    }
+
+    /**
+     * Sends the calls, encoded with the pre-shared class definitions if
+     * the registry is not null.
+     */
+    private HessianConnection sendRequest(String[] methodNames, Object[][] args, HessianClassRegistry requestRegistry)
+            throws IOException {
         HessianConnection conn = null;
 
         conn = factory.getConnectionFactory().open(url);
         boolean isValid = false;
 
+        Deflater deflater = null;
+
         try {
             addRequestHeaders(conn);
 
+            HessianClassRegistry classRegistry = factory.getClassRegistry();
+
+            if (classRegistry != null) {
+                conn.addHeader("X-Hessian-Class-Registry", classRegistry.getId());
+            }
+
+            if (requestRegistry != null) {
+                conn.addHeader("X-Hessian-Encoded-Registry", requestRegistry.getId());
+            }
+
+            if (factory.isColumnarListEncoding()) {
+                conn.addHeader("X-Hessian-Columnar", "true");
+            }
+
             OutputStream os = null;
 
             try {
@@ -283,6 +498,14 @@ public class HessianProxy implements InvocationHandler, Serializable {
                 throw new HessianRuntimeException(e);
             }
 
+            DeflaterOutputStream deflateOs = null;
+
+            if (factory.isCompressRequest()) {
+                deflater = factory.getDeflaterPool().allocate();
+                deflateOs = new DeflaterOutputStream(os, deflater, 1024);
+                os = deflateOs;
+            }
+
             if (log.isTraceEnabled()) {
                 PrintWriter dbg = new PrintWriter(new LineFlushingWriter(log::trace));
                 HessianDebugOutputStream dOs = new HessianDebugOutputStream(os, dbg);
@@ -290,23 +513,75 @@ public class HessianProxy implements InvocationHandler, Serializable {
                 os = dOs;
             }
 
-            AbstractHessianOutput out = factory.getHessianOutput(os);
+            for (int i = 0; i < methodNames.length; i++) {
+                AbstractHessianOutput out = factory.getHessianOutput(os);
 
-            out.call(methodName, args);
-            out.flush();
+                if (requestRegistry != null) {
+                    ((HessianEncoder) out).setClassRegistry(requestRegistry);
+                }
+
+                if (isColumnarAccepted && out instanceof HessianEncoder) {
+                    ((HessianEncoder) out).setColumnarListEncoding(true);
+                }
 
-            conn.sendRequest();
+                out.call(methodNames[i], args[i]);
+                out.flush();
+            }
+
+            if (deflateOs != null) {
+                deflateOs.finish();
+            }
+
+            try {
+                conn.sendRequest();
+            } catch (HessianConnectionException e) {
+                if (requestRegistry != null && conn.getStatusCode() == 415) {
+                    isClassRegistryAccepted = false;
+                }
+
+                throw e;
+            }
 
             isValid = true;
 
             return conn;
         } finally {
+            factory.getDeflaterPool().free(deflater);
+
             if (!isValid && conn != null) {
                 conn.destroy();
             }
         }
     }
 
+    /**
+     * Returns the registry the reply is encoded with, or null, and records
+     * whether the server shares the factory's registry.
+     */
+    HessianClassRegistry getReplyRegistry(HessianConnection conn) {
+        HessianClassRegistry classRegistry = factory.getClassRegistry();
+
+        if (classRegistry == null) {
+            return null;
+        }
+
+        boolean isAccepted = classRegistry.getId().equals(conn.getHeaderField("X-Hessian-Class-Registry"));
+
+        isClassRegistryAccepted = isAccepted;
+
+        return isAccepted ? classRegistry : null;
+    }
+
+    /**
+     * Records whether the server reads columnar lists, as announced in the
+     * reply to a request offering them.
+     */
+    void updateColumnarAccepted(HessianConnection conn) {
+        if (factory.isColumnarListEncoding()) {
+            isColumnarAccepted = "true".equals(conn.getHeaderField("X-Hessian-Columnar"));
+        }
+    }
+
     /**
      * Method that allows subclasses to add request headers such as cookies.
      * Default implementation is empty.
@@ -315,6 +590,10 @@ public class HessianProxy implements InvocationHandler, Serializable {
         conn.addHeader("Content-Type", "x-application/hessian");
         conn.addHeader("Accept-Encoding", "deflate");
 
+        if (factory.isCompressRequest()) {
+            conn.addHeader("Content-Encoding", "deflate");
+        }
+
         String basicAuth = factory.getBasicAuth();
 
         if (basicAuth != null) {
@@ -425,4 +704,145 @@ public class HessianProxy implements InvocationHandler, Serializable {
             }
         }
     }
+
+    /**
+     * The encoded call, as the key of an in-flight coalesced call.
+     */
+    static final class CallKey {
+        private final byte[] call;
+        private final int hash;
+
+        CallKey(byte[] call) {
+            this.call = call;
+            hash = Arrays.hashCode(call);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CallKey && hash == ((CallKey) o).hash && Arrays.equals(call, ((CallKey) o).call);
+        }
+    }
+
+    /**
+     * Decodes the elements of a streamed reply as they are requested,
+     * holding the connection until the reply ends or the stream is closed.
+     */
+    static class ResultStream<T> implements HessianResultStream<T> {
+        private HessianConnection conn;
+        private InputStream connIs;
+        private HessianRpcInput in;
+        private final Class<?> valueType;
+        private boolean isPending;
+
+        ResultStream(HessianConnection conn, InputStream is, HessianRpcInput in, Class<?> valueType) {
+            this.conn = conn;
+            connIs = is;
+            this.in = in;
+            this.valueType = valueType;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (isPending) {
+                return true;
+            } else if (in == null) {
+                return false;
+            }
+
+            try {
+                if (in.isStreamEnd()) {
+                    release(true);
+
+                    return false;
+                }
+            } catch (IOException e) {
+                release(false);
+
+                throw new HessianRuntimeException(e);
+            } catch (RuntimeException | Error e) {
+                release(true);
+
+                throw e;
+            } catch (Throwable e) {
+                release(true);
+
+                throw new HessianRuntimeException(e);
+            }
+
+            isPending = true;
+
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            isPending = false;
+
+            try {
+                return (T) in.readStreamElement(valueType);
+            } catch (IOException e) {
+                release(false);
+
+                throw new HessianRuntimeException(e);
+            }
+        }
+
+        /**
+         * Closes the stream.  A stream closed before its end discards the
+         * connection, since the rest of the reply is unread.
+         */
+        @Override
+        public void close() {
+            release(false);
+        }
+
+        private void release(boolean isKeepalive) {
+            HessianConnection conn = this.conn;
+            this.conn = null;
+
+            InputStream connIs = this.connIs;
+            this.connIs = null;
+
+            HessianRpcInput in = this.in;
+            this.in = null;
+
+            isPending = false;
+
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+            }
+
+            try {
+                if (connIs != null) {
+                    connIs.close();
+                }
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+            }
+
+            try {
+                if (conn != null && isKeepalive) {
+                    conn.close();
+                } else if (conn != null) {
+                    conn.destroy();
+                }
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+            }
+        }
+    }
 }
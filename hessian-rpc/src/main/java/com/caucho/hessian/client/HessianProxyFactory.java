@@ -55,7 +55,10 @@ import com.caucho.hessian.io.HessianRemoteResolver;
 import com.caucho.hessian.io.HessianRpcInput;
 import com.caucho.hessian.io.HessianRpcOutput;
 import com.caucho.hessian.io.SerializerFactory;
+import com.caucho.hessian.util.DeflaterPool;
+import com.caucho.hessian.util.InflaterPool;
 import com.caucho.services.client.ServiceProxyFactory;
+import io.github.wuwen5.hessian.io.HessianClassRegistry;
 import io.github.wuwen5.hessian.io.HessianDebugInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -67,6 +70,8 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
 import javax.naming.Context;
 import javax.naming.Name;
 import javax.naming.NamingException;
@@ -156,6 +161,53 @@ public class HessianProxyFactory implements ServiceProxyFactory, ObjectFactory {
     @Setter
     private long connectTimeout = -1;
 
+    /**
+     * Sends request bodies deflate encoded.  The server must understand
+     * <code>Content-Encoding: deflate</code>, as HessianServlet does.
+     */
+    @Getter
+    @Setter
+    private boolean compressRequest;
+
+    /**
+     * The most calls a {@link HessianBatch} sends in one request.
+     */
+    @Getter
+    @Setter
+    private int maxBatchSize = 64;
+
+    /**
+     * The milliseconds a {@link HessianBatch} waits after its first call
+     * for more calls before sending.
+     */
+    @Getter
+    @Setter
+    private long batchWindow = 5;
+
+    /**
+     * Class definitions pre-shared with the server.  The registry is
+     * announced in each request; once a reply shows the server uses the
+     * same registry, requests and replies omit its definitions.
+     */
+    @Getter
+    @Setter
+    private HessianClassRegistry classRegistry;
+
+    /**
+     * Negotiates columnar lists with the server.  Each request announces
+     * that replies may write lists of objects of one class as columns;
+     * once a reply shows the server reads them too, requests use them.
+     */
+    @Getter
+    @Setter
+    private boolean columnarListEncoding;
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final DeflaterPool deflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 16);
+
+    private final InflaterPool inflaterPool = new InflaterPool(true, 16);
+
     /**
      * Creates the new proxy factory.
      */
@@ -236,6 +288,20 @@ public class HessianProxyFactory implements ServiceProxyFactory, ObjectFactory {
         return serializerFactory;
     }
 
+    /**
+     * Returns the pool of deflaters used for compressed requests.
+     */
+    public DeflaterPool getDeflaterPool() {
+        return deflaterPool;
+    }
+
+    /**
+     * Returns the pool of inflaters used for compressed replies.
+     */
+    public InflaterPool getInflaterPool() {
+        return inflaterPool;
+    }
+
     protected HessianConnectionFactory createHessianConnectionFactory() {
         String className = System.getProperty(HessianConnectionFactory.class.getName());
 
@@ -341,6 +407,43 @@ public class HessianProxyFactory implements ServiceProxyFactory, ObjectFactory {
         return Proxy.newProxyInstance(loader, new Class[] {api, HessianRemoteObject.class}, handler);
     }
 
+    /**
+     * Returns the number of calls of {@link HessianCoalesce} methods which
+     * shared the reply of an identical call already in flight instead of
+     * sending their own request.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    void addCoalescedCall() {
+        coalescedCount.increment();
+    }
+
+    /**
+     * Creates a batch which sends calls to the service at the URL
+     * together, up to <code>maxBatchSize</code> calls or
+     * <code>batchWindow</code> milliseconds at a time.
+     *
+     * <pre>
+     * HessianBatch&lt;HelloHome&gt; batch = factory.createBatch(HelloHome.class, url);
+     * CompletableFuture&lt;String&gt; hello = batch.submit(api -&gt; api.helloWorld());
+     * </pre>
+     *
+     * @param api     the interface of the service
+     * @param urlName the URL where the service is located.
+     * @return the batch, which must be closed when no longer needed.
+     */
+    public <T> HessianBatch<T> createBatch(Class<T> api, String urlName) throws MalformedURLException {
+        if (api == null) {
+            throw new NullPointerException("api must not be null for HessianProxyFactory.createBatch()");
+        }
+
+        URL url = new URL(urlName);
+
+        return new HessianBatch<>(new HessianProxy(url, this, api), this, api, loader);
+    }
+
     public AbstractHessianInput getHessianInput(InputStream is) {
         return getHessian2Input(is);
     }
@@ -171,6 +171,11 @@ public class HessianURLConnection extends AbstractHessianConnection {
         return _conn.getContentEncoding();
     }
 
+    @Override
+    public String getHeaderField(String name) {
+        return _conn.getHeaderField(name);
+    }
+
     /**
      * Close/free the connection
      */
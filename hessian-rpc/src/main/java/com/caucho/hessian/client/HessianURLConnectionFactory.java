@@ -49,6 +49,7 @@
 package com.caucho.hessian.client;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.logging.Level;
@@ -63,11 +64,28 @@ public class HessianURLConnectionFactory implements HessianConnectionFactory {
 
     private HessianProxyFactory proxyFactory;
 
+    private int chunkLength;
+
     @Override
     public void setHessianProxyFactory(HessianProxyFactory factory) {
         proxyFactory = factory;
     }
 
+    /**
+     * Sends request bodies in chunks of the given length as they are
+     * written, instead of buffering the whole body to send its length.
+     * The server must accept chunked requests.
+     *
+     * @param chunkLength the chunk length, or 0 to buffer the body
+     */
+    public void setChunkLength(int chunkLength) {
+        this.chunkLength = chunkLength;
+    }
+
+    public int getChunkLength() {
+        return chunkLength;
+    }
+
     /**
      * Opens a new or recycled connection to the HTTP server.
      */
@@ -87,6 +105,10 @@ public class HessianURLConnectionFactory implements HessianConnectionFactory {
 
         conn.setDoOutput(true);
 
+        if (chunkLength > 0 && conn instanceof HttpURLConnection) {
+            ((HttpURLConnection) conn).setChunkedStreamingMode(chunkLength);
+        }
+
         long readTimeout = proxyFactory.getReadTimeout();
 
         if (readTimeout > 0) {
@@ -48,19 +48,68 @@
 
 package com.caucho.hessian.io;
 
+import com.caucho.hessian.util.DeflaterPool;
+import com.caucho.hessian.util.InflaterPool;
 import io.github.wuwen5.hessian.io.HessianDecoder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
+import lombok.Getter;
+import lombok.Setter;
 
+/**
+ * Envelope compressing the message with deflate.
+ *
+ * <p>Deflaters and inflaters are recycled through bounded pools and
+ * returned when the envelope stream is closed.  Messages smaller than
+ * <code>threshold</code> are written as stored (level 0) deflate blocks,
+ * which skips the compression work while remaining readable by any
+ * Deflation reader.
+ */
 public class Deflation extends HessianEnvelope {
+    private static final DeflaterPool DEFLATER_POOL = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, false, 32);
+
+    private static final InflaterPool INFLATER_POOL = new InflaterPool(false, 32);
+
+    /**
+     * -- GETTER --
+     *  Gets the deflate level.
+     * -- SETTER --
+     *  Sets the deflate level, 1 (fastest) to 9 (smallest).
+     */
+    @Getter
+    @Setter
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * -- GETTER --
+     *  Gets the deflate strategy.
+     * -- SETTER --
+     *  Sets the deflate strategy, e.g. {@link Deflater#FILTERED}.
+     */
+    @Getter
+    @Setter
+    private int strategy = Deflater.DEFAULT_STRATEGY;
+
+    /**
+     * -- GETTER --
+     *  Gets the message size below which compression is skipped.
+     * -- SETTER --
+     *  Sets the message size in bytes below which compression is skipped.
+     */
+    @Getter
+    @Setter
+    private int threshold = 0;
+
     public Deflation() {}
 
     @Override
     public HessianRpcOutput wrap(HessianRpcOutput out) throws IOException {
-        OutputStream os = new DeflateOutputStream(out);
+        OutputStream os = new DeflateOutputStream(out, level, strategy, threshold);
 
         HessianRpcOutput filterOut = new HessianRpcOutput(os);
 
@@ -96,10 +145,20 @@ public class Deflation extends HessianEnvelope {
     static class DeflateOutputStream extends OutputStream {
         private HessianRpcOutput out;
         private final OutputStream bodyOut;
-        private final DeflaterOutputStream deflateOut;
 
-        DeflateOutputStream(HessianRpcOutput out) throws IOException {
+        private final int level;
+        private final int strategy;
+
+        private byte[] buffer;
+        private int length;
+
+        private Deflater deflater;
+        private DeflaterOutputStream deflateOut;
+
+        DeflateOutputStream(HessianRpcOutput out, int level, int strategy, int threshold) throws IOException {
             this.out = out;
+            this.level = level;
+            this.strategy = strategy;
 
             this.out.startEnvelope(Deflation.class.getName());
 
@@ -107,16 +166,54 @@ public class Deflation extends HessianEnvelope {
 
             bodyOut = this.out.getBytesOutputStream();
 
-            deflateOut = new DeflaterOutputStream(bodyOut);
+            if (threshold > 0) {
+                buffer = new byte[threshold];
+            } else {
+                startDeflate(level);
+            }
+        }
+
+        private void startDeflate(int level) throws IOException {
+            deflater = DEFLATER_POOL.allocate();
+            deflater.setLevel(level);
+            deflater.setStrategy(strategy);
+
+            deflateOut = new DeflaterOutputStream(bodyOut, deflater);
+
+            if (length > 0) {
+                deflateOut.write(buffer, 0, length);
+            }
+
+            buffer = null;
+            length = 0;
         }
 
         @Override
         public void write(int ch) throws IOException {
+            if (deflateOut == null) {
+                if (length < buffer.length) {
+                    buffer[length++] = (byte) ch;
+                    return;
+                }
+
+                startDeflate(level);
+            }
+
             deflateOut.write(ch);
         }
 
         @Override
         public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (deflateOut == null) {
+                if (this.length + length <= this.buffer.length) {
+                    System.arraycopy(buffer, offset, this.buffer, this.length, length);
+                    this.length += length;
+                    return;
+                }
+
+                startDeflate(level);
+            }
+
             deflateOut.write(buffer, offset, length);
         }
 
@@ -126,7 +223,18 @@ public class Deflation extends HessianEnvelope {
             this.out = null;
 
             if (out != null) {
-                deflateOut.close();
+                try {
+                    if (deflateOut == null) {
+                        // small message: stored blocks, no compression work
+                        startDeflate(Deflater.NO_COMPRESSION);
+                    }
+
+                    deflateOut.close();
+                } finally {
+                    DEFLATER_POOL.free(deflater);
+                    deflater = null;
+                }
+
                 bodyOut.close();
 
                 out.writeInt(0);
@@ -144,6 +252,8 @@ public class Deflation extends HessianEnvelope {
         private final InputStream bodyIn;
         private final InflaterInputStream inflateIn;
 
+        private Inflater inflater;
+
         DeflateInputStream(Hessian2Input in) throws IOException {
             this.in = in;
 
@@ -155,7 +265,8 @@ public class Deflation extends HessianEnvelope {
 
             bodyIn = this.in.readInputStream();
 
-            inflateIn = new InflaterInputStream(bodyIn);
+            inflater = INFLATER_POOL.allocate();
+            inflateIn = new InflaterInputStream(bodyIn, inflater);
         }
 
         @Override
@@ -174,7 +285,13 @@ public class Deflation extends HessianEnvelope {
             this.in = null;
 
             if (in != null) {
-                inflateIn.close();
+                try {
+                    inflateIn.close();
+                } finally {
+                    INFLATER_POOL.free(inflater);
+                    inflater = null;
+                }
+
                 bodyIn.close();
 
                 int len = in.readInt();
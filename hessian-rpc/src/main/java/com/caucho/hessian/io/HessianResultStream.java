@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.io;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A service result delivered as a sequence of values.
+ *
+ * <p>A service method declared to return <code>HessianResultStream</code>,
+ * <code>Iterator</code> or <code>Stream</code> writes its reply
+ * incrementally: the skeleton encodes each element as the iterator
+ * produces it, and the proxy decodes each element as the caller asks for
+ * it, so neither side holds the whole result.
+ *
+ * <pre>
+ * public interface LogService {
+ *   HessianResultStream&lt;LogEntry&gt; scan(String query);
+ * }
+ *
+ * try (HessianResultStream&lt;LogEntry&gt; entries = logService.scan("level:error")) {
+ *   while (entries.hasNext()) {
+ *     handle(entries.next());
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>Elements are encoded independently, so an object shared between two
+ * elements arrives as two copies.  A client which stops before the end
+ * must close the stream to release the connection.
+ */
+public interface HessianResultStream<T> extends Iterator<T>, AutoCloseable {
+    /**
+     * Releases the underlying iterator or connection.
+     */
+    @Override
+    void close();
+
+    /**
+     * Returns a sequential stream over the remaining elements, which
+     * closes this result when the stream is closed.
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Wraps an iterator as a result.  If the iterator is
+     * <code>AutoCloseable</code>, closing the result closes it.
+     */
+    static <T> HessianResultStream<T> of(Iterator<T> iterator) {
+        if (iterator instanceof HessianResultStream) {
+            return (HessianResultStream<T>) iterator;
+        }
+
+        return new HessianResultStream<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                if (iterator instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) iterator).close();
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream as a result.  Closing the result closes the stream.
+     */
+    static <T> HessianResultStream<T> of(Stream<T> stream) {
+        Iterator<T> iterator = stream.iterator();
+
+        return new HessianResultStream<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                stream.close();
+            }
+        };
+    }
+}
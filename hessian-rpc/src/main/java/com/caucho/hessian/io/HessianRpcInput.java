@@ -1,6 +1,7 @@
 package com.caucho.hessian.io;
 
 import io.github.wuwen5.hessian.io.HessianServiceException;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
@@ -94,26 +95,145 @@ public class HessianRpcInput extends Hessian2Input implements AbstractHessianInp
 
         if (tag == 'R') {
             return readObject(expectedClass);
-        } else if (tag == 'F') {
+        } else {
+            throw replyError(tag);
+        }
+    }
+
+    /**
+     * Starts the next call of a batched request.  Each call of a batch is
+     * an independent message, so the references and class definitions are
+     * reset.  Returns false at the end of the request.
+     *
+     * <pre>
+     * H x02 x00 C
+     * </pre>
+     */
+    public boolean readNextCall() throws IOException {
+        int tag = read();
+
+        if (tag < 0) {
+            return false;
+        } else if (tag != 'H') {
+            throw expect("hessian call", tag);
+        }
+
+        read();
+        read();
+
+        reset();
+
+        readCall();
+
+        return true;
+    }
+
+    /**
+     * Starts the next reply of a batched response, reading the version and
+     * resetting the references and class definitions.
+     *
+     * <pre>
+     * H x02 x00
+     * </pre>
+     */
+    public void startNextReply() throws IOException {
+        int tag = read();
+
+        if (tag != 'H') {
+            throw expect("hessian reply", tag);
+        }
+
+        read();
+        read();
+
+        reset();
+    }
+
+    /**
+     * Starts reading a streamed reply.  Returns false if the result is
+     * null.
+     *
+     * <pre>
+     * R W
+     * </pre>
+     */
+    public boolean startStreamReply() throws Throwable {
+        int tag = read();
+
+        if (tag != 'R') {
+            throw replyError(tag);
+        }
+
+        tag = read();
+
+        if (tag == BC_LIST_VARIABLE_UNTYPED) {
+            return true;
+        } else if (tag == BC_NULL) {
+            return false;
+        } else {
+            throw expect("streamed reply", tag);
+        }
+    }
+
+    /**
+     * Returns true at the end of a streamed reply.  If the service failed
+     * while producing the elements, throws its fault.
+     */
+    public boolean isStreamEnd() throws Throwable {
+        int tag = read();
+
+        if (tag == BC_END) {
+            return true;
+        } else if (tag == HessianRpcOutput.STREAM_FAULT) {
             HashMap map = (HashMap) readObject(HashMap.class);
 
             throw prepareFault(map);
-        } else {
-            StringBuilder sb = new StringBuilder();
-            sb.append((char) tag);
+        } else if (tag < 0) {
+            throw new EOFException("unexpected end of file in streamed reply");
+        }
+
+        unread();
+
+        return false;
+    }
+
+    /**
+     * Reads an element of a streamed reply, resetting the references as
+     * the writer does.
+     */
+    public Object readStreamElement(Class<?> expectedClass) throws IOException {
+        Object value = readObject(expectedClass);
+
+        resetReferences();
 
+        return value;
+    }
+
+    private Throwable replyError(int tag) {
+        if (tag == 'F') {
             try {
-                int ch;
+                HashMap map = (HashMap) readObject(HashMap.class);
 
-                while ((ch = read()) >= 0) {
-                    sb.append((char) ch);
-                }
+                return prepareFault(map);
             } catch (IOException e) {
-                log.debug(e.toString(), e);
+                return e;
             }
+        }
 
-            throw error("expected hessian reply at " + codeName(tag) + "\n" + sb);
+        StringBuilder sb = new StringBuilder();
+        sb.append((char) tag);
+
+        try {
+            int ch;
+
+            while ((ch = read()) >= 0) {
+                sb.append((char) ch);
+            }
+        } catch (IOException e) {
+            log.debug(e.toString(), e);
         }
+
+        return error("expected hessian reply at " + codeName(tag) + "\n" + sb);
     }
 
     /**
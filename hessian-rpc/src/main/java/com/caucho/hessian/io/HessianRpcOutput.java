@@ -71,6 +71,13 @@ import java.io.OutputStream;
  * </pre>
  */
 public class HessianRpcOutput extends Hessian2Output implements AbstractHessianOutput {
+    /**
+     * Marks a fault in place of the next element of a streamed reply.  The
+     * code is reserved in Hessian 2, so a reader which does not expect a
+     * streamed reply fails instead of returning a truncated list.
+     */
+    static final int STREAM_FAULT = 0x40;
+
     public HessianRpcOutput() {
         super();
     }
@@ -297,6 +304,70 @@ public class HessianRpcOutput extends Hessian2Output implements AbstractHessianO
         writeVersion();
 
         buffer[offset++] = (byte) 'F';
+
+        writeFaultMap(code, message, detail);
+    }
+
+    /**
+     * Writes a complete reply encoded by another output, e.g. one kept by
+     * a reply cache, including its version.
+     */
+    public void writeReplyBytes(byte[] reply) throws IOException {
+        flushBuffer();
+
+        os.write(reply);
+    }
+
+    /**
+     * Starts a streamed reply, a variable-length list whose elements
+     * follow.
+     *<pre>
+     * R W
+     * </pre>
+     */
+    public void startStreamReply() throws IOException {
+        startReply();
+
+        writeListBegin(-1, null);
+    }
+
+    /**
+     * Writes an element of a streamed reply.  References are reset after
+     * each element, so the encoder does not retain the elements already
+     * written.
+     */
+    public void writeStreamElement(Object value) throws IOException {
+        writeObject(value);
+
+        resetReferences();
+    }
+
+    /**
+     * Completes a streamed reply.
+     *<pre>
+     * Z
+     * </pre>
+     */
+    public void completeStreamReply() throws IOException {
+        writeListEnd();
+    }
+
+    /**
+     * Ends a streamed reply with a fault, when the result fails after some
+     * elements have been written.
+     *<pre>
+     * x40 map
+     * </pre>
+     */
+    public void writeStreamFault(String code, String message, Object detail) throws IOException {
+        flushIfFull();
+
+        buffer[offset++] = (byte) STREAM_FAULT;
+
+        writeFaultMap(code, message, detail);
+    }
+
+    private void writeFaultMap(String code, String message, Object detail) throws IOException {
         buffer[offset++] = (byte) 'H';
 
         registerRef(new Object(), false);
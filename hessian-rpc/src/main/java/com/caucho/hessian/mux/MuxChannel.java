@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.mux;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * State of one logical channel of a {@link MuxServer}.
+ *
+ * <p>The demultiplexer thread appends complete data frames to the inbound
+ * queue, which never holds more than the channel window, and the reader
+ * returns window credit to the peer as the data is consumed.  Writers take
+ * send window before queueing a frame and wait while it is exhausted, so a
+ * slow channel only stalls itself.
+ */
+final class MuxChannel {
+    private final MuxServer server;
+    private final int id;
+
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private byte[] frame;
+    private int offset;
+    private int buffered;
+
+    // bytes consumed since the last window update
+    private int consumed;
+
+    private int sendWindow;
+
+    private String url;
+
+    private boolean isInputEnd;
+    private boolean isInputClosed;
+    private boolean isOutputClosed;
+    private boolean isAborted;
+
+    MuxChannel(MuxServer server, int id, int window) {
+        this.server = server;
+        this.id = id;
+        this.sendWindow = window;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    synchronized String getURL() {
+        return url;
+    }
+
+    synchronized void setURL(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Adds a data frame from the peer.
+     *
+     * @return the number of bytes to credit back immediately, because the
+     *         reader has closed the channel
+     */
+    synchronized int offer(byte[] data) throws IOException {
+        if (isInputClosed) {
+            return data.length;
+        }
+
+        if (buffered + data.length > server.getWindow()) {
+            throw new IOException("mux channel " + id + " exceeded its flow-control window");
+        }
+
+        frames.add(data);
+        buffered += data.length;
+
+        notifyAll();
+
+        return 0;
+    }
+
+    /**
+     * Marks the end of the peer's data.
+     */
+    void endInput() {
+        synchronized (this) {
+            isInputEnd = true;
+
+            notifyAll();
+        }
+
+        checkDone();
+    }
+
+    /**
+     * Reads available data, waiting until some arrives or the peer closes
+     * the channel.
+     */
+    int read(byte[] buffer, int off, int len) throws IOException {
+        int sublen;
+        int credit = 0;
+
+        synchronized (this) {
+            while (buffered == 0) {
+                if (isInputEnd || isInputClosed) {
+                    return -1;
+                } else if (isAborted) {
+                    throw new IOException("mux connection closed");
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new IOException(e);
+                }
+            }
+
+            if (frame == null) {
+                frame = frames.poll();
+                offset = 0;
+            }
+
+            sublen = Math.min(len, frame.length - offset);
+
+            System.arraycopy(frame, offset, buffer, off, sublen);
+
+            offset += sublen;
+            buffered -= sublen;
+
+            if (offset == frame.length) {
+                frame = null;
+            }
+
+            consumed += sublen;
+
+            if (consumed >= server.getWindow() / 2 && !isInputEnd) {
+                credit = consumed;
+                consumed = 0;
+            }
+        }
+
+        if (credit > 0) {
+            server.writeWindow(id, credit);
+        }
+
+        return sublen;
+    }
+
+    /**
+     * Discards unread data.  Data still in flight is credited back as it
+     * arrives so the peer can finish writing.
+     */
+    void closeInput() throws IOException {
+        int credit;
+
+        synchronized (this) {
+            if (isInputClosed) {
+                return;
+            }
+
+            isInputClosed = true;
+
+            credit = isInputEnd ? 0 : buffered + consumed;
+
+            frames.clear();
+            frame = null;
+            buffered = 0;
+            consumed = 0;
+
+            notifyAll();
+        }
+
+        if (credit > 0) {
+            server.writeWindow(id, credit);
+        }
+    }
+
+    /**
+     * Takes up to <code>len</code> bytes of send window, waiting while the
+     * window is exhausted.
+     */
+    synchronized int acquireSendWindow(int len) throws IOException {
+        while (sendWindow <= 0) {
+            if (isAborted) {
+                throw new IOException("mux connection closed");
+            }
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IOException(e);
+            }
+        }
+
+        if (isAborted) {
+            throw new IOException("mux connection closed");
+        }
+
+        int sublen = Math.min(len, sendWindow);
+
+        sendWindow -= sublen;
+
+        return sublen;
+    }
+
+    synchronized void addSendWindow(int credit) {
+        sendWindow += credit;
+
+        notifyAll();
+    }
+
+    void closeOutput() {
+        synchronized (this) {
+            isOutputClosed = true;
+        }
+
+        checkDone();
+    }
+
+    /**
+     * Fails waiting readers and writers when the connection closes.
+     */
+    synchronized void abort() {
+        isAborted = true;
+
+        notifyAll();
+    }
+
+    private void checkDone() {
+        boolean isDone;
+
+        synchronized (this) {
+            isDone = isInputEnd && isOutputClosed;
+        }
+
+        if (isDone) {
+            server.removeChannel(this);
+        }
+    }
+}
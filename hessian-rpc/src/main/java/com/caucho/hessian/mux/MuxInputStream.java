@@ -45,7 +45,6 @@
  *
  * @author Scott Ferguson
  */
-
 package com.caucho.hessian.mux;
 
 import java.io.IOException;
@@ -56,12 +55,7 @@ import java.io.InputStream;
  */
 public class MuxInputStream extends InputStream {
     private MuxServer server;
-    protected InputStream is;
-    private int channel;
-
-    private String url;
-
-    private int chunkLength;
+    private MuxChannel channel;
 
     /**
      * Null argument constructor.
@@ -69,178 +63,66 @@ public class MuxInputStream extends InputStream {
     public MuxInputStream() {}
 
     /**
-     * Initialize the multiplexor with input and output streams.
+     * Initialize the stream for a channel.
      */
-    protected void init(MuxServer server, int channel) throws IOException {
+    void init(MuxServer server, MuxChannel channel) {
         this.server = server;
         this.channel = channel;
-
-        this.url = null;
-
-        chunkLength = 0;
-    }
-
-    /**
-     * Gets the raw input stream.  Clients will normally not call
-     * this.
-     */
-    protected InputStream getInputStream() throws IOException {
-        if (is == null && server != null) is = server.readChannel(channel);
-
-        return is;
-    }
-
-    void setInputStream(InputStream is) {
-        this.is = is;
     }
 
     /**
      * Gets the channel of the connection.
      */
     public int getChannel() {
-        return channel;
+        return channel != null ? channel.getId() : -1;
     }
 
     /**
      * Returns the request's URL
      */
     public String getURL() {
-        return url;
+        return channel != null ? channel.getURL() : null;
     }
 
     /**
-     * Writes a data byte to the output stream.
+     * Reads a data byte from the channel.
      */
+    @Override
     public int read() throws IOException {
-        if (chunkLength <= 0) {
-            readToData(false);
-
-            if (chunkLength <= 0) return -1;
-        }
-
-        chunkLength--;
-        return is.read();
-    }
-
-    /**
-     * Complete writing to the stream, closing the channel.
-     */
-    public void close() throws IOException {
-        skipToEnd();
-    }
+        byte[] buffer = new byte[1];
 
-    /**
-     * Skips data until the end of the channel.
-     */
-    private void skipToEnd() throws IOException {
-        InputStream is = getInputStream();
-
-        if (is == null) return;
-
-        if (chunkLength > 0) is.skip(chunkLength);
-
-        for (int tag = is.read(); tag >= 0; tag = is.read()) {
-            switch (tag) {
-                case 'Y':
-                    server.freeReadLock();
-                    this.is = is = server.readChannel(channel);
-                    if (is == null) {
-                        this.server = null;
-                        return;
-                    }
-                    break;
-
-                case 'Q':
-                    server.freeReadLock();
-                    this.is = null;
-                    this.server = null;
-                    return;
+        int len = read(buffer, 0, 1);
 
-                case -1:
-                    server.freeReadLock();
-                    this.is = null;
-                    this.server = null;
-                    return;
-
-                default:
-                    int length = (is.read() << 8) + is.read();
-                    is.skip(length);
-                    break;
-            }
-        }
+        return len > 0 ? buffer[0] & 0xff : -1;
     }
 
     /**
-     * Reads tags, until getting data.
+     * Reads data from the channel, waiting until some is available.
      */
-    void readToData(boolean returnOnYield) throws IOException {
-        InputStream is = getInputStream();
-
-        if (is == null) return;
-
-        for (int tag = is.read(); tag >= 0; tag = is.read()) {
-            switch (tag) {
-                case 'Y':
-                    server.freeReadLock();
-                    if (returnOnYield) return;
-                    server.readChannel(channel);
-                    break;
-
-                case 'Q':
-                    server.freeReadLock();
-                    this.is = null;
-                    this.server = null;
-                    return;
-
-                case 'U':
-                    this.url = readUTF();
-                    break;
-
-                case 'D':
-                    chunkLength = (is.read() << 8) + is.read();
-                    return;
-
-                default:
-                    readTag(tag);
-                    break;
-            }
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        MuxChannel channel = this.channel;
+
+        if (channel == null) {
+            return -1;
+        } else if (length == 0) {
+            return 0;
         }
-    }
 
-    /**
-     * Subclasses will extend this to read values.
-     */
-    protected void readTag(int tag) throws IOException {
-        int length = (is.read() << 8) + is.read();
-        is.skip(length);
+        return channel.read(buffer, offset, length);
     }
 
     /**
-     * Reads a UTF-8 string.
-     *
-     * @return the utf-8 encoded string
+     * Closes the input side of the channel, discarding unread data.
      */
-    protected String readUTF() throws IOException {
-        int len = (is.read() << 8) + is.read();
-
-        StringBuffer sb = new StringBuffer();
-
-        while (len > 0) {
-            int d1 = is.read();
+    @Override
+    public void close() throws IOException {
+        MuxChannel channel = this.channel;
+        this.channel = null;
+        this.server = null;
 
-            if (d1 < 0) return sb.toString();
-            else if (d1 < 0x80) {
-                len--;
-                sb.append((char) d1);
-            } else if ((d1 & 0xe0) == 0xc0) {
-                len -= 2;
-                sb.append(((d1 & 0x1f) << 6) + (is.read() & 0x3f));
-            } else if ((d1 & 0xf0) == 0xe0) {
-                len -= 3;
-                sb.append(((d1 & 0x0f) << 12) + ((is.read() & 0x3f) << 6) + (is.read() & 0x3f));
-            } else throw new IOException("utf-8 encoding error");
+        if (channel != null) {
+            channel.closeInput();
         }
-
-        return sb.toString();
     }
 }
@@ -45,7 +45,6 @@
  *
  * @author Scott Ferguson
  */
-
 package com.caucho.hessian.mux;
 
 import java.io.IOException;
@@ -53,11 +52,16 @@ import java.io.OutputStream;
 
 /**
  * Output stream to a specific channel.
+ *
+ * <p>Writes are buffered and sent as data frames of at most
+ * {@link MuxServer#MAX_FRAME} bytes, each waiting for channel send window.
  */
 public class MuxOutputStream extends OutputStream {
     private MuxServer server;
-    private int channel;
-    private OutputStream os;
+    private MuxChannel channel;
+
+    private final byte[] buffer = new byte[8192];
+    private int length;
 
     /**
      * Null argument constructor.
@@ -65,143 +69,122 @@ public class MuxOutputStream extends OutputStream {
     public MuxOutputStream() {}
 
     /**
-     * Initialize the multiplexor with input and output streams.
+     * Initialize the stream for a channel.
      */
-    protected void init(MuxServer server, int channel) throws IOException {
+    void init(MuxServer server, MuxChannel channel) {
         this.server = server;
         this.channel = channel;
-        this.os = null;
-    }
-
-    /**
-     * Gets the raw output stream.  Clients will normally not call
-     * this.
-     */
-    protected OutputStream getOutputStream() throws IOException {
-        if (os == null && server != null) os = server.writeChannel(channel);
-
-        return os;
+        this.length = 0;
     }
 
     /**
      * Gets the channel of the connection.
      */
     public int getChannel() {
-        return channel;
+        return channel != null ? channel.getId() : -1;
     }
 
     /**
      * Writes a URL to the stream.
      */
     public void writeURL(String url) throws IOException {
-        writeUTF('U', url);
+        flushBuffer();
+
+        getServer().writeURL(channel.getId(), url);
     }
 
     /**
      * Writes a data byte to the output stream.
      */
+    @Override
     public void write(int ch) throws IOException {
-        OutputStream os = getOutputStream();
+        if (length == buffer.length) {
+            flushBuffer();
+        }
 
-        os.write('D');
-        os.write(0);
-        os.write(1);
-        os.write(ch);
+        buffer[length++] = (byte) ch;
     }
 
     /**
      * Writes data to the output stream.
      */
+    @Override
     public void write(byte[] buffer, int offset, int length) throws IOException {
-        OutputStream os = getOutputStream();
-
-        for (; length > 0x8000; length -= 0x8000) {
-            os.write('D');
-            os.write(0x80);
-            os.write(0x00);
-            os.write(buffer, offset, 0x8000);
-
-            offset += 0x8000;
+        if (this.length + length <= this.buffer.length) {
+            System.arraycopy(buffer, offset, this.buffer, this.length, length);
+            this.length += length;
+            return;
         }
 
-        os.write('D');
-        os.write(length >> 8);
-        os.write(length);
-        os.write(buffer, offset, length);
+        flushBuffer();
+
+        writeFrames(buffer, offset, length);
     }
 
     /**
      * Flush data to the output stream.
      */
     public void yield() throws IOException {
-        OutputStream os = this.os;
-        this.os = null;
-
-        if (os != null) server.yield(channel);
+        flush();
     }
 
     /**
      * Flush data to the output stream.
      */
+    @Override
     public void flush() throws IOException {
-        OutputStream os = this.os;
-        this.os = null;
-
-        if (os != null) server.flush(channel);
+        flushBuffer();
     }
 
     /**
      * Complete writing to the stream, closing the channel.
      */
+    @Override
     public void close() throws IOException {
+        MuxServer server = this.server;
+
         if (server != null) {
-            OutputStream os = getOutputStream();
-            this.os = null;
+            try {
+                flushBuffer();
 
-            MuxServer server = this.server;
-            this.server = null;
+                server.writeClose(channel.getId());
+            } finally {
+                this.server = null;
 
-            server.close(channel);
+                channel.closeOutput();
+            }
         }
     }
 
-    /**
-     * Writes a UTF-8 string.
-     *
-     * @param code the HMUX code identifying the string
-     * @param string the string to write
-     */
-    protected void writeUTF(int code, String string) throws IOException {
-        OutputStream os = getOutputStream();
+    private MuxServer getServer() throws IOException {
+        MuxServer server = this.server;
 
-        os.write(code);
+        if (server == null) {
+            throw new IOException("mux channel is closed");
+        }
 
-        int charLength = string.length();
+        return server;
+    }
 
-        int length = 0;
-        for (int i = 0; i < charLength; i++) {
-            char ch = string.charAt(i);
+    private void flushBuffer() throws IOException {
+        int length = this.length;
+        this.length = 0;
 
-            if (ch < 0x80) length++;
-            else if (ch < 0x800) length += 2;
-            else length += 3;
+        if (length > 0) {
+            writeFrames(buffer, 0, length);
         }
+    }
 
-        os.write(length >> 8);
-        os.write(length);
+    private void writeFrames(byte[] buffer, int offset, int length) throws IOException {
+        MuxServer server = getServer();
 
-        for (int i = 0; i < length; i++) {
-            char ch = string.charAt(i);
+        while (length > 0) {
+            int sublen = channel.acquireSendWindow(Math.min(length, MuxServer.MAX_FRAME));
 
-            if (ch < 0x80) os.write(ch);
-            else if (ch < 0x800) {
-                os.write(0xc0 + (ch >> 6) & 0x1f);
-                os.write(0x80 + (ch & 0x3f));
-            } else {
-                os.write(0xe0 + (ch >> 12) & 0xf);
-                os.write(0x80 + ((ch >> 6) & 0x3f));
-                os.write(0x80 + (ch & 0x3f));
-            }
+            server.writeData(channel.getId(), buffer, offset, sublen);
+
+            offset += sublen;
+            length -= sublen;
         }
     }
 }
@@ -45,33 +45,75 @@
  *
  * @author Scott Ferguson
  */
-
 package com.caucho.hessian.mux;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Hessian Mux, a peer-to-peer protocol.
+ *
+ * <p>Any number of logical channels share one connection.  Every frame
+ * names its channel:
+ *
+ * <pre>
+ * D channel(int) length(short) data   channel data
+ * U channel(int) length(short) utf-8  channel URL
+ * Q channel(int)                      end of the sender's data
+ * W channel(int) credit(int)          flow-control window update
+ * </pre>
+ *
+ * <p>Clients open even channels and servers odd ones; the first frame on a
+ * new channel from the peer makes it available to {@link #readRequest}.
+ * Outbound frames go through a lock-free queue drained by a single writer
+ * thread, so concurrent channels coalesce into one flush and a blocked
+ * socket never blocks the reader.  A reader thread demultiplexes inbound frames to per-channel buffers,
+ * each bounded by a {@link #WINDOW}-byte flow-control window, so a channel
+ * whose data is not being read never blocks the others.
  */
+@Slf4j
 public class MuxServer {
-    private Object READ_LOCK = new Object();
-    private Object WRITE_LOCK = new Object();
+    /**
+     * Per-channel flow-control window in bytes, the same on both peers.
+     */
+    public static final int WINDOW = 64 * 1024;
+
+    static final int MAX_FRAME = 0x8000;
+
+    private static final AtomicInteger MUX_COUNT = new AtomicInteger();
 
     private InputStream is;
     private OutputStream os;
     private boolean isClient;
 
-    private transient boolean isClosed;
+    private volatile boolean isClosed;
 
-    // channels that have data ready.
-    private boolean inputReady[] = new boolean[4];
+    private final Map<Integer, MuxChannel> channels = new ConcurrentHashMap<>();
 
-    // true if there's a thread already reading
-    private boolean isReadLocked;
-    // true if there's a thread already writing
-    private boolean isWriteLocked;
+    // channels opened by the peer, waiting for readRequest
+    private final BlockingQueue<MuxChannel> acceptQueue = new LinkedBlockingQueue<>();
+
+    private final ConcurrentLinkedQueue<byte[]> writeQueue = new ConcurrentLinkedQueue<>();
+    private Thread writer;
+    private volatile boolean isWriterParked;
+
+    private final AtomicInteger nextChannel = new AtomicInteger();
+
+    // a channel opened by the current frame, accepted once the frame is applied
+    private MuxChannel acceptChannel;
 
     /**
      * Null argument constructor.
@@ -90,7 +132,8 @@ public class MuxServer {
     }
 
     /**
-     * Initialize the multiplexor with input and output streams.
+     * Initialize the multiplexor with input and output streams, starting
+     * the reader and writer threads.
      *
      * @param is the underlying input stream
      * @param os the underlying output stream
@@ -100,6 +143,18 @@ public class MuxServer {
         this.is = is;
         this.os = os;
         this.isClient = isClient;
+
+        nextChannel.set(isClient ? 2 : 3);
+
+        int id = MUX_COUNT.incrementAndGet();
+
+        writer = new Thread(this::writeLoop, "hessian-mux-writer-" + id);
+        writer.setDaemon(true);
+        writer.start();
+
+        Thread reader = new Thread(this::readLoop, "hessian-mux-reader-" + id);
+        reader.setDaemon(true);
+        reader.start();
     }
 
     /**
@@ -119,220 +174,321 @@ public class MuxServer {
     }
 
     /**
-     * Starts a client call.
+     * Returns the number of open channels.
      */
-    public boolean startCall(MuxInputStream in, MuxOutputStream out) throws IOException {
-        int channel = isClient ? 2 : 3;
+    public int getChannelCount() {
+        return channels.size();
+    }
 
-        return startCall(channel, in, out);
+    /**
+     * Starts a client call on a new channel.
+     */
+    public boolean startCall(MuxInputStream in, MuxOutputStream out) throws IOException {
+        return startCall(nextChannel.getAndAdd(2), in, out);
     }
 
     /**
-     * Starts a client call.
+     * Starts a client call on the given channel.
      */
     public boolean startCall(int channel, MuxInputStream in, MuxOutputStream out) throws IOException {
-        // XXX: Eventually need to check to see if the channel is used.
-        // It's not clear whether this should cause a wait or an exception.
+        if (isClosed) {
+            throw new IOException("mux connection closed");
+        }
 
-        in.init(this, channel);
-        out.init(this, channel);
+        MuxChannel muxChannel = new MuxChannel(this, channel, WINDOW);
+
+        if (channels.putIfAbsent(channel, muxChannel) != null) {
+            throw new IOException("mux channel " + channel + " is in use");
+        }
+
+        in.init(this, muxChannel);
+        out.init(this, muxChannel);
 
         return true;
     }
 
     /**
-     * Reads a server request.
+     * Waits for the next channel opened by the peer.
+     *
+     * @return false if the connection has closed
      */
     public boolean readRequest(MuxInputStream in, MuxOutputStream out) throws IOException {
-        int channel = isClient ? 3 : 2;
+        MuxChannel channel;
+
+        try {
+            channel = acceptQueue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException(e);
+        }
+
+        if (channel.getId() < 0) {
+            // closed marker, left for other waiting readers
+            acceptQueue.add(channel);
+
+            return false;
+        }
 
         in.init(this, channel);
         out.init(this, channel);
 
-        if (readChannel(channel) != null) {
-            in.setInputStream(is);
-            in.readToData(false);
-            return true;
-        } else return false;
+        return true;
     }
 
-    /**
-     * Grabs the channel for writing.
-     *
-     * @param channel the channel
-     *
-     * @return true if the channel has permission to write.
-     */
-    OutputStream writeChannel(int channel) throws IOException {
-        while (os != null) {
-            boolean canWrite = false;
-            synchronized (WRITE_LOCK) {
-                if (!isWriteLocked) {
-                    isWriteLocked = true;
-                    canWrite = true;
-                } else {
-                    try {
-                        WRITE_LOCK.wait(5000);
-                    } catch (Exception e) {
-                    }
-                }
-            }
+    int getWindow() {
+        return WINDOW;
+    }
 
-            if (canWrite) {
-                os.write('C');
-                os.write(channel >> 8);
-                os.write(channel);
+    void removeChannel(MuxChannel channel) {
+        channels.remove(channel.getId(), channel);
+    }
 
-                return os;
-            }
+    void writeData(int channel, byte[] buffer, int offset, int length) throws IOException {
+        byte[] frame = new byte[7 + length];
+
+        writeHeader(frame, 'D', channel);
+        frame[5] = (byte) (length >> 8);
+        frame[6] = (byte) length;
+
+        System.arraycopy(buffer, offset, frame, 7, length);
+
+        send(frame);
+    }
+
+    void writeURL(int channel, String url) throws IOException {
+        byte[] data = url.getBytes(StandardCharsets.UTF_8);
+
+        if (data.length > 0xffff) {
+            throw new IOException("mux URL is too long");
         }
 
-        return null;
+        byte[] frame = new byte[7 + data.length];
+
+        writeHeader(frame, 'U', channel);
+        frame[5] = (byte) (data.length >> 8);
+        frame[6] = (byte) data.length;
+
+        System.arraycopy(data, 0, frame, 7, data.length);
+
+        send(frame);
     }
 
-    void yield(int channel) throws IOException {
-        os.write('Y');
-        freeWriteLock();
+    void writeClose(int channel) throws IOException {
+        byte[] frame = new byte[5];
+
+        writeHeader(frame, 'Q', channel);
+
+        send(frame);
     }
 
-    void flush(int channel) throws IOException {
-        os.write('Y');
-        os.flush();
-        freeWriteLock();
+    void writeWindow(int channel, int credit) throws IOException {
+        byte[] frame = new byte[9];
+
+        writeHeader(frame, 'W', channel);
+        frame[5] = (byte) (credit >> 24);
+        frame[6] = (byte) (credit >> 16);
+        frame[7] = (byte) (credit >> 8);
+        frame[8] = (byte) credit;
+
+        send(frame);
     }
 
-    void close(int channel) throws IOException {
-        if (os != null) {
-            os.write('Q');
-            os.flush();
-            freeWriteLock();
-        }
+    private static void writeHeader(byte[] frame, int code, int channel) {
+        frame[0] = (byte) code;
+        frame[1] = (byte) (channel >> 24);
+        frame[2] = (byte) (channel >> 16);
+        frame[3] = (byte) (channel >> 8);
+        frame[4] = (byte) channel;
     }
 
     /**
-     * Frees the channel for writing.
+     * Queues a frame for the writer thread.
      */
-    void freeWriteLock() {
-        synchronized (WRITE_LOCK) {
-            isWriteLocked = false;
-            WRITE_LOCK.notifyAll();
+    private void send(byte[] frame) throws IOException {
+        if (isClosed) {
+            throw new IOException("mux connection closed");
+        }
+
+        writeQueue.add(frame);
+
+        if (isWriterParked) {
+            LockSupport.unpark(writer);
         }
     }
 
     /**
-     * Reads data from a channel.
-     *
-     * @param channel the channel
-     *
-     * @return true if the channel is valid.
+     * Drains the frame queue to the connection, flushing whenever the
+     * queue empties, so frames queued together share one flush.
      */
-    InputStream readChannel(int channel) throws IOException {
-        while (!isClosed) {
-            if (inputReady[channel]) {
-                inputReady[channel] = false;
-                return is;
-            }
+    private void writeLoop() {
+        OutputStream os = this.os;
 
-            boolean canRead = false;
-            synchronized (READ_LOCK) {
-                if (!isReadLocked) {
-                    isReadLocked = true;
-                    canRead = true;
-                } else {
-                    try {
-                        READ_LOCK.wait(5000);
-                    } catch (Exception e) {
-                    }
-                }
-            }
+        try {
+            while (!isClosed) {
+                byte[] frame = writeQueue.poll();
 
-            if (canRead) {
-                try {
-                    readData();
-                } catch (IOException e) {
-                    close();
+                if (frame != null) {
+                    os.write(frame);
+                    continue;
                 }
-            }
-        }
 
-        return null;
-    }
+                os.flush();
 
-    boolean getReadLock() {
-        synchronized (READ_LOCK) {
-            if (!isReadLocked) {
-                isReadLocked = true;
-                return true;
-            } else {
-                try {
-                    READ_LOCK.wait(5000);
-                } catch (Exception e) {
+                isWriterParked = true;
+
+                while (writeQueue.isEmpty() && !isClosed) {
+                    LockSupport.park(this);
                 }
+
+                isWriterParked = false;
             }
+        } catch (IOException e) {
+            if (!isClosed) {
+                log.debug(e.toString(), e);
+            }
+        } finally {
+            closeQuietly();
         }
-
-        return false;
     }
 
     /**
-     * Frees the channel for reading.
+     * Demultiplexes inbound frames until the connection closes.
      */
-    void freeReadLock() {
-        synchronized (READ_LOCK) {
-            isReadLocked = false;
-            READ_LOCK.notifyAll();
-        }
-    }
+    private void readLoop() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(is, 8192));
 
-    /**
-     * Reads data until a channel packet 'C' or error 'E' is received.
-     */
-    private void readData() throws IOException {
-        while (!isClosed) {
-            int code = is.read();
-
-            switch (code) {
-                case ' ':
-                case '\t':
-                case '\n':
-                case '\r':
+            while (!isClosed) {
+                int code = in.read();
+
+                if (code < 0) {
                     break;
+                }
 
-                case 'C': {
-                    int channel = (is.read() << 8) + is.read();
+                int id = in.readInt();
 
-                    inputReady[channel] = true;
-                    return;
-                }
+                switch (code) {
+                    case 'D': {
+                        byte[] data = new byte[in.readUnsignedShort()];
+                        in.readFully(data);
 
-                case 'E': {
-                    int channel = (is.read() << 8) + is.read();
-                    int status = (is.read() << 8) + is.read();
+                        MuxChannel channel = openChannel(id);
 
-                    inputReady[channel] = true;
+                        int credit = channel != null ? channel.offer(data) : data.length;
 
-                    return;
-                }
+                        if (credit > 0) {
+                            writeWindow(id, credit);
+                        }
+                        break;
+                    }
+
+                    case 'U': {
+                        byte[] data = new byte[in.readUnsignedShort()];
+                        in.readFully(data);
+
+                        MuxChannel channel = openChannel(id);
+
+                        if (channel != null) {
+                            channel.setURL(new String(data, StandardCharsets.UTF_8));
+                        }
+                        break;
+                    }
+
+                    case 'Q': {
+                        MuxChannel channel = openChannel(id);
+
+                        if (channel != null) {
+                            channel.endInput();
+                        }
+                        break;
+                    }
 
-                case -1:
-                    close();
-                    return;
+                    case 'W': {
+                        int credit = in.readInt();
 
-                default:
-                    // An error in the protocol.  Kill the connection.
-                    close();
-                    return;
+                        MuxChannel channel = channels.get(id);
+
+                        if (channel != null) {
+                            channel.addSendWindow(credit);
+                        }
+                        break;
+                    }
+
+                    default:
+                        throw new IOException("unexpected mux code '" + (char) code + "'");
+                }
+
+                if (acceptChannel != null) {
+                    acceptQueue.add(acceptChannel);
+                    acceptChannel = null;
+                }
             }
+        } catch (EOFException e) {
+            log.trace(e.toString(), e);
+        } catch (IOException e) {
+            if (!isClosed) {
+                log.debug(e.toString(), e);
+            }
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Returns the channel for an inbound frame, opening it if the peer is
+     * starting a new one.  A channel is only removed after the peer's 'Q',
+     * so the peer never sends another opening frame for a finished channel.
+     */
+    private MuxChannel openChannel(int id) throws IOException {
+        MuxChannel channel = channels.get(id);
+
+        if (channel != null) {
+            return channel;
+        }
+
+        boolean isPeerChannel = (id & 1) == (isClient ? 1 : 0);
+
+        if (!isPeerChannel) {
+            return null;
         }
 
-        return;
+        channel = new MuxChannel(this, id, WINDOW);
+        channels.put(id, channel);
+        acceptChannel = channel;
+
+        return channel;
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            log.trace(e.toString(), e);
+        }
     }
 
     /**
-     * Close the mux
+     * Close the mux.  Frames still queued are discarded.
      */
     public void close() throws IOException {
-        isClosed = true;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+
+            isClosed = true;
+        }
+
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+
+        for (MuxChannel channel : channels.values()) {
+            channel.abort();
+        }
+
+        acceptQueue.add(new MuxChannel(this, -1, 0));
 
         OutputStream os = this.os;
         this.os = null;
@@ -340,8 +496,10 @@ public class MuxServer {
         InputStream is = this.is;
         this.is = null;
 
-        if (os != null) os.close();
-
-        if (is != null) is.close();
+        try {
+            if (os != null) os.close();
+        } finally {
+            if (is != null) is.close();
+        }
     }
 }
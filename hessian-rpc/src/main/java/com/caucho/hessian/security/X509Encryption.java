@@ -56,11 +56,38 @@ import io.github.wuwen5.hessian.io.HessianDecoder;
 import java.io.*;
 import java.security.*;
 import java.security.cert.*;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Envelope encrypting the message for the holder of an X509 certificate.
+ *
+ * <p>By default every message carries a fresh shared key wrapped with the
+ * recipient's public key.  With <code>sessionEnabled</code> the wrapped
+ * key is generated once per certificate and reused for
+ * <code>sessionTimeout</code> milliseconds: each message names the session
+ * by id and is encrypted with AES-GCM under a fresh IV, and the recipient
+ * caches the unwrapped key by id, so only the first message of a session
+ * pays for the public-key operations.
+ */
 public class X509Encryption extends HessianEnvelope {
+    private static final String SESSION_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String SESSION_KEY_ALGORITHM = "AES";
+
+    private static final int SESSION_ID_LENGTH = 16;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    // well below the 2^32 limit for random GCM IVs under one key
+    private static final long SESSION_MAX_MESSAGES = 1L << 24;
+
     /**
      * -- GETTER --
      *  Gets the encryption algorithm for the content.
@@ -97,6 +124,46 @@ public class X509Encryption extends HessianEnvelope {
     @Getter
     private SecureRandom secureRandom;
 
+    /**
+     * -- GETTER --
+     *  True if shared keys are cached as sessions.
+     * -- SETTER --
+     *  Enables caching the shared key as a session with AES-GCM messages.
+     *  Session keys are AES keys whatever the content algorithm.
+     */
+    @Setter
+    @Getter
+    private boolean sessionEnabled;
+
+    /**
+     * -- GETTER --
+     *  The session lifetime in milliseconds.
+     * -- SETTER --
+     *  The session lifetime in milliseconds.
+     */
+    @Setter
+    @Getter
+    private long sessionTimeout = 10 * 60 * 1000L;
+
+    /**
+     * -- GETTER --
+     *  The maximum number of sessions cached by the recipient.
+     * -- SETTER --
+     *  The maximum number of sessions cached by the recipient.
+     */
+    @Setter
+    @Getter
+    private int sessionCacheSize = 1024;
+
+    private volatile Session writeSession;
+
+    private final Map<String, Session> readSessions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+            return size() > sessionCacheSize;
+        }
+    };
+
     public X509Encryption() {}
 
     /**
@@ -130,7 +197,13 @@ public class X509Encryption extends HessianEnvelope {
             throw new IOException("X509Encryption.wrap requires a certificate");
         }
 
-        OutputStream os = new EncryptOutputStream(out);
+        OutputStream os;
+
+        if (sessionEnabled) {
+            os = new SessionOutputStream(out, getWriteSession());
+        } else {
+            os = new EncryptOutputStream(out);
+        }
 
         HessianRpcOutput filterOut = new HessianRpcOutput(os);
 
@@ -180,6 +253,245 @@ public class X509Encryption extends HessianEnvelope {
         return filter;
     }
 
+    /**
+     * Returns the live session for the current certificate, creating and
+     * wrapping a new shared key when the old session has expired.
+     */
+    private Session getWriteSession() throws IOException {
+        Session session = writeSession;
+        long now = System.currentTimeMillis();
+
+        if (session != null && session.cert == cert && session.isValid(now) && session.use()) {
+            return session;
+        }
+
+        synchronized (this) {
+            session = writeSession;
+
+            if (session != null && session.cert == cert && session.isValid(now) && session.use()) {
+                return session;
+            }
+
+            try {
+                KeyGenerator keyGen = KeyGenerator.getInstance(SESSION_KEY_ALGORITHM);
+
+                if (secureRandom != null) {
+                    keyGen.init(secureRandom);
+                }
+
+                SecretKey sharedKey = keyGen.generateKey();
+
+                PublicKey publicKey = cert.getPublicKey();
+
+                String keyAlgorithm = publicKey.getAlgorithm();
+                Cipher keyCipher = Cipher.getInstance(keyAlgorithm);
+                if (secureRandom != null) {
+                    keyCipher.init(Cipher.WRAP_MODE, cert, secureRandom);
+                } else {
+                    keyCipher.init(Cipher.WRAP_MODE, cert);
+                }
+
+                byte[] id = new byte[SESSION_ID_LENGTH];
+                getRandom().nextBytes(id);
+
+                byte[] encKey = keyCipher.wrap(sharedKey);
+
+                session = new Session(
+                        id, sharedKey, encKey, fingerprint(publicKey), now + sessionTimeout, cert, keyAlgorithm);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+
+            session.use();
+
+            writeSession = session;
+
+            return session;
+        }
+    }
+
+    /**
+     * Returns the cached session for a message, unwrapping and caching its
+     * key if the session is new.
+     */
+    private Session getReadSession(byte[] id, byte[] fingerprint, String keyAlgorithm, byte[] encKey)
+            throws IOException {
+        String name = Base64.getEncoder().encodeToString(id);
+        long now = System.currentTimeMillis();
+
+        Session session;
+
+        synchronized (readSessions) {
+            session = readSessions.get(name);
+        }
+
+        if (session != null && session.isValid(now) && session.use()) {
+            if (!Arrays.equals(session.fingerprint, fingerprint)) {
+                throw new IOException("X509Encryption: session fingerprint mismatch");
+            }
+
+            return session;
+        }
+
+        if (encKey == null || keyAlgorithm == null) {
+            throw new IOException("X509Encryption: unknown or expired session");
+        }
+
+        try {
+            Cipher keyCipher = Cipher.getInstance(keyAlgorithm);
+            keyCipher.init(Cipher.UNWRAP_MODE, privateKey);
+
+            Key key = keyCipher.unwrap(encKey, SESSION_KEY_ALGORITHM, Cipher.SECRET_KEY);
+
+            session = new Session(id, key, encKey, fingerprint, now + sessionTimeout, null, keyAlgorithm);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        synchronized (readSessions) {
+            readSessions.put(name, session);
+        }
+
+        return session;
+    }
+
+    private SecureRandom getRandom() {
+        SecureRandom random = secureRandom;
+
+        return random != null ? random : SessionRandom.RANDOM;
+    }
+
+    private static byte[] fingerprint(PublicKey publicKey) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA1");
+        md.update(publicKey.getEncoded());
+
+        return md.digest();
+    }
+
+    static class Session {
+        private final byte[] id;
+        private final Key key;
+        private final byte[] encKey;
+        private final byte[] fingerprint;
+        private final long expireTime;
+        private final X509Certificate cert;
+        private final String keyAlgorithm;
+        private final AtomicLong count = new AtomicLong();
+
+        Session(
+                byte[] id,
+                Key key,
+                byte[] encKey,
+                byte[] fingerprint,
+                long expireTime,
+                X509Certificate cert,
+                String keyAlgorithm) {
+            this.id = id;
+            this.key = key;
+            this.encKey = encKey;
+            this.fingerprint = fingerprint;
+            this.expireTime = expireTime;
+            this.cert = cert;
+            this.keyAlgorithm = keyAlgorithm;
+        }
+
+        /**
+         * True if the session has neither expired nor carried its maximum
+         * number of messages.
+         */
+        boolean isValid(long now) {
+            return now < expireTime && count.get() < SESSION_MAX_MESSAGES;
+        }
+
+        /**
+         * Counts a message sent with the session's key, returning false if
+         * the session has already carried its maximum number of messages.
+         */
+        boolean use() {
+            return count.incrementAndGet() <= SESSION_MAX_MESSAGES;
+        }
+    }
+
+    static class SessionRandom {
+        static final SecureRandom RANDOM = new SecureRandom();
+    }
+
+    class SessionOutputStream extends OutputStream {
+        private HessianRpcOutput out;
+
+        private final OutputStream bodyOut;
+        private final CipherOutputStream cipherOut;
+
+        SessionOutputStream(HessianRpcOutput out, Session session) throws IOException {
+            try {
+                this.out = out;
+
+                byte[] iv = new byte[GCM_IV_LENGTH];
+                getRandom().nextBytes(iv);
+
+                Cipher cipher = Cipher.getInstance(SESSION_ALGORITHM);
+                cipher.init(Cipher.ENCRYPT_MODE, session.key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+                cipher.updateAAD(session.id);
+
+                this.out.startEnvelope(X509Encryption.class.getName());
+
+                // the wrapped key is repeated so a recipient which has not
+                // seen, or has evicted, the session can still read it
+                this.out.writeInt(6);
+
+                this.out.writeString("algorithm");
+                this.out.writeString(SESSION_ALGORITHM);
+                this.out.writeString("fingerprint");
+                this.out.writeBytes(session.fingerprint);
+                this.out.writeString("session");
+                this.out.writeBytes(session.id);
+                this.out.writeString("iv");
+                this.out.writeBytes(iv);
+                this.out.writeString("key-algorithm");
+                this.out.writeString(session.keyAlgorithm);
+                this.out.writeString("key");
+                this.out.writeBytes(session.encKey);
+
+                bodyOut = this.out.getBytesOutputStream();
+
+                cipherOut = new CipherOutputStream(bodyOut, cipher);
+            } catch (RuntimeException | IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void write(int ch) throws IOException {
+            cipherOut.write(ch);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            cipherOut.write(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            HessianRpcOutput out = this.out;
+            this.out = null;
+
+            if (out != null) {
+                cipherOut.close();
+                bodyOut.close();
+
+                out.writeInt(0);
+                out.completeEnvelope();
+                out.close();
+            }
+        }
+    }
+
     class EncryptOutputStream extends OutputStream {
         private HessianRpcOutput out;
 
@@ -286,6 +598,9 @@ public class X509Encryption extends HessianEnvelope {
                 String keyAlgorithm = null;
                 String algorithm = null;
                 byte[] encKey = null;
+                byte[] fingerprint = null;
+                byte[] sessionId = null;
+                byte[] iv = null;
 
                 int len = in.readInt();
 
@@ -293,7 +608,11 @@ public class X509Encryption extends HessianEnvelope {
                     String header = in.readString();
 
                     if ("fingerprint".equals(header)) {
-                        in.readBytes();
+                        fingerprint = in.readBytes();
+                    } else if ("session".equals(header)) {
+                        sessionId = in.readBytes();
+                    } else if ("iv".equals(header)) {
+                        iv = in.readBytes();
                     } else if ("key-algorithm".equals(header)) {
                         keyAlgorithm = in.readString();
                     } else if ("algorithm".equals(header)) {
@@ -305,18 +624,34 @@ public class X509Encryption extends HessianEnvelope {
                     }
                 }
 
-                if (keyAlgorithm == null || algorithm == null) {
-                    throw new IOException("X509Encryption: missing key-algorithm or algorithm header");
-                }
+                Key key;
+                Cipher cipher;
 
-                Cipher keyCipher = Cipher.getInstance(keyAlgorithm);
-                keyCipher.init(Cipher.UNWRAP_MODE, privateKey);
+                if (sessionId != null) {
+                    if (!SESSION_ALGORITHM.equals(algorithm) || iv == null) {
+                        throw new IOException("X509Encryption: session requires " + SESSION_ALGORITHM + " and iv");
+                    }
 
-                Key key = keyCipher.unwrap(encKey, algorithm, Cipher.SECRET_KEY);
-                bodyIn = this.in.readInputStream();
+                    key = getReadSession(sessionId, fingerprint, keyAlgorithm, encKey).key;
 
-                Cipher cipher = Cipher.getInstance(algorithm);
-                cipher.init(Cipher.DECRYPT_MODE, key);
+                    cipher = Cipher.getInstance(SESSION_ALGORITHM);
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+                    cipher.updateAAD(sessionId);
+                } else {
+                    if (keyAlgorithm == null || algorithm == null) {
+                        throw new IOException("X509Encryption: missing key-algorithm or algorithm header");
+                    }
+
+                    Cipher keyCipher = Cipher.getInstance(keyAlgorithm);
+                    keyCipher.init(Cipher.UNWRAP_MODE, privateKey);
+
+                    key = keyCipher.unwrap(encKey, algorithm, Cipher.SECRET_KEY);
+
+                    cipher = Cipher.getInstance(algorithm);
+                    cipher.init(Cipher.DECRYPT_MODE, key);
+                }
+
+                bodyIn = this.in.readInputStream();
 
                 cipherIn = new CipherInputStream(bodyIn, cipher);
             } catch (RuntimeException | IOException e) {
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reply stream which the servlet can take back from the skeleton when an
+ * asynchronous reply times out in the container.
+ *
+ * <p>Once {@link #timeout()} is called any later write of the skeleton
+ * fails, so the servlet can write its own fault without the two replies
+ * interleaving.
+ */
+class AsyncReplyOutputStream extends OutputStream {
+    private final OutputStream os;
+
+    private boolean isWritten;
+    private boolean isTimeout;
+
+    AsyncReplyOutputStream(OutputStream os) {
+        this.os = os;
+    }
+
+    @Override
+    public synchronized void write(int ch) throws IOException {
+        checkTimeout();
+
+        isWritten = true;
+        os.write(ch);
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+        checkTimeout();
+
+        isWritten = true;
+        os.write(buffer, offset, length);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!isTimeout) {
+            os.flush();
+        }
+    }
+
+    /**
+     * The underlying stream is closed by the servlet once the reply
+     * completes.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Closes the stream to the skeleton, returning true if none of its
+     * reply has been written.
+     */
+    synchronized boolean timeout() {
+        isTimeout = true;
+
+        return !isWritten;
+    }
+
+    private void checkTimeout() throws IOException {
+        if (isTimeout) {
+            throw new IOException("asynchronous reply timed out");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.server;
+
+import com.caucho.hessian.util.DeflaterPool;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reply stream which switches to deflate once the reply grows past a
+ * threshold.
+ *
+ * <p>The first <code>threshold</code> bytes are buffered.  A reply which
+ * completes within the buffer is written as is; a larger reply sets
+ * <code>Content-Encoding: deflate</code> and is compressed with a deflater
+ * borrowed from the pool.
+ */
+class DeflateReplyOutputStream extends OutputStream {
+    private final HttpServletResponse response;
+    private final OutputStream os;
+    private final DeflaterPool deflaterPool;
+
+    private byte[] buffer;
+    private int length;
+
+    private Deflater deflater;
+    private DeflaterOutputStream deflateOut;
+
+    private boolean isClosed;
+
+    DeflateReplyOutputStream(HttpServletResponse response, OutputStream os, int threshold, DeflaterPool deflaterPool) {
+        this.response = response;
+        this.os = os;
+        this.deflaterPool = deflaterPool;
+        this.buffer = new byte[Math.max(threshold, 0)];
+    }
+
+    /**
+     * True once the reply is being compressed.
+     */
+    boolean isDeflate() {
+        return deflateOut != null;
+    }
+
+    @Override
+    public void write(int ch) throws IOException {
+        if (deflateOut != null) {
+            deflateOut.write(ch);
+        } else if (length < buffer.length) {
+            buffer[length++] = (byte) ch;
+        } else {
+            startDeflate();
+            deflateOut.write(ch);
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (deflateOut != null) {
+            deflateOut.write(buffer, offset, length);
+        } else if (this.length + length <= this.buffer.length) {
+            System.arraycopy(buffer, offset, this.buffer, this.length, length);
+            this.length += length;
+        } else {
+            startDeflate();
+            deflateOut.write(buffer, offset, length);
+        }
+    }
+
+    private void startDeflate() throws IOException {
+        response.setHeader("Content-Encoding", "deflate");
+        response.addHeader("Vary", "Accept-Encoding");
+
+        deflater = deflaterPool.allocate();
+        deflateOut = new DeflaterOutputStream(os, deflater, 1024);
+
+        if (length > 0) {
+            deflateOut.write(buffer, 0, length);
+        }
+
+        buffer = null;
+        length = 0;
+    }
+
+    /**
+     * Buffered replies are held until close, since flushing would commit
+     * the response before the encoding is known.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (deflateOut != null) {
+            deflateOut.flush();
+        }
+    }
+
+    /**
+     * Completes the reply and returns the deflater to the pool.  The
+     * servlet output stream itself is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+
+        isClosed = true;
+
+        try {
+            if (deflateOut != null) {
+                deflateOut.finish();
+            } else if (length > 0) {
+                os.write(buffer, 0, length);
+            }
+
+            os.flush();
+        } finally {
+            Deflater deflater = this.deflater;
+            this.deflater = null;
+
+            if (deflater != null) {
+                deflaterPool.free(deflater);
+            }
+        }
+    }
+}
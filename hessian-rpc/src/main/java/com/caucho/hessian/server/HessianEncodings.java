@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.server;
+
+import io.github.wuwen5.hessian.io.HessianClassRegistry;
+import lombok.Getter;
+
+/**
+ * The encodings negotiated with the client for one request: the class
+ * registries of the request and the replies, and whether the replies may
+ * write lists as columns.
+ */
+@Getter
+public final class HessianEncodings {
+    /**
+     * Plain Hessian, with nothing negotiated.
+     */
+    public static final HessianEncodings DEFAULT = new HessianEncodings(null, null, false);
+
+    /**
+     * The registry the request was encoded with, or null.
+     */
+    private final HessianClassRegistry requestRegistry;
+
+    /**
+     * The registry to encode the replies with, or null.
+     */
+    private final HessianClassRegistry replyRegistry;
+
+    /**
+     * True if the replies may write lists as columns.
+     */
+    private final boolean isColumnarReply;
+
+    public HessianEncodings(
+            HessianClassRegistry requestRegistry, HessianClassRegistry replyRegistry, boolean isColumnarReply) {
+        this.requestRegistry = requestRegistry;
+        this.replyRegistry = replyRegistry;
+        this.isColumnarReply = isColumnarReply;
+    }
+
+    /**
+     * True if nothing beyond plain Hessian was negotiated.
+     */
+    public boolean isDefault() {
+        return requestRegistry == null && replyRegistry == null && !isColumnarReply;
+    }
+}
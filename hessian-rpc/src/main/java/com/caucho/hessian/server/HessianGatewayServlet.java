@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.server;
+
+import com.caucho.hessian.client.HessianConnection;
+import com.caucho.hessian.client.HessianConnectionException;
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.client.HessianURLConnectionFactory;
+import com.caucho.hessian.io.HessianInputFactory;
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.util.InflaterPool;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Servlet routing Hessian calls to backend services without decoding
+ * their arguments.
+ * <p>
+ * Only the call prologue is parsed: the version, the call tag, the method
+ * name and the argument count.  The backend is chosen from the method
+ * name, or from the value of the <code>route-header</code> HTTP header
+ * when the request has it, and the request bytes, including the parsed
+ * prologue, are streamed to the backend unchanged.  The reply is streamed
+ * back the same way, so the cost of a call to the gateway does not grow
+ * with the size of its arguments or result.  A batched request goes to
+ * the backend of its first call.
+ * <p>
+ * Routes are set with {@link #addRoute} or the <code>routes</code>
+ * init-param, a list of <code>key=url</code> pairs; calls without a route
+ * go to the <code>backend</code> init-param, if set.  Subclasses may
+ * override {@link #selectBackend} for other policies.
+ * <p>
+ * Compressed requests are inflated only to parse the prologue and are
+ * forwarded compressed.  The request headers are forwarded except the
+ * hop-by-hop ones, as are the reply's <code>Content-Encoding</code> and
+ * negotiation headers, so class registries, columnar lists and
+ * compression work end to end when the backends agree.
+ */
+@Slf4j
+@SuppressWarnings("serial")
+public class HessianGatewayServlet extends HttpServlet {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * request headers which belong to the client's connection, not the call
+     */
+    private static final TreeSet<String> HOP_BY_HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * reply headers by which a service answers the client's negotiation
+     */
+    private static final List<String> REPLY_HEADERS = Arrays.asList("X-Hessian-Class-Registry", "X-Hessian-Columnar");
+
+    private final Map<String, URL> _routes = new ConcurrentHashMap<>();
+    private URL _backend;
+    private String _routeHeader;
+
+    private HessianProxyFactory _proxyFactory;
+
+    private final HessianInputFactory _inputFactory = new HessianInputFactory();
+    private final InflaterPool _inflaterPool = new InflaterPool(true, 16);
+
+    public HessianGatewayServlet() {}
+
+    @Override
+    public String getServletInfo() {
+        return "Hessian Gateway Servlet";
+    }
+
+    /**
+     * Sets the backend of calls without a route, or null to reject them.
+     */
+    public void setBackend(URL backend) {
+        _backend = backend;
+    }
+
+    public URL getBackend() {
+        return _backend;
+    }
+
+    /**
+     * Routes calls with the key, a method name or a value of the route
+     * header, to the backend.
+     */
+    public void addRoute(String key, URL backend) {
+        _routes.put(key, backend);
+    }
+
+    /**
+     * Sets the HTTP header whose value, when present, is the route key
+     * instead of the method name.
+     */
+    public void setRouteHeader(String routeHeader) {
+        _routeHeader = routeHeader;
+    }
+
+    public String getRouteHeader() {
+        return _routeHeader;
+    }
+
+    /**
+     * Sets the factory whose connections and timeouts reach the backends.
+     */
+    public void setProxyFactory(HessianProxyFactory proxyFactory) {
+        _proxyFactory = proxyFactory;
+    }
+
+    /**
+     * Returns the factory reaching the backends.  The default sends the
+     * request bodies chunked as they are forwarded.
+     */
+    public HessianProxyFactory getProxyFactory() {
+        HessianProxyFactory proxyFactory = _proxyFactory;
+
+        if (proxyFactory == null) {
+            proxyFactory = new HessianProxyFactory();
+
+            HessianURLConnectionFactory connFactory = new HessianURLConnectionFactory();
+            connFactory.setHessianProxyFactory(proxyFactory);
+            connFactory.setChunkLength(BUFFER_SIZE);
+            proxyFactory.setConnectionFactory(connFactory);
+
+            _proxyFactory = proxyFactory;
+        }
+
+        return proxyFactory;
+    }
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+
+        try {
+            if (getInitParameter("backend") != null) setBackend(new URL(getInitParameter("backend")));
+
+            if (getInitParameter("route-header") != null) setRouteHeader(getInitParameter("route-header"));
+
+            if (getInitParameter("routes") != null) {
+                for (String route : getInitParameter("routes").split("[,\\s]+")) {
+                    int p = route.indexOf('=');
+
+                    if (p > 0) {
+                        addRoute(route.substring(0, p), new URL(route.substring(p + 1)));
+                    } else if (!route.isEmpty()) {
+                        throw new ServletException("'" + route + "' is an invalid route, expected key=url");
+                    }
+                }
+            }
+        } catch (MalformedURLException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    /**
+     * Selects the backend of a call.
+     *
+     * @param method    the method name of the call
+     * @param argLength the number of arguments
+     * @param req       the request, for its headers
+     * @return the backend, or null if the call has none
+     */
+    protected URL selectBackend(String method, int argLength, HttpServletRequest req) {
+        String routeHeader = _routeHeader;
+
+        if (routeHeader != null) {
+            String key = req.getHeader(routeHeader);
+
+            if (key != null) {
+                URL backend = _routes.get(key);
+
+                return backend != null ? backend : _backend;
+            }
+        }
+
+        URL backend = _routes.get(method);
+
+        return backend != null ? backend : _backend;
+    }
+
+    @Override
+    public void service(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+
+        if (!req.getMethod().equals("POST")) {
+            res.sendError(405, "Hessian Requires POST");
+
+            return;
+        }
+
+        InputStream is = req.getInputStream();
+        PrologueInputStream prologueIs = new PrologueInputStream(is);
+
+        String method;
+        int argLength;
+
+        Inflater inflater = null;
+
+        try {
+            InputStream callIs = prologueIs;
+
+            if ("deflate".equalsIgnoreCase(req.getHeader("Content-Encoding"))) {
+                inflater = _inflaterPool.allocate();
+                callIs = new InflaterInputStream(callIs, inflater);
+            }
+
+            _inputFactory.readHeader(callIs);
+
+            HessianRpcInput in = new HessianRpcInput(callIs);
+            in.setGeneric(true);
+
+            in.readCall();
+
+            while (in.readHeader() != null) {
+                in.readObject();
+            }
+
+            method = in.readMethod();
+            argLength = in.readMethodArgLength();
+        } catch (IOException e) {
+            // a malformed or truncated call
+            res.sendError(400, e.getMessage());
+
+            return;
+        } finally {
+            _inflaterPool.free(inflater);
+        }
+
+        URL backend = selectBackend(method, argLength, req);
+
+        if (backend == null) {
+            res.sendError(404, "no Hessian backend for '" + method + "'");
+
+            return;
+        }
+
+        if (req.getQueryString() != null) {
+            backend = new URL(backend + (backend.getQuery() != null ? "&" : "?") + req.getQueryString());
+        }
+
+        forward(req, res, backend, prologueIs, is);
+    }
+
+    private void forward(
+            HttpServletRequest req,
+            HttpServletResponse res,
+            URL backend,
+            PrologueInputStream prologueIs,
+            InputStream is)
+            throws IOException {
+        HessianConnection conn = getProxyFactory().getConnectionFactory().open(backend);
+        boolean isValid = false;
+
+        try {
+            for (Enumeration<String> e = req.getHeaderNames(); e.hasMoreElements(); ) {
+                String name = e.nextElement();
+
+                if (!HOP_BY_HOP_HEADERS.contains(name)) {
+                    conn.addHeader(name, req.getHeader(name));
+                }
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            try (OutputStream os = conn.getOutputStream()) {
+                prologueIs.writePrologue(os);
+
+                copy(is, os, buffer);
+            }
+
+            try {
+                conn.sendRequest();
+            } catch (HessianConnectionException e) {
+                int status = conn.getStatusCode();
+
+                log.debug("Hessian backend {} failed: {}", backend, e.toString());
+
+                res.sendError(status >= 400 && status < 600 ? status : 502, e.getMessage());
+
+                return;
+            }
+
+            res.setContentType("x-application/hessian");
+
+            if (conn.getContentEncoding() != null) {
+                res.setHeader("Content-Encoding", conn.getContentEncoding());
+            }
+
+            for (String name : REPLY_HEADERS) {
+                String value = conn.getHeaderField(name);
+
+                if (value != null) {
+                    res.setHeader(name, value);
+                }
+            }
+
+            try (InputStream replyIs = conn.getInputStream()) {
+                copy(replyIs, res.getOutputStream(), buffer);
+            }
+
+            isValid = true;
+        } finally {
+            if (isValid) {
+                conn.close();
+            } else {
+                conn.destroy();
+            }
+        }
+    }
+
+    private static void copy(InputStream is, OutputStream os, byte[] buffer) throws IOException {
+        int len;
+
+        while ((len = is.read(buffer, 0, buffer.length)) > 0) {
+            os.write(buffer, 0, len);
+        }
+    }
+
+    /**
+     * Keeps the bytes read while parsing the prologue, including the
+     * decoder's read-ahead, to forward them before the rest of the request.
+     */
+    private static final class PrologueInputStream extends FilterInputStream {
+        private byte[] buffer = new byte[256];
+        private int length;
+
+        PrologueInputStream(InputStream is) {
+            super(is);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ch = in.read();
+
+            if (ch >= 0) {
+                ensureCapacity(1);
+                buffer[length++] = (byte) ch;
+            }
+
+            return ch;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int len) throws IOException {
+            int sublen = in.read(b, offset, len);
+
+            if (sublen > 0) {
+                ensureCapacity(sublen);
+                System.arraycopy(b, offset, buffer, length, sublen);
+                length += sublen;
+            }
+
+            return sublen;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return Math.max(0, read(new byte[(int) Math.min(n, BUFFER_SIZE)]));
+        }
+
+        private void ensureCapacity(int len) {
+            if (buffer.length < length + len) {
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + len));
+            }
+        }
+
+        void writePrologue(OutputStream os) throws IOException {
+            os.write(buffer, 0, length);
+        }
+    }
+
+    static {
+        HOP_BY_HOP_HEADERS.addAll(Arrays.asList(
+                "Connection",
+                "Content-Length",
+                "Expect",
+                "Host",
+                "Keep-Alive",
+                "Proxy-Authorization",
+                "TE",
+                "Trailer",
+                "Transfer-Encoding",
+                "Upgrade"));
+    }
+}
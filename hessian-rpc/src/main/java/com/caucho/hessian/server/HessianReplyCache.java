@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.server;
+
+import com.caucho.hessian.io.HessianResultStream;
+import com.caucho.hessian.io.HessianRpcOutput;
+import com.caucho.services.server.AbstractSkeleton;
+import io.github.wuwen5.hessian.io.HessianClassRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/**
+ * Cache of encoded replies for idempotent service methods.
+ *
+ * <p>A method is cacheable if it is annotated with {@link HessianCacheable}
+ * or added by name with {@link #addMethod}.  The key is the encoded method
+ * and arguments; the value is the complete encoded reply, which a hit
+ * copies to the output without invoking the method or serializing the
+ * result.  Faults are not cached, nor are methods returning futures or
+ * streams.
+ *
+ * <p>Entries expire after their time-to-live.  When the cached replies
+ * exceed <code>maxBytes</code>, the least recently used are evicted.  A hit
+ * only records its time on the entry, so concurrent hits do not contend.
+ * The order is approximate: each eviction removes the least recently used
+ * of a small sample of entries, taken in turn around the table, so a put
+ * does not sort the whole cache.
+ *
+ * <p>A reply is only cached if no invalidation started while its method
+ * was running, since the reply may predate the change the invalidation
+ * is for.
+ *
+ * <pre>
+ * HessianReplyCache cache = new HessianReplyCache(64 * 1024 * 1024, 60000);
+ * cache.addMethod("getCatalog");
+ * skeleton.setReplyCache(cache);
+ *
+ * // after the catalog changes
+ * cache.invalidate("getCatalog");
+ * </pre>
+ */
+public class HessianReplyCache {
+    private static final long NOT_CACHEABLE = -1;
+    private static final int EVICTION_SAMPLE = 16;
+
+    /**
+     * -- GETTER --
+     * Returns the limit of the cached replies' total size in bytes.
+     */
+    @Getter
+    private final long maxBytes;
+
+    /**
+     * -- GETTER --
+     * Returns the time in milliseconds a reply stays cached when its
+     * method does not set one.
+     */
+    @Getter
+    private final long defaultTtl;
+
+    private final Map<String, Long> methodTtls = new ConcurrentHashMap<>();
+    private final Map<Method, Long> ttlCache = new ConcurrentHashMap<>();
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong byteSize = new AtomicLong();
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    // where the next eviction sample starts, used under the eviction lock
+    private Iterator<Map.Entry<Key, Entry>> evictionCursor;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxBytes   the limit of the cached replies' total size
+     * @param defaultTtl the time in milliseconds a reply stays cached
+     */
+    public HessianReplyCache(long maxBytes, long defaultTtl) {
+        this.maxBytes = maxBytes;
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * Makes the methods with the name cacheable with the default
+     * time-to-live.
+     */
+    public void addMethod(String methodName) {
+        addMethod(methodName, 0);
+    }
+
+    /**
+     * Makes the methods with the name cacheable.
+     *
+     * @param ttl the time in milliseconds a reply stays cached, or 0 for
+     *            the default
+     */
+    public void addMethod(String methodName, long ttl) {
+        methodTtls.put(methodName, ttl > 0 ? ttl : defaultTtl);
+        ttlCache.clear();
+    }
+
+    /**
+     * Returns the time-to-live of the method's replies, or a negative
+     * value if the method is not cacheable.
+     */
+    long getTtl(Method method, Object service) {
+        Long ttl = ttlCache.get(method);
+
+        if (ttl == null) {
+            ttl = findTtl(method, service);
+            ttlCache.put(method, ttl);
+        }
+
+        return ttl;
+    }
+
+    private long findTtl(Method method, Object service) {
+        Class<?> returnType = method.getReturnType();
+
+        if (CompletionStage.class.isAssignableFrom(returnType)
+                || InputStream.class.isAssignableFrom(returnType)
+                || returnType == HessianResultStream.class
+                || returnType == Iterator.class
+                || returnType == Stream.class) {
+            return NOT_CACHEABLE;
+        }
+
+        HessianCacheable cacheable = method.getAnnotation(HessianCacheable.class);
+
+        if (cacheable == null) {
+            cacheable = findAnnotation(method.getDeclaringClass(), method);
+        }
+
+        if (cacheable == null && service != null) {
+            cacheable = findAnnotation(service.getClass(), method);
+        }
+
+        if (cacheable != null) {
+            return cacheable.ttl() > 0 ? cacheable.ttl() : defaultTtl;
+        }
+
+        return methodTtls.getOrDefault(method.getName(), NOT_CACHEABLE);
+    }
+
+    /**
+     * Finds the annotation on the method with the same signature in the
+     * class, its superclasses or its interfaces.
+     */
+    private static HessianCacheable findAnnotation(Class<?> cl, Method method) {
+        if (cl == null || cl == Object.class) {
+            return null;
+        }
+
+        try {
+            HessianCacheable cacheable = cl.getDeclaredMethod(method.getName(), method.getParameterTypes())
+                    .getAnnotation(HessianCacheable.class);
+
+            if (cacheable != null) {
+                return cacheable;
+            }
+        } catch (NoSuchMethodException e) {
+            // not declared by this class
+        }
+
+        for (Class<?> api : cl.getInterfaces()) {
+            HessianCacheable cacheable = findAnnotation(api, method);
+
+            if (cacheable != null) {
+                return cacheable;
+            }
+        }
+
+        return findAnnotation(cl.getSuperclass(), method);
+    }
+
+    /**
+     * Returns the key of a call, the encoded method and arguments.
+     */
+    Key createKey(Method method, Object[] args) throws IOException {
+        return createKey(method, args, null, false);
+    }
+
+    /**
+     * Returns the key of a call whose reply is encoded with pre-shared
+     * class definitions or columnar lists.
+     */
+    Key createKey(Method method, Object[] args, HessianClassRegistry classRegistry, boolean isColumnar)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = new HessianRpcOutput(bos);
+
+        out.call(AbstractSkeleton.mangleName(method, false), args);
+        out.close();
+
+        return new Key(
+                method.getName(), bos.toByteArray(), classRegistry != null ? classRegistry.getId() : null, isColumnar);
+    }
+
+    /**
+     * Returns the cached reply, or null.
+     */
+    byte[] get(Key key) {
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.expires < System.currentTimeMillis()) {
+            remove(key, entry);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount.increment();
+
+            return null;
+        }
+
+        entry.accessTime = System.nanoTime();
+
+        hitCount.increment();
+
+        return entry.reply;
+    }
+
+    /**
+     * Returns the count of invalidations, read before invoking a method
+     * whose reply is put.
+     */
+    long getInvalidationEpoch() {
+        return invalidationEpoch.get();
+    }
+
+    /**
+     * Caches a reply, unless an invalidation started after the epoch was
+     * read.
+     */
+    void put(Key key, byte[] reply, long ttl, long epoch) {
+        if (reply.length > maxBytes || invalidationEpoch.get() != epoch) {
+            return;
+        }
+
+        Entry entry = new Entry(reply, System.currentTimeMillis() + ttl);
+        Entry oldEntry = entries.put(key, entry);
+
+        byteSize.addAndGet(oldEntry != null ? reply.length - oldEntry.reply.length : reply.length);
+
+        // an invalidation which started since the check may have missed
+        // the new entry
+        if (invalidationEpoch.get() != epoch) {
+            remove(key, entry);
+            return;
+        }
+
+        if (byteSize.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the least recently used of a sample of replies until the cache
+     * is within its size limit.
+     */
+    private synchronized void evict() {
+        while (byteSize.get() > maxBytes) {
+            Key oldestKey = null;
+            Entry oldest = null;
+            long oldestTime = 0;
+
+            for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                Map.Entry<Key, Entry> item = nextEvictionCandidate();
+
+                if (item == null) {
+                    break;
+                }
+
+                // hits keep updating the access time, so it is read once
+                long accessTime = item.getValue().accessTime;
+
+                if (oldest == null || accessTime - oldestTime < 0) {
+                    oldestKey = item.getKey();
+                    oldest = item.getValue();
+                    oldestTime = accessTime;
+                }
+            }
+
+            if (oldest == null) {
+                return;
+            }
+
+            if (remove(oldestKey, oldest)) {
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns the entry after the previous sample, wrapping around to the
+     * start of the table, or null if the cache is empty.
+     */
+    private Map.Entry<Key, Entry> nextEvictionCandidate() {
+        if (evictionCursor == null || !evictionCursor.hasNext()) {
+            evictionCursor = entries.entrySet().iterator();
+
+            if (!evictionCursor.hasNext()) {
+                return null;
+            }
+        }
+
+        return evictionCursor.next();
+    }
+
+    private boolean remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            byteSize.addAndGet(-entry.reply.length);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the cached replies of the methods with the name.  Unlike
+     * evictions, invalidated replies are not counted.
+     */
+    public void invalidate(String methodName) {
+        invalidationEpoch.incrementAndGet();
+
+        for (Map.Entry<Key, Entry> item : entries.entrySet()) {
+            if (item.getKey().methodName.equals(methodName)) {
+                remove(item.getKey(), item.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the cached reply of one call.
+     */
+    public void invalidate(Method method, Object... args) throws IOException {
+        Key key = createKey(method, args);
+
+        invalidationEpoch.incrementAndGet();
+
+        // the reply may be cached once per class registry and list encoding
+        for (Map.Entry<Key, Entry> item : entries.entrySet()) {
+            if (Arrays.equals(item.getKey().call, key.call)) {
+                remove(item.getKey(), item.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all cached replies.
+     */
+    public void invalidateAll() {
+        invalidationEpoch.incrementAndGet();
+
+        for (Map.Entry<Key, Entry> item : entries.entrySet()) {
+            remove(item.getKey(), item.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of cached replies.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size in bytes of the cached replies.
+     */
+    public long getByteSize() {
+        return byteSize.get();
+    }
+
+    /**
+     * Returns the number of calls answered from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of calls of cacheable methods which were invoked.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of replies evicted to stay within the size limit.
+     * Replies removed because they expired or were invalidated are not
+     * counted.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the fraction of calls of cacheable methods answered from the
+     * cache.
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + " replies, " + getByteSize() + " bytes]";
+    }
+
+    static final class Key {
+        private final String methodName;
+        private final byte[] call;
+        private final String registryId;
+        private final boolean isColumnar;
+        private final int hash;
+
+        Key(String methodName, byte[] call, String registryId, boolean isColumnar) {
+            this.methodName = methodName;
+            this.call = call;
+            this.registryId = registryId;
+            this.isColumnar = isColumnar;
+            hash = (Arrays.hashCode(call) * 31 + Objects.hashCode(registryId)) * 31 + Boolean.hashCode(isColumnar);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key
+                    && hash == ((Key) o).hash
+                    && Arrays.equals(call, ((Key) o).call)
+                    && Objects.equals(registryId, ((Key) o).registryId)
+                    && isColumnar == ((Key) o).isColumnar;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] reply;
+        private final long expires;
+
+        // written by hits without a lock; a lost update only blurs the order
+        private volatile long accessTime = System.nanoTime();
+
+        Entry(byte[] reply, long expires) {
+            this.reply = reply;
+            this.expires = expires;
+        }
+    }
+}
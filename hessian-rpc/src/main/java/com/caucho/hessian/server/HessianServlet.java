@@ -49,13 +49,27 @@
 package com.caucho.hessian.server;
 
 import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.HessianRpcOutput;
 import com.caucho.hessian.io.SerializerFactory;
+import com.caucho.hessian.util.DeflaterPool;
+import com.caucho.hessian.util.InflaterPool;
 import com.caucho.services.server.Service;
 import com.caucho.services.server.ServiceContext;
+import io.github.wuwen5.hessian.io.HessianClassRegistry;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -64,13 +78,44 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Servlet for serving Hessian services.
  * <p>
  * Applications can use ServletContext inside a Hessian service to get
  * ServletRequest, ServletResponse and session information.
+ * <p>
+ * Requests with <code>Content-Encoding: deflate</code> are inflated.  Reply
+ * compression is opt-in with the <code>compress-reply</code> init-param:
+ * replies larger than <code>compress-threshold</code> bytes are deflated at
+ * <code>compress-level</code> for clients sending
+ * <code>Accept-Encoding: deflate</code>.
+ * <p>
+ * Service methods may return a <code>CompletionStage</code>.  When the
+ * servlet is registered with async support the request thread is released
+ * and the reply is written when the stage completes, limited by the
+ * <code>async-timeout</code> init-param in milliseconds.
+ * <p>
+ * Setting the <code>reply-cache-size</code> init-param, in bytes, enables a
+ * {@link HessianReplyCache} for methods annotated {@link HessianCacheable}
+ * or listed in <code>reply-cache-methods</code>, with replies kept for
+ * <code>reply-cache-ttl</code> milliseconds.
+ * <p>
+ * The <code>class-registry</code> init-param names a
+ * {@link HessianClassRegistry} file of class definitions pre-shared with
+ * clients.  A client configured with the same registry announces it in the
+ * <code>X-Hessian-Class-Registry</code> header, and the replies to it are
+ * encoded without those definitions.  Requests encoded with the registry
+ * carry <code>X-Hessian-Encoded-Registry</code>; a request encoded with a
+ * different registry is rejected with status 415.
+ * <p>
+ * Setting the <code>columnar-lists</code> init-param to true lets lists of
+ * objects of one class be written as columns.  A client announcing
+ * <code>X-Hessian-Columnar: true</code> gets replies with columnar lists,
+ * and the header is echoed to tell the client it may send them too.
  */
+@Slf4j
 @SuppressWarnings("serial")
 public class HessianServlet extends HttpServlet {
     private Class<?> _homeAPI;
@@ -84,6 +129,20 @@ public class HessianServlet extends HttpServlet {
 
     private SerializerFactory _serializerFactory;
 
+    private boolean _isCompressReply;
+    private int _compressThreshold = 1024;
+
+    private long _asyncTimeout;
+
+    private HessianReplyCache _replyCache;
+
+    private HessianClassRegistry _classRegistry;
+
+    private boolean _isColumnarListEncoding;
+
+    private volatile DeflaterPool _deflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 16);
+    private final InflaterPool _inflaterPool = new InflaterPool(true, 16);
+
     public HessianServlet() {}
 
     public String getServletInfo() {
@@ -185,6 +244,97 @@ public class HessianServlet extends HttpServlet {
         getSerializerFactory().getClassFactory().deny(pattern);
     }
 
+    /**
+     * Enables deflate compression of replies for clients which accept it.
+     */
+    public void setCompressReply(boolean isCompress) {
+        _isCompressReply = isCompress;
+    }
+
+    /**
+     * Returns true if replies may be compressed.
+     */
+    public boolean isCompressReply() {
+        return _isCompressReply;
+    }
+
+    /**
+     * Sets the reply size in bytes below which replies are sent
+     * uncompressed.
+     */
+    public void setCompressThreshold(int threshold) {
+        _compressThreshold = threshold;
+    }
+
+    /**
+     * Sets the deflate level, 1 (fastest) to 9 (smallest).
+     */
+    public synchronized void setCompressLevel(int level) {
+        DeflaterPool oldPool = _deflaterPool;
+
+        _deflaterPool = new DeflaterPool(level, true, 16);
+
+        oldPool.close();
+    }
+
+    /**
+     * Sets the time in milliseconds an asynchronous result may take before
+     * a fault is returned.  With 0 the result has no limit of its own, and
+     * the container's default async timeout applies.
+     */
+    public void setAsyncTimeout(long timeout) {
+        _asyncTimeout = timeout;
+
+        if (_homeSkeleton != null) _homeSkeleton.setAsyncTimeout(timeout);
+        if (_objectSkeleton != null) _objectSkeleton.setAsyncTimeout(timeout);
+    }
+
+    /**
+     * Sets the cache of encoded replies for cacheable methods.
+     */
+    public void setReplyCache(HessianReplyCache replyCache) {
+        _replyCache = replyCache;
+
+        if (_homeSkeleton != null) _homeSkeleton.setReplyCache(replyCache);
+        if (_objectSkeleton != null) _objectSkeleton.setReplyCache(replyCache);
+    }
+
+    /**
+     * Returns the cache of encoded replies, or null.
+     */
+    public HessianReplyCache getReplyCache() {
+        return _replyCache;
+    }
+
+    /**
+     * Sets the class definitions pre-shared with clients.
+     */
+    public void setClassRegistry(HessianClassRegistry classRegistry) {
+        _classRegistry = classRegistry;
+    }
+
+    /**
+     * Returns the class definitions pre-shared with clients, or null.
+     */
+    public HessianClassRegistry getClassRegistry() {
+        return _classRegistry;
+    }
+
+    /**
+     * Sets true if replies to clients accepting them write lists of
+     * objects of one class as columns.
+     */
+    public void setColumnarListEncoding(boolean isColumnar) {
+        _isColumnarListEncoding = isColumnar;
+    }
+
+    /**
+     * True if replies may write lists as columns.
+     */
+    public boolean isColumnarListEncoding() {
+        return _isColumnarListEncoding;
+    }
+
     /**
      * Sets the debugging flag.
      */
@@ -272,9 +422,48 @@ public class HessianServlet extends HttpServlet {
                 _objectSkeleton.setHomeClass(_homeAPI);
             } else _objectSkeleton = _homeSkeleton;
 
+            if (getInitParameter("async-timeout") != null)
+                _asyncTimeout = Long.parseLong(getInitParameter("async-timeout"));
+
+            setAsyncTimeout(_asyncTimeout);
+
+            if (getInitParameter("reply-cache-size") != null) {
+                long ttl = 60000;
+
+                if (getInitParameter("reply-cache-ttl") != null)
+                    ttl = Long.parseLong(getInitParameter("reply-cache-ttl"));
+
+                HessianReplyCache replyCache =
+                        new HessianReplyCache(Long.parseLong(getInitParameter("reply-cache-size")), ttl);
+
+                if (getInitParameter("reply-cache-methods") != null) {
+                    for (String methodName :
+                            getInitParameter("reply-cache-methods").split("[,\\s]+")) {
+                        if (!methodName.isEmpty()) replyCache.addMethod(methodName);
+                    }
+                }
+
+                _replyCache = replyCache;
+            }
+
+            setReplyCache(_replyCache);
+
+            if (getInitParameter("class-registry") != null)
+                setClassRegistry(HessianClassRegistry.load(Paths.get(getInitParameter("class-registry"))));
+
+            if ("true".equals(getInitParameter("columnar-lists"))) setColumnarListEncoding(true);
+
             if ("true".equals(getInitParameter("debug"))) {}
 
             if ("false".equals(getInitParameter("send-collection-type"))) setSendCollectionType(false);
+
+            if ("true".equals(getInitParameter("compress-reply"))) setCompressReply(true);
+
+            if (getInitParameter("compress-threshold") != null)
+                setCompressThreshold(Integer.parseInt(getInitParameter("compress-threshold")));
+
+            if (getInitParameter("compress-level") != null)
+                setCompressLevel(Integer.parseInt(getInitParameter("compress-level")));
         } catch (ServletException e) {
             throw e;
         } catch (Exception e) {
@@ -282,6 +471,16 @@ public class HessianServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Ends the idle deflaters of the reply compression.
+     */
+    @Override
+    public void destroy() {
+        _deflaterPool.close();
+
+        super.destroy();
+    }
+
     private Class<?> findRemoteAPI(Class<?> implClass) {
         // hessian/34d0
         return null;
@@ -335,21 +534,86 @@ public class HessianServlet extends HttpServlet {
             return;
         }
 
+        HessianClassRegistry classRegistry = _classRegistry;
+        HessianClassRegistry requestRegistry = null;
+        HessianClassRegistry replyRegistry = null;
+
+        String encodedRegistry = req.getHeader("X-Hessian-Encoded-Registry");
+
+        if (encodedRegistry != null) {
+            if (classRegistry == null || !encodedRegistry.equals(classRegistry.getId())) {
+                res.sendError(415, "Hessian class registry '" + encodedRegistry + "' is not supported");
+
+                return;
+            }
+
+            requestRegistry = classRegistry;
+        }
+
+        if (classRegistry != null && classRegistry.getId().equals(req.getHeader("X-Hessian-Class-Registry"))) {
+            res.setHeader("X-Hessian-Class-Registry", classRegistry.getId());
+
+            replyRegistry = classRegistry;
+        }
+
+        boolean isColumnarReply = _isColumnarListEncoding && "true".equals(req.getHeader("X-Hessian-Columnar"));
+
+        if (isColumnarReply) {
+            res.setHeader("X-Hessian-Columnar", "true");
+        }
+
+        HessianEncodings encodings = new HessianEncodings(requestRegistry, replyRegistry, isColumnarReply);
+
         String serviceId = req.getPathInfo();
         String objectId = req.getParameter("id");
         if (objectId == null) objectId = req.getParameter("ejbid");
 
         ServiceContext.begin(req, res, serviceId, objectId);
 
+        ServiceContext context = ServiceContext.getContext();
+        context.setAsyncSupported(req.isAsyncSupported());
+
+        Inflater inflater = null;
+        DeflateReplyOutputStream deflateOs = null;
+        AsyncReplyOutputStream asyncOs = null;
+        boolean isAsync = false;
+
         try {
             InputStream is = request.getInputStream();
             OutputStream os = response.getOutputStream();
 
+            if ("deflate".equalsIgnoreCase(req.getHeader("Content-Encoding"))) {
+                inflater = _inflaterPool.allocate();
+                is = new InflaterInputStream(is, inflater);
+            }
+
             response.setContentType("x-application/hessian");
 
+            if (_isCompressReply && isAcceptDeflate(req)) {
+                deflateOs = new DeflateReplyOutputStream(res, os, _compressThreshold, _deflaterPool);
+                os = deflateOs;
+            }
+
+            if (req.isAsyncSupported()) {
+                asyncOs = new AsyncReplyOutputStream(os);
+                os = asyncOs;
+            }
+
             SerializerFactory serializerFactory = getSerializerFactory();
 
-            invoke(is, os, objectId, serializerFactory);
+            invoke(is, os, objectId, serializerFactory, encodings);
+
+            CompletionStage<?> pending = context.getPendingReply();
+
+            if (pending != null) {
+                if (pending.toCompletableFuture().isDone()) {
+                    pending.toCompletableFuture().join();
+                } else {
+                    isAsync = true;
+
+                    completeAsync(req.startAsync(), pending, asyncOs, deflateOs, inflater);
+                }
+            }
         } catch (RuntimeException e) {
             throw e;
         } catch (ServletException e) {
@@ -357,16 +621,155 @@ public class HessianServlet extends HttpServlet {
         } catch (Throwable e) {
             throw new ServletException(e);
         } finally {
-            ServiceContext.end();
+            try {
+                if (!isAsync) {
+                    closeReply(deflateOs, inflater);
+                }
+            } finally {
+                ServiceContext.end();
+            }
+        }
+    }
+
+    /**
+     * Completes the request once the pending reply has been written.  The
+     * skeleton replies with a fault when the result outlasts the async
+     * timeout; the container's timeout is the backstop for a reply which
+     * never completes, and answers with a fault of its own if the skeleton
+     * has not started writing.
+     */
+    private void completeAsync(
+            AsyncContext async,
+            CompletionStage<?> pending,
+            AsyncReplyOutputStream asyncOs,
+            DeflateReplyOutputStream deflateOs,
+            Inflater inflater) {
+        AtomicBoolean isComplete = new AtomicBoolean();
+
+        if (_asyncTimeout > 0) {
+            async.setTimeout(_asyncTimeout);
+        }
+
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (!isComplete.compareAndSet(false, true)) {
+                    return;
+                }
+
+                try {
+                    if (asyncOs.timeout()) {
+                        HessianRpcOutput out = new HessianRpcOutput(
+                                deflateOs != null
+                                        ? deflateOs
+                                        : async.getResponse().getOutputStream());
+                        out.setSerializerFactory(getSerializerFactory());
+
+                        out.writeFault(
+                                "ServiceException",
+                                "asynchronous reply timed out",
+                                new TimeoutException("asynchronous reply timed out"));
+                        out.close();
+                    }
+
+                    closeReply(deflateOs, inflater);
+                } catch (Exception e) {
+                    log.debug(e.toString(), e);
+                } finally {
+                    async.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {}
+
+            @Override
+            public void onError(AsyncEvent event) {}
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {}
+        });
+
+        pending.whenComplete((v, e) -> {
+            if (!isComplete.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                if (e != null) {
+                    log.warn("Hessian async reply failed: {}", e.toString(), e);
+                }
+
+                closeReply(deflateOs, inflater);
+            } catch (Exception e1) {
+                log.debug(e1.toString(), e1);
+            } finally {
+                async.complete();
+            }
+        });
+    }
+
+    private void closeReply(DeflateReplyOutputStream deflateOs, Inflater inflater) throws IOException {
+        try {
+            if (deflateOs != null) {
+                deflateOs.close();
+            }
+        } finally {
+            _inflaterPool.free(inflater);
         }
     }
 
+    /**
+     * Returns true if the client accepts deflate encoded replies.  The
+     * Hessian client expects raw deflate data without the zlib header.
+     */
+    private static boolean isAcceptDeflate(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] params = encoding.trim().split(";");
+
+            if ("deflate".equalsIgnoreCase(params[0].trim())) {
+                return params.length < 2 || !params[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+
+        return false;
+    }
+
     protected void invoke(InputStream is, OutputStream os, String objectId, SerializerFactory serializerFactory)
             throws Exception {
         if (objectId != null) _objectSkeleton.invoke(is, os, serializerFactory);
         else _homeSkeleton.invoke(is, os, serializerFactory);
     }
 
+    /**
+     * Invokes the service with the encodings negotiated with the client.
+     * A request with nothing negotiated goes through the plain
+     * {@link #invoke(InputStream, OutputStream, String, SerializerFactory)},
+     * so subclasses overriding it still see those calls.
+     */
+    protected void invoke(
+            InputStream is,
+            OutputStream os,
+            String objectId,
+            SerializerFactory serializerFactory,
+            HessianEncodings encodings)
+            throws Exception {
+        if (encodings.isDefault()) {
+            invoke(is, os, objectId, serializerFactory);
+            return;
+        }
+
+        HessianSkeleton skeleton = objectId != null ? _objectSkeleton : _homeSkeleton;
+
+        skeleton.invoke(is, os, serializerFactory, encodings);
+    }
+
     protected Hessian2Input createHessian2Input(InputStream is) {
         return new Hessian2Input(is);
     }
@@ -51,6 +51,7 @@ package com.caucho.hessian.server;
 import com.caucho.hessian.io.AbstractHessianInput;
 import com.caucho.hessian.io.AbstractHessianOutput;
 import com.caucho.hessian.io.HessianInputFactory;
+import com.caucho.hessian.io.HessianResultStream;
 import com.caucho.hessian.io.HessianRpcInput;
 import com.caucho.hessian.io.HessianRpcOutput;
 import com.caucho.hessian.io.SerializerFactory;
@@ -62,18 +63,33 @@ import io.github.wuwen5.hessian.io.HessianDebugOutputStream;
 import io.github.wuwen5.hessian.io.HessianDecoder;
 import io.github.wuwen5.hessian.io.HessianEncoder;
 import io.github.wuwen5.hessian.io.HessianFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Iterator;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Proxy class for Hessian services.
+ *
+ * <p>A service method may return a {@link CompletionStage}; the reply is
+ * written when the stage completes.  If the {@link ServiceContext} is
+ * async-capable the invoke returns immediately and the pending reply is
+ * published as {@link ServiceContext#getPendingReply()}; otherwise the
+ * invoke waits for it.
  */
 @Slf4j
 public class HessianSkeleton extends AbstractSkeleton {
@@ -82,6 +98,26 @@ public class HessianSkeleton extends AbstractSkeleton {
     @Setter
     private boolean debug;
 
+    /**
+     * -- GETTER --
+     *  The time in milliseconds an asynchronous result may take, 0 for no limit.
+     * -- SETTER --
+     *  The time in milliseconds an asynchronous result may take, 0 for no limit.
+     */
+    @Getter
+    @Setter
+    private long asyncTimeout;
+
+    /**
+     * -- GETTER --
+     *  The cache of encoded replies for cacheable methods, or null.
+     * -- SETTER --
+     *  The cache of encoded replies for cacheable methods, or null.
+     */
+    @Getter
+    @Setter
+    private HessianReplyCache replyCache;
+
     private final HessianInputFactory inputFactory = new HessianInputFactory();
 
     @Setter
@@ -162,6 +198,20 @@ public class HessianSkeleton extends AbstractSkeleton {
      * @param os the Hessian output stream
      */
     public void invoke(InputStream is, OutputStream os, SerializerFactory serializerFactory) throws Exception {
+        invoke(is, os, serializerFactory, HessianEncodings.DEFAULT);
+    }
+
+    /**
+     * Invoke the object with the request from the input stream, using the
+     * encodings negotiated with the client.
+     *
+     * @param is        the Hessian input stream
+     * @param os        the Hessian output stream
+     * @param encodings the class registries and list encoding negotiated
+     *                  for the request
+     */
+    public void invoke(InputStream is, OutputStream os, SerializerFactory serializerFactory, HessianEncodings encodings)
+            throws Exception {
         boolean isDebug = false;
 
         if (isDebugInvoke()) {
@@ -182,28 +232,89 @@ public class HessianSkeleton extends AbstractSkeleton {
         AbstractHessianOutput out;
 
         if (Objects.requireNonNull(header) == HessianInputFactory.HeaderType.HESSIAN_2) {
-            in = (AbstractHessianInput) hessianFactory.createHessian2Input(is);
+            HessianDecoder decoder = hessianFactory.createHessian2Input(is);
+
+            if (serializerFactory != null) {
+                decoder.setSerializerFactory(serializerFactory);
+            }
+
+            // the pre-shared definitions are seeded with the serializer
+            // factory, so the registry is set after it
+            decoder.setClassRegistry(encodings.getRequestRegistry());
+
+            in = (AbstractHessianInput) decoder;
             in.readCall();
-            out = (AbstractHessianOutput) hessianFactory.createHessian2Output(os);
+            out = createOutput(os, serializerFactory, encodings);
         } else {
             throw new IllegalStateException(header + " is an unknown Hessian call");
         }
 
-        if (serializerFactory != null) {
-            in.setSerializerFactory(serializerFactory);
-            out.setSerializerFactory(serializerFactory);
-        }
+        ServiceContext context = ServiceContext.getContext();
+        CompletionStage<?> pending = null;
 
         try {
             invoke(service, in, out);
-        } finally {
-            in.close();
-            out.close();
 
-            if (isDebug) {
-                os.close();
+            // a batched request has further calls after the first, each
+            // answered by its own reply in order
+            while (in instanceof HessianRpcInput && ((HessianRpcInput) in).readNextCall()) {
+                if (context != null && context.getPendingReply() != null) {
+                    await(context.getPendingReply().toCompletableFuture());
+                    context.setPendingReply(null);
+                }
+
+                out.close();
+
+                out = createOutput(os, serializerFactory, encodings);
+
+                invoke(service, in, out);
+            }
+
+            if (context != null) {
+                pending = context.getPendingReply();
+            }
+        } finally {
+            if (pending == null) {
+                close(in, out, isDebug ? os : null);
             }
         }
+
+        if (pending != null) {
+            AbstractHessianOutput lastOut = out;
+            OutputStream debugOs = isDebug ? os : null;
+
+            context.setPendingReply(pending.whenComplete((v, e) -> {
+                try {
+                    close(in, lastOut, debugOs);
+                } catch (Exception e1) {
+                    log.debug(e1.toString(), e1);
+                }
+            }));
+        }
+    }
+
+    private AbstractHessianOutput createOutput(
+            OutputStream os, SerializerFactory serializerFactory, HessianEncodings encodings) {
+        HessianEncoder out = hessianFactory.createHessian2Output(os);
+
+        if (serializerFactory != null) {
+            out.setSerializerFactory(serializerFactory);
+        }
+
+        out.setClassRegistry(encodings.getReplyRegistry());
+        out.setColumnarListEncoding(encodings.isColumnarReply());
+
+        return (AbstractHessianOutput) out;
+    }
+
+    private static void close(AbstractHessianInput in, AbstractHessianOutput out, OutputStream debugOs)
+            throws Exception {
+        in.close();
+        out.close();
+
+        if (debugOs != null) {
+            debugOs.close();
+        }
     }
 
     /**
@@ -292,6 +403,32 @@ public class HessianSkeleton extends AbstractSkeleton {
             values[i] = in.readObject(args[i]);
         }
 
+        HessianReplyCache replyCache = this.replyCache;
+        HessianReplyCache.Key cacheKey = null;
+        long cacheTtl = -1;
+        long cacheEpoch = 0;
+
+        if (replyCache != null && out instanceof HessianRpcOutput) {
+            cacheTtl = replyCache.getTtl(method, service);
+        }
+
+        if (cacheTtl > 0) {
+            HessianRpcOutput rpcOut = (HessianRpcOutput) out;
+
+            cacheKey = replyCache.createKey(method, values, rpcOut.getClassRegistry(), rpcOut.isColumnarListEncoding());
+            cacheEpoch = replyCache.getInvalidationEpoch();
+
+            byte[] reply = replyCache.get(cacheKey);
+
+            if (reply != null) {
+                in.completeCall();
+
+                ((HessianRpcOutput) out).writeReplyBytes(reply);
+                out.close();
+                return;
+            }
+        }
+
         Object result;
 
         try {
@@ -313,11 +450,175 @@ public class HessianSkeleton extends AbstractSkeleton {
         // trailing InputStream
         in.completeCall();
 
+        if (cacheKey != null) {
+            byte[] reply = encodeReply(result, (HessianRpcOutput) out);
+
+            replyCache.put(cacheKey, reply, cacheTtl, cacheEpoch);
+
+            ((HessianRpcOutput) out).writeReplyBytes(reply);
+            out.close();
+            return;
+        }
+
+        if (result != null && out instanceof HessianRpcOutput && isResultStream(method.getReturnType())) {
+            writeStreamReply(result, (HessianRpcOutput) out);
+
+            return;
+        }
+
+        if (result instanceof CompletionStage) {
+            CompletableFuture<Void> reply = writeReply((CompletionStage<?>) result, out);
+
+            if (context != null && context.isAsyncSupported()) {
+                context.setPendingReply(reply);
+            } else {
+                await(reply);
+            }
+
+            return;
+        }
+
         out.writeReply(result);
 
         out.close();
     }
 
+    /**
+     * Encodes a complete reply with the output's serializers.
+     */
+    private static byte[] encodeReply(Object result, HessianRpcOutput out) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput replyOut = new HessianRpcOutput(bos);
+        replyOut.setSerializerFactory(out.getSerializerFactory());
+        replyOut.setClassRegistry(out.getClassRegistry());
+        replyOut.setColumnarListEncoding(out.isColumnarListEncoding());
+
+        replyOut.writeReply(result);
+        replyOut.close();
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * True for the return types whose values are written as a streamed
+     * reply.
+     */
+    private static boolean isResultStream(Class<?> type) {
+        return type == HessianResultStream.class || type == Iterator.class || type == Stream.class;
+    }
+
+    /**
+     * Writes the elements as the result produces them.  A failure of the
+     * result after the reply has started ends the reply with a stream
+     * fault; a failure to serialize an element leaves the reply truncated
+     * and is thrown to the caller.
+     */
+    private void writeStreamReply(Object result, HessianRpcOutput out) throws Exception {
+        HessianResultStream<?> values = result instanceof Stream
+                ? HessianResultStream.of((Stream<?>) result)
+                : HessianResultStream.of((Iterator<?>) result);
+
+        // the source is released before the client sees the end of the
+        // reply, so a client which has read the reply finds it closed
+        boolean isSourceOpen = true;
+
+        try {
+            out.startStreamReply();
+
+            while (true) {
+                Object value;
+
+                try {
+                    if (!values.hasNext()) {
+                        break;
+                    }
+
+                    value = values.next();
+                } catch (RuntimeException e) {
+                    log.debug(e.toString(), e);
+
+                    isSourceOpen = false;
+                    closeSource(values);
+
+                    out.writeStreamFault("ServiceException", escapeMessage(e.getMessage()), e);
+                    out.close();
+                    return;
+                }
+
+                out.writeStreamElement(value);
+            }
+
+            isSourceOpen = false;
+            closeSource(values);
+
+            out.completeStreamReply();
+            out.close();
+        } finally {
+            if (isSourceOpen) {
+                closeSource(values);
+            }
+        }
+    }
+
+    private void closeSource(HessianResultStream<?> values) {
+        try {
+            values.close();
+        } catch (Exception e) {
+            log.debug(e.toString(), e);
+        }
+    }
+
+    /**
+     * Writes the reply or fault once the asynchronous result completes.
+     */
+    private CompletableFuture<Void> writeReply(CompletionStage<?> result, AbstractHessianOutput out) {
+        CompletableFuture<?> future = result.toCompletableFuture();
+
+        if (asyncTimeout > 0 && !future.isDone()) {
+            future = future.copy().orTimeout(asyncTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        return future.handle((value, e) -> {
+            try {
+                if (e != null) {
+                    if (e instanceof CompletionException && e.getCause() != null) {
+                        e = e.getCause();
+                    }
+
+                    log.debug(e.toString(), e);
+
+                    out.writeFault("ServiceException", escapeMessage(e.getMessage()), e);
+                } else {
+                    out.writeReply(value);
+                }
+
+                out.close();
+            } catch (Exception e1) {
+                throw new CompletionException(e1);
+            }
+
+            return null;
+        });
+    }
+
+    private static void await(CompletableFuture<?> reply) throws Exception {
+        try {
+            reply.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+
+            throw e;
+        }
+    }
+
     private String escapeMessage(String msg) {
         if (msg == null) {
             return null;
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.tcp;
+
+import com.caucho.hessian.client.HessianConnectionException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One TCP connection to a Hessian TCP server, shared by concurrent calls.
+ *
+ * <p>Requests are written as soon as they are sent, without waiting for
+ * earlier replies; a reader thread matches each reply to its request by
+ * id.
+ */
+@Slf4j
+final class HessianTcpClient implements Closeable {
+    private static final int MAX_PACKET = 64 * 1024 * 1024;
+
+    private final SocketChannel channel;
+
+    private final Object writeLock = new Object();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final Map<Integer, CompletableFuture<TcpPacket>> pending = new ConcurrentHashMap<>();
+
+    private volatile boolean isClosed;
+
+    HessianTcpClient(InetSocketAddress address, long connectTimeout) throws IOException {
+        channel = SocketChannel.open();
+
+        try {
+            if (connectTimeout > 0) {
+                channel.socket().connect(address, (int) connectTimeout);
+            } else {
+                channel.connect(address);
+            }
+
+            channel.socket().setTcpNoDelay(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        Thread reader = new Thread(this::readLoop, "hessian-tcp-client-" + address);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    boolean isClosed() {
+        return isClosed;
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes a request, returning the future of its reply.
+     */
+    CompletableFuture<TcpPacket> send(String path, String contentEncoding, byte[] body) throws IOException {
+        int id = nextId.incrementAndGet();
+
+        CompletableFuture<TcpPacket> reply = new CompletableFuture<>();
+        pending.put(id, reply);
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(TcpPacket.encodeRequest(id, path, contentEncoding, body));
+
+            synchronized (writeLock) {
+                if (isClosed) {
+                    throw new HessianConnectionException("hessian tcp connection closed");
+                }
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.remove(id);
+
+            if (e instanceof IOException) {
+                close();
+            }
+
+            throw e;
+        }
+
+        reply.whenComplete((v, e) -> pending.remove(id));
+
+        return reply;
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        Throwable cause = null;
+
+        try {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+
+                int length;
+
+                while ((length = TcpPacket.packetLength(buffer)) > 0) {
+                    byte[] packet = new byte[length];
+                    buffer.get(packet);
+
+                    TcpPacket reply = TcpPacket.decodeReply(packet);
+                    CompletableFuture<TcpPacket> future = pending.get(reply.id);
+
+                    if (future != null) {
+                        future.complete(reply);
+                    }
+                }
+
+                buffer.compact();
+
+                if (!buffer.hasRemaining()) {
+                    if (buffer.capacity() >= MAX_PACKET) {
+                        throw new IOException("hessian tcp packet exceeds " + MAX_PACKET + " bytes");
+                    }
+
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        } catch (Exception e) {
+            cause = e;
+
+            if (!isClosed) {
+                log.debug(e.toString(), e);
+            }
+        } finally {
+            close();
+
+            HessianConnectionException exn = new HessianConnectionException("hessian tcp connection closed", cause);
+
+            for (CompletableFuture<TcpPacket> future : pending.values()) {
+                future.completeExceptionally(exn);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.trace(e.toString(), e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.tcp;
+
+import com.caucho.hessian.client.AbstractHessianConnection;
+import com.caucho.hessian.client.HessianConnectionException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A single call over a shared {@link HessianTcpClient}.
+ */
+public class HessianTcpConnection extends AbstractHessianConnection {
+    private final HessianTcpClient client;
+    private final String path;
+    private final long readTimeout;
+
+    private final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+    private String contentEncoding;
+
+    private CompletableFuture<TcpPacket> future;
+    private TcpPacket reply;
+
+    HessianTcpConnection(HessianTcpClient client, String path, long readTimeout) {
+        this.client = client;
+        this.path = path;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Only the content encoding of the request is carried over TCP.
+     */
+    @Override
+    public void addHeader(String key, String value) {
+        if ("Content-Encoding".equalsIgnoreCase(key)) {
+            contentEncoding = value;
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return os;
+    }
+
+    @Override
+    public void sendRequest() throws IOException {
+        future = client.send(path, contentEncoding, os.toByteArray());
+    }
+
+    @Override
+    public int getStatusCode() {
+        return getReply().status;
+    }
+
+    @Override
+    public String getStatusMessage() {
+        return getReply().message;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        TcpPacket reply = getReply();
+
+        if (reply.status != TcpPacket.STATUS_OK) {
+            throw new HessianConnectionException(reply.status + ": " + reply.message);
+        }
+
+        return new ByteArrayInputStream(reply.body);
+    }
+
+    private TcpPacket getReply() {
+        if (reply != null) {
+            return reply;
+        } else if (future == null) {
+            throw new IllegalStateException("request has not been sent");
+        }
+
+        try {
+            if (readTimeout > 0) {
+                reply = future.get(readTimeout, TimeUnit.MILLISECONDS);
+            } else {
+                reply = future.get();
+            }
+
+            return reply;
+        } catch (ExecutionException e) {
+            throw new HessianConnectionException(e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new HessianConnectionException("hessian tcp reply timed out after " + readTimeout + "ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new HessianConnectionException(e);
+        }
+    }
+
+    /**
+     * Abandons the reply if it has not arrived.  The shared connection
+     * stays open.
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.tcp;
+
+import com.caucho.hessian.client.AbstractHessianConnectionFactory;
+import com.caucho.hessian.client.HessianConnection;
+import com.caucho.hessian.client.HessianProxyFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connection factory running Hessian calls over {@link HessianTcpServer}
+ * connections instead of HTTP.
+ *
+ * <p>The host, port and path of the service URL select the server and the
+ * service; the scheme is ignored, except that a URL without a port uses
+ * the scheme's default port.  All calls to one host and port share a
+ * single pipelined connection, which is reopened if it fails.
+ *
+ * <pre>
+ * HessianProxyFactory factory = new HessianProxyFactory();
+ * factory.setConnectionFactory(new HessianTcpConnectionFactory());
+ * BasicAPI basic = (BasicAPI) factory.create(BasicAPI.class, "http://localhost:9000/basic");
+ * </pre>
+ */
+public class HessianTcpConnectionFactory extends AbstractHessianConnectionFactory implements Closeable {
+    private final Map<String, HessianTcpClient> clients = new ConcurrentHashMap<>();
+
+    @Override
+    public HessianConnection open(URL url) throws IOException {
+        int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+
+        HessianTcpClient client = getClient(url.getHost(), port);
+
+        return new HessianTcpConnection(client, url.getPath(), getReadTimeout());
+    }
+
+    private HessianTcpClient getClient(String host, int port) throws IOException {
+        String key = host + ":" + port;
+
+        HessianTcpClient client = clients.get(key);
+
+        if (client != null && !client.isClosed()) {
+            return client;
+        }
+
+        synchronized (clients) {
+            client = clients.get(key);
+
+            if (client == null || client.isClosed()) {
+                client = new HessianTcpClient(new InetSocketAddress(host, port), getConnectTimeout());
+                clients.put(key, client);
+            }
+
+            return client;
+        }
+    }
+
+    private long getConnectTimeout() {
+        HessianProxyFactory factory = getHessianProxyFactory();
+
+        return factory != null ? factory.getConnectTimeout() : -1;
+    }
+
+    private long getReadTimeout() {
+        HessianProxyFactory factory = getHessianProxyFactory();
+
+        return factory != null ? factory.getReadTimeout() : -1;
+    }
+
+    /**
+     * Returns the number of calls waiting for a reply.
+     */
+    public int getPendingCount() {
+        int count = 0;
+
+        for (HessianTcpClient client : clients.values()) {
+            count += client.getPendingCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Closes all connections.
+     */
+    @Override
+    public void close() {
+        for (HessianTcpClient client : clients.values()) {
+            client.close();
+        }
+
+        clients.clear();
+    }
+}
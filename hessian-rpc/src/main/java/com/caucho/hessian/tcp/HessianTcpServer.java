@@ -0,0 +1,517 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.tcp;
+
+import com.caucho.hessian.io.SerializerFactory;
+import com.caucho.hessian.server.HessianSkeleton;
+import com.caucho.hessian.util.InflaterPool;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves Hessian services over long-lived TCP connections.
+ *
+ * <p>A single selector thread accepts connections, reads request packets
+ * and writes replies; calls run on the executor, so one connection can
+ * carry many pipelined requests and replies go back as each call
+ * completes.  A connection which reaches the limit of calls in flight,
+ * or any connection once the server reaches its limit, is not read until
+ * calls complete.  Services are registered by the path of their URL:
+ *
+ * <pre>
+ * HessianTcpServer server = new HessianTcpServer();
+ * server.addService("/basic", new BasicService(), BasicAPI.class);
+ * server.bind(new InetSocketAddress(9000));
+ * </pre>
+ */
+@Slf4j
+public class HessianTcpServer implements Closeable {
+    private static final int MAX_PACKET = 64 * 1024 * 1024;
+
+    private final Map<String, HessianSkeleton> services = new ConcurrentHashMap<>();
+
+    /**
+     * -- SETTER --
+     *  The executor running calls.  A cached thread pool is created if none
+     *  is set, and shut down on close.
+     */
+    @Setter
+    private Executor executor;
+
+    private ExecutorService defaultExecutor;
+
+    /**
+     * -- GETTER --
+     *  The serializer factory for calls.
+     * -- SETTER --
+     *  The serializer factory for calls.
+     */
+    @Getter
+    @Setter
+    private SerializerFactory serializerFactory;
+
+    private final InflaterPool inflaterPool = new InflaterPool(true, 16);
+
+    private final Queue<TcpConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    /**
+     * -- GETTER --
+     *  The maximum number of calls in flight on one connection.
+     * -- SETTER --
+     *  The maximum number of calls in flight on one connection.
+     */
+    @Getter
+    @Setter
+    private int maxConnectionCalls = 64;
+
+    /**
+     * -- GETTER --
+     *  The maximum number of calls in flight on the server.
+     * -- SETTER --
+     *  The maximum number of calls in flight on the server.
+     */
+    @Getter
+    @Setter
+    private int maxCalls = 1024;
+
+    private final AtomicInteger callCount = new AtomicInteger();
+
+    // connections not read until calls complete, used by the selector thread
+    private final Queue<TcpConnection> pausedReads = new ArrayDeque<>();
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+
+    private volatile boolean isClosed;
+
+    /**
+     * Registers a service for a URL path.
+     */
+    public void addService(String path, Object service, Class<?> api) {
+        services.put(path, new HessianSkeleton(service, api));
+    }
+
+    /**
+     * Binds the server and starts the selector thread.
+     */
+    public void bind(InetSocketAddress address) throws IOException {
+        if (executor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "hessian-tcp-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor = defaultExecutor;
+        }
+
+        selector = Selector.open();
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        Thread thread = new Thread(this::selectLoop, "hessian-tcp-selector-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the bound port.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void selectLoop() {
+        try {
+            while (!isClosed) {
+                selector.select();
+
+                for (TcpConnection conn = pendingWrites.poll(); conn != null; conn = pendingWrites.poll()) {
+                    conn.write();
+                }
+
+                resumeReads();
+
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+
+                    select(key);
+                }
+            }
+        } catch (Exception e) {
+            if (!isClosed) {
+                log.warn("hessian tcp selector failed: {}", e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Handles a selected key.  A failure closes only the key's connection.
+     */
+    private void select(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+
+            TcpConnection conn = (TcpConnection) key.attachment();
+
+            if (key.isReadable()) {
+                conn.read();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                conn.write();
+            }
+        } catch (Exception e) {
+            if (key.attachment() instanceof TcpConnection) {
+                log.debug(e.toString(), e);
+
+                ((TcpConnection) key.attachment()).close();
+            } else if (!isClosed) {
+                log.warn("hessian tcp accept failed: {}", e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads again from the paused connections whose calls have completed.
+     */
+    private void resumeReads() {
+        for (int i = pausedReads.size(); i > 0; i--) {
+            TcpConnection conn = pausedReads.poll();
+
+            if (!conn.key.isValid()) {
+                continue;
+            }
+
+            if (conn.isCallLimit()) {
+                pausedReads.add(conn);
+            } else {
+                conn.resumeRead();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        TcpConnection conn = new TcpConnection(channel);
+        conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+    }
+
+    /**
+     * Runs a call and returns its reply, or null if the connection was
+     * closed instead.
+     */
+    private byte[] invoke(TcpConnection conn, byte[] packet) {
+        int id = -1;
+        byte[] reply;
+
+        try {
+            TcpPacket request = TcpPacket.decodeRequest(packet);
+            id = request.id;
+
+            HessianSkeleton skeleton = services.get(request.path);
+
+            if (skeleton == null) {
+                reply = TcpPacket.encodeReply(
+                        id, TcpPacket.STATUS_NOT_FOUND, "no service at " + request.path, new byte[0]);
+            } else {
+                reply = TcpPacket.encodeReply(id, TcpPacket.STATUS_OK, null, invoke(skeleton, request));
+            }
+        } catch (Exception e) {
+            log.debug(e.toString(), e);
+
+            try {
+                reply = TcpPacket.encodeReply(id, TcpPacket.STATUS_ERROR, e.toString(), new byte[0]);
+            } catch (IOException e1) {
+                conn.close();
+                return null;
+            }
+        }
+
+        return reply;
+    }
+
+    private byte[] invoke(HessianSkeleton skeleton, TcpPacket request) throws Exception {
+        InputStream is = new ByteArrayInputStream(request.body);
+
+        try {
+            if ("deflate".equalsIgnoreCase(request.contentEncoding)) {
+                is = inflaterPool.getInputStream(is);
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+            skeleton.invoke(is, bos, serializerFactory);
+
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Closes the server and all its connections.
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+
+                selector.close();
+            }
+        } finally {
+            if (defaultExecutor != null) {
+                defaultExecutor.shutdownNow();
+            }
+        }
+    }
+
+    final class TcpConnection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        private ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger connectionCallCount = new AtomicInteger();
+
+        // selector thread state
+        private boolean isReadPaused;
+        private boolean isWritePending;
+
+        TcpConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads available data and dispatches each complete packet.
+         */
+        void read() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+
+                dispatch();
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+
+                close();
+            }
+        }
+
+        /**
+         * Reads the buffered packets again once calls have completed.
+         */
+        void resumeRead() {
+            isReadPaused = false;
+
+            try {
+                dispatch();
+
+                updateInterest();
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+
+                close();
+            }
+        }
+
+        /**
+         * Dispatches each complete packet in the buffer.  At a call limit
+         * the rest stay buffered and the connection is not read until
+         * calls complete.
+         */
+        private void dispatch() throws IOException {
+            readBuffer.flip();
+
+            int length;
+
+            while ((length = TcpPacket.packetLength(readBuffer)) > 0) {
+                if (isCallLimit()) {
+                    isReadPaused = true;
+                    pausedReads.add(this);
+                    updateInterest();
+                    break;
+                }
+
+                byte[] packet = new byte[length];
+                readBuffer.get(packet);
+
+                execute(packet);
+            }
+
+            readBuffer.compact();
+
+            if (!isReadPaused && !readBuffer.hasRemaining()) {
+                if (readBuffer.capacity() >= MAX_PACKET) {
+                    throw new IOException("hessian tcp packet exceeds " + MAX_PACKET + " bytes");
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                buffer.put(readBuffer);
+                readBuffer = buffer;
+            }
+        }
+
+        boolean isCallLimit() {
+            return connectionCallCount.get() >= maxConnectionCalls || callCount.get() >= maxCalls;
+        }
+
+        private void execute(byte[] packet) throws IOException {
+            connectionCallCount.incrementAndGet();
+            callCount.incrementAndGet();
+
+            try {
+                executor.execute(() -> {
+                    byte[] reply = null;
+
+                    try {
+                        reply = invoke(this, packet);
+                    } finally {
+                        connectionCallCount.decrementAndGet();
+                        callCount.decrementAndGet();
+
+                        // waking the selector after the count drops lets it
+                        // resume paused reads
+                        if (reply != null) {
+                            send(reply);
+                        } else {
+                            selector.wakeup();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                connectionCallCount.decrementAndGet();
+                callCount.decrementAndGet();
+
+                log.debug(e.toString(), e);
+
+                TcpPacket request = TcpPacket.decodeRequest(packet);
+
+                send(TcpPacket.encodeReply(request.id, TcpPacket.STATUS_ERROR, e.toString(), new byte[0]));
+            }
+        }
+
+        /**
+         * Queues a reply for the selector thread.
+         */
+        void send(byte[] reply) {
+            writeQueue.add(ByteBuffer.wrap(reply));
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Writes queued replies, waiting for OP_WRITE if the socket is full.
+         */
+        void write() {
+            if (!key.isValid()) {
+                return;
+            }
+
+            try {
+                for (ByteBuffer buffer = writeQueue.peek(); buffer != null; buffer = writeQueue.peek()) {
+                    channel.write(buffer);
+
+                    if (buffer.hasRemaining()) {
+                        isWritePending = true;
+                        updateInterest();
+                        return;
+                    }
+
+                    writeQueue.poll();
+                }
+
+                isWritePending = false;
+                updateInterest();
+            } catch (Exception e) {
+                log.debug(e.toString(), e);
+
+                close();
+            }
+        }
+
+        private void updateInterest() {
+            if (key.isValid()) {
+                key.interestOps(
+                        (isReadPaused ? 0 : SelectionKey.OP_READ) | (isWritePending ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        void close() {
+            try {
+                key.cancel();
+                channel.close();
+            } catch (IOException e) {
+                log.trace(e.toString(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.tcp;
+
+import io.github.wuwen5.hessian.io.Hessian2StreamingInput;
+import io.github.wuwen5.hessian.io.Hessian2StreamingOutput;
+import io.github.wuwen5.hessian.io.HessianDecoder;
+import io.github.wuwen5.hessian.io.HessianEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Packets of the Hessian TCP transport, framed as Hessian 2 streaming
+ * packets.
+ *
+ * <pre>
+ * request: int id, string path, string content-encoding, binary call
+ * reply:   int id, int status, string message, binary reply
+ * </pre>
+ *
+ * <p>The request id lets a connection carry pipelined requests whose
+ * replies return in any order.
+ */
+final class TcpPacket {
+    static final int STATUS_OK = 200;
+    static final int STATUS_NOT_FOUND = 404;
+    static final int STATUS_ERROR = 500;
+
+    final int id;
+
+    // path for a request, message for a reply
+    final String path;
+    final String message;
+
+    final String contentEncoding;
+    final int status;
+
+    final byte[] body;
+
+    private TcpPacket(int id, String path, String contentEncoding, int status, String message, byte[] body) {
+        this.id = id;
+        this.path = path;
+        this.contentEncoding = contentEncoding;
+        this.status = status;
+        this.message = message;
+        this.body = body;
+    }
+
+    static byte[] encodeRequest(int id, String path, String contentEncoding, byte[] body) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length + 64);
+        HessianEncoder out = new Hessian2StreamingOutput(bos).getHessian2Output();
+
+        out.startPacket();
+        out.writeInt(id);
+        out.writeString(path);
+        out.writeString(contentEncoding);
+        out.writeBytes(body);
+        out.endPacket();
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    static byte[] encodeReply(int id, int status, String message, byte[] body) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length + 32);
+        HessianEncoder out = new Hessian2StreamingOutput(bos).getHessian2Output();
+
+        out.startPacket();
+        out.writeInt(id);
+        out.writeInt(status);
+        out.writeString(message);
+        out.writeBytes(body);
+        out.endPacket();
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    static TcpPacket decodeRequest(byte[] packet) throws IOException {
+        Hessian2StreamingInput sIn = new Hessian2StreamingInput(new ByteArrayInputStream(packet));
+        HessianDecoder in = sIn.startPacket();
+
+        if (in == null) {
+            throw new IOException("empty hessian tcp request");
+        }
+
+        TcpPacket request = new TcpPacket(in.readInt(), in.readString(), in.readString(), 0, null, in.readBytes());
+
+        sIn.endPacket();
+
+        return request;
+    }
+
+    static TcpPacket decodeReply(byte[] packet) throws IOException {
+        Hessian2StreamingInput sIn = new Hessian2StreamingInput(new ByteArrayInputStream(packet));
+        HessianDecoder in = sIn.startPacket();
+
+        if (in == null) {
+            throw new IOException("empty hessian tcp reply");
+        }
+
+        TcpPacket reply = new TcpPacket(in.readInt(), null, null, in.readInt(), in.readString(), in.readBytes());
+
+        sIn.endPacket();
+
+        return reply;
+    }
+
+    /**
+     * Returns the length of the complete packet at the buffer's position,
+     * or -1 if more data is needed.  The buffer position is unchanged.
+     */
+    static int packetLength(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int offset = start;
+
+        while (true) {
+            if (limit - offset < 2) {
+                return -1;
+            }
+
+            int code = buffer.get(offset) & 0xff;
+            int len = buffer.get(offset + 1) & 0x7f;
+
+            long chunkLength;
+            int headerLength;
+
+            if (len < 0x7e) {
+                headerLength = 2;
+                chunkLength = len;
+            } else if (len == 0x7e) {
+                headerLength = 4;
+
+                if (limit - offset < headerLength) {
+                    return -1;
+                }
+
+                chunkLength = ((buffer.get(offset + 2) & 0xff) << 8) | (buffer.get(offset + 3) & 0xff);
+            } else {
+                headerLength = 10;
+
+                if (limit - offset < headerLength) {
+                    return -1;
+                }
+
+                chunkLength = buffer.getLong(offset + 2);
+
+                if (chunkLength < 0 || chunkLength > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("hessian tcp chunk too large: " + chunkLength);
+                }
+            }
+
+            if (limit - offset < headerLength + chunkLength) {
+                return -1;
+            }
+
+            offset += headerLength + (int) chunkLength;
+
+            if ((code & 0x80) == 0) {
+                return offset - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.util;
+
+import io.github.wuwen5.hessian.util.HessianFreeList;
+import java.util.zip.Deflater;
+import lombok.Getter;
+
+/**
+ * Bounded pool of {@link Deflater} instances sharing one configuration.
+ *
+ * <p>A Deflater holds native zlib state which is only released by
+ * {@link Deflater#end()}.  Recycling them avoids allocating that state for
+ * every message, and a Deflater which does not fit in the pool is ended
+ * immediately instead of waiting for the garbage collector.
+ */
+public final class DeflaterPool {
+    @Getter
+    private final int level;
+
+    @Getter
+    private final boolean nowrap;
+
+    private final HessianFreeList<Deflater> freeList;
+
+    private volatile boolean isClosed;
+
+    /**
+     * Creates a pool.
+     *
+     * @param level  the compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nowrap true for raw deflate data without the zlib header
+     * @param size   the maximum number of idle deflaters kept
+     */
+    public DeflaterPool(int level, boolean nowrap, int size) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+
+        this.level = level;
+        this.nowrap = nowrap;
+        this.freeList = new HessianFreeList<>(size);
+    }
+
+    /**
+     * Returns a recycled deflater, or a new one if the pool is empty.
+     */
+    public Deflater allocate() {
+        Deflater deflater = freeList.allocate();
+
+        if (deflater == null) {
+            deflater = new Deflater(level, nowrap);
+        }
+
+        return deflater;
+    }
+
+    /**
+     * Resets the deflater and returns it to the pool, ending it if the pool
+     * is full or closed.
+     */
+    public void free(Deflater deflater) {
+        if (deflater == null) {
+            return;
+        }
+
+        if (isClosed) {
+            deflater.end();
+            return;
+        }
+
+        deflater.reset();
+
+        if (!freeList.free(deflater)) {
+            deflater.end();
+        } else if (isClosed) {
+            // closed while the deflater was being returned
+            endIdle();
+        }
+    }
+
+    /**
+     * Ends the idle deflaters.  Deflaters still in use are ended when they
+     * are freed.
+     */
+    public void close() {
+        isClosed = true;
+
+        endIdle();
+    }
+
+    private void endIdle() {
+        Deflater deflater;
+
+        while ((deflater = freeList.allocate()) != null) {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.caucho.hessian.util;
+
+import io.github.wuwen5.hessian.util.HessianFreeList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import lombok.Getter;
+
+/**
+ * Bounded pool of {@link Inflater} instances, the decompression
+ * counterpart of {@link DeflaterPool}.
+ */
+public final class InflaterPool {
+    @Getter
+    private final boolean nowrap;
+
+    private final HessianFreeList<Inflater> freeList;
+
+    /**
+     * Creates a pool.
+     *
+     * @param nowrap true for raw deflate data without the zlib header
+     * @param size   the maximum number of idle inflaters kept
+     */
+    public InflaterPool(boolean nowrap, int size) {
+        this.nowrap = nowrap;
+        this.freeList = new HessianFreeList<>(size);
+    }
+
+    /**
+     * Returns a recycled inflater, or a new one if the pool is empty.
+     */
+    public Inflater allocate() {
+        Inflater inflater = freeList.allocate();
+
+        if (inflater == null) {
+            inflater = new Inflater(nowrap);
+        }
+
+        return inflater;
+    }
+
+    /**
+     * Resets the inflater and returns it to the pool, ending it if the pool
+     * is full.
+     */
+    public void free(Inflater inflater) {
+        if (inflater == null) {
+            return;
+        }
+
+        inflater.reset();
+
+        if (!freeList.free(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns a stream inflating <code>is</code> with a pooled inflater,
+     * which is returned to the pool when the stream is closed.
+     */
+    public InputStream getInputStream(InputStream is) {
+        return new PooledInflaterInputStream(is, allocate());
+    }
+
+    private class PooledInflaterInputStream extends InflaterInputStream {
+        private boolean isClosed;
+
+        PooledInflaterInputStream(InputStream is, Inflater inflater) {
+            super(is, inflater);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+
+            isClosed = true;
+
+            try {
+                super.close();
+            } finally {
+                free(inf);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.wuwen5.hession.rpc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public interface AsyncAPI {
+    CompletableFuture<String> await(String key);
+
+    void release(String key, String value);
+
+    CompletionStage<Integer> divide(int a, int b);
+}
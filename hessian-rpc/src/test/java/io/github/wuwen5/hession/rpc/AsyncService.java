@@ -0,0 +1,36 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.server.HessianServlet;
+import com.caucho.services.server.ServiceContext;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletRequest;
+
+public class AsyncService extends HessianServlet implements AsyncAPI {
+
+    final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    final Map<String, ServletRequest> requests = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<String> await(String key) {
+        ServletRequest request = ServiceContext.getContextRequest();
+
+        if (request != null) {
+            requests.put(key, request);
+        }
+
+        return pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+    }
+
+    @Override
+    public void release(String key, String value) {
+        pending.computeIfAbsent(key, k -> new CompletableFuture<>()).complete(value);
+    }
+
+    @Override
+    public CompletionStage<Integer> divide(int a, int b) {
+        return CompletableFuture.supplyAsync(() -> a / b);
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.server.HessianCacheable;
+import java.util.List;
+
+public interface CacheAPI {
+    @HessianCacheable
+    List<String> catalog(String region, int size);
+
+    @HessianCacheable(ttl = 50)
+    String shortLived(String key);
+
+    String configured(String key);
+
+    String uncached(String key);
+
+    @HessianCacheable
+    String latest(String key);
+}
@@ -0,0 +1,68 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.server.HessianServlet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheService extends HessianServlet implements CacheAPI {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    volatile String version = "v1";
+    volatile CountDownLatch invoked = new CountDownLatch(1);
+    volatile CountDownLatch released = new CountDownLatch(0);
+
+    @Override
+    public List<String> catalog(String region, int size) {
+        calls.incrementAndGet();
+
+        List<String> items = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            items.add(region + "-item-" + i);
+        }
+
+        return items;
+    }
+
+    @Override
+    public String shortLived(String key) {
+        calls.incrementAndGet();
+
+        return key;
+    }
+
+    @Override
+    public String configured(String key) {
+        calls.incrementAndGet();
+
+        return key;
+    }
+
+    @Override
+    public String uncached(String key) {
+        calls.incrementAndGet();
+
+        return key;
+    }
+
+    @Override
+    public String latest(String key) {
+        calls.incrementAndGet();
+
+        String value = key + "-" + version;
+
+        invoked.countDown();
+
+        try {
+            released.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return value;
+    }
+}
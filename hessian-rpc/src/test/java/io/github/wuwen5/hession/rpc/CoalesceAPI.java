@@ -0,0 +1,10 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.client.HessianCoalesce;
+
+public interface CoalesceAPI {
+    @HessianCoalesce
+    String lookup(String key);
+
+    String uncoalesced(String key);
+}
@@ -0,0 +1,34 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.server.HessianServlet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CoalesceService extends HessianServlet implements CoalesceAPI {
+
+    final AtomicInteger calls = new AtomicInteger();
+    volatile CountDownLatch gate = new CountDownLatch(0);
+
+    @Override
+    public String lookup(String key) {
+        calls.incrementAndGet();
+
+        try {
+            gate.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (key.startsWith("missing")) {
+            throw new IllegalArgumentException("no value for " + key);
+        }
+
+        return "value:" + key;
+    }
+
+    @Override
+    public String uncoalesced(String key) {
+        return lookup(key);
+    }
+}
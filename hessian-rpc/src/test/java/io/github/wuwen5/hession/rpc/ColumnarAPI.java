@@ -0,0 +1,38 @@
+package io.github.wuwen5.hession.rpc;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+public interface ColumnarAPI {
+    List<Line> lines(int count);
+
+    long total(List<Line> lines);
+
+    class Line implements Serializable {
+        int id;
+        String product;
+        long amount;
+
+        public Line() {}
+
+        public Line(int id, String product, long amount) {
+            this.id = id;
+            this.product = product;
+            this.amount = amount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Line
+                    && ((Line) o).id == id
+                    && ((Line) o).amount == amount
+                    && Objects.equals(((Line) o).product, product);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.server.HessianServlet;
+import com.caucho.services.server.ServiceContext;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+
+public class ColumnarService extends HessianServlet implements ColumnarAPI {
+
+    final List<String> columnarHeaders = new ArrayList<>();
+
+    static List<Line> createLines(int count) {
+        List<Line> lines = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            lines.add(new Line(i, "product-" + (i % 7), i * 100L));
+        }
+
+        return lines;
+    }
+
+    @Override
+    public List<Line> lines(int count) {
+        record();
+
+        return createLines(count);
+    }
+
+    @Override
+    public long total(List<Line> lines) {
+        record();
+
+        long total = 0;
+
+        for (Line line : lines) {
+            total += line.amount;
+        }
+
+        return total;
+    }
+
+    private synchronized void record() {
+        HttpServletRequest req = (HttpServletRequest) ServiceContext.getContextRequest();
+
+        columnarHeaders.add(req.getHeader("X-Hessian-Columnar"));
+    }
+}
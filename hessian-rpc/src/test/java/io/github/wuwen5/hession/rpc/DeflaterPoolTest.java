@@ -0,0 +1,42 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.caucho.hessian.util.DeflaterPool;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Test;
+
+public class DeflaterPoolTest {
+
+    @Test
+    void testRecycle() {
+        DeflaterPool pool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 4);
+
+        Deflater deflater = pool.allocate();
+        pool.free(deflater);
+
+        assertSame(deflater, pool.allocate());
+    }
+
+    @Test
+    void testCloseEndsDeflaters() {
+        DeflaterPool pool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 4);
+
+        Deflater idle = pool.allocate();
+        Deflater inUse = pool.allocate();
+        pool.free(idle);
+
+        pool.close();
+
+        // an ended deflater has released its native state
+        assertThrows(NullPointerException.class, () -> idle.deflate(new byte[16]), "idle deflater is ended on close");
+
+        pool.free(inUse);
+
+        assertThrows(
+                NullPointerException.class, () -> inUse.deflate(new byte[16]), "deflater freed after close is ended");
+        assertNotSame(inUse, pool.allocate());
+    }
+}
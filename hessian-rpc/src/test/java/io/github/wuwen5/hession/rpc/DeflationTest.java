@@ -0,0 +1,92 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.io.Deflation;
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.io.HessianRpcOutput;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Test;
+
+public class DeflationTest {
+
+    private static String repeat(int count) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            sb.append("compressible-");
+        }
+
+        return sb.toString();
+    }
+
+    private static byte[] wrap(Deflation deflation, Object value) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = deflation.wrap(new HessianRpcOutput(bos));
+        out.writeObject(value);
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static Object unwrap(byte[] data) throws Exception {
+        HessianRpcInput in = new Deflation().unwrap(new HessianRpcInput(new ByteArrayInputStream(data)));
+        Object value = in.readObject();
+        in.close();
+
+        return value;
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        Deflation deflation = new Deflation();
+        String value = repeat(1000);
+
+        for (int i = 0; i < 4; i++) {
+            byte[] data = wrap(deflation, value);
+
+            assertTrue(data.length < value.length() / 10, "wrapped " + data.length);
+            assertEquals(value, unwrap(data));
+        }
+    }
+
+    @Test
+    void testSmallMessageIsStored() throws Exception {
+        Deflation deflation = new Deflation();
+        deflation.setThreshold(256);
+
+        String value = "stored-stored-stored-stored-stored-stored";
+
+        byte[] data = wrap(deflation, value);
+
+        assertTrue(new String(data, "ISO-8859-1").contains(value));
+        assertEquals(value, unwrap(data));
+
+        String large = repeat(1000);
+        byte[] largeData = wrap(deflation, large);
+
+        assertTrue(largeData.length < large.length() / 10, "wrapped " + largeData.length);
+        assertEquals(large, unwrap(largeData));
+    }
+
+    @Test
+    void testLevelAndStrategy() throws Exception {
+        String value = repeat(1000);
+
+        Deflation fast = new Deflation();
+        fast.setLevel(Deflater.BEST_SPEED);
+
+        Deflation huffman = new Deflation();
+        huffman.setStrategy(Deflater.HUFFMAN_ONLY);
+
+        byte[] fastData = wrap(fast, value);
+        byte[] huffmanData = wrap(huffman, value);
+
+        assertTrue(fastData.length < huffmanData.length);
+        assertEquals(value, unwrap(fastData));
+        assertEquals(value, unwrap(huffmanData));
+    }
+}
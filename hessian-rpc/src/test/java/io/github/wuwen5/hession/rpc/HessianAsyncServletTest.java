@@ -0,0 +1,126 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.ServletRequest;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianAsyncServletTest {
+
+    static Server server;
+    static String url;
+
+    static AsyncService asyncService = new AsyncService();
+    static AsyncService syncService = new AsyncService();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+
+        ServletHolder asyncHolder = new ServletHolder(asyncService);
+        asyncHolder.setAsyncSupported(true);
+        asyncHolder.setInitParameter("async-timeout", "5000");
+        handler.addServletWithMapping(asyncHolder, "/async");
+
+        ServletHolder syncHolder = new ServletHolder(syncService);
+        handler.addServletWithMapping(syncHolder, "/sync");
+
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    private static AsyncAPI create(String path) throws Exception {
+        return (AsyncAPI) new HessianProxyFactory().create(AsyncAPI.class, url + path);
+    }
+
+    @Test
+    void testRequestThreadReleased() throws Exception {
+        AsyncAPI client = create("/async");
+
+        CompletableFuture<String> call = CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.await("a").get();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        ServletRequest request = null;
+        for (int i = 0; i < 500 && request == null; i++) {
+            request = asyncService.requests.get("a");
+            Thread.sleep(10);
+        }
+
+        assertTrue(request.isAsyncStarted());
+        assertFalse(call.isDone());
+
+        client.release("a", "done");
+
+        assertEquals("done", call.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFault() throws Exception {
+        AsyncAPI client = create("/async");
+
+        assertEquals(5, client.divide(10, 2).toCompletableFuture().get());
+
+        ExecutionException e = assertThrows(
+                ExecutionException.class,
+                () -> client.divide(10, 0).toCompletableFuture().get());
+
+        assertInstanceOf(ArithmeticException.class, e.getCause());
+    }
+
+    @Test
+    void testTimeout() throws Exception {
+        AsyncAPI client = create("/async");
+        asyncService.setAsyncTimeout(100);
+
+        try {
+            ExecutionException e = assertThrows(
+                    ExecutionException.class, () -> client.await("never").get());
+
+            assertInstanceOf(TimeoutException.class, e.getCause());
+
+            // the timed out request is completed and the servlet answers
+            // the next call
+            assertEquals(5, client.divide(10, 2).toCompletableFuture().get());
+        } finally {
+            asyncService.setAsyncTimeout(5000);
+        }
+    }
+
+    @Test
+    void testWithoutAsyncSupport() throws Exception {
+        AsyncAPI client = create("/sync");
+
+        syncService.release("b", "blocking");
+
+        assertEquals("blocking", client.await("b").get());
+        assertEquals(5, client.divide(10, 2).toCompletableFuture().get());
+    }
+}
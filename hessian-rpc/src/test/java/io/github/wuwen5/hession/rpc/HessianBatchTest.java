@@ -0,0 +1,149 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.caucho.hessian.client.HessianBatch;
+import com.caucho.hessian.client.HessianProxyFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianBatchTest {
+
+    static Server server;
+    static String url;
+
+    static final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+
+        handler.addServletWithMapping(
+                new ServletHolder(new BasicService() {
+                    @Override
+                    public void service(ServletRequest request, ServletResponse response)
+                            throws IOException, ServletException {
+                        requests.incrementAndGet();
+
+                        super.service(request, response);
+                    }
+                }),
+                "/basic");
+
+        ServletHolder asyncHolder = new ServletHolder(new AsyncService());
+        asyncHolder.setAsyncSupported(true);
+        handler.addServletWithMapping(asyncHolder, "/async");
+
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    @Test
+    void testCallsShareRequest() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setMaxBatchSize(10);
+        factory.setBatchWindow(60000);
+
+        try (HessianBatch<BasicAPI> batch = factory.createBatch(BasicAPI.class, url + "/basic")) {
+            int start = requests.get();
+
+            List<CompletableFuture<String>> replies = new ArrayList<>();
+
+            for (int i = 0; i < 20; i++) {
+                String name = "name-" + i;
+                replies.add(batch.submit(api -> api.hello(name)));
+            }
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals("Hello name-" + i, replies.get(i).get(5, TimeUnit.SECONDS));
+            }
+
+            assertEquals(2, requests.get() - start);
+        }
+    }
+
+    @Test
+    void testWindowSendsPartialBatch() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setBatchWindow(20);
+
+        try (HessianBatch<BasicAPI> batch = factory.createBatch(BasicAPI.class, url + "/basic")) {
+            CompletableFuture<Integer> quotient = batch.submit(api -> api.divide(10, 2));
+
+            assertEquals(5, quotient.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testFaultCompletesOnlyItsCall() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setBatchWindow(60000);
+
+        try (HessianBatch<BasicAPI> batch = factory.createBatch(BasicAPI.class, url + "/basic")) {
+            CompletableFuture<Integer> first = batch.submit(api -> api.divide(9, 3));
+            CompletableFuture<Integer> failed = batch.submit(api -> api.divide(1, 0));
+            CompletableFuture<String> last = batch.submit(api -> api.hello("after"));
+
+            batch.flush();
+
+            assertEquals(3, first.get(5, TimeUnit.SECONDS));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ArithmeticException.class, e.getCause());
+            assertEquals("Hello after", last.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testAsyncServiceInBatch() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setBatchWindow(60000);
+
+        try (HessianBatch<AsyncAPI> batch = factory.createBatch(AsyncAPI.class, url + "/async")) {
+            CompletableFuture<Integer> first = batch.submitAsync(api -> api.divide(8, 2));
+            CompletableFuture<Integer> failed = batch.submitAsync(api -> api.divide(1, 0));
+            CompletableFuture<Integer> last = batch.submitAsync(api -> api.divide(9, 3));
+
+            batch.close();
+
+            assertEquals(4, first.get(5, TimeUnit.SECONDS));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ArithmeticException.class, e.getCause());
+            assertEquals(3, last.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testSubmitRequiresOneCall() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+
+        try (HessianBatch<BasicAPI> batch = factory.createBatch(BasicAPI.class, url + "/basic")) {
+            assertThrows(IllegalArgumentException.class, () -> batch.submit(api -> "none"));
+            assertThrows(IllegalStateException.class, () -> batch.submit(api -> api.hello(api.hello("a"))));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.caucho.hessian.client.HessianBatch;
+import com.caucho.hessian.client.HessianProxyFactory;
+import io.github.wuwen5.hessian.io.HessianClassRegistry;
+import io.github.wuwen5.hession.rpc.RegistryAPI.Point;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HessianClassRegistryRpcTest {
+
+    static Server server;
+    static String url;
+
+    static RegistryService service = new RegistryService();
+
+    static HessianClassRegistry registry;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        registry = new HessianClassRegistry("points", 1).register(Point.class);
+
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        handler.addServletWithMapping(new ServletHolder(service), "/points");
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/points";
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    @BeforeEach
+    void resetService() {
+        service.setClassRegistry(registry);
+
+        synchronized (service) {
+            service.encodedRegistries.clear();
+        }
+    }
+
+    private static HessianProxyFactory createFactory(HessianClassRegistry classRegistry) {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setClassRegistry(classRegistry);
+
+        return factory;
+    }
+
+    @Test
+    void testRegistryIsNegotiated() throws Exception {
+        RegistryAPI client = (RegistryAPI) createFactory(registry).create(RegistryAPI.class, url);
+
+        assertEquals(new Point(3, 2), client.move(new Point(1, 2), 2));
+        assertEquals(new Point(5, 2), client.move(new Point(1, 2), 4));
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(1, -1)), client.path(2));
+
+        assertEquals(Arrays.asList(null, registry.getId(), registry.getId()), service.encodedRegistries);
+    }
+
+    @Test
+    void testClientWithoutRegistry() throws Exception {
+        RegistryAPI client = (RegistryAPI) new HessianProxyFactory().create(RegistryAPI.class, url);
+
+        assertEquals(new Point(3, 2), client.move(new Point(1, 2), 2));
+        assertEquals(new Point(3, 2), client.move(new Point(1, 2), 2));
+
+        assertEquals(Arrays.asList(null, null), service.encodedRegistries);
+    }
+
+    @Test
+    void testChangedServerRegistryFallsBack() throws Exception {
+        RegistryAPI client = (RegistryAPI) createFactory(registry).create(RegistryAPI.class, url);
+
+        assertEquals(new Point(3, 2), client.move(new Point(1, 2), 2));
+
+        service.setClassRegistry(new HessianClassRegistry("points", 2).register(Point.class));
+
+        // the encoded request is rejected unread and resent without the registry
+        assertEquals(new Point(4, 2), client.move(new Point(1, 2), 3));
+        assertEquals(new Point(5, 2), client.move(new Point(1, 2), 4));
+
+        assertEquals(Arrays.asList(null, null, null), service.encodedRegistries);
+    }
+
+    @Test
+    void testBatchWithRegistry() throws Exception {
+        HessianProxyFactory factory = createFactory(registry);
+        RegistryAPI client = (RegistryAPI) factory.create(RegistryAPI.class, url);
+
+        client.path(1);
+
+        try (HessianBatch<RegistryAPI> batch = factory.createBatch(RegistryAPI.class, url)) {
+            CompletableFuture<Point> first = batch.submit(api -> api.move(new Point(0, 0), 1));
+            CompletableFuture<Point> second = batch.submit(api -> api.move(new Point(0, 0), 2));
+            batch.flush();
+
+            assertEquals(new Point(1, 0), first.get());
+            assertEquals(new Point(2, 0), second.get());
+        }
+
+        // the batch's own proxy has not seen a reply yet, but reads the
+        // replies encoded with the registry
+        assertEquals(Arrays.asList(null, null, null), service.encodedRegistries);
+    }
+}
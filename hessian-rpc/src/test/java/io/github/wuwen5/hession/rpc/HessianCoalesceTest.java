@@ -0,0 +1,123 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianCoalesceTest {
+
+    static Server server;
+    static String url;
+    static CoalesceService service = new CoalesceService();
+    static ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        handler.addServletWithMapping(new ServletHolder(service), "/coalesce");
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/coalesce";
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        executor.shutdownNow();
+
+        if (server != null) server.stop();
+    }
+
+    private static <T> List<CompletableFuture<T>> callConcurrently(
+            HessianProxyFactory factory, int count, long expectedCoalesced, Supplier<T> call) throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        service.gate = gate;
+
+        List<CompletableFuture<T>> results = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            results.add(CompletableFuture.supplyAsync(call, executor));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (factory.getCoalescedCount() < expectedCoalesced && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        gate.countDown();
+
+        return results;
+    }
+
+    @Test
+    void testIdenticalCallsShareRequest() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        CoalesceAPI client = (CoalesceAPI) factory.create(CoalesceAPI.class, url);
+
+        int start = service.calls.get();
+
+        List<CompletableFuture<String>> results = callConcurrently(factory, 8, 7, () -> client.lookup("shared"));
+
+        String first = results.get(0).get(10, TimeUnit.SECONDS);
+        assertEquals("value:shared", first);
+
+        for (CompletableFuture<String> result : results) {
+            assertSame(first, result.get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, service.calls.get() - start);
+        assertEquals(7, factory.getCoalescedCount());
+
+        assertEquals("value:shared", client.lookup("shared"));
+        assertEquals(2, service.calls.get() - start);
+    }
+
+    @Test
+    void testFaultIsShared() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        CoalesceAPI client = (CoalesceAPI) factory.create(CoalesceAPI.class, url);
+
+        List<CompletableFuture<String>> results = callConcurrently(factory, 4, 3, () -> client.lookup("missing"));
+
+        for (CompletableFuture<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        }
+
+        assertEquals(3, factory.getCoalescedCount());
+    }
+
+    @Test
+    void testDifferentArgumentsAreNotShared() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        CoalesceAPI client = (CoalesceAPI) factory.create(CoalesceAPI.class, url);
+
+        service.gate = new CountDownLatch(0);
+
+        assertEquals("value:a", client.lookup("a"));
+        assertEquals("value:b", client.lookup("b"));
+        assertEquals("value:c", client.uncoalesced("c"));
+        assertEquals(0, factory.getCoalescedCount());
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.io.HessianRpcOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HessianColumnarRpcTest {
+
+    static Server server;
+    static String url;
+
+    static ColumnarService service = new ColumnarService();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        ServletHolder holder = new ServletHolder(service);
+        holder.setInitParameter("columnar-lists", "true");
+        handler.addServletWithMapping(holder, "/lines");
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/lines";
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    @BeforeEach
+    void resetService() {
+        service.setColumnarListEncoding(true);
+
+        synchronized (service) {
+            service.columnarHeaders.clear();
+        }
+    }
+
+    private static ColumnarAPI createClient(boolean isColumnar) throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setColumnarListEncoding(isColumnar);
+
+        return (ColumnarAPI) factory.create(ColumnarAPI.class, url);
+    }
+
+    private static byte[] post(boolean isColumnar) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "x-application/hessian");
+
+        if (isColumnar) {
+            conn.setRequestProperty("X-Hessian-Columnar", "true");
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = new HessianRpcOutput(bos);
+        out.call("lines", new Object[] {100});
+        out.close();
+
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(bos.toByteArray());
+        }
+
+        assertEquals(
+                isColumnar && service.isColumnarListEncoding() ? "true" : null,
+                conn.getHeaderField("X-Hessian-Columnar"));
+
+        try (InputStream is = conn.getInputStream()) {
+            return is.readAllBytes();
+        }
+    }
+
+    private static boolean isColumnar(byte[] reply) {
+        return new String(reply, StandardCharsets.ISO_8859_1).contains("hessian.columnar");
+    }
+
+    @Test
+    void testColumnarIsNegotiated() throws Exception {
+        ColumnarAPI client = createClient(true);
+
+        assertEquals(ColumnarService.createLines(100), client.lines(100));
+        assertEquals(495000L, client.total(ColumnarService.createLines(100)));
+        assertEquals(Arrays.asList("true", "true"), service.columnarHeaders);
+    }
+
+    @Test
+    void testReplyEncoding() throws Exception {
+        assertTrue(isColumnar(post(true)));
+        assertFalse(isColumnar(post(false)));
+    }
+
+    @Test
+    void testServerWithoutColumnar() throws Exception {
+        service.setColumnarListEncoding(false);
+
+        assertFalse(isColumnar(post(true)));
+
+        ColumnarAPI client = createClient(true);
+
+        assertEquals(ColumnarService.createLines(20), client.lines(20));
+        assertEquals(19000L, client.total(ColumnarService.createLines(20)));
+    }
+
+    @Test
+    void testClientWithoutColumnar() throws Exception {
+        ColumnarAPI client = createClient(false);
+
+        assertEquals(ColumnarService.createLines(20), client.lines(20));
+        assertEquals(19000L, client.total(ColumnarService.createLines(20)));
+        assertEquals(Arrays.asList(null, null), service.columnarHeaders);
+    }
+}
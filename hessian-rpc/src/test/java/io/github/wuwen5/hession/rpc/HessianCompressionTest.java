@@ -0,0 +1,123 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.io.HessianRpcOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianCompressionTest {
+
+    static Server server;
+    static String url;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        ServletHolder holder = new ServletHolder(new BasicService());
+        holder.setInitParameter("compress-reply", "true");
+        holder.setInitParameter("compress-threshold", "256");
+        holder.setInitParameter("compress-level", "1");
+        handler.addServletWithMapping(holder, "/hello");
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/hello";
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    private static String repeat(int count) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            sb.append("compressible-");
+        }
+
+        return sb.toString();
+    }
+
+    private static HttpURLConnection post(String name) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "x-application/hessian");
+        conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = new HessianRpcOutput(bos);
+        out.call("hello", new Object[] {name});
+        out.close();
+
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(bos.toByteArray());
+        }
+
+        return conn;
+    }
+
+    private static Object readReply(InputStream is) throws Throwable {
+        assertEquals('H', is.read());
+        is.read();
+        is.read();
+
+        return new HessianRpcInput(is).readReply(String.class);
+    }
+
+    @Test
+    void testLargeReplyIsCompressed() throws Throwable {
+        String name = repeat(1000);
+
+        HttpURLConnection conn = post(name);
+
+        assertEquals("deflate", conn.getContentEncoding());
+
+        try (InputStream is = new InflaterInputStream(conn.getInputStream(), new Inflater(true))) {
+            assertEquals("Hello " + name, readReply(is));
+        }
+    }
+
+    @Test
+    void testSmallReplyIsNotCompressed() throws Throwable {
+        HttpURLConnection conn = post("small");
+
+        assertNull(conn.getContentEncoding());
+
+        try (InputStream is = conn.getInputStream()) {
+            assertEquals("Hello small", readReply(is));
+        }
+    }
+
+    @Test
+    void testProxyRoundTrip() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setCompressRequest(true);
+
+        BasicAPI client = (BasicAPI) factory.create(BasicAPI.class, url);
+
+        String name = repeat(2000);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Hello " + name, client.hello(name));
+            assertEquals("Hello small", client.hello("small"));
+        }
+    }
+}
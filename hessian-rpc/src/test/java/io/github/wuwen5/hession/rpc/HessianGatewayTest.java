@@ -0,0 +1,164 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.io.HessianRpcOutput;
+import com.caucho.hessian.server.HessianGatewayServlet;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianGatewayTest {
+
+    static Server server;
+    static String base;
+    static String url;
+
+    static ColumnarService columnarService = new ColumnarService();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+
+        ServletHolder columnar = new ServletHolder(columnarService);
+        columnar.setInitParameter("columnar-lists", "true");
+        handler.addServletWithMapping(columnar, "/lines");
+
+        handler.addServletWithMapping(new ServletHolder(new BasicService()), "/hello");
+
+        HessianGatewayServlet gateway = new HessianGatewayServlet();
+        ServletHolder gatewayHolder = new ServletHolder(gateway);
+        gatewayHolder.setInitParameter("route-header", "X-Route");
+        handler.addServletWithMapping(gatewayHolder, "/gateway");
+
+        server.setHandler(handler);
+        server.start();
+
+        base = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        url = base + "/gateway";
+
+        gateway.addRoute("hello", new URL(base + "/hello"));
+        gateway.addRoute("divide", new URL(base + "/hello"));
+        gateway.addRoute("lines", new URL(base + "/lines"));
+        gateway.addRoute("total", new URL(base + "/lines"));
+        gateway.addRoute("basic", new URL(base + "/hello"));
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    private static String repeat(int count) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            sb.append("forwarded-");
+        }
+
+        return sb.toString();
+    }
+
+    private static HttpURLConnection post(String method, Object[] args, String route) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "x-application/hessian");
+
+        if (route != null) {
+            conn.setRequestProperty("X-Route", route);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = new HessianRpcOutput(bos);
+        out.call(method, args);
+        out.close();
+
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(bos.toByteArray());
+        }
+
+        return conn;
+    }
+
+    private static Object readReply(InputStream is) throws Throwable {
+        assertEquals('H', is.read());
+        is.read();
+        is.read();
+
+        return new HessianRpcInput(is).readReply(Object.class);
+    }
+
+    @Test
+    void testRoutesByMethod() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+
+        BasicAPI basic = (BasicAPI) factory.create(BasicAPI.class, url);
+        ColumnarAPI columnar = (ColumnarAPI) factory.create(ColumnarAPI.class, url);
+
+        String name = repeat(100000);
+
+        assertEquals("Hello " + name, basic.hello(name));
+        assertThrows(ArithmeticException.class, () -> basic.divide(1, 0));
+
+        List<ColumnarAPI.Line> lines = columnar.lines(20);
+
+        assertEquals(ColumnarService.createLines(20), lines);
+        assertEquals(19000L, columnar.total(lines));
+    }
+
+    @Test
+    void testNegotiationAndCompressionPassThrough() throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setCompressRequest(true);
+        factory.setColumnarListEncoding(true);
+
+        ColumnarAPI columnar = (ColumnarAPI) factory.create(ColumnarAPI.class, url);
+
+        for (int i = 0; i < 3; i++) {
+            List<ColumnarAPI.Line> lines = columnar.lines(5000);
+
+            assertEquals(ColumnarService.createLines(5000), lines);
+            assertEquals(1249750000L, columnar.total(lines));
+        }
+
+        synchronized (columnarService) {
+            assertEquals("true", columnarService.columnarHeaders.get(columnarService.columnarHeaders.size() - 1));
+        }
+    }
+
+    @Test
+    void testRoutesByHeader() throws Throwable {
+        HttpURLConnection conn = post("hello", new Object[] {"header"}, "basic");
+
+        assertEquals(200, conn.getResponseCode());
+
+        try (InputStream is = conn.getInputStream()) {
+            assertEquals("Hello header", readReply(is));
+        }
+    }
+
+    @Test
+    void testUnroutedCallIsRejected() throws Exception {
+        assertEquals(404, post("unknown", new Object[0], null).getResponseCode());
+        assertEquals(404, post("hello", new Object[] {"x"}, "missing").getResponseCode());
+
+        HessianProxyFactory factory = new HessianProxyFactory();
+        StreamAPI client = (StreamAPI) factory.create(StreamAPI.class, url);
+
+        assertThrows(RuntimeException.class, client::isClosed);
+    }
+}
@@ -0,0 +1,342 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.client.HessianConnectionException;
+import com.caucho.hessian.client.HessianPooledConnectionFactory;
+import com.caucho.hessian.client.HessianProxyFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianPooledConnectionFactoryTest {
+
+    static Server server;
+    static String url;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        handler.addServletWithMapping(new ServletHolder(new BasicService()), "/hello");
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/hello";
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    private static BasicAPI create(HessianPooledConnectionFactory pool) throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        pool.setHessianProxyFactory(factory);
+        factory.setConnectionFactory(pool);
+
+        return (BasicAPI) factory.create(BasicAPI.class, url);
+    }
+
+    @Test
+    void testKeepalive() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        BasicAPI client = create(pool);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Hello " + i, client.hello(String.valueOf(i)));
+        }
+
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(9, pool.getReusedCount());
+        assertEquals(0, pool.getLeasedCount());
+        assertEquals(1, pool.getIdleCount());
+
+        pool.close();
+
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void testFaultKeepsConnection() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        BasicAPI client = create(pool);
+
+        assertThrows(ArithmeticException.class, () -> client.divide(10, 0));
+        assertEquals(5, client.divide(10, 2));
+
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+
+        pool.close();
+    }
+
+    @Test
+    void testIdleEviction() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        pool.setMaxIdleTime(0);
+        BasicAPI client = create(pool);
+
+        client.hello("a");
+        client.hello("b");
+
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(0, pool.getReusedCount());
+        assertTrue(pool.getEvictedCount() >= 1);
+
+        pool.evictIdle();
+
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void testPerHostLimit() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        pool.setMaxConnectionsPerHost(2);
+        BasicAPI client = create(pool);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 64; i++) {
+                String name = String.valueOf(i);
+                futures.add(executor.submit(() -> client.hello(name)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("Hello " + i, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(pool.getCreatedCount() <= 2, "created " + pool.getCreatedCount());
+        assertEquals(0, pool.getLeasedCount());
+
+        pool.close();
+    }
+
+    @Test
+    void testAcquireTimeout() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        pool.setMaxConnectionsPerHost(1);
+        pool.setAcquireTimeout(10);
+        BasicAPI client = create(pool);
+
+        pool.open(new URL(url));
+
+        assertThrows(HessianConnectionException.class, () -> client.hello("timeout"));
+        assertEquals(1, pool.getTimeoutCount());
+    }
+
+    @Test
+    void testLimitChangeAppliesToUsedHost() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        pool.setMaxConnectionsPerHost(1);
+        pool.setAcquireTimeout(10);
+        BasicAPI client = create(pool);
+
+        assertEquals("Hello first", client.hello("first"));
+
+        // the host's pool exists, with its only slot leased
+        pool.open(new URL(url));
+        assertThrows(HessianConnectionException.class, () -> client.hello("full"));
+
+        pool.setMaxConnectionsPerHost(2);
+        assertEquals("Hello raised", client.hello("raised"));
+
+        pool.setMaxConnections(1);
+        assertThrows(HessianConnectionException.class, () -> client.hello("total"));
+        assertEquals(2, pool.getTimeoutCount());
+
+        pool.close();
+    }
+
+    @Test
+    void testHttp2() throws Exception {
+        HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory();
+        pool.setHttp2(true);
+        BasicAPI client = create(pool);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Hello " + i, client.hello(String.valueOf(i)));
+        }
+
+        assertThrows(ArithmeticException.class, () -> client.divide(10, 0));
+
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    /**
+     * A keepalive HTTP peer answering each call with the Hessian reply
+     * "ok", which handles the nth request of a connection as scripted.
+     */
+    static final class ScriptedServer implements AutoCloseable {
+        static final byte[] REPLY = {'H', 2, 0, 'R', 2, 'o', 'k'};
+
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final AtomicInteger requestCount = new AtomicInteger();
+
+        /**
+         * what to do with the second request of the first connection:
+         * "close" closes the idle connection before it, "hang" reads it
+         * and never answers
+         */
+        final String secondRequest;
+
+        ScriptedServer(String secondRequest) throws IOException {
+            this.secondRequest = secondRequest;
+
+            Thread thread = new Thread(this::accept);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String url() {
+            return "http://localhost:" + serverSocket.getLocalPort() + "/hello";
+        }
+
+        private void accept() {
+            try {
+                for (int connection = 0; ; connection++) {
+                    Socket socket = serverSocket.accept();
+
+                    try {
+                        serve(socket, connection == 0);
+                    } catch (IOException e) {
+                        // the client closed the connection
+                    }
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void serve(Socket socket, boolean isFirst) throws IOException {
+            InputStream is = socket.getInputStream();
+            OutputStream os = socket.getOutputStream();
+
+            for (int i = 0; ; i++) {
+                if (isFirst && i == 1 && "close".equals(secondRequest)) {
+                    socket.close();
+                    return;
+                }
+
+                if (!readRequest(is)) {
+                    return;
+                }
+
+                requestCount.incrementAndGet();
+
+                if (isFirst && i == 1 && "hang".equals(secondRequest)) {
+                    continue;
+                }
+
+                os.write(("HTTP/1.1 200 OK\r\nContent-Length: " + REPLY.length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                os.write(REPLY);
+                os.flush();
+            }
+        }
+
+        private static boolean readRequest(InputStream is) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int contentLength = 0;
+            boolean isStarted = false;
+            int ch;
+
+            while ((ch = is.read()) >= 0) {
+                isStarted = true;
+
+                if (ch != '\n') {
+                    line.append((char) ch);
+                    continue;
+                }
+
+                String header = line.toString().trim();
+                line.setLength(0);
+
+                if (header.isEmpty()) {
+                    is.readNBytes(contentLength);
+                    return true;
+                } else if (header.toLowerCase().startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+            }
+
+            if (isStarted) {
+                throw new IOException("truncated request");
+            }
+
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+
+    private static BasicAPI create(HessianPooledConnectionFactory pool, String url, long readTimeout) throws Exception {
+        HessianProxyFactory factory = new HessianProxyFactory();
+        factory.setReadTimeout(readTimeout);
+        pool.setHessianProxyFactory(factory);
+        factory.setConnectionFactory(pool);
+
+        return (BasicAPI) factory.create(BasicAPI.class, url);
+    }
+
+    @Test
+    void testClosedIdleConnectionIsRetried() throws Exception {
+        try (ScriptedServer server = new ScriptedServer("close");
+                HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory()) {
+            BasicAPI client = create(pool, server.url(), 5000);
+
+            assertEquals("ok", client.hello("a"));
+
+            // let the server close the idle connection
+            Thread.sleep(100);
+
+            assertEquals("ok", client.hello("b"));
+            assertEquals(2, server.requestCount.get());
+            assertEquals(2, pool.getCreatedCount());
+        }
+    }
+
+    @Test
+    void testReadTimeoutIsNotRetried() throws Exception {
+        try (ScriptedServer server = new ScriptedServer("hang");
+                HessianPooledConnectionFactory pool = new HessianPooledConnectionFactory()) {
+            BasicAPI client = create(pool, server.url(), 300);
+
+            assertEquals("ok", client.hello("a"));
+            assertThrows(RuntimeException.class, () -> client.hello("b"));
+
+            Thread.sleep(200);
+
+            assertEquals(2, server.requestCount.get());
+            assertEquals(1, pool.getCreatedCount());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.server.HessianReplyCache;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HessianReplyCacheTest {
+
+    static Server server;
+    static String url;
+
+    static CacheService service = new CacheService();
+    static CacheService smallService = new CacheService();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+
+        ServletHolder holder = new ServletHolder(service);
+        holder.setInitParameter("reply-cache-size", "1000000");
+        holder.setInitParameter("reply-cache-methods", "configured");
+        handler.addServletWithMapping(holder, "/cache");
+
+        ServletHolder smallHolder = new ServletHolder(smallService);
+        smallHolder.setInitParameter("reply-cache-size", "2000");
+        handler.addServletWithMapping(smallHolder, "/small");
+
+        server.setHandler(handler);
+        server.start();
+
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    @BeforeEach
+    void clearCache() {
+        service.getReplyCache().invalidateAll();
+    }
+
+    private static CacheAPI create(String path) throws Exception {
+        return (CacheAPI) new HessianProxyFactory().create(CacheAPI.class, url + path);
+    }
+
+    @Test
+    void testRepeatedCallIsCached() throws Exception {
+        CacheAPI client = create("/cache");
+        HessianReplyCache cache = service.getReplyCache();
+
+        int calls = service.calls.get();
+        long hits = cache.getHitCount();
+
+        List<String> first = client.catalog("eu", 100);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, client.catalog("eu", 100));
+        }
+
+        assertEquals(1, service.calls.get() - calls);
+        assertEquals(5, cache.getHitCount() - hits);
+        assertTrue(cache.getHitRate() > 0);
+
+        assertEquals("us-item-0", client.catalog("us", 100).get(0));
+        assertEquals(2, service.calls.get() - calls);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testConfiguredAndUncachedMethods() throws Exception {
+        CacheAPI client = create("/cache");
+
+        int calls = service.calls.get();
+
+        assertEquals("a", client.configured("a"));
+        assertEquals("a", client.configured("a"));
+        assertEquals(1, service.calls.get() - calls);
+
+        assertEquals("b", client.uncached("b"));
+        assertEquals("b", client.uncached("b"));
+        assertEquals(3, service.calls.get() - calls);
+    }
+
+    @Test
+    void testInvalidate() throws Exception {
+        CacheAPI client = create("/cache");
+        HessianReplyCache cache = service.getReplyCache();
+
+        int calls = service.calls.get();
+
+        client.catalog("eu", 10);
+        client.catalog("eu", 10);
+        assertEquals(1, service.calls.get() - calls);
+
+        cache.invalidate("catalog");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getByteSize());
+
+        // only replies removed for the size limit count as evictions
+        assertEquals(0, cache.getEvictionCount());
+
+        client.catalog("eu", 10);
+        assertEquals(2, service.calls.get() - calls);
+
+        cache.invalidate(CacheAPI.class.getMethod("catalog", String.class, int.class), "eu", 10);
+
+        client.catalog("eu", 10);
+        assertEquals(3, service.calls.get() - calls);
+    }
+
+    @Test
+    void testInvalidateDuringCall() throws Exception {
+        CacheAPI client = create("/cache");
+
+        service.version = "v1";
+        service.invoked = new CountDownLatch(1);
+        service.released = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> stale = executor.submit(() -> client.latest("key"));
+
+            assertTrue(service.invoked.await(30, TimeUnit.SECONDS));
+
+            // the value changes while the call runs
+            service.version = "v2";
+            service.getReplyCache().invalidate("latest");
+            service.released.countDown();
+
+            assertEquals("key-v1", stale.get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the reply computed before the invalidation was not cached
+        assertEquals("key-v2", client.latest("key"));
+        assertEquals("key-v2", client.latest("key"));
+        assertEquals(1, service.getReplyCache().size());
+    }
+
+    @Test
+    void testTtl() throws Exception {
+        CacheAPI client = create("/cache");
+
+        int calls = service.calls.get();
+
+        client.shortLived("x");
+        client.shortLived("x");
+        assertEquals(1, service.calls.get() - calls);
+
+        Thread.sleep(100);
+
+        client.shortLived("x");
+        assertEquals(2, service.calls.get() - calls);
+    }
+
+    @Test
+    void testLruEviction() throws Exception {
+        CacheAPI client = create("/small");
+        HessianReplyCache cache = smallService.getReplyCache();
+
+        for (int i = 0; i < 10; i++) {
+            client.catalog("region-" + i, 20);
+        }
+
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getByteSize() <= 2000);
+
+        int calls = smallService.calls.get();
+
+        client.catalog("region-9", 20);
+        assertEquals(calls, smallService.calls.get());
+
+        client.catalog("region-0", 20);
+        assertEquals(calls + 1, smallService.calls.get());
+    }
+
+    @Test
+    void testConcurrentHits() throws Exception {
+        CacheAPI client = create("/cache");
+        HessianReplyCache cache = service.getReplyCache();
+
+        List<String> expected = client.catalog("concurrent", 50);
+
+        int calls = service.calls.get();
+        long hits = cache.getHitCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() -> client.catalog("concurrent", 50)));
+            }
+
+            for (Future<List<String>> result : results) {
+                assertEquals(expected, result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(calls, service.calls.get());
+        assertEquals(200, cache.getHitCount() - hits);
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.io.HessianResultStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianResultStreamTest {
+
+    static Server server;
+    static StreamAPI client;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        handler.addServletWithMapping(new ServletHolder(new StreamService()), "/stream");
+        server.setHandler(handler);
+        server.start();
+
+        String url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/stream";
+
+        client = (StreamAPI) new HessianProxyFactory().create(StreamAPI.class, url);
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (server != null) server.stop();
+    }
+
+    @Test
+    void testIterator() {
+        Iterator<Integer> values = client.range(100000);
+
+        long sum = 0;
+        int count = 0;
+
+        while (values.hasNext()) {
+            sum += values.next();
+            count++;
+        }
+
+        assertEquals(100000, count);
+        assertEquals(100000L * 99999 / 2, sum);
+        assertFalse(values.hasNext());
+    }
+
+    @Test
+    void testStream() {
+        try (Stream<String> words = client.words(1000)) {
+            List<String> list = words.collect(Collectors.toList());
+
+            assertEquals(1000, list.size());
+            assertEquals("word-0", list.get(0));
+            assertEquals("word-999", list.get(999));
+        }
+
+        assertTrue(client.isClosed());
+    }
+
+    @Test
+    void testFaultAfterElements() {
+        HessianResultStream<String> values = client.failAfter(10);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value-" + i, values.next());
+        }
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, values::hasNext);
+        assertEquals("failed after 10", e.getMessage());
+
+        assertFalse(values.hasNext());
+        assertNull(client.empty(true));
+    }
+
+    @Test
+    void testCloseBeforeEnd() {
+        try (HessianResultStream<String> values = client.failAfter(1000000)) {
+            assertEquals("value-0", values.next());
+            assertEquals("value-1", values.next());
+        }
+
+        Iterator<Integer> values = client.range(2);
+        assertEquals(0, values.next());
+        assertEquals(1, values.next());
+        assertFalse(values.hasNext());
+    }
+
+    @Test
+    void testEmpty() {
+        try (HessianResultStream<String> values = client.empty(false)) {
+            assertFalse(values.hasNext());
+        }
+
+        assertNull(client.empty(true));
+    }
+}
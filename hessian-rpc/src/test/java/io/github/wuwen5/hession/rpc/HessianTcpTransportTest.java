@@ -0,0 +1,186 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.client.HessianConnectionException;
+import com.caucho.hessian.client.HessianProxyFactory;
+import com.caucho.hessian.tcp.HessianTcpConnectionFactory;
+import com.caucho.hessian.tcp.HessianTcpServer;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class HessianTcpTransportTest {
+
+    static HessianTcpServer server;
+    static HessianTcpConnectionFactory connectionFactory;
+    static HessianProxyFactory factory;
+    static String url;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        server = new HessianTcpServer();
+        server.addService("/basic", new BasicService(), BasicAPI.class);
+        server.addService("/async", new AsyncService(), AsyncAPI.class);
+        server.bind(new InetSocketAddress("localhost", 0));
+
+        url = "http://localhost:" + server.getPort();
+
+        connectionFactory = new HessianTcpConnectionFactory();
+
+        factory = new HessianProxyFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setReadTimeout(10000);
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        if (connectionFactory != null) connectionFactory.close();
+        if (server != null) server.close();
+    }
+
+    @Test
+    void testConcurrentCalls() throws Exception {
+        BasicAPI basic = (BasicAPI) factory.create(BasicAPI.class, url + "/basic");
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+
+            for (int i = 0; i < 500; i++) {
+                String name = "caller-" + i;
+                results.add(executor.submit(() -> basic.hello(name)));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("Hello caller-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, connectionFactory.getPendingCount());
+    }
+
+    @Test
+    void testCompressedRequest() throws Exception {
+        HessianProxyFactory compressFactory = new HessianProxyFactory();
+        compressFactory.setConnectionFactory(connectionFactory);
+        compressFactory.setCompressRequest(true);
+
+        BasicAPI basic = (BasicAPI) compressFactory.create(BasicAPI.class, url + "/basic");
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 4000; i++) {
+            sb.append("tcp-");
+        }
+
+        assertEquals("Hello " + sb, basic.hello(sb.toString()));
+    }
+
+    @Test
+    void testFault() throws Exception {
+        BasicAPI basic = (BasicAPI) factory.create(BasicAPI.class, url + "/basic");
+
+        assertThrows(ArithmeticException.class, () -> basic.divide(1, 0));
+        assertEquals(3, basic.divide(9, 3));
+    }
+
+    @Test
+    void testUnknownPath() throws Exception {
+        BasicAPI basic = (BasicAPI) factory.create(BasicAPI.class, url + "/missing");
+
+        HessianConnectionException e = assertThrows(HessianConnectionException.class, () -> basic.hello("x"));
+
+        assertTrue(e.getMessage().contains("404"), e.getMessage());
+    }
+
+    @Test
+    void testOutOfOrderReplies() throws Exception {
+        AsyncAPI async = (AsyncAPI) factory.create(AsyncAPI.class, url + "/async");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<CompletableFuture<String>> first = executor.submit(() -> async.await("first"));
+            Future<CompletableFuture<String>> second = executor.submit(() -> async.await("second"));
+
+            Thread.sleep(100);
+
+            async.release("second", "two");
+
+            assertEquals("two", second.get(10, TimeUnit.SECONDS).get());
+            assertFalse(first.isDone());
+
+            async.release("first", "one");
+
+            assertEquals("one", first.get(10, TimeUnit.SECONDS).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConnectionCallLimit() throws Exception {
+        AsyncService service = new AsyncService();
+
+        HessianTcpServer limitServer = new HessianTcpServer();
+        limitServer.setMaxConnectionCalls(2);
+        limitServer.addService("/async", service, AsyncAPI.class);
+        limitServer.bind(new InetSocketAddress("localhost", 0));
+
+        HessianTcpConnectionFactory limitConnectionFactory = new HessianTcpConnectionFactory();
+        HessianProxyFactory limitFactory = new HessianProxyFactory();
+        limitFactory.setConnectionFactory(limitConnectionFactory);
+        limitFactory.setReadTimeout(10000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            AsyncAPI async = (AsyncAPI)
+                    limitFactory.create(AsyncAPI.class, "http://localhost:" + limitServer.getPort() + "/async");
+
+            List<Future<CompletableFuture<String>>> results = new ArrayList<>();
+
+            for (int i = 0; i < 3; i++) {
+                String key = "limit-" + i;
+                results.add(executor.submit(() -> async.await(key)));
+            }
+
+            for (int i = 0; i < 500 && service.pending.size() < 2; i++) {
+                Thread.sleep(10);
+            }
+
+            Thread.sleep(200);
+
+            // the third call stays unread until one of the first two completes
+            assertEquals(2, service.pending.size());
+
+            for (int i = 0; i < 3; i++) {
+                service.release("limit-" + i, "value-" + i);
+            }
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(
+                        "value-" + i, results.get(i).get(10, TimeUnit.SECONDS).get());
+            }
+        } finally {
+            executor.shutdownNow();
+            limitConnectionFactory.close();
+            limitServer.close();
+        }
+    }
+}
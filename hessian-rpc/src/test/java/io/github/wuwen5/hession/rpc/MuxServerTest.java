@@ -0,0 +1,245 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.io.HessianRpcOutput;
+import com.caucho.hessian.mux.MuxInputStream;
+import com.caucho.hessian.mux.MuxOutputStream;
+import com.caucho.hessian.mux.MuxServer;
+import com.caucho.hessian.server.HessianSkeleton;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class MuxServerTest {
+
+    private ServerSocket serverSocket;
+    private MuxServer client;
+    private MuxServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ExecutorService callers = Executors.newFixedThreadPool(64);
+
+    @AfterEach
+    public void close() throws Exception {
+        if (client != null) client.close();
+        if (server != null) server.close();
+        if (serverSocket != null) serverSocket.close();
+        executor.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    /**
+     * Connects a client and server mux, dispatching each server channel to
+     * the handler on its own thread.
+     */
+    private void connect(BiConsumer<MuxInputStream, MuxOutputStream> handler) throws Exception {
+        serverSocket = new ServerSocket(0);
+
+        Future<Socket> accept = executor.submit(serverSocket::accept);
+        Socket clientSocket = new Socket("localhost", serverSocket.getLocalPort());
+        Socket serverSideSocket = accept.get();
+
+        client = new MuxServer(clientSocket.getInputStream(), clientSocket.getOutputStream(), true);
+        server = new MuxServer(serverSideSocket.getInputStream(), serverSideSocket.getOutputStream(), false);
+
+        executor.submit(() -> {
+            while (true) {
+                MuxInputStream in = new MuxInputStream();
+                MuxOutputStream out = new MuxOutputStream();
+
+                if (!server.readRequest(in, out)) {
+                    return null;
+                }
+
+                executor.submit(() -> handler.accept(in, out));
+            }
+        });
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+
+        while ((len = is.read(buffer, 0, buffer.length)) > 0) {
+            bos.write(buffer, 0, len);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static void echo(MuxInputStream in, MuxOutputStream out) {
+        try {
+            String url = in.getURL();
+            byte[] data = readAll(in);
+            in.close();
+
+            out.write((url + ":").getBytes(StandardCharsets.UTF_8));
+            out.write(data);
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String call(String url, String body) throws IOException {
+        MuxInputStream in = new MuxInputStream();
+        MuxOutputStream out = new MuxOutputStream();
+
+        client.startCall(in, out);
+
+        out.writeURL(url);
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+        out.close();
+
+        String reply = new String(readAll(in), StandardCharsets.UTF_8);
+        in.close();
+
+        return reply;
+    }
+
+    @Test
+    void testManyConcurrentChannels() throws Exception {
+        connect(MuxServerTest::echo);
+
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            String body = "body-" + i;
+            calls.add(CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            return call("/echo", body);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    },
+                    callers));
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            assertEquals("/echo:body-" + i, calls.get(i).get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testSlowChannelDoesNotBlockOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        connect((in, out) -> {
+            try {
+                if ("/slow".equals(in.getURL())) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            echo(in, out);
+        });
+
+        byte[] large = new byte[MuxServer.WINDOW * 8];
+
+        CompletableFuture<Integer> slow = CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        MuxInputStream in = new MuxInputStream();
+                        MuxOutputStream out = new MuxOutputStream();
+
+                        client.startCall(in, out);
+
+                        out.writeURL("/slow");
+                        out.write(large);
+                        out.close();
+
+                        return readAll(in).length;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                },
+                executor);
+
+        // the slow channel's writer is stalled by its window, while other
+        // channels keep flowing
+        for (int i = 0; i < 10; i++) {
+            assertEquals("/fast:" + i, call("/fast", String.valueOf(i)));
+        }
+
+        assertFalse(slow.isDone());
+
+        release.countDown();
+
+        assertEquals(large.length + "/slow:".length(), slow.get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testHessianCalls() throws Exception {
+        HessianSkeleton skeleton = new HessianSkeleton(new BasicService(), BasicAPI.class);
+
+        connect((in, out) -> {
+            try {
+                skeleton.invoke(in, out);
+                out.close();
+                in.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        List<CompletableFuture<Object>> calls = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            String name = String.valueOf(i);
+
+            calls.add(CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            MuxInputStream in = new MuxInputStream();
+                            MuxOutputStream out = new MuxOutputStream();
+
+                            client.startCall(in, out);
+
+                            HessianRpcOutput hOut = new HessianRpcOutput(out);
+                            hOut.call("hello", new Object[] {name});
+                            hOut.flush();
+                            out.close();
+
+                            assertEquals('H', in.read());
+                            in.read();
+                            in.read();
+
+                            Object value = new HessianRpcInput(in).readReply(String.class);
+                            in.close();
+
+                            return value;
+                        } catch (Throwable e) {
+                            throw new RuntimeException(e);
+                        }
+                    },
+                    callers));
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            assertEquals("Hello " + i, calls.get(i).get(30, TimeUnit.SECONDS));
+        }
+
+        assertTrue(client.getChannelCount() < calls.size());
+    }
+}
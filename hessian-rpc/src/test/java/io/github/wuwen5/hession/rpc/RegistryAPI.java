@@ -0,0 +1,33 @@
+package io.github.wuwen5.hession.rpc;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+public interface RegistryAPI {
+    Point move(Point point, int dx);
+
+    List<Point> path(int length);
+
+    class Point implements Serializable {
+        int x;
+        int y;
+
+        public Point() {}
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y);
+        }
+    }
+}
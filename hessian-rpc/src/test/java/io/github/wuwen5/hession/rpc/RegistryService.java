@@ -0,0 +1,38 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.server.HessianServlet;
+import com.caucho.services.server.ServiceContext;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+
+public class RegistryService extends HessianServlet implements RegistryAPI {
+
+    final List<String> encodedRegistries = new ArrayList<>();
+
+    @Override
+    public Point move(Point point, int dx) {
+        record();
+
+        return new Point(point.x + dx, point.y);
+    }
+
+    @Override
+    public List<Point> path(int length) {
+        record();
+
+        List<Point> points = new ArrayList<>();
+
+        for (int i = 0; i < length; i++) {
+            points.add(new Point(i, -i));
+        }
+
+        return points;
+    }
+
+    private synchronized void record() {
+        HttpServletRequest req = (HttpServletRequest) ServiceContext.getContextRequest();
+
+        encodedRegistries.add(req.getHeader("X-Hessian-Encoded-Registry"));
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.io.HessianResultStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+public interface StreamAPI {
+    Iterator<Integer> range(int count);
+
+    Stream<String> words(int count);
+
+    HessianResultStream<String> failAfter(int count);
+
+    HessianResultStream<String> empty(boolean isNull);
+
+    boolean isClosed();
+}
@@ -0,0 +1,46 @@
+package io.github.wuwen5.hession.rpc;
+
+import com.caucho.hessian.io.HessianResultStream;
+import com.caucho.hessian.server.HessianServlet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class StreamService extends HessianServlet implements StreamAPI {
+
+    volatile boolean isClosed;
+
+    @Override
+    public Iterator<Integer> range(int count) {
+        return IntStream.range(0, count).iterator();
+    }
+
+    @Override
+    public Stream<String> words(int count) {
+        isClosed = false;
+
+        return IntStream.range(0, count).mapToObj(i -> "word-" + i).onClose(() -> isClosed = true);
+    }
+
+    @Override
+    public HessianResultStream<String> failAfter(int count) {
+        return HessianResultStream.of(IntStream.rangeClosed(0, count).mapToObj(i -> {
+            if (i == count) {
+                throw new IllegalStateException("failed after " + count);
+            }
+
+            return "value-" + i;
+        }));
+    }
+
+    @Override
+    public HessianResultStream<String> empty(boolean isNull) {
+        return isNull ? null : HessianResultStream.of(Collections.emptyIterator());
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+}
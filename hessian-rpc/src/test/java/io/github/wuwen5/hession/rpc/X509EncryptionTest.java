@@ -0,0 +1,166 @@
+package io.github.wuwen5.hession.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.io.HessianRpcOutput;
+import com.caucho.hessian.security.X509Encryption;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class X509EncryptionTest {
+
+    static X509Certificate cert;
+    static PrivateKey privateKey;
+
+    @BeforeAll
+    public static void loadKeys() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+
+        try (InputStream is = X509EncryptionTest.class.getResourceAsStream("/x509-test.p12")) {
+            keyStore.load(is, "changeit".toCharArray());
+        }
+
+        cert = (X509Certificate) keyStore.getCertificate("hessian");
+        privateKey = (PrivateKey) keyStore.getKey("hessian", "changeit".toCharArray());
+    }
+
+    private static X509Encryption create(boolean isSession) {
+        X509Encryption encryption = new X509Encryption();
+        encryption.setCertificate(cert);
+        encryption.setPrivateKey(privateKey);
+        encryption.setSessionEnabled(isSession);
+
+        return encryption;
+    }
+
+    private static byte[] wrap(X509Encryption encryption, Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = encryption.wrap(new HessianRpcOutput(bos));
+        out.writeObject(value);
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static Object unwrap(X509Encryption encryption, byte[] data) throws IOException {
+        HessianRpcInput in = encryption.unwrap(new HessianRpcInput(new ByteArrayInputStream(data)));
+        Object value = in.readObject();
+        in.close();
+
+        return value;
+    }
+
+    private static Map<String, Object> readHeaders(byte[] data) throws IOException {
+        HessianRpcInput in = new HessianRpcInput(new ByteArrayInputStream(data));
+        in.readEnvelope();
+        in.readMethod();
+
+        Map<String, Object> headers = new HashMap<>();
+        int len = in.readInt();
+
+        for (int i = 0; i < len; i++) {
+            headers.put(in.readString(), in.readObject());
+        }
+
+        return headers;
+    }
+
+    @Test
+    void testPerMessageKey() throws Exception {
+        X509Encryption encryption = create(false);
+
+        byte[] a = wrap(encryption, "hello");
+        byte[] b = wrap(encryption, "hello");
+
+        assertFalse(Arrays.equals(
+                (byte[]) readHeaders(a).get("key"), (byte[]) readHeaders(b).get("key")));
+        assertNull(readHeaders(a).get("session"));
+
+        assertEquals("hello", unwrap(encryption, a));
+        assertEquals("hello", unwrap(encryption, b));
+    }
+
+    @Test
+    void testSessionReusesKey() throws Exception {
+        X509Encryption sender = create(true);
+        X509Encryption receiver = create(true);
+
+        byte[] a = wrap(sender, "first");
+        byte[] b = wrap(sender, "second");
+
+        Map<String, Object> headersA = readHeaders(a);
+        Map<String, Object> headersB = readHeaders(b);
+
+        assertEquals("AES/GCM/NoPadding", headersA.get("algorithm"));
+        assertArrayEquals((byte[]) headersA.get("session"), (byte[]) headersB.get("session"));
+        assertArrayEquals((byte[]) headersA.get("key"), (byte[]) headersB.get("key"));
+        assertFalse(Arrays.equals((byte[]) headersA.get("iv"), (byte[]) headersB.get("iv")));
+
+        assertEquals("first", unwrap(receiver, a));
+        assertEquals("second", unwrap(receiver, b));
+
+        // a recipient without the cached session unwraps the repeated key
+        assertEquals("second", unwrap(create(false), b));
+    }
+
+    @Test
+    void testSessionKeyIsAes() throws Exception {
+        X509Encryption sender = create(true);
+        sender.setAlgorithm("DESede");
+
+        X509Encryption receiver = create(true);
+        receiver.setAlgorithm("DESede");
+
+        byte[] data = wrap(sender, "hello");
+
+        assertEquals("AES/GCM/NoPadding", readHeaders(data).get("algorithm"));
+        assertEquals("hello", unwrap(receiver, data));
+    }
+
+    @Test
+    void testSessionExpires() throws Exception {
+        X509Encryption sender = create(true);
+        sender.setSessionTimeout(0);
+
+        byte[] a = wrap(sender, "first");
+        byte[] b = wrap(sender, "second");
+
+        assertFalse(Arrays.equals(
+                (byte[]) readHeaders(a).get("session"), (byte[]) readHeaders(b).get("session")));
+
+        assertEquals("first", unwrap(sender, a));
+        assertEquals("second", unwrap(sender, b));
+    }
+
+    @Test
+    void testSessionTamperDetected() throws Exception {
+        X509Encryption encryption = create(true);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("authenticated ");
+        }
+
+        byte[] data = wrap(encryption, sb.toString());
+
+        // flip a byte inside the ciphertext, just before the footer
+        data[data.length - 8] ^= 1;
+
+        assertThrows(IOException.class, () -> unwrap(encryption, data));
+    }
+}
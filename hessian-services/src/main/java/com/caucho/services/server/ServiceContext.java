@@ -49,6 +49,7 @@
 package com.caucho.services.server;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletionStage;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -73,6 +74,8 @@ public class ServiceContext {
     private String _objectId;
     private int _count;
     private HashMap _headers = new HashMap();
+    private boolean _isAsyncSupported;
+    private CompletionStage<?> _pendingReply;
 
     private ServiceContext() {}
 
@@ -121,6 +124,37 @@ public class ServiceContext {
         return _headers.get(header);
     }
 
+    /**
+     * Sets true if the transport can complete the reply after the
+     * service method returns.
+     */
+    public void setAsyncSupported(boolean isAsyncSupported) {
+        _isAsyncSupported = isAsyncSupported;
+    }
+
+    /**
+     * Returns true if the transport can complete the reply after the
+     * service method returns.
+     */
+    public boolean isAsyncSupported() {
+        return _isAsyncSupported;
+    }
+
+    /**
+     * Sets the completion of a reply which is still being produced.
+     */
+    public void setPendingReply(CompletionStage<?> pendingReply) {
+        _pendingReply = pendingReply;
+    }
+
+    /**
+     * Returns the completion of a reply which is still being produced, or
+     * null if the reply has been written.
+     */
+    public CompletionStage<?> getPendingReply() {
+        return _pendingReply;
+    }
+
     /**
      * Gets a header from the context.
      */
@@ -180,6 +214,8 @@ public class ServiceContext {
         if (context != null && --context._count == 0) {
             context._request = null;
             context._response = null;
+            context._isAsyncSupported = false;
+            context._pendingReply = null;
 
             context._headers.clear();
 
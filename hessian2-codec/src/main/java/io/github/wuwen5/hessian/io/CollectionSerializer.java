@@ -52,6 +52,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import lombok.Setter;
 
 /**
@@ -83,6 +84,10 @@ public class CollectionSerializer extends AbstractSerializer {
         Class<?> cl = obj.getClass();
         boolean hasEnd;
 
+        if (cl.equals(ArrayList.class) && ColumnarListSerializer.writeList((List<?>) obj, out)) {
+            return;
+        }
+
         if (cl.equals(ArrayList.class) || !Serializable.class.isAssignableFrom(cl)) {
             hasEnd = out.writeListBegin(list.size(), null);
         } else if (!sendJavaType) {
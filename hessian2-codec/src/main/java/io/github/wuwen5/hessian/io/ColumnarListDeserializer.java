@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Reads a list written as columns by {@link ColumnarListSerializer} into
+ * an <code>ArrayList</code>.  Fields the local class lacks are skipped,
+ * and <code>readResolve</code> is applied once each row is complete.
+ */
+public class ColumnarListDeserializer extends AbstractListDeserializer {
+    static final ColumnarListDeserializer DESER = new ColumnarListDeserializer();
+
+    @Override
+    public Class<?> getType() {
+        return ArrayList.class;
+    }
+
+    @Override
+    public Object readList(AbstractHessianDecoder in, int length) throws IOException {
+        throw error("columnar list must have a fixed length");
+    }
+
+    @Override
+    public Object readLengthList(AbstractHessianDecoder in, int length) throws IOException {
+        ArrayList<Object> list = new ArrayList<>();
+
+        in.addRef(list);
+
+        String type = in.readString();
+        int rows = in.readInt();
+        int fieldCount = in.readInt();
+
+        if (rows < 0 || fieldCount < 0 || length != 3L + (long) fieldCount * (rows + 1)) {
+            throw error("columnar list of " + rows + " '" + type + "' with " + fieldCount
+                    + " fields does not have length " + length);
+        }
+
+        AbstractFieldDeserializer reader = getRowDeserializer(in, type);
+
+        FieldDeserializer[] fields = new FieldDeserializer[fieldCount];
+
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = (FieldDeserializer) reader.createField(in.readString());
+        }
+
+        Object[] values = new Object[rows];
+        int[] refs = new int[rows];
+
+        try {
+            // the rows take their references before any field is read
+            for (int j = 0; j < rows; j++) {
+                values[j] = reader.instantiate();
+                refs[j] = in.addRef(values[j]);
+            }
+
+            for (FieldDeserializer field : fields) {
+                for (Object value : values) {
+                    field.deserialize(in, value);
+                }
+            }
+
+            list.ensureCapacity(rows);
+
+            for (int j = 0; j < rows; j++) {
+                Object resolve = reader.resolve(in, values[j]);
+
+                if (resolve != values[j]) {
+                    in.setRef(refs[j], resolve);
+                }
+
+                list.add(resolve);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOExceptionWrapper(type + ":" + e.getMessage(), e);
+        }
+
+        return list;
+    }
+
+    private static AbstractFieldDeserializer getRowDeserializer(AbstractHessianDecoder in, String type)
+            throws IOException {
+        if (!(in instanceof HessianDecoder)) {
+            throw new HessianProtocolException("columnar list of '" + type + "' requires a HessianDecoder");
+        }
+
+        HessianDeserializer deserializer =
+                ((HessianDecoder) in).findSerializerFactory().getDeserializer(type);
+
+        if (!(deserializer instanceof AbstractFieldDeserializer)) {
+            throw new HessianProtocolException("'" + type + "' cannot be read as columns by " + deserializer);
+        }
+
+        return (AbstractFieldDeserializer) deserializer;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a list of objects of one class as columns: the class and its
+ * field names once, then the values of each field for all the rows in
+ * turn.  Values of one field are alike, so the columns compress far
+ * better than interleaved rows.
+ *
+ * <pre>
+ * columnar ::= list('hessian.columnar', 3 + fields * (rows + 1))
+ *              string(type) int(rows) int(fields) string{fields}
+ *              value{fields * rows}
+ * </pre>
+ *
+ * <p>The encoding is a well-formed fixed-length list, but only a
+ * {@link ColumnarListDeserializer} rebuilds the rows, so an encoder
+ * writes it only when {@link HessianEncoder#setColumnarListEncoding}
+ * was set for a peer known to read it.  The rows take references in
+ * list order before any field is written.
+ *
+ * <p>The list is written as rows, as {@link CollectionSerializer} always
+ * did, unless it is an <code>ArrayList</code> of at least
+ * {@link #MIN_ROWS} rows of exactly one class written by an
+ * {@link UnsafeSerializer} or {@link JavaSerializer} without
+ * <code>writeReplace</code>, none of them written before.
+ */
+final class ColumnarListSerializer {
+    static final String TYPE = "hessian.columnar";
+
+    /**
+     * the fewest rows written as columns
+     */
+    static final int MIN_ROWS = 8;
+
+    private ColumnarListSerializer() {}
+
+    /**
+     * Writes the list as columns, if the encoder and the list allow it.
+     * The list's own reference has been added.
+     *
+     * @return false if the list must be written as rows
+     */
+    static boolean writeList(List<?> list, AbstractHessianEncoder out) throws IOException {
+        if (!(out instanceof HessianEncoder)) {
+            return false;
+        }
+
+        HessianEncoder encoder = (HessianEncoder) out;
+        int rows = list.size();
+
+        if (!encoder.isColumnarListEncoding() || rows < MIN_ROWS) {
+            return false;
+        }
+
+        FieldBasedSerializer serializer = getRowSerializer(list, encoder.findSerializerFactory());
+
+        if (serializer == null) {
+            return false;
+        }
+
+        String[] fieldNames = serializer.getFieldNames();
+        long length = 3L + (long) fieldNames.length * (rows + 1);
+
+        if (length > Integer.MAX_VALUE || !encoder.addRowRefs(list)) {
+            return false;
+        }
+
+        encoder.writeListBegin((int) length, TYPE);
+        encoder.writeString(encoder.findSerializerFactory()
+                .getTypeAlias(list.get(0).getClass().getName()));
+        encoder.writeInt(rows);
+        encoder.writeInt(fieldNames.length);
+
+        for (String fieldName : fieldNames) {
+            encoder.writeString(fieldName);
+        }
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            for (Object row : list) {
+                serializer.writeField(row, i, encoder);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the serializer of the rows if they can be written as
+     * columns, or null.
+     */
+    private static FieldBasedSerializer getRowSerializer(List<?> list, Hessian2SerializerFactory factory)
+            throws IOException {
+        Object first = list.get(0);
+
+        if (first == null) {
+            return null;
+        }
+
+        Class<?> cl = first.getClass();
+
+        for (Object row : list) {
+            if (row == null || row.getClass() != cl) {
+                return null;
+            }
+        }
+
+        // unshared serializers never share rows
+        FieldBasedSerializer serializer = FieldBasedSerializer.asPlainFieldSerializer(factory.getSerializer(cl));
+
+        return serializer != null && serializer.fields.length > 0 ? serializer : null;
+    }
+}
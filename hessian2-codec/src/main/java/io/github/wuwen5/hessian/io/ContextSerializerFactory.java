@@ -438,6 +438,10 @@ public class ContextSerializerFactory {
 
         staticSerializerMap.put(Class.class.getName(), new ClassSerializer());
 
+        staticSerializerMap.put(HessianObject.class.getName(), GenericSerializer.SER);
+        staticSerializerMap.put(HessianList.class.getName(), GenericSerializer.SER);
+        staticSerializerMap.put(HessianMap.class.getName(), GenericSerializer.SER);
+
         staticDeserializerMap.put(Number.class.getName(), new BasicDeserializer(BasicSerializer.NUMBER));
 
         staticSerializerMap.put(Inet4Address.class.getName(), InetAddressSerializer.create());
@@ -65,6 +65,17 @@ public abstract class FieldBasedSerializer extends AbstractSerializer {
     protected Field[] fields;
     protected Method writeReplaceMethod;
 
+    /**
+     * encoded size of each field name as a map key
+     */
+    private int[] fieldNameSizes;
+
+    /**
+     * fields a reader building the object through its constructor leaves
+     * at their type's default, so they may be omitted when they hold it
+     */
+    private boolean[] omittableFields;
+
     /**
      * Common writeObject implementation with writeReplace handling
      */
@@ -96,6 +107,10 @@ public abstract class FieldBasedSerializer extends AbstractSerializer {
             throw new IllegalStateException(e);
         }
 
+        if (writeSparseObject(obj, out)) {
+            return;
+        }
+
         int ref = out.writeObjectBegin(cl.getName());
 
         if (ref == -1) {
@@ -106,6 +121,162 @@ public abstract class FieldBasedSerializer extends AbstractSerializer {
         writeInstance(obj, out);
     }
 
+    /**
+     * Writes the object as a typed map of its non-default fields, if the
+     * factory enables sparse objects and the map is smaller than the
+     * instance.
+     *
+     * <p>A field is omitted only if it holds its type's default and the
+     * constructor a reader would call leaves it there, so it reads back
+     * the same whether the reader allocates the object or constructs it.
+     * Fields the constructor initializes are always written.
+     *
+     * @return true if the object was written
+     */
+    protected boolean writeSparseObject(Object obj, AbstractHessianEncoder out) throws IOException {
+        if (fields.length == 0 || !out.findSerializerFactory().isSparseObjectEncoding()) {
+            return false;
+        }
+
+        boolean[] omittable = getOmittableFields(obj.getClass());
+
+        if (omittable == null) {
+            return false;
+        }
+
+        int[] nameSizes = getFieldNameSizes();
+
+        // an instance costs its class reference and a byte for each default
+        // field; a map costs its start and end codes, its type reference and
+        // a key for each other field.  The one-time class definition and
+        // type name are left out, as they are shared by later objects.
+        int instanceSize = 1;
+        int mapSize = 3;
+
+        for (int i = 0; i < fields.length; i++) {
+            if (omittable[i] && isDefaultField(obj, i)) {
+                instanceSize++;
+            } else {
+                mapSize += nameSizes[i];
+            }
+        }
+
+        if (instanceSize <= mapSize) {
+            return false;
+        }
+
+        out.writeMapBegin(obj.getClass().getName());
+
+        for (int i = 0; i < fields.length; i++) {
+            if (!(omittable[i] && isDefaultField(obj, i))) {
+                out.writeString(fields[i].getName());
+                writeField(obj, i, out);
+            }
+        }
+
+        out.writeMapEnd();
+
+        return true;
+    }
+
+    /**
+     * Returns the fields which may be omitted, found from an instance built
+     * as {@link JavaDeserializer} builds one, or null if none may be.
+     */
+    private boolean[] getOmittableFields(Class<?> cl) {
+        boolean[] omittable = omittableFields;
+
+        if (omittable == null) {
+            omittable = new boolean[fields.length];
+
+            try {
+                Object prototype = new JavaDeserializer(cl, FieldDeserializer2Factory.create()).instantiate();
+
+                for (int i = 0; i < fields.length; i++) {
+                    omittable[i] = isDefaultField(prototype, i);
+                }
+            } catch (HessianProtocolException | RuntimeException e) {
+                // without a prototype no field is known to read back as omitted
+            }
+
+            omittableFields = omittable;
+        }
+
+        for (boolean isOmittable : omittable) {
+            if (isOmittable) {
+                return omittable;
+            }
+        }
+
+        return null;
+    }
+
+    private int[] getFieldNameSizes() {
+        int[] sizes = fieldNameSizes;
+
+        if (sizes == null) {
+            sizes = new int[fields.length];
+
+            for (int i = 0; i < sizes.length; i++) {
+                int length = fields[i].getName().length();
+
+                sizes[i] = (length < 32 ? 1 : 2) + length;
+            }
+
+            fieldNameSizes = sizes;
+        }
+
+        return sizes;
+    }
+
+    /**
+     * True if the field holds its type's default value: null, zero or
+     * false, with floating point zero compared by its bits so -0.0 is not
+     * a default.  The default implementation returns false, which disables
+     * sparse objects.
+     */
+    protected boolean isDefaultField(Object obj, int index) {
+        return false;
+    }
+
+    /**
+     * Writes the value of one field.
+     */
+    protected abstract void writeField(Object obj, int index, AbstractHessianEncoder out) throws IOException;
+
+    /**
+     * Returns the value of one field, boxed if primitive.
+     */
+    protected abstract Object getFieldValue(Object obj, int index);
+
+    /**
+     * Sets the value of one field, unboxed if primitive.
+     */
+    protected abstract void setFieldValue(Object obj, int index, Object value);
+
+    /**
+     * Copies one field's value from the source to the target without
+     * boxing primitives.  Referenced objects are shared, not copied.
+     */
+    protected void copyField(Object source, Object target, int index) {
+        setFieldValue(target, index, getFieldValue(source, index));
+    }
+
+    /**
+     * Returns the serializer if it writes objects as exactly their fields,
+     * or null for unshared, <code>writeReplace</code> and specialized
+     * serializers.
+     */
+    static FieldBasedSerializer asPlainFieldSerializer(HessianSerializer serializer) {
+        if (serializer.getClass() != UnsafeSerializer.class && serializer.getClass() != JavaSerializer.class) {
+            return null;
+        }
+
+        FieldBasedSerializer fieldSerializer = (FieldBasedSerializer) serializer;
+
+        return fieldSerializer.writeReplaceMethod == null ? fieldSerializer : null;
+    }
+
     /**
      * Invokes writeReplace method
      */
@@ -124,6 +295,19 @@ public abstract class FieldBasedSerializer extends AbstractSerializer {
         }
     }
 
+    /**
+     * Returns the names of the fields in the order they are written.
+     */
+    String[] getFieldNames() {
+        String[] names = new String[fields.length];
+
+        for (int i = 0; i < fields.length; i++) {
+            names[i] = fields[i].getName();
+        }
+
+        return names;
+    }
+
     /**
      * Common field introspection logic
      */
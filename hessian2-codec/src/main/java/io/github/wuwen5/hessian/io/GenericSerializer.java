@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes the values of a generic decoder, {@link HessianObject},
+ * {@link HessianList} and {@link HessianMap}, in the form they were
+ * read.
+ */
+final class GenericSerializer extends AbstractSerializer {
+    static final GenericSerializer SER = new GenericSerializer();
+
+    private GenericSerializer() {}
+
+    @Override
+    public void writeObject(Object obj, AbstractHessianEncoder out) throws IOException {
+        if (out.addRef(obj)) {
+            return;
+        }
+
+        if (obj instanceof HessianObject) {
+            writeHessianObject((HessianObject) obj, out);
+        } else if (obj instanceof HessianList) {
+            writeHessianList((HessianList) obj, out);
+        } else {
+            writeHessianMap((HessianMap) obj, out);
+        }
+    }
+
+    private static void writeHessianObject(HessianObject obj, AbstractHessianEncoder out) throws IOException {
+        String[] fieldNames = obj.getFieldNames();
+        String key = obj.getType();
+
+        if (out instanceof HessianEncoder) {
+            key = ((HessianEncoder) out).getGenericDefinitionKey(key, fieldNames);
+        }
+
+        int ref = out.writeObjectBegin(key);
+
+        if (ref == -1) {
+            out.writeClassFieldLength(fieldNames.length);
+
+            for (String name : fieldNames) {
+                out.writeString(name);
+            }
+
+            out.writeObjectBegin(key);
+        }
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            out.writeObject(obj.get(i));
+        }
+    }
+
+    private static void writeHessianList(HessianList list, AbstractHessianEncoder out) throws IOException {
+        int size = list.size();
+        boolean hasEnd = out.writeListBegin(list.isVariableLength() ? -1 : size, list.getType());
+
+        for (int i = 0; i < size; i++) {
+            out.writeObject(list.get(i));
+        }
+
+        if (hasEnd) {
+            out.writeListEnd();
+        }
+    }
+
+    private static void writeHessianMap(HessianMap map, AbstractHessianEncoder out) throws IOException {
+        out.writeMapBegin(map.getType());
+
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+
+        out.writeMapEnd();
+    }
+}
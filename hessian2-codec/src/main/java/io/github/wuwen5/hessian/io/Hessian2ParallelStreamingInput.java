@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import io.github.wuwen5.hessian.util.HessianFreeList;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import lombok.Setter;
+
+/**
+ * Reads a Hessian 2 packet stream, as written by {@link Hessian2StreamingOutput},
+ * decoding the packets on an executor.
+ *
+ * <pre>
+ * Hessian2ParallelStreamingInput in = new Hessian2ParallelStreamingInput(is, executor, 4, true);
+ *
+ * while (...) {
+ *   Object value = in.readObject();
+ * }
+ * </pre>
+ *
+ * <p>The calling thread frames the packets and scans each one for the class
+ * definitions and type names it introduces, which later packets may refer
+ * to.  Decoders from a pool replay any definitions they have not seen
+ * before decoding a packet, so packets decode independently even though
+ * the stream shares definitions.
+ *
+ * <p>Values are returned in stream order when <code>isOrdered</code> is
+ * set, otherwise as soon as they are decoded.  Up to twice the parallelism
+ * packets are read ahead.  Instances are not thread-safe; one thread reads
+ * the values.
+ */
+public class Hessian2ParallelStreamingInput implements Closeable {
+    private final InputStream source;
+    private final Hessian2StreamingInput.StreamingInputStream is;
+    private final Executor executor;
+    private final int window;
+    private final boolean isOrdered;
+
+    private final PacketScanner scanner = new PacketScanner();
+
+    private final List<byte[]> classDefinitions = new CopyOnWriteArrayList<>();
+    private final List<byte[]> types = new CopyOnWriteArrayList<>();
+
+    private final HessianFreeList<HessianDecoder> freeDecoders;
+
+    private final ArrayDeque<CompletableFuture<Object>> pending = new ArrayDeque<>();
+    private final BlockingQueue<CompletableFuture<Object>> completed = new LinkedBlockingQueue<>();
+    private int inFlight;
+    private boolean isEnd;
+
+    /**
+     * -- SETTER --
+     * Sets the serializer factory used by the decoders.
+     */
+    @Setter
+    private volatile Hessian2SerializerFactory serializerFactory;
+
+    /**
+     * @param is the packet stream
+     * @param executor runs the decoding
+     * @param parallelism the number of packets decoded at once
+     * @param isOrdered true to return values in stream order
+     */
+    public Hessian2ParallelStreamingInput(InputStream is, Executor executor, int parallelism, boolean isOrdered) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+
+        this.source = is;
+        this.is = new Hessian2StreamingInput.StreamingInputStream(is);
+        this.executor = executor;
+        this.window = 2 * parallelism;
+        this.isOrdered = isOrdered;
+        this.freeDecoders = new HessianFreeList<>(window);
+    }
+
+    /**
+     * Sets the largest packet accepted, 64 MiB by default.  Longer packets
+     * fail with a {@link HessianProtocolException}.
+     */
+    public void setMaxPacketLength(int maxPacketLength) {
+        is.setMaxPacketLength(maxPacketLength);
+    }
+
+    /**
+     * Returns the next value.
+     *
+     * @throws EOFException at the end of the stream
+     */
+    public Object readObject() throws IOException {
+        readAhead();
+
+        if (inFlight == 0) {
+            throw new EOFException("end of hessian packet stream");
+        }
+
+        CompletableFuture<Object> future;
+
+        if (isOrdered) {
+            future = pending.poll();
+        } else {
+            try {
+                future = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+
+        inFlight--;
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOExceptionWrapper(cause);
+            }
+        }
+    }
+
+    /**
+     * Submits packets until the window is full.  Once one packet is in
+     * flight, only packets which have already arrived are read, so a live
+     * stream is not held back.
+     */
+    private void readAhead() throws IOException {
+        while (!isEnd && inFlight < window && (inFlight == 0 || is.isDataAvailable())) {
+            byte[] packet = is.readPacket();
+
+            if (packet == null) {
+                isEnd = true;
+                break;
+            }
+
+            int classDefinitionCount = classDefinitions.size();
+            int typeCount = types.size();
+
+            scanner.scan(packet);
+
+            CompletableFuture<Object> future = new CompletableFuture<>();
+
+            executor.execute(() -> {
+                try {
+                    future.complete(decode(packet, classDefinitionCount, typeCount));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+
+            inFlight++;
+
+            if (isOrdered) {
+                pending.add(future);
+            } else {
+                future.whenComplete((v, e) -> completed.add(future));
+            }
+        }
+    }
+
+    private Object decode(byte[] packet, int classDefinitionCount, int typeCount) throws IOException {
+        HessianDecoder in = freeDecoders.allocate();
+
+        if (in == null) {
+            in = new HessianDecoder();
+
+            Hessian2SerializerFactory factory = serializerFactory;
+
+            if (factory != null) {
+                in.setSerializerFactory(factory);
+            }
+        }
+
+        replayDefinitions(in, classDefinitionCount, typeCount);
+
+        in.initPacket(new ByteArrayInputStream(packet));
+
+        Object value = in.readObject();
+
+        in.resetBuffer();
+
+        // a decoder which failed may hold a partial packet, so only
+        // successful decoders return to the pool
+        freeDecoders.free(in);
+
+        return value;
+    }
+
+    /**
+     * Brings the decoder's class definitions and types to those seen
+     * before the packet.  The decoder may be ahead from decoding a later
+     * packet, since all decoders hold prefixes of the same lists.
+     */
+    private void replayDefinitions(HessianDecoder in, int classDefinitionCount, int typeCount) throws IOException {
+        ArrayList<HessianDecoder.ObjectDefinition> defs = in.classDefs;
+
+        if (defs.size() > classDefinitionCount) {
+            defs.subList(classDefinitionCount, defs.size()).clear();
+        }
+
+        while (defs.size() < classDefinitionCount) {
+            in.initPacket(new ByteArrayInputStream(classDefinitions.get(defs.size())));
+            in.readClassDefinition();
+            in.resetBuffer();
+        }
+
+        ArrayList<String> typeList = in.types;
+
+        if (typeList.size() > typeCount) {
+            typeList.subList(typeCount, typeList.size()).clear();
+        }
+
+        while (typeList.size() < typeCount) {
+            in.initPacket(new ByteArrayInputStream(types.get(typeList.size())));
+            in.readType();
+            in.resetBuffer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isEnd = true;
+
+        source.close();
+    }
+
+    /**
+     * Scans each packet on the reading thread, collecting the class
+     * definitions and type names it introduces.
+     */
+    private final class PacketScanner extends HessianScanner {
+        private byte[] data;
+
+        void scan(byte[] packet) throws IOException {
+            data = packet;
+            pos = 0;
+
+            if (!scan()) {
+                throw new HessianProtocolException("incomplete value in hessian packet");
+            }
+        }
+
+        @Override
+        protected int peek(int i) {
+            return data[(int) pos + i] & 0xff;
+        }
+
+        @Override
+        protected long available() {
+            return data.length - pos;
+        }
+
+        @Override
+        protected void classDefinition(long start, long end) {
+            classDefinitions.add(Arrays.copyOfRange(data, (int) start, (int) end));
+        }
+
+        @Override
+        protected void typeDefinition(long start, long end) {
+            types.add(Arrays.copyOfRange(data, (int) start, (int) end));
+        }
+    }
+}
@@ -49,6 +49,7 @@
 package io.github.wuwen5.hessian.io;
 
 import com.caucho.hessian.io.HessianRemoteObject;
+import io.github.wuwen5.hessian.HessianType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -58,11 +59,13 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -104,6 +107,15 @@ public class Hessian2SerializerFactory implements ISerializerFactory {
     private final ConcurrentMap<Class<?>, HessianDeserializer> cachedDeserializerMap = new ConcurrentHashMap<>(8);
     private final ConcurrentMap<String, HessianDeserializer> cachedTypeDeserializerMap = new ConcurrentHashMap<>();
 
+    /**
+     * class name to alias
+     */
+    private final ConcurrentMap<String, String> typeAliasMap = new ConcurrentHashMap<>();
+    /**
+     * alias to class
+     */
+    private final ConcurrentMap<String, Class<?>> aliasTypeMap = new ConcurrentHashMap<>();
+
     /**
      * -- SETTER --
      *  If true, non-serializable objects are allowed.
@@ -117,6 +129,33 @@ public class Hessian2SerializerFactory implements ISerializerFactory {
 
     private final boolean isEnableUnsafeSerializer = (UnsafeSerializer.isEnabled() && UnsafeDeserializer.isEnabled());
 
+    /**
+     * -- GETTER --
+     * True if field-based objects with mostly default fields are written
+     * as typed maps of their other fields.
+     * -- SETTER --
+     * Sets whether field-based objects with mostly default fields are
+     * written as typed maps of their other fields, when that is smaller
+     * than the class definition form.  Any Hessian 2 reader can read
+     * both forms.
+     */
+    @Getter
+    @Setter
+    private boolean sparseObjectEncoding;
+
+    private final Set<Class<?>> valueDedupTypes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * -- GETTER --
+     * The most distinct values an encoder remembers for deduplication.
+     * -- SETTER --
+     * Sets the most distinct values an encoder remembers for
+     * deduplication; the least recently written are forgotten first.
+     */
+    @Getter
+    @Setter
+    private int valueDedupSize = 1024;
+
     private final FieldDeserializer2Factory fieldDeserializer2Factory;
 
     private ClassFactory classFactory;
@@ -207,9 +246,105 @@ public class Hessian2SerializerFactory implements ISerializerFactory {
     }
 
     public Class<?> loadSerializedClass(String className) throws ClassNotFoundException {
+        Class<?> cl = aliasTypeMap.get(className);
+
+        if (cl != null) {
+            return cl;
+        }
+
         return getClassFactory().load(className);
     }
 
+    /**
+     * Deduplicates equal values of an immutable class: an encoder writes a
+     * value equal to one already written in the message as a reference to
+     * it, and the decoder returns the same instance for both.  The class
+     * must be immutable with a consistent <code>equals</code>, and written
+     * by a serializer which adds references, as object serializers do.
+     * Strings and boxed primitives are not references in Hessian 2, so
+     * they are not deduplicated.
+     */
+    public void addValueDedupType(Class<?> cl) {
+        valueDedupTypes.add(cl);
+    }
+
+    /**
+     * Returns the classes whose equal values are deduplicated.
+     */
+    public Set<Class<?>> getValueDedupTypes() {
+        return Collections.unmodifiableSet(valueDedupTypes);
+    }
+
+    boolean isValueDedup(Object value) {
+        return !valueDedupTypes.isEmpty() && valueDedupTypes.contains(value.getClass());
+    }
+
+    /**
+     * Registers the alias declared by the class's {@link HessianType}
+     * annotation.
+     */
+    public void addTypeAlias(Class<?> cl) {
+        HessianType hessianType = cl.getAnnotation(HessianType.class);
+
+        if (hessianType == null) {
+            throw new IllegalArgumentException(cl.getName() + " has no @HessianType annotation");
+        }
+
+        addTypeAlias(cl, hessianType.value());
+    }
+
+    /**
+     * Registers a short type name written in place of the class name.
+     * Registered classes are loaded by their alias without the class
+     * factory, so they are allowed regardless of its allow and deny lists.
+     */
+    public void addTypeAlias(Class<?> cl, String alias) {
+        if (alias == null || alias.isEmpty() || alias.startsWith("[")) {
+            throw new IllegalArgumentException("'" + alias + "' is an invalid type alias for " + cl.getName());
+        }
+
+        Class<?> oldClass = aliasTypeMap.putIfAbsent(alias, cl);
+
+        if (oldClass != null && oldClass != cl) {
+            throw new IllegalArgumentException(
+                    "type alias '" + alias + "' is already registered for " + oldClass.getName());
+        }
+
+        String oldAlias = typeAliasMap.putIfAbsent(cl.getName(), alias);
+
+        if (oldAlias != null && !oldAlias.equals(alias)) {
+            aliasTypeMap.remove(alias, cl);
+
+            throw new IllegalArgumentException(cl.getName() + " already has the type alias '" + oldAlias + "'");
+        }
+    }
+
+    /**
+     * Returns the type name written for a class or array type name: its
+     * alias if one is registered, otherwise the name itself.
+     */
+    public String getTypeAlias(String type) {
+        if (typeAliasMap.isEmpty() || type == null) {
+            return type;
+        }
+
+        String alias = typeAliasMap.get(type);
+
+        if (alias != null) {
+            return alias;
+        } else if (type.startsWith("[")) {
+            int p = type.lastIndexOf('[') + 1;
+
+            alias = typeAliasMap.get(type.substring(p));
+
+            if (alias != null) {
+                return type.substring(0, p) + alias;
+            }
+        }
+
+        return type;
+    }
+
     public ClassFactory getClassFactory() {
         synchronized (this) {
             if (classFactory == null) {
@@ -239,6 +374,10 @@ public class Hessian2SerializerFactory implements ISerializerFactory {
             return serializer;
         }
 
+        if (cl.isAnnotationPresent(HessianType.class)) {
+            addTypeAlias(cl);
+        }
+
         return cachedSerializerMap.computeIfAbsent(cl, this::loadSerializer);
     }
 
@@ -561,7 +700,11 @@ public class Hessian2SerializerFactory implements ISerializerFactory {
     public HessianDeserializer getListDeserializer(String type, Class<?> cl) throws HessianProtocolException {
         HessianDeserializer reader = getListDeserializer(type);
 
-        if (cl == null || cl.equals(reader.getType()) || cl.isAssignableFrom(reader.getType())) {
+        // columns are only readable as a list of rows
+        if (cl == null
+                || reader == ColumnarListDeserializer.DESER
+                || cl.equals(reader.getType())
+                || cl.isAssignableFrom(reader.getType())) {
             return reader;
         }
 
@@ -683,6 +826,7 @@ public class Hessian2SerializerFactory implements ISerializerFactory {
         HessianDeserializer objectDeserializer = new JavaDeserializer(Object.class, new FieldDeserializer2Factory());
         STATIC_TYPE_MAP.put("object", objectDeserializer);
         STATIC_TYPE_MAP.put(HessianRemote.class.getName(), RemoteDeserializer.DESER);
+        STATIC_TYPE_MAP.put(ColumnarListSerializer.TYPE, ColumnarListDeserializer.DESER);
 
         SYSTEM_CLASS_LOADER = ClassLoader.getSystemClassLoader();
     }
@@ -51,6 +51,9 @@ package io.github.wuwen5.hessian.io;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -62,6 +65,16 @@ import lombok.extern.slf4j.Slf4j;
  * Hessian2StreamingInput hIn = factory.createHessian2StreamingInput(is);
  * </code>
  * </pre>
+ *
+ * <p>The underlying stream is read through a buffer, so it may be read
+ * ahead of the current packet.  To decode packets on several threads, see
+ * {@link Hessian2ParallelStreamingInput}.
+ *
+ * <p>In session mode, the default, class definitions and types persist
+ * across packets and only object references are reset, matching a
+ * {@link Hessian2StreamingOutput} in session mode.  When the writer starts
+ * a new session, for instance after the peer reconnects, call
+ * {@link #resetSession()} before reading its first packet.
  */
 @Slf4j
 public class Hessian2StreamingInput {
@@ -69,6 +82,18 @@ public class Hessian2StreamingInput {
     private final StreamingInputStream is;
     private final HessianDecoder in;
 
+    /**
+     * -- GETTER --
+     * True if class definitions and types persist across packets.
+     * -- SETTER --
+     * Sets whether class definitions and types persist across packets,
+     * which must match the writer.  Without a session each packet is
+     * self-contained.
+     */
+    @Getter
+    @Setter
+    private boolean session = true;
+
     /**
      * Creates a new Hessian input stream, initialized with an
      * underlying input stream.
@@ -91,6 +116,11 @@ public class Hessian2StreamingInput {
     public HessianDecoder startPacket() throws IOException {
         if (is.startPacket()) {
             in.resetReferences();
+
+            if (!session) {
+                in.resetDefinitions();
+            }
+
             in.resetBuffer(); // XXX:
             return in;
         } else {
@@ -103,6 +133,39 @@ public class Hessian2StreamingInput {
         in.resetBuffer(); // XXX:
     }
 
+    /**
+     * Reads the data of the next packet without decoding it, or returns
+     * null at the end of the stream.  The chunk headers are removed, so the
+     * data can be decoded by any {@link HessianDecoder} which has seen the
+     * stream's earlier class definitions.
+     */
+    public byte[] readPacket() throws IOException {
+        return is.readPacket();
+    }
+
+    /**
+     * Returns the largest packet {@link #readPacket()} accepts.
+     */
+    public int getMaxPacketLength() {
+        return is.getMaxPacketLength();
+    }
+
+    /**
+     * Sets the largest packet {@link #readPacket()} accepts, 64 MiB by
+     * default.  Longer packets fail with a {@link HessianProtocolException}.
+     */
+    public void setMaxPacketLength(int maxPacketLength) {
+        is.setMaxPacketLength(maxPacketLength);
+    }
+
+    /**
+     * Forgets the class definitions and types of the current session, so
+     * the next packet is read as the first of a new session.
+     */
+    public void resetSession() {
+        in.resetDefinitions();
+    }
+
     public HessianDecoder getHessianInput() {
         return in;
     }
@@ -113,6 +176,10 @@ public class Hessian2StreamingInput {
     public Object readObject() throws IOException {
         is.startPacket();
 
+        if (!session) {
+            in.resetDefinitions();
+        }
+
         Object obj = in.readStreamingObject();
 
         is.endPacket();
@@ -127,17 +194,49 @@ public class Hessian2StreamingInput {
         in.close();
     }
 
+    /**
+     * Packet framing over a read buffer.  Chunk headers are parsed from the
+     * buffer rather than read a byte at a time from the underlying stream,
+     * and whole packets can be sliced out with {@link #readPacket()}.
+     */
     static class StreamingInputStream extends InputStream {
+        static final int BUFFER_SIZE = 64 * 1024;
+        static final int DEFAULT_MAX_PACKET_LENGTH = 64 * 1024 * 1024;
+
+        // the largest array the VM allocates
+        private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
         private final InputStream is;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int offset;
+        private int end;
 
         private long length;
         private boolean isPacketEnd;
 
+        private int maxPacketLength = DEFAULT_MAX_PACKET_LENGTH;
+
         StreamingInputStream(InputStream is) {
             this.is = is;
         }
 
+        int getMaxPacketLength() {
+            return maxPacketLength;
+        }
+
+        void setMaxPacketLength(int maxPacketLength) {
+            if (maxPacketLength <= 0 || maxPacketLength > MAX_ARRAY_LENGTH) {
+                throw new IllegalArgumentException("illegal max packet length: " + maxPacketLength);
+            }
+
+            this.maxPacketLength = maxPacketLength;
+        }
+
         public boolean isDataAvailable() {
+            if (offset < end) {
+                return true;
+            }
+
             try {
                 return is != null && is.available() > 0;
             } catch (IOException e) {
@@ -151,7 +250,7 @@ public class Hessian2StreamingInput {
             // skip zero-length packets
             do {
                 isPacketEnd = false;
-            } while ((length = readChunkLength(is)) == 0);
+            } while ((length = readChunkLength()) == 0);
 
             return length > 0;
         }
@@ -159,21 +258,65 @@ public class Hessian2StreamingInput {
         public void endPacket() throws IOException {
             while (!isPacketEnd) {
                 if (length <= 0) {
-                    length = readChunkLength(is);
+                    length = readChunkLength();
                 }
 
                 while (length > 0) {
-                    long skipped = is.skip(length);
-                    if (skipped <= 0) {
-                        if (is.read() == -1) {
-                            throw new EOFException("Unexpected end of stream while skipping packet");
-                        } else {
-                            skipped = 1;
-                        }
+                    if (offset >= end && !fill()) {
+                        throw new EOFException("Unexpected end of stream while skipping packet");
                     }
-                    length -= skipped;
+
+                    int sublen = (int) Math.min(length, end - offset);
+                    offset += sublen;
+                    length -= sublen;
+                }
+            }
+        }
+
+        /**
+         * Reads the data of the next packet, without its chunk headers, or
+         * returns null at the end of the stream.  The array grows as the
+         * data arrives, so a chunk header claiming a large length does not
+         * allocate it up front.
+         */
+        byte[] readPacket() throws IOException {
+            if (!startPacket()) {
+                return null;
+            }
+
+            byte[] data = new byte[(int) Math.min(length, BUFFER_SIZE)];
+            int size = 0;
+
+            while (true) {
+                if (length > maxPacketLength - size) {
+                    throw new HessianProtocolException(
+                            "packet of more than " + maxPacketLength + " bytes exceeds the maximum packet length");
+                }
+
+                while (length > 0) {
+                    if (offset >= end && !fill()) {
+                        throw new EOFException("Unexpected end of stream in packet");
+                    }
+
+                    int sublen = (int) Math.min(length, end - offset);
+
+                    if (data.length - size < sublen) {
+                        data = Arrays.copyOf(
+                                data, (int) Math.min(Math.max(2L * data.length, size + sublen), size + length));
+                    }
+
+                    System.arraycopy(buffer, offset, data, size, sublen);
+                    offset += sublen;
+                    size += sublen;
+                    length -= sublen;
+                }
+
+                if (isPacketEnd || (length = readChunkLength()) < 0) {
+                    break;
                 }
             }
+
+            return size == data.length ? data : Arrays.copyOf(data, size);
         }
 
         @Override
@@ -184,7 +327,7 @@ public class Hessian2StreamingInput {
                     return -1;
                 }
 
-                length = readChunkLength(is);
+                length = readChunkLength();
 
                 if (length <= 0) {
                     return -1;
@@ -193,7 +336,7 @@ public class Hessian2StreamingInput {
 
             length--;
 
-            return is.read();
+            return readByte();
         }
 
         @Override
@@ -204,35 +347,68 @@ public class Hessian2StreamingInput {
                     return -1;
                 }
 
-                this.length = readChunkLength(is);
+                this.length = readChunkLength();
 
                 if (this.length <= 0) {
                     return -1;
                 }
             }
 
-            long sublen = this.length;
-            if (length < sublen) {
-                sublen = length;
+            int sublen = (int) Math.min(this.length, length);
+
+            if (this.offset < end) {
+                sublen = Math.min(sublen, end - this.offset);
+                System.arraycopy(this.buffer, this.offset, buffer, offset, sublen);
+                this.offset += sublen;
+            } else if (sublen >= this.buffer.length) {
+                // large reads bypass the buffer
+                sublen = is.read(buffer, offset, sublen);
+            } else if (fill()) {
+                sublen = Math.min(sublen, end - this.offset);
+                System.arraycopy(this.buffer, this.offset, buffer, offset, sublen);
+                this.offset += sublen;
+            } else {
+                sublen = -1;
             }
 
-            sublen = is.read(buffer, offset, (int) sublen);
-
             if (sublen < 0) {
                 return -1;
             }
 
             this.length -= sublen;
 
-            return (int) sublen;
+            return sublen;
+        }
+
+        private int readByte() throws IOException {
+            if (offset >= end && !fill()) {
+                return -1;
+            }
+
+            return buffer[offset++] & 0xff;
         }
 
-        private long readChunkLength(InputStream is) throws IOException {
+        private boolean fill() throws IOException {
+            offset = 0;
+            end = 0;
+
+            int len = is.read(buffer, 0, buffer.length);
+
+            if (len <= 0) {
+                return false;
+            }
+
+            end = len;
+
+            return true;
+        }
+
+        private long readChunkLength() throws IOException {
             if (isPacketEnd) {
                 return -1;
             }
 
-            int code = is.read();
+            int code = readByte();
 
             if (code < 0) {
                 isPacketEnd = true;
@@ -241,13 +417,13 @@ public class Hessian2StreamingInput {
 
             isPacketEnd = (code & 0x80) == 0;
 
-            int len = is.read() & 0x7f;
+            int len = readByte() & 0x7f;
 
             if (len < 0x7e) {
                 return len;
             } else if (len == 0x7e) {
-                int hi = is.read();
-                int lo = is.read();
+                int hi = readByte();
+                int lo = readByte();
                 if (hi < 0 || lo < 0) {
                     throw new EOFException("Unexpected end of stream in medium chunk length");
                 }
@@ -255,12 +431,17 @@ public class Hessian2StreamingInput {
             } else {
                 long l = 0;
                 for (int i = 0; i < 8; i++) {
-                    int b = is.read();
+                    int b = readByte();
                     if (b < 0) {
                         throw new EOFException("Unexpected end of stream in large chunk length");
                     }
                     l = (l << 8) | (b & 0xff);
                 }
+
+                if (l < 0) {
+                    throw new HessianProtocolException("illegal chunk length " + Long.toUnsignedString(l));
+                }
+
                 return l;
             }
         }
@@ -50,13 +50,33 @@ package io.github.wuwen5.hessian.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import lombok.Getter;
+import lombok.Setter;
 
 /**
  * Output stream for Hessian 2 streaming requests.
+ *
+ * <p>In session mode, the default, a class definition or type is written
+ * in the first packet using it, and later packets refer to it; only
+ * object references are reset for each packet.  The reader must read
+ * every packet of the session in order.  {@link #resetSession()} starts a
+ * new session, for instance when the peer reconnects.
  */
 public class Hessian2StreamingOutput {
     private HessianEncoder out;
 
+    /**
+     * -- GETTER --
+     * True if class definitions and types persist across packets.
+     * -- SETTER --
+     * Sets whether class definitions and types persist across packets.
+     * Without a session each packet is self-contained, so it can be read
+     * on its own at the cost of repeating its definitions.
+     */
+    @Getter
+    @Setter
+    private boolean session = true;
+
     /**
      * Creates a new Hessian output stream, initialized with an
      * underlying output stream.
@@ -87,9 +107,21 @@ public class Hessian2StreamingOutput {
      * Writes any object to the output stream.
      */
     public void writeObject(Object object) throws IOException {
+        if (!session) {
+            out.resetDefinitions();
+        }
+
         out.writeStreamingObject(object);
     }
 
+    /**
+     * Starts a new session: class definitions and types are written again
+     * when next used.  The reader must reset its session at the same point.
+     */
+    public void resetSession() {
+        out.resetDefinitions();
+    }
+
     /**
      * Flushes the output.
      */
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes the values of a Hessian 2 packet stream, as written by
+ * {@link Hessian2StreamingOutput} or {@link Hessian2StreamingSubscriber}.
+ *
+ * <p>Packets are decoded only as the subscriber requests them, on tasks
+ * submitted to the executor, so a slow subscriber holds back the reading
+ * of the stream and no thread is dedicated to it.  The publisher accepts a
+ * single subscriber and closes the stream when the subscription ends.
+ *
+ * <p>Reactive streams forbid null elements, so null values in the stream
+ * are skipped.
+ */
+@Slf4j
+public class Hessian2StreamingPublisher implements Flow.Publisher<Object> {
+    private final Hessian2StreamingInput in;
+    private final InputStream is;
+    private final Executor executor;
+
+    private final AtomicBoolean isSubscribed = new AtomicBoolean();
+
+    /**
+     * @param is the packet stream
+     * @param executor runs the decoding
+     */
+    public Hessian2StreamingPublisher(InputStream is, Executor executor) {
+        this.is = is;
+        this.in = new Hessian2StreamingInput(is);
+        this.executor = executor;
+    }
+
+    public void setSerializerFactory(Hessian2SerializerFactory factory) {
+        in.setSerializerFactory(factory);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+
+        if (!isSubscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {}
+
+                @Override
+                public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException(getClass().getSimpleName() + " allows one subscriber"));
+            return;
+        }
+
+        StreamingSubscription subscription = new StreamingSubscription(subscriber);
+
+        subscriber.onSubscribe(subscription);
+    }
+
+    private void closeStream() {
+        try {
+            is.close();
+        } catch (IOException e) {
+            log.trace(e.toString(), e);
+        }
+    }
+
+    /**
+     * Emits while there is demand.  The work counter makes a single task
+     * drain at a time, picking up requests made while it runs.
+     */
+    private final class StreamingSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Object> subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+
+        private volatile boolean isCancelled;
+        private volatile Throwable invalidRequest;
+        private boolean isDone;
+
+        StreamingSubscription(Flow.Subscriber<? super Object> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+
+            schedule();
+        }
+
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            do {
+                if (!isDone) {
+                    drain();
+                }
+
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            long emitted = 0;
+
+            while (true) {
+                if (isCancelled) {
+                    finish();
+                    return;
+                } else if (invalidRequest != null) {
+                    finish();
+                    subscriber.onError(invalidRequest);
+                    return;
+                } else if (emitted == requested.get()) {
+                    break;
+                }
+
+                Object value;
+
+                try {
+                    HessianDecoder decoder = in.startPacket();
+
+                    if (decoder == null) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+
+                    value = decoder.readObject();
+
+                    in.endPacket();
+                } catch (Throwable e) {
+                    finish();
+                    subscriber.onError(e);
+                    return;
+                }
+
+                if (value != null) {
+                    subscriber.onNext(value);
+                    emitted++;
+                }
+            }
+
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+        }
+
+        private void finish() {
+            isDone = true;
+
+            closeStream();
+        }
+    }
+}
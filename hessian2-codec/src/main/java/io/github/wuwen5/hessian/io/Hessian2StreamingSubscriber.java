@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the values of a publisher as Hessian 2 streaming packets, readable
+ * by {@link Hessian2StreamingInput} or {@link Hessian2StreamingPublisher}.
+ *
+ * <p>Encoded packets are collected in a batch which is written and flushed
+ * to the stream once it reaches the flush threshold, and when the
+ * publisher completes.  At most <code>prefetch</code> values are
+ * requested ahead, so memory stays bounded however long the stream.
+ *
+ * <p>{@link #getCompletion()} completes once the last batch is flushed, or
+ * exceptionally if the publisher or the stream fails.
+ */
+@Slf4j
+public class Hessian2StreamingSubscriber implements Flow.Subscriber<Object> {
+    private final OutputStream os;
+    private final BatchOutputStream batch = new BatchOutputStream();
+    private final Hessian2StreamingOutput out = new Hessian2StreamingOutput(batch);
+
+    /**
+     * -- GETTER --
+     * Completes when the stream has been written.
+     */
+    @Getter
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    /**
+     * -- GETTER --
+     * Returns the batch size which triggers a write and flush.
+     * -- SETTER --
+     * Sets the batch size in bytes which triggers a write and flush.
+     */
+    @Getter
+    @Setter
+    private int flushThreshold = 8 * 1024;
+
+    /**
+     * -- GETTER --
+     * Returns the number of values requested ahead.
+     * -- SETTER --
+     * Sets the number of values requested ahead.  Must be set before
+     * subscribing.
+     */
+    @Getter
+    @Setter
+    private int prefetch = 64;
+
+    /**
+     * -- GETTER --
+     * True if the stream is closed when the publisher completes.
+     * -- SETTER --
+     * Sets whether the stream is closed when the publisher completes.
+     */
+    @Getter
+    @Setter
+    private boolean closeStreamOnComplete;
+
+    private Flow.Subscription subscription;
+    private int consumed;
+
+    public Hessian2StreamingSubscriber(OutputStream os) {
+        this.os = os;
+    }
+
+    public void setSerializerFactory(Hessian2SerializerFactory factory) {
+        out.getHessian2Output().setSerializerFactory(factory);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+
+        subscription.request(Math.max(prefetch, 1));
+    }
+
+    @Override
+    public void onNext(Object item) {
+        if (item == null) {
+            throw new NullPointerException("item");
+        }
+
+        if (completion.isDone()) {
+            return;
+        }
+
+        try {
+            out.writeObject(item);
+
+            if (batch.length >= flushThreshold) {
+                writeBatch();
+            }
+        } catch (IOException | RuntimeException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+
+        // replenish demand in halves, rather than one request per value
+        int limit = Math.max(prefetch / 2, 1);
+
+        if (++consumed >= limit) {
+            consumed = 0;
+            subscription.request(limit);
+        }
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        if (completion.isDone()) {
+            return;
+        }
+
+        try {
+            writeBatch();
+        } catch (IOException ex) {
+            e.addSuppressed(ex);
+        }
+
+        fail(e);
+    }
+
+    @Override
+    public void onComplete() {
+        if (completion.isDone()) {
+            return;
+        }
+
+        try {
+            writeBatch();
+
+            if (closeStreamOnComplete) {
+                os.close();
+            }
+
+            completion.complete(null);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (batch.length > 0) {
+            os.write(batch.buffer, 0, batch.length);
+            batch.length = 0;
+        }
+
+        os.flush();
+    }
+
+    private void fail(Throwable e) {
+        if (closeStreamOnComplete) {
+            try {
+                os.close();
+            } catch (IOException ex) {
+                log.trace(ex.toString(), ex);
+            }
+        }
+
+        completion.completeExceptionally(e);
+    }
+
+    /**
+     * Collects encoded packets until the threshold is reached.
+     */
+    private static final class BatchOutputStream extends OutputStream {
+        private byte[] buffer = new byte[1024];
+        private int length;
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(buffer, offset, this.buffer, this.length, length);
+            this.length += length;
+        }
+
+        private void ensureCapacity(int sublen) {
+            if (buffer.length - length < sublen) {
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + sublen));
+            }
+        }
+    }
+}
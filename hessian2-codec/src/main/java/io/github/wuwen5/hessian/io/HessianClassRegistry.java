@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+import lombok.Getter;
+
+/**
+ * Class definitions shared in advance by both ends of a connection, so
+ * they are not sent in the payload.
+ *
+ * <p>An encoder and a decoder using the same registry start with its
+ * definitions in their class definition tables: an instance of a
+ * registered class is written as a reference to the pre-shared
+ * definition, without the class name and field names.  Classes which are
+ * not registered, or whose serializer's fields differ from the
+ * registered ones, are defined in the stream as usual, after the
+ * pre-shared definitions.
+ *
+ * <p>Both ends must use a registry with the same {@link #getId() id}.
+ * The registry is loaded from a file, one class per line:
+ *
+ * <pre>
+ * registry orders 3
+ * com.example.Order: id, customer, items, total
+ * com.example.Item: sku, quantity
+ * </pre>
+ *
+ * <p>Register all definitions before the registry is used.
+ */
+public class HessianClassRegistry {
+    /**
+     * -- GETTER --
+     * Returns the registry's name.
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * -- GETTER --
+     * Returns the registry's version.
+     */
+    @Getter
+    private final int version;
+
+    private final List<Definition> definitions = new ArrayList<>();
+    private final Map<String, Integer> typeIndex = new HashMap<>();
+
+    private String id;
+
+    private final WeakHashMap<Hessian2SerializerFactory, Object[]> encoderKeys = new WeakHashMap<>();
+    private final WeakHashMap<Hessian2SerializerFactory, List<HessianDecoder.ObjectDefinition>> decoderDefinitions =
+            new WeakHashMap<>();
+    private final WeakHashMap<Hessian2SerializerFactory, List<HessianDecoder.ObjectDefinition>> genericDefinitions =
+            new WeakHashMap<>();
+
+    public HessianClassRegistry(String name, int version) {
+        if (name == null || name.isEmpty() || name.contains(" ")) {
+            throw new IllegalArgumentException("'" + name + "' is an invalid registry name");
+        }
+
+        this.name = name;
+        this.version = version;
+    }
+
+    /**
+     * Registers a class definition.
+     *
+     * @param type       the class name
+     * @param fieldNames the field names, in the order the serializer
+     *                   writes them
+     */
+    public synchronized HessianClassRegistry register(String type, String... fieldNames) {
+        if (typeIndex.containsKey(type)) {
+            throw new IllegalArgumentException("'" + type + "' is already registered in " + this);
+        }
+
+        typeIndex.put(type, definitions.size());
+        definitions.add(new Definition(type, fieldNames.clone()));
+
+        id = null;
+        encoderKeys.clear();
+        decoderDefinitions.clear();
+        genericDefinitions.clear();
+
+        return this;
+    }
+
+    /**
+     * Registers a class with the fields its default serializer writes.
+     */
+    public HessianClassRegistry register(Class<?> cl) throws HessianProtocolException {
+        HessianSerializer serializer = Hessian2SerializerFactory.createDefault().getObjectSerializer(cl);
+
+        if (!(serializer instanceof FieldBasedSerializer)) {
+            throw new IllegalArgumentException(cl.getName() + " is not serialized by its fields");
+        }
+
+        return register(cl.getName(), ((FieldBasedSerializer) serializer).getFieldNames());
+    }
+
+    /**
+     * Returns the registered definitions, in table order.
+     */
+    public synchronized List<Definition> getDefinitions() {
+        return Collections.unmodifiableList(new ArrayList<>(definitions));
+    }
+
+    /**
+     * Returns the number of registered definitions.
+     */
+    public synchronized int size() {
+        return definitions.size();
+    }
+
+    /**
+     * Returns the identity of the registry: its name, version and a
+     * checksum of its definitions.  Two ends may use pre-shared
+     * definitions only if their ids are equal.
+     */
+    public synchronized String getId() {
+        if (id == null) {
+            CRC32 crc = new CRC32();
+
+            for (Definition def : definitions) {
+                crc.update(def.toString().getBytes(StandardCharsets.UTF_8));
+                crc.update('\n');
+            }
+
+            id = name + ":" + version + ":" + Long.toHexString(crc.getValue());
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the encoder's class keys for the registered definitions: the
+     * class name as returned by <code>Class.getName()</code> when the local
+     * serializer writes the registered fields, and otherwise a key which
+     * never matches, so the class is defined in the stream.
+     */
+    synchronized Object[] getEncoderKeys(Hessian2SerializerFactory factory) {
+        Object[] keys = encoderKeys.get(factory);
+
+        if (keys == null) {
+            keys = new Object[definitions.size()];
+
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = createEncoderKey(factory, definitions.get(i));
+            }
+
+            encoderKeys.put(factory, keys);
+        }
+
+        return keys;
+    }
+
+    private static Object createEncoderKey(Hessian2SerializerFactory factory, Definition def) {
+        try {
+            Class<?> cl = factory.loadSerializedClass(def.type);
+            HessianSerializer serializer = factory.getObjectSerializer(cl);
+
+            if (serializer instanceof FieldBasedSerializer
+                    && Arrays.equals(((FieldBasedSerializer) serializer).getFieldNames(), def.fieldNames)) {
+                return cl.getName();
+            }
+        } catch (ClassNotFoundException e) {
+            // only written by generic values, which carry the type name
+            return def.type.intern();
+        } catch (HessianProtocolException e) {
+            // not serializable locally, so never written from the registry
+        }
+
+        return new Object();
+    }
+
+    /**
+     * Returns the decoder's definitions, as if read from the stream.
+     */
+    synchronized List<HessianDecoder.ObjectDefinition> getDecoderDefinitions(Hessian2SerializerFactory factory)
+            throws HessianProtocolException {
+        List<HessianDecoder.ObjectDefinition> defs = decoderDefinitions.get(factory);
+
+        if (defs == null) {
+            defs = new ArrayList<>(definitions.size());
+
+            for (Definition def : definitions) {
+                defs.add(HessianDecoder.createObjectDefinition(factory, def.type, def.fieldNames));
+            }
+
+            decoderDefinitions.put(factory, defs);
+        }
+
+        return defs;
+    }
+
+    /**
+     * Returns the definitions of a generic decoder, which read objects
+     * without their classes.
+     */
+    synchronized List<HessianDecoder.ObjectDefinition> getGenericDefinitions(Hessian2SerializerFactory factory)
+            throws HessianProtocolException {
+        List<HessianDecoder.ObjectDefinition> defs = genericDefinitions.get(factory);
+
+        if (defs == null) {
+            defs = new ArrayList<>(definitions.size());
+
+            for (Definition def : definitions) {
+                defs.add(HessianDecoder.createGenericDefinition(factory, def.type, def.fieldNames));
+            }
+
+            genericDefinitions.put(factory, defs);
+        }
+
+        return defs;
+    }
+
+    /**
+     * Loads a registry from a file.
+     */
+    public static HessianClassRegistry load(Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return load(is);
+        }
+    }
+
+    /**
+     * Loads a registry.  The first line names the registry and its
+     * version; each following line registers a class and its fields.
+     * Blank lines and lines starting with <code>#</code> are ignored.
+     */
+    public static HessianClassRegistry load(InputStream is) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+
+        HessianClassRegistry registry = null;
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (registry == null) {
+                String[] header = line.split("\\s+");
+
+                if (header.length != 3 || !"registry".equals(header[0])) {
+                    throw new IOException("line " + lineNumber + ": expected 'registry <name> <version>'");
+                }
+
+                try {
+                    registry = new HessianClassRegistry(header[1], Integer.parseInt(header[2]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("line " + lineNumber + ": '" + header[2] + "' is an invalid version");
+                }
+
+                continue;
+            }
+
+            int p = line.indexOf(':');
+
+            if (p <= 0) {
+                throw new IOException("line " + lineNumber + ": expected '<class>: <field>, ...'");
+            }
+
+            String fields = line.substring(p + 1).trim();
+
+            registry.register(
+                    line.substring(0, p).trim(), fields.isEmpty() ? new String[0] : fields.split("\\s*,\\s*"));
+        }
+
+        if (registry == null) {
+            throw new IOException("missing 'registry <name> <version>' line");
+        }
+
+        return registry;
+    }
+
+    /**
+     * Writes the registry in the format read by {@link #load(InputStream)}.
+     */
+    public synchronized void store(Writer writer) throws IOException {
+        writer.write("registry " + name + " " + version + "\n");
+
+        for (Definition def : definitions) {
+            writer.write(def + "\n");
+        }
+
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + name + ":" + version + "]";
+    }
+
+    /**
+     * A registered class definition.
+     */
+    public static final class Definition {
+        private final String type;
+        private final String[] fieldNames;
+
+        Definition(String type, String[] fieldNames) {
+            this.type = type;
+            this.fieldNames = fieldNames;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String[] getFieldNames() {
+            return fieldNames.clone();
+        }
+
+        @Override
+        public String toString() {
+            return type + ": " + String.join(", ", fieldNames);
+        }
+    }
+}
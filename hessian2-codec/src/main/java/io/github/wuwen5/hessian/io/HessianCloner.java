@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep copies of object graphs, made object to object with the field
+ * introspection of the serializers instead of encoding to bytes and
+ * decoding them again.
+ *
+ * <pre>
+ * HessianCloner cloner = new HessianCloner();
+ *
+ * Order copy = cloner.copy(cachedOrder);
+ * </pre>
+ *
+ * <p>The copy matches a Hessian round trip through the same serializer
+ * factory.  Objects written by the field serializers are instantiated as
+ * the deserializer does and their fields copied, with
+ * <code>readResolve</code> applied; <code>writeReplace</code> copies
+ * the replacement.  Shared objects and cycles are kept.  Immutable values
+ * are shared rather than copied: strings, boxed primitives, big numbers,
+ * enums, the <code>java.time</code> classes, the factory's
+ * value-deduplicated types and any added with {@link #addImmutableType}.
+ *
+ * <p>Collections and maps with a public no-argument constructor are
+ * copied entry by entry.  Any other value, such as an unmodifiable list
+ * or one with a custom serializer, falls back to a round trip of its
+ * own, so it keeps no sharing with the rest of the graph.
+ */
+public class HessianCloner {
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+            String.class,
+            Boolean.class,
+            Character.class,
+            Byte.class,
+            Short.class,
+            Integer.class,
+            Long.class,
+            Float.class,
+            Double.class,
+            BigInteger.class,
+            BigDecimal.class,
+            UUID.class,
+            Locale.class,
+            Currency.class,
+            URI.class,
+            Class.class));
+
+    private final Hessian2SerializerFactory serializerFactory;
+
+    private final Set<Class<?>> immutableTypes = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentHashMap<Class<?>, Copier> copierMap = new ConcurrentHashMap<>();
+
+    private final Copier immutableCopier = new ImmutableCopier();
+
+    public HessianCloner() {
+        this(null);
+    }
+
+    /**
+     * @param serializerFactory the serializer factory, or null for the default
+     */
+    public HessianCloner(Hessian2SerializerFactory serializerFactory) {
+        this.serializerFactory =
+                serializerFactory != null ? serializerFactory : Hessian2SerializerFactory.createDefault();
+    }
+
+    /**
+     * Shares the values of an immutable class instead of copying them.
+     */
+    public void addImmutableType(Class<?> cl) {
+        immutableTypes.add(cl);
+        copierMap.remove(cl);
+    }
+
+    /**
+     * Returns a deep copy of the value.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T copy(T value) throws IOException {
+        return (T) copy(value, new IdentityHashMap<>());
+    }
+
+    private Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+        if (value == null) {
+            return null;
+        }
+
+        Copier copier = getCopier(value.getClass());
+
+        if (copier == immutableCopier) {
+            return value;
+        }
+
+        Object copy = copies.get(value);
+
+        if (copy != null) {
+            return copy;
+        }
+
+        return copier.copy(value, copies);
+    }
+
+    private Copier getCopier(Class<?> cl) throws IOException {
+        Copier copier = copierMap.get(cl);
+
+        if (copier == null) {
+            copier = createCopier(cl);
+            copierMap.putIfAbsent(cl, copier);
+        }
+
+        return copier;
+    }
+
+    private Copier createCopier(Class<?> cl) throws IOException {
+        if (isImmutable(cl)) {
+            return immutableCopier;
+        } else if (cl.isArray()) {
+            return cl.getComponentType().isPrimitive() ? new PrimitiveArrayCopier() : new ObjectArrayCopier();
+        } else if (Date.class.isAssignableFrom(cl)) {
+            return new DateCopier();
+        }
+
+        HessianSerializer serializer = serializerFactory.getSerializer(cl);
+        FieldBasedSerializer fieldSerializer = FieldBasedSerializer.asPlainFieldSerializer(serializer);
+
+        if (fieldSerializer != null) {
+            HessianDeserializer deserializer = serializerFactory.getDeserializer(cl);
+
+            if (deserializer instanceof AbstractFieldDeserializer) {
+                return new FieldCopier(fieldSerializer, (AbstractFieldDeserializer) deserializer);
+            }
+        } else if (serializer instanceof WriteReplaceSerializer) {
+            return new ReplaceCopier((WriteReplaceSerializer) serializer);
+        } else if (serializer instanceof CollectionSerializer || serializer instanceof MapSerializer) {
+            Constructor<?> constructor = getConstructor(cl);
+
+            if (constructor != null) {
+                return new CollectionCopier(constructor);
+            }
+        }
+
+        return new RoundTripCopier();
+    }
+
+    private boolean isImmutable(Class<?> cl) {
+        return IMMUTABLE_TYPES.contains(cl)
+                || Enum.class.isAssignableFrom(cl)
+                || cl.getName().startsWith("java.time.")
+                || immutableTypes.contains(cl)
+                || serializerFactory.getValueDedupTypes().contains(cl);
+    }
+
+    private static Constructor<?> getConstructor(Class<?> cl) {
+        if (!Modifier.isPublic(cl.getModifiers()) || Modifier.isAbstract(cl.getModifiers())) {
+            return null;
+        }
+
+        try {
+            return cl.getConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private abstract static class Copier {
+        /**
+         * Copies a value not copied before, registering the copy before
+         * copying what it references.
+         */
+        abstract Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException;
+    }
+
+    private static final class ImmutableCopier extends Copier {
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) {
+            return value;
+        }
+    }
+
+    private static final class PrimitiveArrayCopier extends Copier {
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+
+            System.arraycopy(value, 0, copy, 0, length);
+            copies.put(value, copy);
+
+            return copy;
+        }
+    }
+
+    private final class ObjectArrayCopier extends Copier {
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+            Object[] array = (Object[]) value;
+            Object[] copy = (Object[]) Array.newInstance(value.getClass().getComponentType(), array.length);
+
+            copies.put(value, copy);
+
+            for (int i = 0; i < array.length; i++) {
+                copy[i] = HessianCloner.this.copy(array[i], copies);
+            }
+
+            return copy;
+        }
+    }
+
+    private static final class DateCopier extends Copier {
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) {
+            Object copy = ((Date) value).clone();
+
+            copies.put(value, copy);
+
+            return copy;
+        }
+    }
+
+    private final class FieldCopier extends Copier {
+        private final FieldBasedSerializer serializer;
+        private final AbstractFieldDeserializer deserializer;
+
+        /**
+         * true for the fields whose values are copied, false for those
+         * assigned as is
+         */
+        private final boolean[] isDeep;
+
+        FieldCopier(FieldBasedSerializer serializer, AbstractFieldDeserializer deserializer) {
+            this.serializer = serializer;
+            this.deserializer = deserializer;
+
+            isDeep = new boolean[serializer.fields.length];
+
+            for (int i = 0; i < isDeep.length; i++) {
+                Class<?> type = serializer.fields[i].getType();
+
+                isDeep[i] = !type.isPrimitive() && !(Modifier.isFinal(type.getModifiers()) && isImmutable(type));
+            }
+        }
+
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+            Object copy;
+
+            try {
+                copy = deserializer.instantiate();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOExceptionWrapper(value.getClass().getName() + ":" + e.getMessage(), e);
+            }
+
+            copies.put(value, copy);
+
+            for (int i = 0; i < isDeep.length; i++) {
+                if (isDeep[i]) {
+                    serializer.setFieldValue(
+                            copy, i, HessianCloner.this.copy(serializer.getFieldValue(value, i), copies));
+                } else {
+                    serializer.copyField(value, copy, i);
+                }
+            }
+
+            if (!deserializer.isReadResolve()) {
+                return copy;
+            }
+
+            try {
+                Object resolve = deserializer.resolve(null, copy);
+
+                copies.put(value, resolve);
+
+                return resolve;
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOExceptionWrapper(value.getClass().getName() + ":" + e.getMessage(), e);
+            }
+        }
+    }
+
+    private final class ReplaceCopier extends Copier {
+        private final WriteReplaceSerializer serializer;
+
+        ReplaceCopier(WriteReplaceSerializer serializer) {
+            this.serializer = serializer;
+        }
+
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+            Object replace = serializer.writeReplace(value);
+
+            if (replace == value) {
+                return roundTrip(value, copies);
+            }
+
+            Object copy = HessianCloner.this.copy(replace, copies);
+
+            copies.put(value, copy);
+
+            return copy;
+        }
+    }
+
+    private final class CollectionCopier extends Copier {
+        private final Constructor<?> constructor;
+
+        CollectionCopier(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+            Object copy;
+
+            try {
+                copy = constructor.newInstance();
+            } catch (Exception e) {
+                throw new IOExceptionWrapper(value.getClass().getName() + ":" + e.getMessage(), e);
+            }
+
+            copies.put(value, copy);
+
+            if (value instanceof Map) {
+                Map<Object, Object> map = (Map<Object, Object>) copy;
+
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    map.put(
+                            HessianCloner.this.copy(entry.getKey(), copies),
+                            HessianCloner.this.copy(entry.getValue(), copies));
+                }
+            } else {
+                Collection<Object> collection = (Collection<Object>) copy;
+
+                for (Object item : (Collection<?>) value) {
+                    collection.add(HessianCloner.this.copy(item, copies));
+                }
+            }
+
+            return copy;
+        }
+    }
+
+    private final class RoundTripCopier extends Copier {
+        @Override
+        Object copy(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+            return roundTrip(value, copies);
+        }
+    }
+
+    private Object roundTrip(Object value, IdentityHashMap<Object, Object> copies) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setSerializerFactory(serializerFactory);
+        out.writeObject(value);
+        out.close();
+
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(bos.toByteArray()));
+        in.setSerializerFactory(serializerFactory);
+
+        Object copy = in.readObject();
+
+        copies.put(value, copy);
+
+        return copy;
+    }
+}
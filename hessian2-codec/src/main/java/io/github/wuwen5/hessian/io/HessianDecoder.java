@@ -55,6 +55,7 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Set;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -78,6 +79,9 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
 
     private static final int SIZE = 8 * 1024;
 
+    private static final Set<String> TRAILING_VALUE_TYPES = Set.of(
+            "java.time.LocalDate", "java.time.LocalTime", "java.time.Year", "java.time.ZoneId", "java.time.ZoneOffset");
+
     /**
      * standard, unmodified factory for deserializing objects
      */
@@ -96,6 +100,10 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
     protected ArrayList<ObjectDefinition> classDefs = new ArrayList<>();
     protected ArrayList<String> types = new ArrayList<>();
 
+    private HessianClassRegistry classRegistry;
+
+    private boolean isGeneric;
+
     /**
      * the underlying input stream
      */
@@ -175,6 +183,30 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
         return factory;
     }
 
+    /**
+     * Reads objects, lists and maps as {@link HessianObject},
+     * {@link HessianList} and {@link HessianMap}, keeping their type
+     * names, without loading any class.  For gateways and tools which
+     * route or inspect payloads without the application classes: an
+     * encoder writes the values back to the bytes they were read from.
+     * Typed reads such as {@link #readObject(Class)} are generic too.
+     *
+     * <p>Set before reading: the class definitions read so far are
+     * discarded.
+     */
+    public void setGeneric(boolean isGeneric) {
+        this.isGeneric = isGeneric;
+
+        resetDefinitions();
+    }
+
+    /**
+     * True if values are read without their classes.
+     */
+    public boolean isGeneric() {
+        return isGeneric;
+    }
+
     public void allow(String pattern) {
         ClassFactory factory = getSerializerFactory().getClassFactory();
 
@@ -1903,7 +1935,7 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
      */
     @Override
     public Object readObject(Class cl) throws IOException {
-        if (cl == null || cl == Object.class) {
+        if (cl == null || cl == Object.class || isGeneric) {
             return readObject();
         }
 
@@ -2410,10 +2442,18 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
                 // variable length list
                 String type = readType();
 
+                if (isGeneric) {
+                    return readGenericList(type, -1);
+                }
+
                 return findSerializerFactory().readList(this, -1, type);
             }
 
             case BC_LIST_VARIABLE_UNTYPED: {
+                if (isGeneric) {
+                    return readGenericList(null, -1);
+                }
+
                 return findSerializerFactory().readList(this, -1, null);
             }
 
@@ -2422,6 +2462,10 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
                 String type = readType();
                 int len = readInt();
 
+                if (isGeneric) {
+                    return readGenericList(type, len);
+                }
+
                 HessianDeserializer reader;
                 reader = findSerializerFactory().getListDeserializer(type, null);
 
@@ -2432,6 +2476,10 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
                 // fixed length lists
                 int len = readInt();
 
+                if (isGeneric) {
+                    return readGenericList(null, len);
+                }
+
                 HessianDeserializer reader;
                 reader = findSerializerFactory().getListDeserializer(null, null);
 
@@ -2451,6 +2499,10 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
                 String type = readType();
                 int len = tag - 0x70;
 
+                if (isGeneric) {
+                    return readGenericList(type, len);
+                }
+
                 HessianDeserializer reader;
                 reader = findSerializerFactory().getListDeserializer(type, null);
 
@@ -2469,6 +2521,10 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
                 // fixed length lists
                 int len = tag - 0x78;
 
+                if (isGeneric) {
+                    return readGenericList(null, len);
+                }
+
                 HessianDeserializer reader;
                 reader = findSerializerFactory().getListDeserializer(null, null);
 
@@ -2476,12 +2532,20 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
             }
 
             case BC_MAP_UNTYPED: {
+                if (isGeneric) {
+                    return readGenericMap(null);
+                }
+
                 return findSerializerFactory().readMap(this, null);
             }
 
             case BC_MAP: {
                 String type = readType();
 
+                if (isGeneric) {
+                    return readGenericMap(type);
+                }
+
                 return findSerializerFactory().readMap(this, type);
             }
 
@@ -2556,28 +2620,78 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
         String type = readString();
         int len = readInt();
 
-        Hessian2SerializerFactory factory = findSerializerFactory();
+        String[] fieldNames = new String[len];
 
+        for (int i = 0; i < len; i++) {
+            fieldNames[i] = readString();
+        }
+
+        if (isGeneric) {
+            classDefs.add(createGenericDefinition(findSerializerFactory(), type, fieldNames));
+        } else {
+            classDefs.add(createObjectDefinition(findSerializerFactory(), type, fieldNames));
+        }
+    }
+
+    static ObjectDefinition createObjectDefinition(Hessian2SerializerFactory factory, String type, String[] fieldNames)
+            throws HessianProtocolException {
         HessianDeserializer reader = factory.getObjectDeserializer(type, null);
 
-        Object[] fields = reader.createFields(len);
-        String[] fieldNames = new String[len];
+        Object[] fields = reader.createFields(fieldNames.length);
 
-        for (int i = 0; i < len; i++) {
-            String name = readString();
+        for (int i = 0; i < fieldNames.length; i++) {
+            fields[i] = reader.createField(fieldNames[i]);
+        }
+
+        return new ObjectDefinition(type, reader, fields, fieldNames);
+    }
 
-            fields[i] = reader.createField(name);
-            fieldNames[i] = name;
+    /**
+     * Creates a definition for a generic decoder, which reads the
+     * declared fields into a {@link HessianObject}.  The trailing value
+     * types are read by their deserializers instead, since their payload
+     * is not a declared field.
+     */
+    static ObjectDefinition createGenericDefinition(Hessian2SerializerFactory factory, String type, String[] fieldNames)
+            throws HessianProtocolException {
+        if (fieldNames.length == 0 && isTrailingValueType(type)) {
+            return createObjectDefinition(factory, type, fieldNames);
         }
 
-        ObjectDefinition def = new ObjectDefinition(type, reader, fields, fieldNames);
+        return new ObjectDefinition(type.intern(), null, null, fieldNames);
+    }
+
+    /**
+     * True for the <code>java.time</code> types whose serializers declare
+     * no fields and write their value after the instance header, so a
+     * reader following only the declared fields would stop one value
+     * short.
+     */
+    static boolean isTrailingValueType(String type) {
+        return TRAILING_VALUE_TYPES.contains(type);
+    }
+
+    /**
+     * Reads a class definition which is not followed by a value, when
+     * replaying a stream's definitions into another decoder.
+     */
+    void readClassDefinition() throws IOException {
+        int tag = read();
 
-        classDefs.add(def);
+        if (tag != BC_OBJECT_DEF) {
+            throw expect("class definition", tag);
+        }
+
+        readObjectDefinition();
     }
 
     private Object readObjectInstance(Class<?> cl, ObjectDefinition def) throws IOException {
         String type = def.getType();
         HessianDeserializer reader = def.getReader();
+
+        if (reader == null) {
+            return readGenericObject(def);
+        }
         Object[] fields = def.getFields();
 
         Hessian2SerializerFactory factory = findSerializerFactory();
@@ -2591,6 +2705,54 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
         }
     }
 
+    private HessianObject readGenericObject(ObjectDefinition def) throws IOException {
+        String[] fieldNames = def.getFieldNames();
+        Object[] values = new Object[fieldNames.length];
+        HessianObject obj = new HessianObject(def.getType(), fieldNames, values);
+
+        addRef(obj);
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readObject();
+        }
+
+        return obj;
+    }
+
+    private HessianList readGenericList(String type, int length) throws IOException {
+        HessianList list = new HessianList(type, length < 0, length);
+
+        addRef(list);
+
+        if (length < 0) {
+            while (!isEnd()) {
+                list.add(readObject());
+            }
+
+            readEnd();
+        } else {
+            for (int i = 0; i < length; i++) {
+                list.add(readObject());
+            }
+        }
+
+        return list;
+    }
+
+    private HessianMap readGenericMap(String type) throws IOException {
+        HessianMap map = new HessianMap(type);
+
+        addRef(map);
+
+        while (!isEnd()) {
+            map.append(readObject(), readObject());
+        }
+
+        readEnd();
+
+        return map;
+    }
+
     /**
      * Reads a remote object.
      */
@@ -2721,8 +2883,50 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
     public void reset() {
         resetReferences();
 
+        resetDefinitions();
+    }
+
+    /**
+     * Resets the class definitions and types read so far.  Definitions
+     * from the class registry are kept.
+     */
+    public void resetDefinitions() {
         classDefs.clear();
         types.clear();
+
+        if (classRegistry != null) {
+            seedClassDefinitions();
+        }
+    }
+
+    /**
+     * Sets the registry of pre-shared class definitions, which must be the
+     * one the encoder used.  The registry's definitions take the first
+     * class definition numbers; definitions read from the stream follow.
+     * Set the serializer factory first.
+     *
+     * @param classRegistry the registry, or null for none
+     */
+    public void setClassRegistry(HessianClassRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+
+        reset();
+    }
+
+    public HessianClassRegistry getClassRegistry() {
+        return classRegistry;
+    }
+
+    private void seedClassDefinitions() {
+        try {
+            if (isGeneric) {
+                classDefs.addAll(classRegistry.getGenericDefinitions(findSerializerFactory()));
+            } else {
+                classDefs.addAll(classRegistry.getDecoderDefinitions(findSerializerFactory()));
+            }
+        } catch (HessianProtocolException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public void resetBuffer() {
@@ -3357,6 +3561,8 @@ public class HessianDecoder extends AbstractHessianDecoder implements Hessian2Co
     }
 
     public void free() {
+        classRegistry = null;
+
         reset();
     }
 
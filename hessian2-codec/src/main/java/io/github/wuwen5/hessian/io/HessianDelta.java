@@ -0,0 +1,497 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Patches between two versions of an object graph, so replicated state
+ * is sent as its changes rather than in full.
+ *
+ * <pre>
+ * HessianDelta delta = new HessianDelta();
+ *
+ * // sender, keeping a snapshot of the state last sent
+ * byte[] patch = delta.diff(snapshot, state);
+ *
+ * // receiver, holding the decoded snapshot
+ * replica = delta.apply(replica, patch);
+ * </pre>
+ *
+ * <p>Objects written by the field serializers are compared field by
+ * field, lists element by element and maps entry by entry, using the
+ * serializer factory's introspection.  Other values, including sets and
+ * primitive arrays, are compared with <code>equals</code> and replaced
+ * whole.  The patch is a Hessian stream:
+ *
+ * <pre>
+ * patch  ::= END | SET value | PATCH node
+ * node   ::= type change* END
+ * change ::= SET key value     field, element or entry replaced
+ *        ::= PATCH key node    field, element or entry changed in place
+ *        ::= ADD value         element appended to a list
+ *        ::= REMOVE key        entry removed from a map
+ *        ::= TRUNCATE int      list cut to a size
+ * </pre>
+ *
+ * <p>The type of a node is the class name of an object, checked by the
+ * receiver, or null for lists, maps and arrays.  Keys are field names,
+ * list indexes or map keys.
+ *
+ * <p>The snapshot must not share mutable objects with the current state.
+ * Lists are compared by position, so an element inserted in the middle
+ * changes every later position.  An object shared within the graph is
+ * patched once, as the decoded replica shares it too; an object whose
+ * sharing changed is replaced.
+ */
+public class HessianDelta {
+    private static final int END = 0;
+    private static final int SET = 1;
+    private static final int PATCH = 2;
+    private static final int ADD = 3;
+    private static final int REMOVE = 4;
+    private static final int TRUNCATE = 5;
+
+    private static final Object UNCHANGED = new Object();
+    private static final Object REPLACE = new Object();
+
+    private final Hessian2SerializerFactory serializerFactory;
+
+    public HessianDelta() {
+        this(null);
+    }
+
+    /**
+     * @param serializerFactory the serializer factory, or null for the default
+     */
+    public HessianDelta(Hessian2SerializerFactory serializerFactory) {
+        this.serializerFactory =
+                serializerFactory != null ? serializerFactory : Hessian2SerializerFactory.createDefault();
+    }
+
+    /**
+     * Returns the patch turning the previous graph into the current one.
+     */
+    public byte[] diff(Object previous, Object current) throws IOException {
+        Object result = new Comparison().compare(previous, current);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setSerializerFactory(serializerFactory);
+
+        if (result == UNCHANGED) {
+            out.writeInt(END);
+        } else if (result == REPLACE) {
+            out.writeInt(SET);
+            out.writeObject(current);
+        } else {
+            out.writeInt(PATCH);
+            writeNode((Node) result, out);
+        }
+
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * Applies a patch to a decoded copy of the previous graph, changing it
+     * in place.
+     *
+     * @return the patched graph, which is a new object if the patch
+     * replaces the root
+     */
+    public Object apply(Object base, byte[] patch) throws IOException {
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(patch));
+        in.setSerializerFactory(serializerFactory);
+
+        int op = in.readInt();
+
+        switch (op) {
+            case END:
+                return base;
+
+            case SET:
+                return in.readObject();
+
+            case PATCH:
+                applyNode(base, in);
+                return base;
+
+            default:
+                throw new HessianProtocolException("unknown delta operation " + op);
+        }
+    }
+
+    private FieldBasedSerializer getFieldSerializer(Class<?> cl) throws HessianProtocolException {
+        return FieldBasedSerializer.asPlainFieldSerializer(serializerFactory.getSerializer(cl));
+    }
+
+    private void writeNode(Node node, HessianEncoder out) throws IOException {
+        out.writeString(node.type);
+
+        for (Change change : node.changes) {
+            out.writeInt(change.op);
+
+            if (change.op == TRUNCATE) {
+                out.writeInt((Integer) change.key);
+                continue;
+            } else if (change.op != ADD) {
+                writeKey(node, change.key, out);
+            }
+
+            if (change.node != null) {
+                writeNode(change.node, out);
+            } else if (change.op != REMOVE) {
+                if (change.serializer != null) {
+                    // a field is written as its serializer writes it
+                    change.serializer.writeField(change.owner, (Integer) change.key, out);
+                } else {
+                    out.writeObject(change.value);
+                }
+            }
+        }
+
+        out.writeInt(END);
+    }
+
+    private static void writeKey(Node node, Object key, HessianEncoder out) throws IOException {
+        if (node.serializer != null) {
+            out.writeString(node.serializer.fields[(Integer) key].getName());
+        } else if (node.isMap) {
+            out.writeObject(key);
+        } else {
+            out.writeInt((Integer) key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyNode(Object base, HessianDecoder in) throws IOException {
+        String type = in.readString();
+
+        if (base instanceof List) {
+            applyList((List<Object>) base, in);
+        } else if (base instanceof Map) {
+            applyMap((Map<Object, Object>) base, in);
+        } else if (base != null && base.getClass().isArray()) {
+            applyArray(base, in);
+        } else if (base != null && base.getClass().getName().equals(type)) {
+            applyFields(base, in);
+        } else {
+            throw new HessianProtocolException("delta of '" + type + "' cannot be applied to "
+                    + (base != null ? base.getClass().getName() : "null"));
+        }
+    }
+
+    private void applyFields(Object base, HessianDecoder in) throws IOException {
+        Class<?> cl = base.getClass();
+        FieldBasedSerializer serializer = getFieldSerializer(cl);
+        HessianDeserializer deserializer = serializerFactory.getDeserializer(cl);
+
+        if (serializer == null || !(deserializer instanceof AbstractFieldDeserializer)) {
+            throw new HessianProtocolException("'" + cl.getName() + "' cannot be patched by fields");
+        }
+
+        String[] fieldNames = serializer.getFieldNames();
+
+        for (int op = in.readInt(); op != END; op = in.readInt()) {
+            String name = in.readString();
+
+            if (op == SET) {
+                ((FieldDeserializer) deserializer.createField(name)).deserialize(in, base);
+            } else if (op == PATCH) {
+                int index = indexOf(fieldNames, name);
+
+                if (index < 0) {
+                    throw new HessianProtocolException("'" + cl.getName() + "' has no field '" + name + "'");
+                }
+
+                applyNode(serializer.getFieldValue(base, index), in);
+            } else {
+                throw new HessianProtocolException("delta operation " + op + " is not valid for a field");
+            }
+        }
+    }
+
+    private void applyList(List<Object> base, HessianDecoder in) throws IOException {
+        for (int op = in.readInt(); op != END; op = in.readInt()) {
+            switch (op) {
+                case SET:
+                    base.set(in.readInt(), in.readObject());
+                    break;
+
+                case PATCH:
+                    applyNode(base.get(in.readInt()), in);
+                    break;
+
+                case ADD:
+                    base.add(in.readObject());
+                    break;
+
+                case TRUNCATE:
+                    base.subList(in.readInt(), base.size()).clear();
+                    break;
+
+                default:
+                    throw new HessianProtocolException("delta operation " + op + " is not valid for a list");
+            }
+        }
+    }
+
+    private void applyMap(Map<Object, Object> base, HessianDecoder in) throws IOException {
+        for (int op = in.readInt(); op != END; op = in.readInt()) {
+            Object key = in.readObject();
+
+            switch (op) {
+                case SET:
+                    base.put(key, in.readObject());
+                    break;
+
+                case PATCH:
+                    applyNode(base.get(key), in);
+                    break;
+
+                case REMOVE:
+                    base.remove(key);
+                    break;
+
+                default:
+                    throw new HessianProtocolException("delta operation " + op + " is not valid for a map");
+            }
+        }
+    }
+
+    private void applyArray(Object base, HessianDecoder in) throws IOException {
+        for (int op = in.readInt(); op != END; op = in.readInt()) {
+            int index = in.readInt();
+
+            if (op == SET) {
+                Array.set(base, index, in.readObject(base.getClass().getComponentType()));
+            } else if (op == PATCH) {
+                applyNode(Array.get(base, index), in);
+            } else {
+                throw new HessianProtocolException("delta operation " + op + " is not valid for an array");
+            }
+        }
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * One diff, pairing the objects of the previous and current graphs.
+     */
+    private final class Comparison {
+        private final IdentityHashMap<Object, Object> previousToCurrent = new IdentityHashMap<>();
+        private final IdentityHashMap<Object, Object> currentToPrevious = new IdentityHashMap<>();
+
+        /**
+         * Returns UNCHANGED, REPLACE or the node of changes.
+         */
+        Object compare(Object previous, Object current) throws IOException {
+            if (previous == current) {
+                return UNCHANGED;
+            } else if (previous == null || current == null || previous.getClass() != current.getClass()) {
+                return REPLACE;
+            }
+
+            Class<?> cl = current.getClass();
+            FieldBasedSerializer serializer = null;
+
+            if (!(current instanceof List) && !(current instanceof Map) && !isObjectArray(cl)) {
+                serializer = getFieldSerializer(cl);
+
+                if (serializer == null) {
+                    return Objects.deepEquals(previous, current) ? UNCHANGED : REPLACE;
+                }
+            }
+
+            Object pairedCurrent = previousToCurrent.get(previous);
+
+            if (pairedCurrent != null || currentToPrevious.containsKey(current)) {
+                // a shared object is patched on its first path only
+                return pairedCurrent == current ? UNCHANGED : REPLACE;
+            }
+
+            previousToCurrent.put(previous, current);
+            currentToPrevious.put(current, previous);
+
+            Node node;
+
+            if (serializer != null) {
+                node = compareFields(previous, current, serializer);
+            } else if (current instanceof List) {
+                node = compareList((List<?>) previous, (List<?>) current);
+            } else if (current instanceof Map) {
+                node = compareMap((Map<?, ?>) previous, (Map<?, ?>) current);
+            } else if (Array.getLength(previous) == Array.getLength(current)) {
+                node = compareArray((Object[]) previous, (Object[]) current);
+            } else {
+                return REPLACE;
+            }
+
+            return node.changes.isEmpty() ? UNCHANGED : node;
+        }
+
+        private Node compareFields(Object previous, Object current, FieldBasedSerializer serializer)
+                throws IOException {
+            Node node = new Node(current.getClass().getName(), serializer, false);
+
+            for (int i = 0; i < serializer.fields.length; i++) {
+                Object previousValue = serializer.getFieldValue(previous, i);
+                Object currentValue = serializer.getFieldValue(current, i);
+
+                Object result;
+
+                if (serializer.fields[i].getType().isPrimitive()) {
+                    result = previousValue.equals(currentValue) ? UNCHANGED : REPLACE;
+                } else {
+                    result = compare(previousValue, currentValue);
+                }
+
+                if (result == REPLACE) {
+                    Change change = new Change(SET, i, null, null);
+                    change.owner = current;
+                    change.serializer = serializer;
+                    node.changes.add(change);
+                } else if (result != UNCHANGED) {
+                    node.changes.add(new Change(PATCH, i, null, (Node) result));
+                }
+            }
+
+            return node;
+        }
+
+        private Node compareList(List<?> previous, List<?> current) throws IOException {
+            Node node = new Node(null, null, false);
+            int common = Math.min(previous.size(), current.size());
+
+            for (int i = 0; i < common; i++) {
+                addChange(node, i, previous.get(i), current.get(i));
+            }
+
+            if (current.size() < previous.size()) {
+                node.changes.add(new Change(TRUNCATE, current.size(), null, null));
+            }
+
+            for (int i = common; i < current.size(); i++) {
+                node.changes.add(new Change(ADD, null, current.get(i), null));
+            }
+
+            return node;
+        }
+
+        private Node compareMap(Map<?, ?> previous, Map<?, ?> current) throws IOException {
+            Node node = new Node(null, null, true);
+
+            for (Map.Entry<?, ?> entry : current.entrySet()) {
+                Object key = entry.getKey();
+
+                if (!previous.containsKey(key)) {
+                    node.changes.add(new Change(SET, key, entry.getValue(), null));
+                } else {
+                    addChange(node, key, previous.get(key), entry.getValue());
+                }
+            }
+
+            for (Object key : previous.keySet()) {
+                if (!current.containsKey(key)) {
+                    node.changes.add(new Change(REMOVE, key, null, null));
+                }
+            }
+
+            return node;
+        }
+
+        private Node compareArray(Object[] previous, Object[] current) throws IOException {
+            Node node = new Node(null, null, false);
+
+            for (int i = 0; i < current.length; i++) {
+                addChange(node, i, previous[i], current[i]);
+            }
+
+            return node;
+        }
+
+        private void addChange(Node node, Object key, Object previous, Object current) throws IOException {
+            Object result = compare(previous, current);
+
+            if (result == REPLACE) {
+                node.changes.add(new Change(SET, key, current, null));
+            } else if (result != UNCHANGED) {
+                node.changes.add(new Change(PATCH, key, null, (Node) result));
+            }
+        }
+
+        private boolean isObjectArray(Class<?> cl) {
+            return cl.isArray() && !cl.getComponentType().isPrimitive();
+        }
+    }
+
+    /**
+     * The changes to one object, list, map or array.
+     */
+    private static final class Node {
+        private final String type;
+        private final FieldBasedSerializer serializer;
+        private final boolean isMap;
+        private final List<Change> changes = new ArrayList<>();
+
+        Node(String type, FieldBasedSerializer serializer, boolean isMap) {
+            this.type = type;
+            this.serializer = serializer;
+            this.isMap = isMap;
+        }
+    }
+
+    private static final class Change {
+        private final int op;
+        private final Object key;
+        private final Object value;
+        private final Node node;
+
+        /**
+         * the object whose field is set, written by its serializer
+         */
+        private Object owner;
+
+        private FieldBasedSerializer serializer;
+
+        Change(int op, Object key, Object value, Node node) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+            this.node = node;
+        }
+    }
+}
@@ -52,7 +52,14 @@ import io.github.wuwen5.hessian.util.IdentityIntMap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Output stream for Hessian 2 requests.
@@ -92,6 +99,11 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
 
     private int refCount = 0;
 
+    /**
+     * references of equal values, for deduplicated types
+     */
+    private LinkedHashMap<Object, Integer> valueRefs;
+
     private boolean isCloseStreamOnClose;
 
     /**
@@ -104,6 +116,13 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
      */
     private HashMap<String, Integer> typeRefs;
 
+    /**
+     * class definition keys of generic objects, by type and fields
+     */
+    private HashMap<GenericLayout, String> genericKeys;
+
+    private HessianClassRegistry classRegistry;
+
     protected final byte[] buffer = new byte[SIZE];
     protected int offset;
 
@@ -111,6 +130,8 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
 
     private boolean isUnshared;
 
+    private boolean isColumnarListEncoding;
+
     /**
      * Creates a new Hessian output stream, initialized with an
      * underlying output stream.
@@ -161,6 +182,24 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
         return oldIsUnshared;
     }
 
+    /**
+     * Writes lists of objects of one class as columns, which only a
+     * {@link ColumnarListDeserializer} reads, so it is set only for peers
+     * known to support it.
+     *
+     * @see ColumnarListSerializer
+     */
+    public void setColumnarListEncoding(boolean isColumnar) {
+        this.isColumnarListEncoding = isColumnar;
+    }
+
+    /**
+     * True if lists of objects of one class are written as columns.
+     */
+    public boolean isColumnarListEncoding() {
+        return isColumnarListEncoding;
+    }
+
     public void writeVersion() throws IOException {
         flushIfFull();
 
@@ -313,7 +352,7 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
 
             buffer[offset++] = (byte) 'C';
 
-            writeString(type);
+            writeString(findSerializerFactory().getTypeAlias(type));
 
             return -1;
         }
@@ -338,6 +377,8 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
     private void writeType(String type) throws IOException {
         flushIfFull();
 
+        type = findSerializerFactory().getTypeAlias(type);
+
         int len = type.length();
         if (len == 0) {
             throw new IllegalArgumentException("empty type is not allowed");
@@ -502,7 +543,10 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
 
         int intValue = (int) value;
 
-        if (intValue == value) {
+        // -0.0 equals the compact zero, but only the full form keeps its sign
+        boolean isCompact = Double.doubleToRawLongBits(value) != Long.MIN_VALUE;
+
+        if (isCompact && intValue == value) {
             if (intValue == 0) {
                 buffer[i++] = (byte) BC_DOUBLE_ZERO;
 
@@ -535,7 +579,7 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
 
         int mills = (int) (value * 1000);
 
-        if (0.001 * mills == value) {
+        if (isCompact && 0.001 * mills == value) {
             buffer[i] = (byte) (BC_DOUBLE_MILL);
             buffer[i + 1] = (byte) (mills >> 24);
             buffer[i + 2] = (byte) (mills >> 16);
@@ -999,11 +1043,68 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
             writeRef(ref);
 
             return true;
-        } else {
-            refCount++;
+        }
+
+        Hessian2SerializerFactory factory = findSerializerFactory();
+
+        if (factory.isValueDedup(object)) {
+            Integer valueRef = getValueRefs(factory).putIfAbsent(object, newRef);
+
+            if (valueRef != null) {
+                // later writes of this instance refer to the equal value
+                addRef(object, valueRef, true);
+                writeRef(valueRef);
+
+                return true;
+            }
+        }
 
+        refCount++;
+
+        return false;
+    }
+
+    /**
+     * Adds the references of the rows of a columnar list, in order, before
+     * any of them is written.
+     *
+     * @return false, adding nothing, if a row was already written or
+     * appears twice
+     */
+    boolean addRowRefs(List<?> rows) {
+        if (isUnshared) {
             return false;
         }
+
+        Set<Object> rowSet = Collections.newSetFromMap(new IdentityHashMap<>(rows.size()));
+
+        for (Object row : rows) {
+            if (refs.get(row) != IdentityIntMap.NULL || !rowSet.add(row)) {
+                return false;
+            }
+        }
+
+        for (Object row : rows) {
+            // replaces the NULL a removed reference leaves behind
+            refs.put(row, refCount++, true);
+        }
+
+        return true;
+    }
+
+    private LinkedHashMap<Object, Integer> getValueRefs(Hessian2SerializerFactory factory) {
+        if (valueRefs == null) {
+            int maxSize = factory.getValueDedupSize();
+
+            valueRefs = new LinkedHashMap<Object, Integer>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        return valueRefs;
     }
 
     @Override
@@ -1024,6 +1125,10 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
         } else {
             refs.remove(obj);
 
+            if (valueRefs != null) {
+                valueRefs.remove(obj);
+            }
+
             return true;
         }
     }
@@ -1044,6 +1149,10 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
 
             refs.remove(oldRef);
 
+            if (valueRefs != null) {
+                valueRefs.remove(oldRef);
+            }
+
             return true;
         } else {
             return false;
@@ -1086,6 +1195,7 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
     public void startPacket() throws IOException {
         refs.clear();
         refCount = 0;
+        valueRefs = null;
 
         flushBuffer();
 
@@ -1279,6 +1389,8 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
     }
 
     public void free() {
+        classRegistry = null;
+
         reset();
 
         os = null;
@@ -1292,6 +1404,7 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
     public void resetReferences() {
         refs.clear();
         refCount = 0;
+        valueRefs = null;
     }
 
     /**
@@ -1300,14 +1413,122 @@ public class HessianEncoder extends AbstractHessianEncoder implements Hessian2Co
     public void reset() {
         refs.clear();
         refCount = 0;
+        valueRefs = null;
+
+        resetDefinitions();
 
-        classRefs.clear();
-        typeRefs = null;
         offset = 0;
         isPacket = false;
         isUnshared = false;
     }
 
+    /**
+     * Resets the class definitions and types, so they are defined again
+     * when next written.  Definitions from the class registry are kept.
+     */
+    public void resetDefinitions() {
+        classRefs.clear();
+        typeRefs = null;
+        genericKeys = null;
+
+        if (classRegistry != null) {
+            seedClassRefs();
+        }
+    }
+
+    /**
+     * Sets the registry of pre-shared class definitions.  Instances of
+     * registered classes refer to the registry's definitions instead of
+     * defining their class in the stream, so the decoder must use the same
+     * registry.  Set the serializer factory first.
+     *
+     * @param classRegistry the registry, or null for none
+     */
+    public void setClassRegistry(HessianClassRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+
+        resetDefinitions();
+    }
+
+    public HessianClassRegistry getClassRegistry() {
+        return classRegistry;
+    }
+
+    private void seedClassRefs() {
+        Object[] keys = classRegistry.getEncoderKeys(findSerializerFactory());
+
+        for (int i = 0; i < keys.length; i++) {
+            classRefs.put(keys[i], i, false);
+        }
+    }
+
+    /**
+     * Returns the key the class definition of a generic object is written
+     * under.  Each set of fields gets a definition of its own, even for one
+     * type, since a definition written for other fields, or by the class's
+     * own serializer, cannot describe the object.
+     */
+    String getGenericDefinitionKey(String type, String[] fieldNames) {
+        if (genericKeys == null) {
+            genericKeys = new HashMap<>();
+
+            if (classRegistry != null) {
+                seedGenericKeys();
+            }
+        }
+
+        GenericLayout layout = new GenericLayout(type, fieldNames);
+        String key = genericKeys.get(layout);
+
+        if (key == null) {
+            // a copy of the type is distinct from any other key in the
+            // identity map of class definitions
+            key = new String(type);
+            genericKeys.put(layout, key);
+        }
+
+        return key;
+    }
+
+    private void seedGenericKeys() {
+        Object[] keys = classRegistry.getEncoderKeys(findSerializerFactory());
+        List<HessianClassRegistry.Definition> definitions = classRegistry.getDefinitions();
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] instanceof String) {
+                HessianClassRegistry.Definition def = definitions.get(i);
+
+                genericKeys.put(new GenericLayout(def.getType(), def.getFieldNames()), (String) keys[i]);
+            }
+        }
+    }
+
+    private static final class GenericLayout {
+        private final String type;
+        private final String[] fieldNames;
+
+        GenericLayout(String type, String[] fieldNames) {
+            this.type = type;
+            this.fieldNames = fieldNames;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GenericLayout)) {
+                return false;
+            }
+
+            GenericLayout layout = (GenericLayout) o;
+
+            return type.equals(layout.type) && Arrays.equals(fieldNames, layout.fieldNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Arrays.hashCode(fieldNames);
+        }
+    }
+
     class BytesOutputStream extends OutputStream {
         private int startOffset;
 
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * Push-style decoder for Hessian 2 values arriving in fragments, for
+ * non-blocking servers.
+ *
+ * <pre>
+ * HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+ *
+ * // on each read from the channel
+ * if (decoder.feed(buffer) == Status.OBJECT_READY) {
+ *   while (decoder.hasNext()) {
+ *     handle(decoder.next());
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>Each fragment is scanned once as it arrives.  The scanner keeps the
+ * grammar position on a stack (open lists, maps and objects, remaining
+ * string characters and binary bytes, and the field counts of the class
+ * definitions seen so far), so it resumes where the previous fragment
+ * ended without re-parsing.  When the last byte of a top-level value
+ * arrives, the value is materialized by a {@link HessianDecoder} reading
+ * the retained fragments, which are then released.
+ *
+ * <p>Successive top-level values share references and class definitions,
+ * as when they are read from one stream by a single {@link HessianDecoder}.
+ * After a protocol error the decoder must be discarded.
+ */
+public class HessianIncrementalDecoder {
+    private static final int PAGE_BITS = 13;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    public enum Status {
+        /**
+         * At least one complete value is available from {@link #next()}.
+         */
+        OBJECT_READY,
+        /**
+         * No complete value is available; more input is needed.
+         */
+        NEED_MORE_INPUT
+    }
+
+    private final HessianDecoder in;
+    private final PageInputStream is = new PageInputStream();
+    private final PageScanner scanner = new PageScanner();
+
+    private final ArrayList<byte[]> pages = new ArrayList<>();
+    private byte[] freePage;
+
+    /**
+     * stream offset of the first byte of pages[0]
+     */
+    private long base;
+    /**
+     * stream offset past the last byte received
+     */
+    private long writePos;
+    /**
+     * stream offset of the decoder
+     */
+    private long readPos;
+
+    private final ArrayList<Object> values = new ArrayList<>();
+    private int valueIndex;
+
+    public HessianIncrementalDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param serializerFactory the serializer factory, or null for the default
+     */
+    public HessianIncrementalDecoder(Hessian2SerializerFactory serializerFactory) {
+        in = new HessianDecoder(is);
+
+        if (serializerFactory != null) {
+            in.setSerializerFactory(serializerFactory);
+        }
+    }
+
+    /**
+     * Returns the decoder which materializes the values, for configuring
+     * its serializer factory.
+     */
+    public HessianDecoder getHessianInput() {
+        return in;
+    }
+
+    /**
+     * Consumes all remaining bytes of the fragment, decoding any values
+     * it completes.  The fragment is copied, so the caller may reuse it.
+     */
+    public Status feed(ByteBuffer input) throws IOException {
+        append(input);
+
+        while (scanner.scan()) {
+            values.add(decode());
+        }
+
+        return hasNext() ? Status.OBJECT_READY : Status.NEED_MORE_INPUT;
+    }
+
+    /**
+     * Consumes a fragment from a byte array.
+     */
+    public Status feed(byte[] buffer, int offset, int length) throws IOException {
+        return feed(ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    /**
+     * True if a decoded value is waiting.
+     */
+    public boolean hasNext() {
+        return valueIndex < values.size();
+    }
+
+    /**
+     * Returns the next decoded value, which may be null.
+     */
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Object value = values.get(valueIndex);
+        values.set(valueIndex++, null);
+
+        if (valueIndex == values.size()) {
+            values.clear();
+            valueIndex = 0;
+        }
+
+        return value;
+    }
+
+    /**
+     * True if no partial value is buffered, i.e. the input so far ends on
+     * a value boundary.
+     */
+    public boolean isIdle() {
+        return scanner.isIdle() && scanner.pos == writePos;
+    }
+
+    /**
+     * Returns the number of bytes received but not yet released.
+     */
+    public long getBufferedLength() {
+        return writePos - readPos;
+    }
+
+    private void append(ByteBuffer input) {
+        while (input.hasRemaining()) {
+            int offset = (int) (writePos - base) & PAGE_MASK;
+
+            if (offset == 0 && writePos - base == (long) pages.size() * PAGE_SIZE) {
+                byte[] page = freePage != null ? freePage : new byte[PAGE_SIZE];
+                freePage = null;
+                pages.add(page);
+            }
+
+            byte[] page = pages.get(pages.size() - 1);
+            int sublen = Math.min(input.remaining(), PAGE_SIZE - offset);
+
+            input.get(page, offset, sublen);
+            writePos += sublen;
+        }
+    }
+
+    private Object decode() throws IOException {
+        long pos = scanner.pos;
+        is.limit = pos;
+
+        Object value = in.readObject();
+
+        if (readPos != pos) {
+            throw new HessianProtocolException(
+                    "decoded value ends at " + readPos + " but scanned value ends at " + pos);
+        }
+
+        while (readPos - base >= PAGE_SIZE) {
+            freePage = pages.remove(0);
+            base += PAGE_SIZE;
+        }
+
+        return value;
+    }
+
+    /**
+     * Scans the retained pages.
+     */
+    private final class PageScanner extends HessianScanner {
+        @Override
+        protected long available() {
+            return writePos - pos;
+        }
+
+        @Override
+        protected int peek(int i) {
+            long offset = pos + i - base;
+
+            return pages.get((int) (offset >>> PAGE_BITS))[(int) offset & PAGE_MASK] & 0xff;
+        }
+    }
+
+    /**
+     * The retained input from the decoder's position up to the end of the
+     * completed value.
+     */
+    private final class PageInputStream extends InputStream {
+        private long limit;
+
+        @Override
+        public int read() {
+            if (readPos >= limit) {
+                return -1;
+            }
+
+            long offset = readPos++ - base;
+
+            return pages.get((int) (offset >>> PAGE_BITS))[(int) offset & PAGE_MASK] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (readPos >= limit) {
+                return -1;
+            }
+
+            long start = readPos - base;
+            int pageOffset = (int) start & PAGE_MASK;
+            int sublen = (int) Math.min(Math.min(length, limit - readPos), PAGE_SIZE - pageOffset);
+
+            System.arraycopy(pages.get((int) (start >>> PAGE_BITS)), pageOffset, buffer, offset, sublen);
+            readPos += sublen;
+
+            return sublen;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list read by a generic decoder: the elements in an array, with the
+ * list's type name and whether it was written with a length, so an
+ * encoder writes it back as it was read.
+ *
+ * @see HessianDecoder#setGeneric(boolean)
+ */
+public final class HessianList extends AbstractList<Object> implements RandomAccess {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final String type;
+    private final boolean isVariableLength;
+
+    private Object[] values;
+    private int size;
+
+    /**
+     * @param type the type name, or null for an untyped list
+     * @param isVariableLength true if the list is written without its
+     *     length, terminated by an end marker
+     * @param capacity the expected number of elements
+     */
+    public HessianList(String type, boolean isVariableLength, int capacity) {
+        this.type = type;
+        this.isVariableLength = isVariableLength;
+        this.values = capacity > 0 ? new Object[capacity] : EMPTY;
+    }
+
+    /**
+     * Returns the type name, which is the Java class for lists and
+     * "[" prefixed component types for arrays, or null if untyped.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public boolean isVariableLength() {
+        return isVariableLength;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        checkIndex(index, size);
+
+        return values[index];
+    }
+
+    @Override
+    public Object set(int index, Object value) {
+        checkIndex(index, size);
+
+        Object old = values[index];
+        values[index] = value;
+
+        return old;
+    }
+
+    @Override
+    public void add(int index, Object value) {
+        checkIndex(index, size + 1);
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, 2 * size));
+        }
+
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Object remove(int index) {
+        checkIndex(index, size);
+
+        Object old = values[index];
+
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        values[--size] = null;
+        modCount++;
+
+        return old;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + length);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A map read by a generic decoder: the keys and values in one array, in
+ * the order they were read, with the map's type name, so an encoder
+ * writes it back as it was read.
+ *
+ * <p>Lookups scan the keys, which suits the small maps of most payloads;
+ * copy the entries into a <code>HashMap</code> for many lookups into a
+ * large map.
+ *
+ * @see HessianDecoder#setGeneric(boolean)
+ */
+public final class HessianMap extends AbstractMap<Object, Object> {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final String type;
+
+    /**
+     * keys at even indexes, each followed by its value
+     */
+    private Object[] entries = EMPTY;
+
+    private int size;
+
+    /**
+     * @param type the type name, or null for an untyped map
+     */
+    public HessianMap(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Returns the type name, which is the Java class for maps and
+     * objects written as maps, or null if untyped.
+     */
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < 2 * size; i += 2) {
+            if (Objects.equals(entries[i], key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = indexOf(key);
+
+        return i >= 0 ? entries[i + 1] : null;
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        int i = indexOf(key);
+
+        if (i >= 0) {
+            Object old = entries[i + 1];
+            entries[i + 1] = value;
+
+            return old;
+        }
+
+        append(key, value);
+
+        return null;
+    }
+
+    /**
+     * Adds an entry without looking for the key, as read from a stream.
+     */
+    void append(Object key, Object value) {
+        if (2 * size == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(16, 2 * entries.length));
+        }
+
+        entries[2 * size] = key;
+        entries[2 * size + 1] = value;
+        size++;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = indexOf(key);
+
+        return i >= 0 ? removeAt(i) : null;
+    }
+
+    private Object removeAt(int i) {
+        Object old = entries[i + 1];
+
+        System.arraycopy(entries, i + 2, entries, i, 2 * size - i - 2);
+        size--;
+        entries[2 * size] = null;
+        entries[2 * size + 1] = null;
+
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(entries, 0, 2 * size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Object, Object>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<Object, Object>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<Object, Object>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < 2 * size;
+        }
+
+        @Override
+        public Map.Entry<Object, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            last = next;
+            next += 2;
+
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private final class Entry implements Map.Entry<Object, Object> {
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object getKey() {
+            return entries[index];
+        }
+
+        @Override
+        public Object getValue() {
+            return entries[index + 1];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = entries[index + 1];
+            entries[index + 1] = value;
+
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+
+            return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+/**
+ * An object read by a generic decoder, without its class: the type name
+ * and field names of its class definition, and the field values.
+ * Objects of one class definition share its field names array, so each
+ * object costs only its values.
+ *
+ * <p>An encoder writes the object back with the same class definition
+ * and field order, so an unchanged graph of generic values re-encodes to
+ * the bytes it was read from.
+ *
+ * @see HessianDecoder#setGeneric(boolean)
+ */
+public final class HessianObject {
+    private final String type;
+    private final String[] fieldNames;
+    private final Object[] values;
+
+    /**
+     * Creates an object with all fields null.  The field names array is
+     * shared, not copied, and must not be modified.
+     *
+     * @param type the type name written in the class definition
+     * @param fieldNames the field names, in the order they are written
+     */
+    public HessianObject(String type, String[] fieldNames) {
+        this(type.intern(), fieldNames, new Object[fieldNames.length]);
+    }
+
+    /**
+     * @param type the type name, already interned, since an encoder finds
+     *     the class definition of a type by identity
+     */
+    HessianObject(String type, String[] fieldNames, Object[] values) {
+        this.type = type;
+        this.fieldNames = fieldNames;
+        this.values = values;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getFieldCount() {
+        return fieldNames.length;
+    }
+
+    public String getFieldName(int index) {
+        return fieldNames[index];
+    }
+
+    /**
+     * Returns the index of the named field, or -1.
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the value of the named field, or null if the class
+     * definition has no such field.
+     */
+    public Object get(String name) {
+        int index = indexOf(name);
+
+        return index >= 0 ? values[index] : null;
+    }
+
+    public void set(int index, Object value) {
+        values[index] = value;
+    }
+
+    /**
+     * Sets the value of the named field.
+     *
+     * @throws IllegalArgumentException if the class definition has no
+     *     such field
+     */
+    public void set(String name, Object value) {
+        int index = indexOf(name);
+
+        if (index < 0) {
+            throw new IllegalArgumentException(type + " has no field '" + name + "'");
+        }
+
+        values[index] = value;
+    }
+
+    String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(type).append('[');
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            Object value = values[i];
+
+            sb.append(fieldNames[i]).append('=').append(value == this ? "(this)" : value);
+        }
+
+        return sb.append(']').toString();
+    }
+}
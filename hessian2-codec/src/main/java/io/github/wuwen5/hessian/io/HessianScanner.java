@@ -0,0 +1,729 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds the end of Hessian 2 values without materializing them.
+ *
+ * <p>The grammar position is kept on an explicit stack (open lists, maps
+ * and objects, remaining string characters and binary bytes), so a scan
+ * which runs out of input resumes where it stopped once more arrives.
+ * Class definition field counts persist across values, as they do in a
+ * {@link HessianDecoder} reading one stream.
+ */
+abstract class HessianScanner {
+    private static final long NEED_MORE = Long.MIN_VALUE;
+
+    /**
+     * values, count is the number remaining, or -1 until 'Z'
+     */
+    private static final int VALUES = 0;
+    /**
+     * an int which is the length of a fixed list
+     */
+    private static final int LIST_LENGTH = 1;
+    /**
+     * an int which is the class definition of an object
+     */
+    private static final int OBJECT_REF = 2;
+    /**
+     * an int which is the field count of a class definition
+     */
+    private static final int DEF_LENGTH = 3;
+    /**
+     * characters of a string chunk
+     */
+    private static final int STRING = 4;
+    /**
+     * bytes of a binary chunk
+     */
+    private static final int BINARY = 5;
+
+    /**
+     * the end of a class definition, count is its start offset
+     */
+    private static final int DEF_END = 6;
+    /**
+     * the type of a typed list or map
+     */
+    private static final int TYPE = 7;
+    /**
+     * the end of a type name, count is its start offset
+     */
+    private static final int TYPE_END = 8;
+
+    /**
+     * stream offset of the scanner
+     */
+    protected long pos;
+
+    private int[] kinds = new int[16];
+    private long[] counts = new long[16];
+    private boolean[] lastChunks = new boolean[16];
+    private int depth;
+
+    /**
+     * values of each class definition's instances
+     */
+    private final ArrayList<Integer> fieldCounts = new ArrayList<>();
+
+    /**
+     * true while scanning the definition of a trailing value type
+     */
+    private boolean isTrailingValueDef;
+
+    /**
+     * Returns the unsigned byte at <code>pos + i</code>, which must be
+     * less than {@link #available()}.
+     */
+    protected abstract int peek(int i);
+
+    /**
+     * Returns the number of input bytes after <code>pos</code>.
+     */
+    protected abstract long available();
+
+    /**
+     * Called when a class definition between the two offsets has been
+     * scanned.
+     */
+    protected void classDefinition(long start, long end) {}
+
+    /**
+     * Called when a type name between the two offsets has been scanned.
+     * Later values may refer to it by index.
+     */
+    protected void typeDefinition(long start, long end) {}
+
+    /**
+     * True between values.
+     */
+    boolean isIdle() {
+        return depth == 0;
+    }
+
+    /**
+     * Returns the number of class definitions scanned.
+     */
+    int getClassDefinitionCount() {
+        return fieldCounts.size();
+    }
+
+    /**
+     * Advances the scanner, returning true when a top-level value is
+     * complete and false when more input is needed.
+     */
+    boolean scan() throws IOException {
+        while (true) {
+            if (depth == 0) {
+                if (available() == 0) {
+                    return false;
+                }
+
+                push(VALUES, 1);
+            }
+
+            int top = depth - 1;
+            long value;
+
+            switch (kinds[top]) {
+                case VALUES:
+                    if (counts[top] == 0) {
+                        depth--;
+
+                        if (depth == 0) {
+                            return true;
+                        }
+                    } else if (counts[top] < 0 && available() > 0 && peek(0) == 'Z') {
+                        pos++;
+                        counts[top] = 0;
+                    } else if (!scanValue(top)) {
+                        return false;
+                    }
+                    break;
+
+                case LIST_LENGTH:
+                    if ((value = scanInt()) == NEED_MORE) {
+                        return false;
+                    } else if (value < 0) {
+                        throw error("illegal list length " + value);
+                    }
+
+                    replace(top, value);
+                    break;
+
+                case OBJECT_REF:
+                    if ((value = scanInt()) == NEED_MORE) {
+                        return false;
+                    } else if (value < 0 || fieldCounts.size() <= value) {
+                        throw error("illegal object definition #" + value);
+                    }
+
+                    replace(top, fieldCounts.get((int) value));
+                    break;
+
+                case DEF_LENGTH:
+                    if ((value = scanInt()) == NEED_MORE) {
+                        return false;
+                    } else if (value < 0) {
+                        throw error("illegal field count " + value);
+                    }
+
+                    // trailing value types write one value after their
+                    // empty field list
+                    fieldCounts.add(value == 0 && isTrailingValueDef ? 1 : (int) value);
+                    replace(top, value);
+                    break;
+
+                case STRING:
+                    if (!scanString(top)) {
+                        return false;
+                    }
+                    break;
+
+                case BINARY:
+                    if (!scanBinary(top)) {
+                        return false;
+                    }
+                    break;
+
+                case DEF_END:
+                    depth--;
+                    classDefinition(counts[top], pos);
+                    break;
+
+                case TYPE:
+                    if (available() < 1) {
+                        return false;
+                    }
+
+                    value = peek(0);
+
+                    if (value <= 0x1f || value >= 0x30 && value <= 0x33 || value == 'R' || value == 'S') {
+                        kinds[top] = TYPE_END;
+                        counts[top] = pos;
+                        push(VALUES, 1);
+                    } else {
+                        // type reference
+                        replace(top, 1);
+                    }
+                    break;
+
+                case TYPE_END:
+                    depth--;
+                    typeDefinition(counts[top], pos);
+                    break;
+
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Scans the header of one value in a VALUES frame, pushing the frames
+     * for its contents.
+     */
+    private boolean scanValue(int top) throws IOException {
+        if (available() < 1) {
+            return false;
+        }
+
+        int tag = peek(0);
+
+        if (tag == 'C') {
+            if (!scanDefinitionType()) {
+                return false;
+            }
+
+            // a class definition precedes the value it is for
+            push(DEF_END, pos);
+            pos++;
+            push(DEF_LENGTH, 0);
+            push(VALUES, 1);
+            return true;
+        }
+
+        int length = headerLength(tag);
+
+        if (available() < length) {
+            return false;
+        }
+
+        long next = counts[top] > 0 ? counts[top] - 1 : counts[top];
+
+        switch (tag) {
+            case 0x00:
+            case 0x01:
+            case 0x02:
+            case 0x03:
+            case 0x04:
+            case 0x05:
+            case 0x06:
+            case 0x07:
+            case 0x08:
+            case 0x09:
+            case 0x0a:
+            case 0x0b:
+            case 0x0c:
+            case 0x0d:
+            case 0x0e:
+            case 0x0f:
+            case 0x10:
+            case 0x11:
+            case 0x12:
+            case 0x13:
+            case 0x14:
+            case 0x15:
+            case 0x16:
+            case 0x17:
+            case 0x18:
+            case 0x19:
+            case 0x1a:
+            case 0x1b:
+            case 0x1c:
+            case 0x1d:
+            case 0x1e:
+            case 0x1f:
+                counts[top] = next;
+                pushChunk(STRING, tag, true);
+                break;
+
+            case 0x30:
+            case 0x31:
+            case 0x32:
+            case 0x33:
+                counts[top] = next;
+                pushChunk(STRING, ((tag - 0x30) << 8) + peek(1), true);
+                break;
+
+            case 'R':
+            case 'S':
+                counts[top] = next;
+                pushChunk(STRING, (peek(1) << 8) + peek(2), tag == 'S');
+                break;
+
+            case 0x20:
+            case 0x21:
+            case 0x22:
+            case 0x23:
+            case 0x24:
+            case 0x25:
+            case 0x26:
+            case 0x27:
+            case 0x28:
+            case 0x29:
+            case 0x2a:
+            case 0x2b:
+            case 0x2c:
+            case 0x2d:
+            case 0x2e:
+            case 0x2f:
+                counts[top] = next;
+                pushChunk(BINARY, tag - 0x20, true);
+                break;
+
+            case 0x34:
+            case 0x35:
+            case 0x36:
+            case 0x37:
+                counts[top] = next;
+                pushChunk(BINARY, ((tag - 0x34) << 8) + peek(1), true);
+                break;
+
+            case 'A':
+            case 'B':
+                counts[top] = next;
+                pushChunk(BINARY, (peek(1) << 8) + peek(2), tag == 'B');
+                break;
+
+            case 'H':
+            case 'W':
+                counts[top] = next;
+                push(VALUES, -1);
+                break;
+
+            case 'M':
+            case 'U':
+                counts[top] = next;
+                push(VALUES, -1);
+                push(TYPE, 0);
+                break;
+
+            case 'V':
+                counts[top] = next;
+                push(LIST_LENGTH, 0);
+                push(TYPE, 0);
+                break;
+
+            case 'X':
+                counts[top] = next;
+                push(LIST_LENGTH, 0);
+                break;
+
+            case 0x70:
+            case 0x71:
+            case 0x72:
+            case 0x73:
+            case 0x74:
+            case 0x75:
+            case 0x76:
+            case 0x77:
+                counts[top] = next;
+                push(VALUES, tag - 0x70);
+                push(TYPE, 0);
+                break;
+
+            case 0x78:
+            case 0x79:
+            case 0x7a:
+            case 0x7b:
+            case 0x7c:
+            case 0x7d:
+            case 0x7e:
+            case 0x7f:
+                counts[top] = next;
+                push(VALUES, tag - 0x78);
+                break;
+
+            case 'O':
+                counts[top] = next;
+                push(OBJECT_REF, 0);
+                break;
+
+            case 0x60:
+            case 0x61:
+            case 0x62:
+            case 0x63:
+            case 0x64:
+            case 0x65:
+            case 0x66:
+            case 0x67:
+            case 0x68:
+            case 0x69:
+            case 0x6a:
+            case 0x6b:
+            case 0x6c:
+            case 0x6d:
+            case 0x6e:
+            case 0x6f:
+                if (fieldCounts.size() <= tag - 0x60) {
+                    throw error("illegal object definition #" + (tag - 0x60));
+                }
+
+                counts[top] = next;
+                push(VALUES, fieldCounts.get(tag - 0x60));
+                break;
+
+            case 'Q':
+                counts[top] = next;
+                // ref index
+                push(VALUES, 1);
+                break;
+
+            default:
+                // fixed-length scalars
+                counts[top] = next;
+                break;
+        }
+
+        pos += length;
+
+        return true;
+    }
+
+    /**
+     * Checks whether the class definition at <code>pos</code> is for a
+     * trailing value type, returning false if its type name is incomplete.
+     * The type names are short ASCII strings.
+     */
+    private boolean scanDefinitionType() {
+        if (available() < 2) {
+            return false;
+        }
+
+        int length = peek(1);
+
+        if (length > 0x1f) {
+            isTrailingValueDef = false;
+            return true;
+        } else if (available() < 2 + length) {
+            return false;
+        }
+
+        char[] type = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            type[i] = (char) peek(2 + i);
+        }
+
+        isTrailingValueDef = HessianDecoder.isTrailingValueType(new String(type));
+
+        return true;
+    }
+
+    /**
+     * Returns the length of the value header, including any fixed-size
+     * payload.
+     */
+    private int headerLength(int tag) throws IOException {
+        if (tag <= 0x1f) {
+            return 1;
+        } else if (tag <= 0x2f) {
+            return 1;
+        } else if (tag <= 0x37) {
+            return 2;
+        } else if (tag <= 0x3f) {
+            // three-octet long
+            return 3;
+        } else if (tag >= 0x60 && tag <= 0xbf) {
+            // direct objects, direct lists, one-octet ints
+            return 1;
+        } else if (tag >= 0xc0 && tag <= 0xcf) {
+            return 2;
+        } else if (tag >= 0xd0 && tag <= 0xd7) {
+            return 3;
+        } else if (tag >= 0xd8 && tag <= 0xef) {
+            return 1;
+        } else if (tag >= 0xf0) {
+            return 2;
+        }
+
+        switch (tag) {
+            case 'N':
+            case 'T':
+            case 'F':
+            case 'H':
+            case 'M':
+            case 'O':
+            case 'Q':
+            case 'U':
+            case 'V':
+            case 'W':
+            case 'X':
+            case 0x5b:
+            case 0x5c:
+                return 1;
+
+            case 0x5d:
+                return 2;
+
+            case 'A':
+            case 'B':
+            case 'R':
+            case 'S':
+            case 0x5e:
+                return 3;
+
+            case 'I':
+            case 'K':
+            case 'Y':
+            case 0x5f:
+                return 5;
+
+            case 'D':
+            case 'J':
+            case 'L':
+                return 9;
+
+            default:
+                throw error("unknown code 0x" + Integer.toHexString(tag));
+        }
+    }
+
+    /**
+     * Scans an int whose value the scanner needs, returning NEED_MORE if
+     * it is incomplete.
+     */
+    private long scanInt() throws IOException {
+        if (available() < 1) {
+            return NEED_MORE;
+        }
+
+        int tag = peek(0);
+
+        if (tag >= 0x80 && tag <= 0xbf) {
+            pos += 1;
+            return tag - 0x90;
+        } else if (tag >= 0xc0 && tag <= 0xcf) {
+            if (available() < 2) {
+                return NEED_MORE;
+            }
+
+            long value = ((tag - 0xc8) << 8) + peek(1);
+            pos += 2;
+            return value;
+        } else if (tag >= 0xd0 && tag <= 0xd7) {
+            if (available() < 3) {
+                return NEED_MORE;
+            }
+
+            long value = ((tag - 0xd4) << 16) + (peek(1) << 8) + peek(2);
+            pos += 3;
+            return value;
+        } else if (tag == 'I') {
+            if (available() < 5) {
+                return NEED_MORE;
+            }
+
+            long value = (peek(1) << 24) + (peek(2) << 16) + (peek(3) << 8) + peek(4);
+            pos += 5;
+            return value;
+        } else {
+            throw error("expected int at 0x" + Integer.toHexString(tag));
+        }
+    }
+
+    private boolean scanString(int top) throws IOException {
+        while (true) {
+            while (counts[top] > 0) {
+                if (available() < 1) {
+                    return false;
+                }
+
+                int ch = peek(0);
+                int length;
+
+                if (ch < 0x80) {
+                    length = 1;
+                } else if ((ch & 0xe0) == 0xc0) {
+                    length = 2;
+                } else if ((ch & 0xf0) == 0xe0) {
+                    length = 3;
+                } else {
+                    throw error("bad utf-8 encoding at 0x" + Integer.toHexString(ch));
+                }
+
+                if (available() < length) {
+                    return false;
+                }
+
+                pos += length;
+                counts[top]--;
+            }
+
+            if (lastChunks[top]) {
+                depth--;
+                return true;
+            }
+
+            if (available() < 1) {
+                return false;
+            }
+
+            int tag = peek(0);
+
+            if (tag <= 0x1f) {
+                setChunk(top, tag, true, 1);
+            } else if (tag >= 0x30 && tag <= 0x33) {
+                if (available() < 2) {
+                    return false;
+                }
+
+                setChunk(top, ((tag - 0x30) << 8) + peek(1), true, 2);
+            } else if (tag == 'R' || tag == 'S') {
+                if (available() < 3) {
+                    return false;
+                }
+
+                setChunk(top, (peek(1) << 8) + peek(2), tag == 'S', 3);
+            } else {
+                throw error("expected string chunk at 0x" + Integer.toHexString(tag));
+            }
+        }
+    }
+
+    private boolean scanBinary(int top) throws IOException {
+        while (true) {
+            long sublen = Math.min(counts[top], available());
+
+            pos += sublen;
+            counts[top] -= sublen;
+
+            if (counts[top] > 0) {
+                return false;
+            } else if (lastChunks[top]) {
+                depth--;
+                return true;
+            }
+
+            if (available() < 1) {
+                return false;
+            }
+
+            int tag = peek(0);
+
+            if (tag >= 0x20 && tag <= 0x2f) {
+                setChunk(top, tag - 0x20, true, 1);
+            } else if (tag >= 0x34 && tag <= 0x37) {
+                if (available() < 2) {
+                    return false;
+                }
+
+                setChunk(top, ((tag - 0x34) << 8) + peek(1), true, 2);
+            } else if (tag == 'A' || tag == 'B') {
+                if (available() < 3) {
+                    return false;
+                }
+
+                setChunk(top, (peek(1) << 8) + peek(2), tag == 'B', 3);
+            } else {
+                throw error("expected binary chunk at 0x" + Integer.toHexString(tag));
+            }
+        }
+    }
+
+    private void setChunk(int top, int length, boolean isLast, int headerLength) {
+        counts[top] = length;
+        lastChunks[top] = isLast;
+        pos += headerLength;
+    }
+
+    private void pushChunk(int kind, int length, boolean isLast) {
+        push(kind, length);
+        lastChunks[depth - 1] = isLast;
+    }
+
+    private void push(int kind, long count) {
+        if (depth == kinds.length) {
+            int size = 2 * depth;
+
+            kinds = Arrays.copyOf(kinds, size);
+            counts = Arrays.copyOf(counts, size);
+            lastChunks = Arrays.copyOf(lastChunks, size);
+        }
+
+        kinds[depth] = kind;
+        counts[depth] = count;
+        lastChunks[depth] = false;
+        depth++;
+    }
+
+    private void replace(int top, long count) {
+        kinds[top] = VALUES;
+        counts[top] = count;
+    }
+
+    private HessianProtocolException error(String message) {
+        return new HessianProtocolException("offset " + pos + ": " + message);
+    }
+}
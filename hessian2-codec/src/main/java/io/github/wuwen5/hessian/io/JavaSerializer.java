@@ -117,6 +117,46 @@ public class JavaSerializer extends FieldBasedSerializer {
         }
     }
 
+    @Override
+    protected boolean isDefaultField(Object obj, int index) {
+        Field field = fields[index];
+        field.setAccessible(true);
+
+        return fieldSerializers[index].isDefault(obj, field);
+    }
+
+    @Override
+    protected void writeField(Object obj, int index, AbstractHessianEncoder out) throws IOException {
+        Field field = fields[index];
+        field.setAccessible(true);
+
+        fieldSerializers[index].serialize(out, obj, field);
+    }
+
+    @Override
+    protected Object getFieldValue(Object obj, int index) {
+        Field field = fields[index];
+        field.setAccessible(true);
+
+        try {
+            return field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void setFieldValue(Object obj, int index, Object value) {
+        Field field = fields[index];
+        field.setAccessible(true);
+
+        try {
+            field.set(obj, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private static FieldSerializer getFieldSerializer(Class<?> type) {
         if (int.class.equals(type) || byte.class.equals(type) || short.class.equals(type)) {
             return IntFieldSerializer.SER;
@@ -141,6 +181,32 @@ public class JavaSerializer extends FieldBasedSerializer {
     static class FieldSerializer {
         static final FieldSerializer SER = new FieldSerializer();
 
+        boolean isDefault(Object obj, Field field) {
+            Object value;
+
+            try {
+                value = field.get(obj);
+            } catch (IllegalAccessException e) {
+                return false;
+            }
+
+            if (value == null) {
+                return true;
+            } else if (!field.getType().isPrimitive()) {
+                return false;
+            } else if (value instanceof Boolean) {
+                return !(Boolean) value;
+            } else if (value instanceof Character) {
+                return (Character) value == 0;
+            } else if (value instanceof Float) {
+                return Float.floatToRawIntBits((Float) value) == 0;
+            } else if (value instanceof Double) {
+                return Double.doubleToRawLongBits((Double) value) == 0;
+            } else {
+                return ((Number) value).doubleValue() == 0;
+            }
+        }
+
         void serialize(AbstractHessianEncoder out, Object obj, Field field) throws IOException {
             Object value = null;
 
@@ -68,6 +68,8 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
     private FieldSerializer[] fieldSerializers;
 
+    private final long[] fieldOffsets;
+
     public static boolean isEnabled() {
         return isEnabled;
     }
@@ -77,8 +79,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
         fieldSerializers = new FieldSerializer[this.fields.length];
 
+        fieldOffsets = new long[this.fields.length];
+
         for (int i = 0; i < this.fields.length; i++) {
             fieldSerializers[i] = getFieldSerializer(this.fields[i]);
+            fieldOffsets[i] = UNSAFE.objectFieldOffset(this.fields[i]);
         }
     }
 
@@ -91,6 +96,10 @@ public class UnsafeSerializer extends FieldBasedSerializer {
             return;
         }
 
+        if (writeSparseObject(obj, out)) {
+            return;
+        }
+
         Class<?> cl = obj.getClass();
 
         int ref = out.writeObjectBegin(cl.getName());
@@ -136,6 +145,94 @@ public class UnsafeSerializer extends FieldBasedSerializer {
         }
     }
 
+    @Override
+    protected boolean isDefaultField(Object obj, int index) {
+        return fieldSerializers[index].isDefault(obj);
+    }
+
+    @Override
+    protected void writeField(Object obj, int index, AbstractHessianEncoder out) throws IOException {
+        fieldSerializers[index].serialize(out, obj);
+    }
+
+    @Override
+    protected Object getFieldValue(Object obj, int index) {
+        Class<?> type = fields[index].getType();
+        long offset = fieldOffsets[index];
+
+        if (!type.isPrimitive()) {
+            return UNSAFE.getObject(obj, offset);
+        } else if (boolean.class.equals(type)) {
+            return UNSAFE.getBoolean(obj, offset);
+        } else if (byte.class.equals(type)) {
+            return UNSAFE.getByte(obj, offset);
+        } else if (char.class.equals(type)) {
+            return UNSAFE.getChar(obj, offset);
+        } else if (short.class.equals(type)) {
+            return UNSAFE.getShort(obj, offset);
+        } else if (int.class.equals(type)) {
+            return UNSAFE.getInt(obj, offset);
+        } else if (long.class.equals(type)) {
+            return UNSAFE.getLong(obj, offset);
+        } else if (float.class.equals(type)) {
+            return UNSAFE.getFloat(obj, offset);
+        } else {
+            return UNSAFE.getDouble(obj, offset);
+        }
+    }
+
+    @Override
+    protected void setFieldValue(Object obj, int index, Object value) {
+        Class<?> type = fields[index].getType();
+        long offset = fieldOffsets[index];
+
+        if (!type.isPrimitive()) {
+            UNSAFE.putObject(obj, offset, value);
+        } else if (boolean.class.equals(type)) {
+            UNSAFE.putBoolean(obj, offset, (Boolean) value);
+        } else if (byte.class.equals(type)) {
+            UNSAFE.putByte(obj, offset, (Byte) value);
+        } else if (char.class.equals(type)) {
+            UNSAFE.putChar(obj, offset, (Character) value);
+        } else if (short.class.equals(type)) {
+            UNSAFE.putShort(obj, offset, (Short) value);
+        } else if (int.class.equals(type)) {
+            UNSAFE.putInt(obj, offset, (Integer) value);
+        } else if (long.class.equals(type)) {
+            UNSAFE.putLong(obj, offset, (Long) value);
+        } else if (float.class.equals(type)) {
+            UNSAFE.putFloat(obj, offset, (Float) value);
+        } else {
+            UNSAFE.putDouble(obj, offset, (Double) value);
+        }
+    }
+
+    @Override
+    protected void copyField(Object source, Object target, int index) {
+        Class<?> type = fields[index].getType();
+        long offset = fieldOffsets[index];
+
+        if (!type.isPrimitive()) {
+            UNSAFE.putObject(target, offset, UNSAFE.getObject(source, offset));
+        } else if (boolean.class.equals(type)) {
+            UNSAFE.putBoolean(target, offset, UNSAFE.getBoolean(source, offset));
+        } else if (byte.class.equals(type)) {
+            UNSAFE.putByte(target, offset, UNSAFE.getByte(source, offset));
+        } else if (char.class.equals(type)) {
+            UNSAFE.putChar(target, offset, UNSAFE.getChar(source, offset));
+        } else if (short.class.equals(type)) {
+            UNSAFE.putShort(target, offset, UNSAFE.getShort(source, offset));
+        } else if (int.class.equals(type)) {
+            UNSAFE.putInt(target, offset, UNSAFE.getInt(source, offset));
+        } else if (long.class.equals(type)) {
+            UNSAFE.putLong(target, offset, UNSAFE.getLong(source, offset));
+        } else if (float.class.equals(type)) {
+            UNSAFE.putFloat(target, offset, UNSAFE.getFloat(source, offset));
+        } else {
+            UNSAFE.putDouble(target, offset, UNSAFE.getDouble(source, offset));
+        }
+    }
+
     private static FieldSerializer getFieldSerializer(Field field) {
         Class<?> type = field.getType();
 
@@ -169,6 +266,8 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
     abstract static class FieldSerializer {
         abstract void serialize(AbstractHessianEncoder out, Object obj) throws IOException;
+
+        abstract boolean isDefault(Object obj);
     }
 
     static final class ObjectFieldSerializer extends FieldSerializer {
@@ -202,6 +301,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
                         e);
             }
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getObject(obj, offset) == null;
+        }
     }
 
     static final class BooleanFieldSerializer extends FieldSerializer {
@@ -221,6 +325,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeBoolean(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return !UNSAFE.getBoolean(obj, offset);
+        }
     }
 
     static final class ByteFieldSerializer extends FieldSerializer {
@@ -240,6 +349,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeInt(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getByte(obj, offset) == 0;
+        }
     }
 
     static final class CharFieldSerializer extends FieldSerializer {
@@ -259,6 +373,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeString(String.valueOf(value));
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getChar(obj, offset) == 0;
+        }
     }
 
     static final class ShortFieldSerializer extends FieldSerializer {
@@ -278,6 +397,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeInt(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getShort(obj, offset) == 0;
+        }
     }
 
     static final class IntFieldSerializer extends FieldSerializer {
@@ -297,6 +421,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeInt(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getInt(obj, offset) == 0;
+        }
     }
 
     static final class LongFieldSerializer extends FieldSerializer {
@@ -316,6 +445,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeLong(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getLong(obj, offset) == 0;
+        }
     }
 
     static final class FloatFieldSerializer extends FieldSerializer {
@@ -335,6 +469,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeDouble(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return Float.floatToRawIntBits(UNSAFE.getFloat(obj, offset)) == 0;
+        }
     }
 
     static final class DoubleFieldSerializer extends FieldSerializer {
@@ -352,6 +491,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeDouble(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return Double.doubleToRawLongBits(UNSAFE.getDouble(obj, offset)) == 0;
+        }
     }
 
     static final class StringFieldSerializer extends FieldSerializer {
@@ -371,6 +515,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
 
             out.writeString(value);
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getObject(obj, offset) == null;
+        }
     }
 
     static final class DateFieldSerializer extends FieldSerializer {
@@ -394,6 +543,11 @@ public class UnsafeSerializer extends FieldBasedSerializer {
                 out.writeUTCDate(value.getTime());
             }
         }
+
+        @Override
+        boolean isDefault(Object obj) {
+            return UNSAFE.getObject(obj, offset) == null;
+        }
     }
 
     static {
@@ -0,0 +1,273 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class Hessian2ParallelStreamingInputTest {
+
+    static ExecutorService executor;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Values whose packets share class definitions and type names, with
+     * new ones introduced along the way.
+     */
+    private static List<Object> values() {
+        List<Object> values = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            values.add(new Point(i, -i));
+
+            if (i % 3 == 0) {
+                TreeMap<String, Object> map = new TreeMap<>();
+                map.put("index", i);
+                map.put("label", new Label("label-" + i));
+                values.add(map);
+            }
+
+            if (i == 1000) {
+                values.add(new Segment(new Point(1, 2), new Point(3, 4)));
+            }
+
+            if (i > 1000 && i % 7 == 0) {
+                values.add(new Segment(new Point(i, i), new Point(-i, -i)));
+            }
+        }
+
+        return values;
+    }
+
+    private static byte[] write(List<Object> values) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Hessian2StreamingOutput out = new Hessian2StreamingOutput(bos);
+
+        for (Object value : values) {
+            out.writeObject(value);
+        }
+
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    private static List<Object> readAll(Hessian2ParallelStreamingInput in, int count) throws Exception {
+        List<Object> values = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            values.add(in.readObject());
+        }
+
+        assertThrows(EOFException.class, in::readObject);
+
+        return values;
+    }
+
+    @Test
+    void testOrdered() throws Exception {
+        List<Object> values = values();
+
+        Hessian2ParallelStreamingInput in =
+                new Hessian2ParallelStreamingInput(new ByteArrayInputStream(write(values)), executor, 4, true);
+
+        assertEquals(values, readAll(in, values.size()));
+    }
+
+    @Test
+    void testUnordered() throws Exception {
+        List<Object> values = values();
+
+        Hessian2ParallelStreamingInput in =
+                new Hessian2ParallelStreamingInput(new ByteArrayInputStream(write(values)), executor, 4, false);
+
+        List<Object> decoded = readAll(in, values.size());
+
+        Comparator<Object> order = Comparator.comparing(Object::toString);
+        values.sort(order);
+        decoded.sort(order);
+
+        assertEquals(values, decoded);
+    }
+
+    @Test
+    void testSerialMatchesParallel() throws Exception {
+        List<Object> values = values();
+        byte[] data = write(values);
+
+        Hessian2StreamingInput in = new Hessian2StreamingInput(new ByteArrayInputStream(data));
+
+        for (Object value : values) {
+            assertEquals(value, in.readObject());
+        }
+    }
+
+    @Test
+    void testReadPacket() throws Exception {
+        byte[] large = new byte[200000];
+
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+
+        byte[] data = write(new ArrayList<>(List.of("first", large)));
+
+        Hessian2StreamingInput in = new Hessian2StreamingInput(new ByteArrayInputStream(data));
+
+        byte[] first = in.readPacket();
+        assertEquals("first", new HessianDecoder(new ByteArrayInputStream(first)).readObject());
+
+        byte[] second = in.readPacket();
+        assertArrayEquals(large, (byte[]) new HessianDecoder(new ByteArrayInputStream(second)).readObject());
+
+        assertNull(in.readPacket());
+    }
+
+    @Test
+    void testReadPacketLengthLimit() throws Exception {
+        byte[] data = write(new ArrayList<>(List.of("first", new byte[200000])));
+
+        Hessian2StreamingInput in = new Hessian2StreamingInput(new ByteArrayInputStream(data));
+        in.setMaxPacketLength(100000);
+
+        assertEquals("first", new HessianDecoder(new ByteArrayInputStream(in.readPacket())).readObject());
+        assertThrows(HessianProtocolException.class, in::readPacket);
+    }
+
+    @Test
+    void testReadPacketDoesNotTrustLength() {
+        // a final chunk claiming 2^40 bytes, then 3 bytes
+        byte[] huge = {0x00, 0x7f, 0, 0, 1, 0, 0, 0, 0, 0, 1, 2, 3};
+        assertThrows(HessianProtocolException.class, () -> new Hessian2StreamingInput(new ByteArrayInputStream(huge))
+                .readPacket());
+
+        byte[] negative = {0x00, 0x7f, -1, -1, -1, -1, -1, -1, -1, -1, 1, 2, 3};
+        assertThrows(
+                HessianProtocolException.class,
+                () -> new Hessian2StreamingInput(new ByteArrayInputStream(negative)).readPacket());
+
+        // within the limit, but the data ends early
+        byte[] truncated = {0x00, 0x7f, 0, 0, 0, 0, 0x01, 0, 0, 0, 1, 2, 3};
+        assertThrows(
+                EOFException.class, () -> new Hessian2StreamingInput(new ByteArrayInputStream(truncated)).readPacket());
+    }
+
+    @Test
+    void testDecodeFailureIsReported() throws Exception {
+        List<Object> values = Collections.singletonList(new Point(1, 1));
+        byte[] data = write(values);
+
+        // corrupt the first field value
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] == (byte) 0x91) {
+                data[i] = (byte) 0x40;
+                break;
+            }
+        }
+
+        Hessian2ParallelStreamingInput in =
+                new Hessian2ParallelStreamingInput(new ByteArrayInputStream(data), executor, 2, true);
+
+        assertThrows(HessianProtocolException.class, in::readObject);
+    }
+
+    static class Point implements Serializable {
+        int x;
+        int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y);
+        }
+
+        @Override
+        public String toString() {
+            return "Point[" + x + "," + y + "]";
+        }
+    }
+
+    static class Label implements Serializable {
+        String text;
+
+        Label(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Label && Objects.equals(((Label) o).text, text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(text);
+        }
+
+        @Override
+        public String toString() {
+            return "Label[" + text + "]";
+        }
+    }
+
+    static class Segment implements Serializable {
+        Point from;
+        Point to;
+
+        Segment(Point from, Point to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Segment
+                    && Objects.equals(((Segment) o).from, from)
+                    && Objects.equals(((Segment) o).to, to);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return "Segment[" + from + "," + to + "]";
+        }
+    }
+}
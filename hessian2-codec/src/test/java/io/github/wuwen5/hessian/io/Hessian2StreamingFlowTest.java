@@ -0,0 +1,215 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class Hessian2StreamingFlowTest {
+
+    static ExecutorService executor;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] write(int count) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Hessian2StreamingOutput out = new Hessian2StreamingOutput(bos);
+
+        for (int i = 0; i < count; i++) {
+            out.writeObject("value-" + i);
+        }
+
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    @Test
+    void testPublisherHonorsDemand() throws Exception {
+        Hessian2StreamingPublisher publisher =
+                new Hessian2StreamingPublisher(new ByteArrayInputStream(write(10)), executor);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.get(5, TimeUnit.SECONDS).request(3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value-" + i, subscriber.events.poll(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(null, subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+
+        subscriber.subscription.get().request(Long.MAX_VALUE);
+
+        for (int i = 3; i < 10; i++) {
+            assertEquals("value-" + i, subscriber.events.poll(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals("complete", subscriber.events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testPublisherRejectsSecondSubscriber() throws Exception {
+        Hessian2StreamingPublisher publisher =
+                new Hessian2StreamingPublisher(new ByteArrayInputStream(write(1)), executor);
+
+        publisher.subscribe(new RecordingSubscriber());
+
+        RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+
+        assertInstanceOf(IllegalStateException.class, second.events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubscriberFlushesInBatches() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int[] flushes = new int[1];
+
+        FilterOutputStream os = new FilterOutputStream(bos) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+
+        Hessian2StreamingSubscriber subscriber = new Hessian2StreamingSubscriber(os);
+        subscriber.setFlushThreshold(1024);
+        subscriber.setPrefetch(8);
+
+        try (SubmissionPublisher<Object> publisher = new SubmissionPublisher<>(executor, 16)) {
+            publisher.subscribe(subscriber);
+
+            for (int i = 0; i < 1000; i++) {
+                publisher.submit("value-" + i);
+            }
+        }
+
+        subscriber.getCompletion().get(10, TimeUnit.SECONDS);
+
+        byte[] data = bos.toByteArray();
+
+        assertTrue(flushes[0] > 1 && flushes[0] <= data.length / 1024 + 1, "flushes " + flushes[0]);
+
+        Hessian2StreamingInput in = new Hessian2StreamingInput(new ByteArrayInputStream(data));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value-" + i, in.readObject());
+        }
+    }
+
+    @Test
+    void testPipeline() throws Exception {
+        PipedInputStream pis = new PipedInputStream(4096);
+        PipedOutputStream pos = new PipedOutputStream(pis);
+
+        Hessian2StreamingSubscriber writer = new Hessian2StreamingSubscriber(pos);
+        writer.setCloseStreamOnComplete(true);
+
+        Hessian2StreamingPublisher reader = new Hessian2StreamingPublisher(pis, executor);
+
+        List<Object> received = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        reader.subscribe(new Flow.Subscriber<Object>() {
+            Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Object item) {
+                received.add(item);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                done.completeExceptionally(e);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+
+        try (SubmissionPublisher<Object> publisher = new SubmissionPublisher<>(executor, 16)) {
+            publisher.subscribe(writer);
+
+            for (int i = 0; i < 5000; i++) {
+                publisher.submit(i);
+            }
+        }
+
+        writer.getCompletion().get(10, TimeUnit.SECONDS);
+        done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(5000, received.size());
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, received.get(i));
+        }
+    }
+
+    static class RecordingSubscriber implements Flow.Subscriber<Object> {
+        final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.complete(subscription);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            events.add(e);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add("complete");
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package io.github.wuwen5.hessian.io;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.github.wuwen5.hessian.io.beans.BasicTypeBean;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -45,4 +47,79 @@ public class Hessian2StreamingTest {
         assertTrue(out.isCloseStreamOnClose());
         assertNull(result);
     }
+
+    private static byte[] packet(Hessian2StreamingOutput out, ByteArrayOutputStream bos, Object value)
+            throws IOException {
+        bos.reset();
+        out.writeObject(value);
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    @Test
+    void testSessionKeepsDefinitions() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Hessian2StreamingOutput out = new Hessian2StreamingOutput(bos);
+
+        BasicTypeBean bean = BasicTypeBean.create();
+
+        byte[] first = packet(out, bos, bean);
+        byte[] second = packet(out, bos, bean);
+
+        assertTrue(out.isSession());
+        assertTrue(second.length < first.length);
+
+        out.resetSession();
+        byte[] third = packet(out, bos, bean);
+
+        assertEquals(first.length, third.length);
+
+        Hessian2StreamingInput in = new Hessian2StreamingInput(new ByteArrayInputStream(concat(first, second)));
+
+        assertEquals(bean, in.readObject());
+        assertEquals(bean, in.readObject());
+
+        in = new Hessian2StreamingInput(new ByteArrayInputStream(concat(first, second, third)));
+
+        assertEquals(bean, in.readObject());
+        assertEquals(bean, in.readObject());
+        in.resetSession();
+        assertEquals(bean, in.readObject());
+    }
+
+    @Test
+    void testWithoutSessionPacketsAreSelfContained() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Hessian2StreamingOutput out = new Hessian2StreamingOutput(bos);
+        out.setSession(false);
+
+        BasicTypeBean bean = BasicTypeBean.create();
+
+        byte[] first = packet(out, bos, bean);
+        byte[] second = packet(out, bos, bean);
+
+        assertEquals(first.length, second.length);
+
+        // the second packet is read on its own
+        Hessian2StreamingInput single = new Hessian2StreamingInput(new ByteArrayInputStream(second));
+        assertEquals(bean, single.readObject());
+
+        Hessian2StreamingInput in = new Hessian2StreamingInput(new ByteArrayInputStream(concat(first, second)));
+        in.setSession(false);
+
+        assertFalse(in.isSession());
+        assertEquals(bean, in.readObject());
+        assertEquals(bean, in.readObject());
+    }
+
+    private static byte[] concat(byte[]... packets) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        for (byte[] packet : packets) {
+            bos.write(packet, 0, packet.length);
+        }
+
+        return bos.toByteArray();
+    }
 }
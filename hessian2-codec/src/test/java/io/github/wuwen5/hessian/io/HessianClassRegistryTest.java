@@ -0,0 +1,175 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class HessianClassRegistryTest {
+
+    static class Point implements Serializable {
+        int x;
+        int y;
+
+        Point() {}
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y);
+        }
+    }
+
+    static class Label implements Serializable {
+        String text;
+
+        Label() {}
+
+        Label(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Label && Objects.equals(((Label) o).text, text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(text);
+        }
+    }
+
+    private static byte[] encode(HessianClassRegistry registry, Object... values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setClassRegistry(registry);
+
+        for (Object value : values) {
+            out.writeObject(value);
+        }
+
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static Object[] decode(HessianClassRegistry registry, byte[] data, int count) throws IOException {
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+        in.setClassRegistry(registry);
+
+        Object[] values = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readObject();
+        }
+
+        return values;
+    }
+
+    @Test
+    void testRoundTripOmitsDefinitions() throws IOException {
+        HessianClassRegistry registry = new HessianClassRegistry("test", 1).register(Point.class);
+
+        Object[] values = {new Point(1, 2), Arrays.asList(new Point(3, 4), new Label("a"))};
+
+        byte[] plain = encode(null, values);
+        byte[] shared = encode(registry, values);
+
+        assertTrue(shared.length < plain.length);
+        assertTrue(new String(plain, StandardCharsets.ISO_8859_1).contains(Point.class.getName()));
+        assertTrue(!new String(shared, StandardCharsets.ISO_8859_1).contains(Point.class.getName()));
+        assertTrue(new String(shared, StandardCharsets.ISO_8859_1).contains(Label.class.getName()));
+
+        assertArrayEquals(values, decode(registry, shared, values.length));
+    }
+
+    @Test
+    void testMismatchedFieldsFallBackToStreamDefinition() throws IOException {
+        HessianClassRegistry registry = new HessianClassRegistry("test", 1)
+                .register(Point.class.getName(), "x", "z")
+                .register(Label.class);
+
+        Object[] values = {new Point(5, 6), new Label("b"), new Point(7, 8)};
+
+        byte[] data = encode(registry, values);
+
+        assertTrue(new String(data, StandardCharsets.ISO_8859_1).contains(Point.class.getName()));
+        assertArrayEquals(values, decode(registry, data, values.length));
+    }
+
+    @Test
+    void testResetKeepsRegistry() throws IOException {
+        HessianClassRegistry registry = new HessianClassRegistry("test", 1).register(Label.class);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setClassRegistry(registry);
+        out.writeObject(new Label("c"));
+        out.flush();
+        out.init(bos);
+        out.writeObject(new Label("d"));
+        out.close();
+
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(bos.toByteArray()));
+        in.setClassRegistry(registry);
+
+        assertEquals(new Label("c"), in.readObject());
+        in.reset();
+        assertEquals(new Label("d"), in.readObject());
+    }
+
+    @Test
+    void testLoadAndStore() throws IOException {
+        String text = "# shared definitions\n"
+                + "registry orders 3\n"
+                + "\n"
+                + Point.class.getName() + ": y, x\n"
+                + Label.class.getName() + ": text\n";
+
+        HessianClassRegistry registry =
+                HessianClassRegistry.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("orders", registry.getName());
+        assertEquals(3, registry.getVersion());
+
+        List<HessianClassRegistry.Definition> defs = registry.getDefinitions();
+        assertEquals(2, defs.size());
+        assertArrayEquals(new String[] {"y", "x"}, defs.get(0).getFieldNames());
+
+        StringWriter writer = new StringWriter();
+        registry.store(writer);
+
+        HessianClassRegistry copy = HessianClassRegistry.load(
+                new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(registry.getId(), copy.getId());
+        assertNotEquals(
+                registry.getId(),
+                new HessianClassRegistry("orders", 3).register(Label.class).getId());
+
+        assertThrows(
+                IOException.class, () -> HessianClassRegistry.load(new ByteArrayInputStream("orders 3\n".getBytes())));
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class HessianClonerTest {
+
+    static class Node implements Serializable {
+        String name;
+        int weight;
+        double score;
+        char code;
+        BigDecimal price;
+        LocalDate day;
+        TimeUnit unit;
+        Date created;
+        int[] counts;
+        Object[] children;
+        Node parent;
+        List<Node> siblings = new ArrayList<>();
+        Map<String, Object> attributes = new HashMap<>();
+        List<String> readOnly;
+    }
+
+    static class Singleton implements Serializable {
+        static final Singleton INSTANCE = new Singleton();
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    static class Money implements Serializable {
+        final String currency;
+        final long amount;
+
+        Money(String currency, long amount) {
+            this.currency = currency;
+            this.amount = amount;
+        }
+
+        private Object writeReplace() {
+            return new MoneyHandle(currency + ":" + amount);
+        }
+    }
+
+    static class MoneyHandle implements Serializable {
+        String value;
+
+        MoneyHandle(String value) {
+            this.value = value;
+        }
+
+        private Object readResolve() {
+            String[] parts = value.split(":");
+
+            return new Money(parts[0], Long.parseLong(parts[1]));
+        }
+    }
+
+    private static Node createGraph() {
+        Node root = new Node();
+        root.name = "root";
+        root.weight = 7;
+        root.score = 2.5;
+        root.code = 'r';
+        root.price = new BigDecimal("19.99");
+        root.day = LocalDate.of(2024, 5, 1);
+        root.unit = TimeUnit.SECONDS;
+        root.created = new Date(1700000000000L);
+        root.counts = new int[] {1, 2, 3};
+        root.readOnly = Collections.unmodifiableList(new ArrayList<>(List.of("a", "b")));
+
+        Node child = new Node();
+        child.name = "child";
+        child.parent = root;
+        child.siblings.add(child);
+
+        root.children = new Object[] {child, child, root};
+        root.siblings.add(child);
+        root.attributes.put("self", root);
+        root.attributes.put("child", child);
+        root.attributes.put("money", new Money("EUR", 100));
+        root.attributes.put("singleton", new Singleton());
+
+        return root;
+    }
+
+    @Test
+    void testDeepCopy() throws IOException {
+        Node root = createGraph();
+        Node copy = new HessianCloner().copy(root);
+
+        assertNotSame(root, copy);
+        assertEquals("root", copy.name);
+        assertEquals(7, copy.weight);
+        assertEquals(2.5, copy.score);
+        assertEquals('r', copy.code);
+
+        assertNotSame(root.created, copy.created);
+        assertEquals(root.created, copy.created);
+        assertNotSame(root.counts, copy.counts);
+        assertArrayEquals(root.counts, copy.counts);
+        assertEquals(root.readOnly, copy.readOnly);
+
+        // immutable values are shared
+        assertSame(root.name, copy.name);
+        assertSame(root.price, copy.price);
+        assertSame(root.day, copy.day);
+        assertSame(TimeUnit.SECONDS, copy.unit);
+    }
+
+    @Test
+    void testSharingAndCycles() throws IOException {
+        Node root = createGraph();
+        Node copy = new HessianCloner().copy(root);
+
+        Node child = (Node) copy.children[0];
+
+        assertNotSame(root.children[0], child);
+        assertSame(child, copy.children[1]);
+        assertSame(copy, copy.children[2]);
+        assertSame(copy, child.parent);
+        assertSame(child, child.siblings.get(0));
+        assertSame(child, copy.siblings.get(0));
+        assertSame(copy, copy.attributes.get("self"));
+        assertSame(child, copy.attributes.get("child"));
+    }
+
+    @Test
+    void testReplaceAndResolve() throws IOException {
+        Node root = createGraph();
+        Node copy = new HessianCloner().copy(root);
+
+        assertSame(Singleton.INSTANCE, copy.attributes.get("singleton"));
+
+        Money money = (Money) copy.attributes.get("money");
+
+        assertNotSame(root.attributes.get("money"), money);
+        assertEquals("EUR", money.currency);
+        assertEquals(100, money.amount);
+    }
+
+    @Test
+    void testImmutableType() throws IOException {
+        Node root = createGraph();
+
+        HessianCloner cloner = new HessianCloner();
+        cloner.addImmutableType(Date.class);
+
+        assertSame(root.created, cloner.copy(root).created);
+    }
+}
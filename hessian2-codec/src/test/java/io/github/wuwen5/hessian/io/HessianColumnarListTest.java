@@ -0,0 +1,229 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.jupiter.api.Test;
+
+class HessianColumnarListTest {
+
+    static class Row implements Serializable {
+        int id;
+        long total;
+        double price;
+        boolean active;
+        char grade;
+        String name;
+        Date created;
+        Object next;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Row)) {
+                return false;
+            }
+
+            Row r = (Row) o;
+
+            return id == r.id
+                    && total == r.total
+                    && price == r.price
+                    && active == r.active
+                    && grade == r.grade
+                    && Objects.equals(name, r.name)
+                    && Objects.equals(created, r.created)
+                    && (next instanceof Row ? ((Row) next).id == ((Row) r.next).id : Objects.equals(next, r.next));
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    static class Singleton implements Serializable {
+        static final Singleton INSTANCE = new Singleton();
+
+        int value;
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    static class Report implements Serializable {
+        String title;
+        List<Row> rows;
+    }
+
+    private static ArrayList<Row> createRows(int count) {
+        ArrayList<Row> rows = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Row row = new Row();
+            row.id = i;
+            row.total = 1000L * i;
+            row.price = i * 0.25;
+            row.active = i % 2 == 0;
+            row.grade = (char) ('A' + i % 3);
+            row.name = "item-" + i;
+            row.created = new Date(1700000000000L + i * 1000L);
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    private static byte[] encode(boolean isColumnar, Object... values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setColumnarListEncoding(isColumnar);
+
+        for (Object value : values) {
+            out.writeObject(value);
+        }
+
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static HessianDecoder decoder(byte[] data) {
+        return new HessianDecoder(new ByteArrayInputStream(data));
+    }
+
+    private static boolean isColumnar(byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains(ColumnarListSerializer.TYPE);
+    }
+
+    private static int deflatedSize(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try (DeflaterOutputStream os = new DeflaterOutputStream(bos, new Deflater(Deflater.BEST_SPEED))) {
+            os.write(data);
+        }
+
+        return bos.size();
+    }
+
+    @Test
+    void testColumnsRoundTrip() throws IOException {
+        ArrayList<Row> rows = createRows(1000);
+
+        byte[] plain = encode(false, rows);
+        byte[] data = encode(true, rows);
+
+        assertTrue(isColumnar(data));
+        assertEquals(rows, decoder(data).readObject());
+        assertEquals(rows, decoder(data).readObject(List.class));
+
+        assertTrue(data.length < plain.length, data.length + " < " + plain.length);
+        assertTrue(deflatedSize(data) < deflatedSize(plain), deflatedSize(data) + " < " + deflatedSize(plain));
+    }
+
+    @Test
+    void testRowsFallback() throws IOException {
+        ArrayList<Row> shortList = createRows(ColumnarListSerializer.MIN_ROWS - 1);
+
+        ArrayList<Object> mixed = new ArrayList<>(createRows(10));
+        mixed.add("not a row");
+
+        ArrayList<Object> nulls = new ArrayList<>(createRows(10));
+        nulls.add(null);
+
+        ArrayList<Row> duplicates = createRows(10);
+        duplicates.add(duplicates.get(4));
+
+        for (Object value : new Object[] {shortList, mixed, nulls, duplicates}) {
+            byte[] data = encode(true, value);
+
+            assertArrayEquals(encode(false, value), data);
+            assertEquals(value, decoder(data).readObject());
+        }
+
+        // off unless enabled for the peer
+        assertTrue(!isColumnar(encode(false, createRows(100))));
+    }
+
+    @Test
+    void testSharedRows() throws IOException {
+        ArrayList<Row> rows = createRows(20);
+
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).next = rows.get((i + 1) % rows.size());
+        }
+
+        byte[] data = encode(true, rows, rows.get(3), rows);
+
+        assertTrue(isColumnar(data));
+
+        HessianDecoder in = decoder(data);
+        List<?> result = (List<?>) in.readObject();
+
+        assertSame(result.get(3), in.readObject());
+        assertSame(result, in.readObject());
+
+        for (int i = 0; i < result.size(); i++) {
+            assertSame(result.get((i + 1) % result.size()), ((Row) result.get(i)).next);
+        }
+    }
+
+    @Test
+    void testRowWrittenBefore() throws IOException {
+        ArrayList<Row> rows = createRows(20);
+
+        byte[] data = encode(true, rows.get(5), rows);
+
+        // a row already written can only be a reference, so rows are used
+        assertArrayEquals(encode(false, rows.get(5), rows), data);
+    }
+
+    @Test
+    void testReadResolve() throws IOException {
+        ArrayList<Singleton> values = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            values.add(new Singleton());
+        }
+
+        byte[] data = encode(true, values, values.get(2));
+
+        assertTrue(isColumnar(data));
+
+        HessianDecoder in = decoder(data);
+        List<?> result = (List<?>) in.readObject();
+
+        assertEquals(10, result.size());
+        result.forEach(value -> assertSame(Singleton.INSTANCE, value));
+        assertSame(Singleton.INSTANCE, in.readObject());
+    }
+
+    @Test
+    void testListField() throws IOException {
+        Report report = new Report();
+        report.title = "daily";
+        report.rows = createRows(50);
+
+        byte[] data = encode(true, report);
+
+        assertTrue(isColumnar(data));
+
+        Report result = (Report) decoder(data).readObject();
+
+        assertEquals("daily", result.title);
+        assertEquals(report.rows, result.rows);
+    }
+}
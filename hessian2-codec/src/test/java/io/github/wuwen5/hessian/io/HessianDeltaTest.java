@@ -0,0 +1,204 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class HessianDeltaTest {
+
+    static class Instance implements Serializable {
+        String ip;
+        int port;
+        boolean healthy;
+        double weight;
+        Map<String, String> metadata = new HashMap<>();
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Instance)) {
+                return false;
+            }
+
+            Instance i = (Instance) o;
+
+            return Objects.equals(ip, i.ip)
+                    && port == i.port
+                    && healthy == i.healthy
+                    && weight == i.weight
+                    && Objects.equals(metadata, i.metadata);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ip, port);
+        }
+    }
+
+    static class State implements Serializable {
+        String name;
+        long version;
+        Map<String, String> config = new HashMap<>();
+        List<Instance> instances = new ArrayList<>();
+        Instance leader;
+        Object[] tags;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) {
+                return false;
+            }
+
+            State s = (State) o;
+
+            return Objects.equals(name, s.name)
+                    && version == s.version
+                    && Objects.equals(config, s.config)
+                    && Objects.equals(instances, s.instances)
+                    && Objects.equals(leader, s.leader)
+                    && java.util.Arrays.equals(tags, s.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, version);
+        }
+    }
+
+    private static State createState(int count) {
+        State state = new State();
+        state.name = "service";
+        state.version = 1;
+        state.tags = new Object[] {"blue", "green"};
+
+        for (int i = 0; i < 200; i++) {
+            state.config.put("key-" + i, "value-" + i);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Instance instance = new Instance();
+            instance.ip = "10.0." + (i / 256) + "." + (i % 256);
+            instance.port = 8080;
+            instance.healthy = true;
+            instance.weight = 1.0;
+            instance.metadata.put("zone", "zone-" + (i % 3));
+            state.instances.add(instance);
+        }
+
+        state.leader = state.instances.get(0);
+
+        return state;
+    }
+
+    private static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.writeObject(value);
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value) throws IOException {
+        return (T) new HessianDecoder(new ByteArrayInputStream(encode(value))).readObject();
+    }
+
+    @Test
+    void testPatchScalesWithChange() throws IOException {
+        State previous = createState(1000);
+        State current = copy(previous);
+
+        current.version = 2;
+        current.config.put("key-7", "changed");
+        current.config.remove("key-8");
+        current.config.put("added", "value");
+        current.instances.get(500).healthy = false;
+        current.instances.get(600).metadata.put("drain", "true");
+        current.tags[1] = "red";
+
+        Instance added = new Instance();
+        added.ip = "10.1.0.1";
+        added.port = 9090;
+        current.instances.add(added);
+
+        HessianDelta delta = new HessianDelta();
+        byte[] patch = delta.diff(previous, current);
+
+        assertTrue(patch.length * 50 < encode(current).length, patch.length + " vs " + encode(current).length);
+
+        State replica = copy(previous);
+
+        assertSame(replica, delta.apply(replica, patch));
+        assertEquals(current, replica);
+    }
+
+    @Test
+    void testUnchanged() throws IOException {
+        State previous = createState(10);
+
+        HessianDelta delta = new HessianDelta();
+        byte[] patch = delta.diff(previous, copy(previous));
+
+        assertEquals(1, patch.length);
+
+        State replica = copy(previous);
+        assertSame(replica, delta.apply(replica, patch));
+        assertEquals(previous, replica);
+    }
+
+    @Test
+    void testSharedObjectPatchedOnce() throws IOException {
+        State previous = createState(10);
+        State current = copy(previous);
+
+        current.leader.weight = 3.5;
+
+        HessianDelta delta = new HessianDelta();
+        State replica = (State) delta.apply(copy(previous), delta.diff(previous, current));
+
+        assertSame(replica.leader, replica.instances.get(0));
+        assertEquals(3.5, replica.instances.get(0).weight);
+        assertEquals(current, replica);
+    }
+
+    @Test
+    void testListTruncatedAndRootReplaced() throws IOException {
+        State previous = createState(10);
+        State current = copy(previous);
+
+        current.instances.subList(4, 10).clear();
+        current.leader = null;
+
+        HessianDelta delta = new HessianDelta();
+        State replica = (State) delta.apply(copy(previous), delta.diff(previous, current));
+
+        assertEquals(current, replica);
+
+        assertEquals("next", delta.apply(previous, delta.diff(previous, "next")));
+        assertEquals(previous, delta.apply(null, delta.diff(null, previous)));
+    }
+
+    @Test
+    void testWrongBase() throws IOException {
+        State previous = createState(2);
+        State current = copy(previous);
+        current.version = 5;
+
+        HessianDelta delta = new HessianDelta();
+        byte[] patch = delta.diff(previous, current);
+
+        assertThrows(HessianProtocolException.class, () -> delta.apply(new Instance(), patch));
+    }
+}
@@ -0,0 +1,279 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class HessianGenericDecodeTest {
+
+    static class Node implements Serializable {
+        String name;
+        int weight;
+        long stamp;
+        double ratio;
+        Node parent;
+        List<Node> children = new ArrayList<>();
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        int[] counts;
+        Object[] tags;
+        byte[] payload;
+        Date created;
+        BigDecimal price;
+        TimeUnit unit;
+    }
+
+    private static byte[] encode(Object... values) throws IOException {
+        return encode(null, values);
+    }
+
+    private static byte[] encode(HessianClassRegistry registry, Object... values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+
+        if (registry != null) {
+            out.setClassRegistry(registry);
+        }
+
+        for (Object value : values) {
+            out.writeObject(value);
+        }
+
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static Object[] decodeGeneric(HessianClassRegistry registry, byte[] data, int count) throws IOException {
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+        in.setGeneric(true);
+
+        if (registry != null) {
+            in.setClassRegistry(registry);
+        }
+
+        Object[] values = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readObject();
+        }
+
+        return values;
+    }
+
+    private static Node createTree() {
+        Node root = new Node();
+        root.name = "root";
+        root.weight = 1;
+        root.stamp = 1L << 40;
+        root.ratio = 0.25;
+        root.counts = new int[] {1, 2, 300000};
+        root.tags = new Object[] {"a", 1, null};
+        root.payload = new byte[] {1, 2, 3};
+        root.created = new Date(1700000000000L);
+        root.price = new BigDecimal("12.50");
+        root.unit = TimeUnit.SECONDS;
+        root.attributes.put("region", "eu");
+        root.attributes.put("limits", new TreeMap<>(Map.of("cpu", 4, "memory", 8L)));
+
+        for (int i = 0; i < 20; i++) {
+            Node child = new Node();
+            child.name = "child-" + i;
+            child.weight = i;
+            child.parent = root;
+            child.attributes.put("self", child);
+            root.children.add(child);
+        }
+
+        root.attributes.put("first", root.children.get(0));
+
+        return root;
+    }
+
+    @Test
+    void testReencodeIsByteIdentical() throws IOException {
+        Node root = createTree();
+        Map<String, Object> untyped = new HashMap<>();
+        untyped.put("root", root);
+
+        byte[] data = encode(root, untyped, Arrays.asList("x", "y"), "tail", 42);
+
+        Object[] values = decodeGeneric(null, data, 5);
+
+        assertArrayEquals(data, encode(values));
+    }
+
+    @Test
+    void testObjectView() throws IOException {
+        Object value = decodeGeneric(null, encode(createTree()), 1)[0];
+
+        HessianObject root = assertInstanceOf(HessianObject.class, value);
+        assertEquals(Node.class.getName(), root.getType());
+        assertEquals("root", root.get("name"));
+        assertEquals(1, root.get("weight"));
+        assertEquals(1L << 40, root.get("stamp"));
+        assertNull(root.get("parent"));
+        assertNull(root.get("missing"));
+
+        HessianList children = assertInstanceOf(HessianList.class, root.get("children"));
+        assertNull(children.getType());
+        assertEquals(20, children.size());
+
+        HessianObject child = (HessianObject) children.get(3);
+        assertSame(root, child.get("parent"));
+        assertSame(child, ((HessianMap) child.get("attributes")).get("self"));
+        assertSame(root.getFieldNames(), child.getFieldNames());
+
+        HessianMap attributes = assertInstanceOf(HessianMap.class, root.get("attributes"));
+        assertEquals(LinkedHashMap.class.getName(), attributes.getType());
+        assertEquals(Arrays.asList("region", "limits", "first"), new ArrayList<>(attributes.keySet()));
+        assertSame(children.get(0), attributes.get("first"));
+
+        HessianList counts = (HessianList) root.get("counts");
+        assertEquals("[int", counts.getType());
+        assertEquals(Arrays.asList(1, 2, 300000), counts);
+
+        HessianObject unit = (HessianObject) root.get("unit");
+        assertEquals(TimeUnit.class.getName(), unit.getType());
+        assertEquals("SECONDS", unit.get("name"));
+    }
+
+    @Test
+    void testUnknownTypesKeepTheirNames() throws IOException {
+        HessianObject order = new HessianObject("com.example.Order", new String[] {"id", "lines"});
+        HessianList lines = new HessianList("com.example.Lines", true, 0);
+        lines.add("widget");
+        order.set("id", 7);
+        order.set("lines", lines);
+
+        byte[] data = encode(order);
+
+        HessianObject copy = (HessianObject) decodeGeneric(null, data, 1)[0];
+        assertEquals("com.example.Order", copy.getType());
+        assertEquals(7, copy.get("id"));
+        assertTrue(((HessianList) copy.get("lines")).isVariableLength());
+        assertArrayEquals(data, encode(copy));
+
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+        assertInstanceOf(HashMap.class, in.readObject());
+    }
+
+    @Test
+    void testEditedValueDecodesToClass() throws IOException {
+        HessianObject root = (HessianObject) decodeGeneric(null, encode(createTree()), 1)[0];
+
+        root.set("name", "renamed");
+        ((HessianList) root.get("children")).remove(19);
+        ((HessianMap) root.get("attributes")).put("region", "us");
+
+        Node node = (Node) new HessianDecoder(new ByteArrayInputStream(encode(root))).readObject();
+
+        assertEquals("renamed", node.name);
+        assertEquals(19, node.children.size());
+        assertSame(node, node.children.get(5).parent);
+        assertEquals("us", node.attributes.get("region"));
+        assertEquals(new BigDecimal("12.50"), node.price);
+        assertSame(TimeUnit.SECONDS, node.unit);
+    }
+
+    @Test
+    void testClassRegistry() throws IOException {
+        HessianClassRegistry registry =
+                new HessianClassRegistry("generic", 1).register(Node.class).register("com.example.Remote", "id");
+
+        HessianObject remote = new HessianObject("com.example.Remote", new String[] {"id"});
+        remote.set(0, "r-1");
+
+        byte[] data = encode(registry, createTree(), remote);
+
+        Object[] values = decodeGeneric(registry, data, 2);
+
+        assertEquals("r-1", ((HessianObject) values[1]).get("id"));
+        assertArrayEquals(data, encode(registry, values));
+    }
+
+    @Test
+    void testSameTypeWithOtherFields() throws IOException {
+        HessianObject first = new HessianObject("com.example.Shape", new String[] {"name", "sides"});
+        first.set("name", "square");
+        first.set("sides", 4);
+
+        HessianObject second = new HessianObject("com.example.Shape", new String[] {"sides", "radius", "name"});
+        second.set("name", "circle");
+        second.set("sides", 0);
+        second.set("radius", 2.5);
+
+        // shares its type with a class which has other fields
+        HessianObject partial = new HessianObject(Node.class.getName(), new String[] {"name"});
+        partial.set("name", "partial");
+
+        Node node = new Node();
+        node.name = "node";
+
+        Object[] values = decodeGeneric(null, encode(first, node, second, partial, first), 5);
+
+        HessianObject square = (HessianObject) values[0];
+        assertArrayEquals(new String[] {"name", "sides"}, square.getFieldNames());
+        assertEquals("square", square.get("name"));
+
+        HessianObject circle = (HessianObject) values[2];
+        assertArrayEquals(new String[] {"sides", "radius", "name"}, circle.getFieldNames());
+        assertEquals("circle", circle.get("name"));
+        assertEquals(2.5, circle.get("radius"));
+
+        assertEquals("node", ((HessianObject) values[1]).get("name"));
+        assertEquals(13, ((HessianObject) values[1]).getFieldCount());
+
+        assertEquals(1, ((HessianObject) values[3]).getFieldCount());
+        assertEquals("partial", ((HessianObject) values[3]).get("name"));
+
+        assertSame(values[0], values[4]);
+    }
+
+    @Test
+    void testTrailingValueTypes() throws IOException {
+        LocalDate date = LocalDate.of(2024, 2, 29);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("d", date);
+        map.put("e", "y");
+
+        List<Object> times = Arrays.asList(
+                LocalTime.of(12, 30, 15, 1000), Year.of(1999), ZoneId.of("Europe/Paris"), ZoneOffset.ofHours(-5));
+
+        byte[] data = encode(Arrays.asList(date, "x"), map, times, date, "tail");
+
+        Object[] values = decodeGeneric(null, data, 5);
+
+        assertEquals(Arrays.asList(date, "x"), values[0]);
+        assertEquals(date, ((Map<?, ?>) values[1]).get("d"));
+        assertEquals("y", ((Map<?, ?>) values[1]).get("e"));
+        assertEquals(times, values[2]);
+        assertEquals(date, values[3]);
+        assertEquals("tail", values[4]);
+
+        assertArrayEquals(data, encode(values));
+    }
+}
@@ -0,0 +1,248 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class HessianIncrementalDecoderTest {
+
+    private static List<Object> values() {
+        StringBuilder longString = new StringBuilder();
+
+        for (int i = 0; i < 40000; i++) {
+            longString.append((char) ('a' + i % 26));
+
+            if (i % 100 == 0) {
+                longString.append("é中😀");
+            }
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", 42L);
+        map.put("tags", Arrays.asList("a", "b", null));
+        map.put("zone", ZoneId.of("Asia/Shanghai"));
+
+        List<Object> values = new ArrayList<>();
+        values.add(null);
+        values.add(true);
+        values.add(-7);
+        values.add(2000);
+        values.add(300000);
+        values.add(Integer.MIN_VALUE);
+        values.add(5L);
+        values.add(-1500L);
+        values.add(200000L);
+        values.add(Long.MAX_VALUE);
+        values.add(3000000000L);
+        values.add(0.0);
+        values.add(1.0);
+        values.add(-3.0);
+        values.add(1000.0);
+        values.add(12.25);
+        values.add(Math.PI);
+        values.add(new Date(1700000000000L));
+        values.add(new Date(1700000040000L - 40000L * 60));
+        values.add("");
+        values.add("short");
+        values.add(longString.toString());
+        values.add(map);
+        values.add(new Point(1, 2));
+        values.add(new BigDecimal("12345.6789"));
+        values.add(Arrays.asList(new Point(3, 4), new Point(5, 6), "mixed", 7));
+        values.add(new Point(7, 8));
+        // declare no fields and write their value after the instance
+        values.add(LocalDate.of(2024, 2, 29));
+        values.add(Arrays.asList(LocalDate.of(2000, 1, 1), "x", LocalTime.of(23, 59, 59), Year.of(1999)));
+        values.add(ZoneOffset.ofHoursMinutes(5, 30));
+        values.add(LocalTime.NOON);
+        return values;
+    }
+
+    private static byte[] encode(List<Object> values, byte[] binary) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+
+        for (Object value : values) {
+            out.writeObject(value);
+        }
+
+        out.writeObject(binary);
+        out.writeObject(new int[] {1, 2, 3});
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static byte[] binary() {
+        byte[] binary = new byte[100000];
+        new Random(1).nextBytes(binary);
+        return binary;
+    }
+
+    private static void assertDecoded(List<Object> values, byte[] binary, List<Object> decoded) {
+        assertEquals(values.size() + 2, decoded.size());
+        assertEquals(values, decoded.subList(0, values.size()));
+        assertArrayEquals(binary, (byte[]) decoded.get(values.size()));
+        assertArrayEquals(new int[] {1, 2, 3}, (int[]) decoded.get(values.size() + 1));
+    }
+
+    @Test
+    void testSingleFragment() throws Exception {
+        List<Object> values = values();
+        byte[] binary = binary();
+        byte[] data = encode(values, binary);
+
+        HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+
+        assertEquals(HessianIncrementalDecoder.Status.OBJECT_READY, decoder.feed(ByteBuffer.wrap(data)));
+
+        List<Object> decoded = new ArrayList<>();
+
+        while (decoder.hasNext()) {
+            decoded.add(decoder.next());
+        }
+
+        assertDecoded(values, binary, decoded);
+        assertTrue(decoder.isIdle());
+        assertEquals(0, decoder.getBufferedLength());
+    }
+
+    @Test
+    void testByteAtATime() throws Exception {
+        List<Object> values = values();
+        byte[] binary = binary();
+        byte[] data = encode(values, binary);
+
+        HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+        List<Object> decoded = new ArrayList<>();
+
+        for (byte b : data) {
+            decoder.feed(new byte[] {b}, 0, 1);
+
+            while (decoder.hasNext()) {
+                decoded.add(decoder.next());
+            }
+        }
+
+        assertDecoded(values, binary, decoded);
+        assertTrue(decoder.isIdle());
+    }
+
+    @Test
+    void testRandomFragments() throws Exception {
+        List<Object> values = values();
+        byte[] binary = binary();
+        byte[] data = encode(values, binary);
+
+        Random random = new Random(7);
+
+        for (int round = 0; round < 20; round++) {
+            HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+            List<Object> decoded = new ArrayList<>();
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+            int offset = 0;
+
+            while (offset < data.length) {
+                int length = Math.min(1 + random.nextInt(8000), data.length - offset);
+
+                buffer.clear();
+                buffer.put(data, offset, length);
+                buffer.flip();
+                offset += length;
+
+                decoder.feed(buffer);
+                assertFalse(buffer.hasRemaining());
+
+                while (decoder.hasNext()) {
+                    decoded.add(decoder.next());
+                }
+            }
+
+            assertDecoded(values, binary, decoded);
+        }
+    }
+
+    @Test
+    void testNeedMoreInput() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        Point point = new Point(9, 10);
+        out.writeObject(Arrays.asList(point, point));
+        out.close();
+
+        byte[] data = bos.toByteArray();
+
+        HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+
+        assertEquals(HessianIncrementalDecoder.Status.NEED_MORE_INPUT, decoder.feed(data, 0, data.length - 1));
+        assertFalse(decoder.hasNext());
+        assertFalse(decoder.isIdle());
+
+        assertEquals(HessianIncrementalDecoder.Status.OBJECT_READY, decoder.feed(data, data.length - 1, 1));
+
+        List<?> list = (List<?>) decoder.next();
+
+        assertEquals(point, list.get(0));
+        assertSame(list.get(0), list.get(1));
+        assertFalse(decoder.hasNext());
+    }
+
+    @Test
+    void testNullValue() throws Exception {
+        HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+
+        assertEquals(HessianIncrementalDecoder.Status.OBJECT_READY, decoder.feed(new byte[] {'N'}, 0, 1));
+        assertNull(decoder.next());
+    }
+
+    @Test
+    void testUnknownCode() {
+        HessianIncrementalDecoder decoder = new HessianIncrementalDecoder();
+
+        assertThrows(HessianProtocolException.class, () -> decoder.feed(new byte[] {0x40}, 0, 1));
+    }
+
+    static class Point implements Serializable {
+        int x;
+        int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class HessianSparseObjectTest {
+
+    static class WideBean implements Serializable {
+        String id;
+        String name;
+        String description;
+        String category;
+        String owner;
+        String region;
+        String currency;
+        String status;
+        String notes;
+        String reference;
+        Long version;
+        Integer priority;
+        Date created;
+        Date updated;
+        Object extra;
+        int count;
+        long total;
+        double ratio;
+        boolean active;
+        char code;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WideBean)) {
+                return false;
+            }
+
+            WideBean b = (WideBean) o;
+
+            return Objects.equals(id, b.id)
+                    && Objects.equals(name, b.name)
+                    && Objects.equals(description, b.description)
+                    && Objects.equals(category, b.category)
+                    && Objects.equals(owner, b.owner)
+                    && Objects.equals(region, b.region)
+                    && Objects.equals(currency, b.currency)
+                    && Objects.equals(status, b.status)
+                    && Objects.equals(notes, b.notes)
+                    && Objects.equals(reference, b.reference)
+                    && Objects.equals(version, b.version)
+                    && Objects.equals(priority, b.priority)
+                    && Objects.equals(created, b.created)
+                    && Objects.equals(updated, b.updated)
+                    && Objects.equals(extra, b.extra)
+                    && count == b.count
+                    && total == b.total
+                    && ratio == b.ratio
+                    && active == b.active
+                    && code == b.code;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, count);
+        }
+    }
+
+    static class InitializedBean implements Serializable {
+        String id;
+        String name;
+        String description;
+        String category;
+        String owner;
+        String region;
+        String notes;
+        String reference;
+        String currency;
+        String status;
+        String source;
+        String target;
+        String parent;
+        String label;
+        String comment;
+        String locale;
+        String channel;
+        String version;
+        String checksum;
+        String signature;
+        int timeout = 30;
+        List<String> tags = new ArrayList<>();
+        int count;
+    }
+
+    private static WideBean sparse(int i) {
+        WideBean bean = new WideBean();
+        bean.id = "id-" + i;
+        bean.count = i;
+
+        return bean;
+    }
+
+    private static WideBean dense(int i) {
+        WideBean bean = sparse(i);
+        bean.name = "name";
+        bean.description = "description";
+        bean.category = "category";
+        bean.owner = "owner";
+        bean.region = "region";
+        bean.currency = "EUR";
+        bean.status = "open";
+        bean.notes = "notes";
+        bean.reference = "ref";
+        bean.version = 3L;
+        bean.priority = 1;
+        bean.created = new Date(1700000000000L);
+        bean.total = 42;
+        bean.ratio = 0.5;
+        bean.active = true;
+        bean.code = 'x';
+
+        return bean;
+    }
+
+    private static byte[] encode(Hessian2SerializerFactory factory, Object... values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setSerializerFactory(factory);
+
+        for (Object value : values) {
+            out.writeObject(value);
+        }
+
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static void assertRoundTrip(Hessian2SerializerFactory factory, Object[] values, byte[] data)
+            throws IOException {
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+        in.setSerializerFactory(factory);
+
+        for (Object value : values) {
+            assertEquals(value, in.readObject());
+        }
+    }
+
+    private static Hessian2SerializerFactory createFactory(boolean isSparse) {
+        Hessian2SerializerFactory factory = new Hessian2SerializerFactory();
+        factory.setSparseObjectEncoding(isSparse);
+
+        return factory;
+    }
+
+    @Test
+    void testSparseObjectsAreSmaller() throws IOException {
+        Object[] values = new Object[20];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = sparse(i);
+        }
+
+        byte[] plain = encode(createFactory(false), values);
+        byte[] data = encode(createFactory(true), values);
+
+        assertTrue(data.length < plain.length, data.length + " < " + plain.length);
+        assertEquals('M', data[0]);
+
+        // any reader decodes the map form
+        assertRoundTrip(new Hessian2SerializerFactory(), values, data);
+    }
+
+    @Test
+    void testDenseObjectsKeepInstanceForm() throws IOException {
+        Object[] values = {dense(1), dense(2), dense(3)};
+
+        assertArrayEquals(encode(createFactory(false), values), encode(createFactory(true), values));
+    }
+
+    @Test
+    void testMixedObjects() throws IOException {
+        Object[] values = {dense(1), sparse(2), dense(3), sparse(4), dense(3)};
+
+        byte[] data = encode(createFactory(true), values);
+
+        assertEquals('C', data[0]);
+        assertRoundTrip(new Hessian2SerializerFactory(), values, data);
+    }
+
+    @Test
+    void testSharedReferences() throws IOException {
+        WideBean bean = sparse(7);
+        bean.extra = bean;
+
+        Hessian2SerializerFactory factory = createFactory(true);
+        byte[] data = encode(factory, new Object[] {new Object[] {bean, bean}});
+
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+        Object[] array = (Object[]) in.readObject();
+
+        WideBean first = (WideBean) array[0];
+        assertTrue(first == array[1]);
+        assertTrue(first == first.extra);
+    }
+
+    @Test
+    void testJavaSerializer() throws IOException {
+        Hessian2SerializerFactory factory = createFactory(true);
+        factory.addFactory(new ISerializerFactory() {
+            @Override
+            public HessianSerializer getSerializer(Class<?> cl) {
+                return cl == WideBean.class ? new JavaSerializer(cl) : null;
+            }
+
+            @Override
+            public HessianDeserializer getDeserializer(Class<?> cl) {
+                return null;
+            }
+        });
+
+        Object[] values = {sparse(1), dense(2)};
+        byte[] data = encode(factory, values);
+
+        assertEquals('M', data[0]);
+        assertRoundTrip(new Hessian2SerializerFactory(), values, data);
+    }
+
+    private static Hessian2SerializerFactory createConstructingReader() {
+        Hessian2SerializerFactory factory = new Hessian2SerializerFactory();
+        factory.addFactory(new ISerializerFactory() {
+            @Override
+            public HessianSerializer getSerializer(Class<?> cl) {
+                return null;
+            }
+
+            @Override
+            public HessianDeserializer getDeserializer(Class<?> cl) {
+                return cl == InitializedBean.class
+                        ? new JavaDeserializer(cl, FieldDeserializer2Factory.create())
+                        : null;
+            }
+        });
+
+        return factory;
+    }
+
+    @Test
+    void testFieldsSetByConstructorAreWritten() throws IOException {
+        InitializedBean bean = new InitializedBean();
+        bean.id = "id";
+        bean.timeout = 0;
+        bean.tags = null;
+
+        byte[] data = encode(createFactory(true), bean);
+
+        assertEquals('M', data[0]);
+
+        for (Hessian2SerializerFactory factory :
+                new Hessian2SerializerFactory[] {new Hessian2SerializerFactory(), createConstructingReader()}) {
+            HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+            in.setSerializerFactory(factory);
+
+            InitializedBean copy = (InitializedBean) in.readObject();
+
+            assertEquals("id", copy.id);
+            assertEquals(0, copy.timeout);
+            assertNull(copy.tags);
+            assertNull(copy.name);
+        }
+    }
+
+    @Test
+    void testNegativeZeroIsWritten() throws IOException {
+        WideBean bean = sparse(0);
+        bean.ratio = -0.0;
+
+        byte[] data = encode(createFactory(true), bean);
+
+        assertEquals('M', data[0]);
+
+        WideBean copy = (WideBean) new HessianDecoder(new ByteArrayInputStream(data)).readObject();
+
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(copy.ratio));
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.wuwen5.hessian.HessianType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class HessianTypeAliasTest {
+
+    @HessianType("li")
+    static class InvoiceLineItem implements Serializable {
+        String sku;
+        int quantity;
+
+        InvoiceLineItem() {}
+
+        InvoiceLineItem(String sku, int quantity) {
+            this.sku = sku;
+            this.quantity = quantity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InvoiceLineItem
+                    && Objects.equals(((InvoiceLineItem) o).sku, sku)
+                    && ((InvoiceLineItem) o).quantity == quantity;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sku, quantity);
+        }
+    }
+
+    private static byte[] encode(Hessian2SerializerFactory factory, Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setSerializerFactory(factory);
+        out.writeObject(value);
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static Object decode(Hessian2SerializerFactory factory, byte[] data) throws IOException {
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(data));
+        in.setSerializerFactory(factory);
+
+        return in.readObject();
+    }
+
+    @Test
+    void testAnnotatedAlias() throws IOException {
+        InvoiceLineItem item = new InvoiceLineItem("a-1", 3);
+
+        byte[] data = encode(new Hessian2SerializerFactory(), item);
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+
+        assertFalse(text.contains(InvoiceLineItem.class.getName()));
+        assertTrue(text.contains("li"));
+
+        Hessian2SerializerFactory decoding = new Hessian2SerializerFactory();
+        decoding.addTypeAlias(InvoiceLineItem.class);
+
+        assertEquals(item, decode(decoding, data));
+    }
+
+    @Test
+    void testProgrammaticAliasForCollectionsAndArrays() throws IOException {
+        Hessian2SerializerFactory factory = new Hessian2SerializerFactory();
+        factory.addTypeAlias(LinkedList.class, "ll");
+        factory.addTypeAlias(InvoiceLineItem.class);
+
+        InvoiceLineItem[] items = {new InvoiceLineItem("a", 1), new InvoiceLineItem("b", 2)};
+        List<Object> list = new LinkedList<>(Arrays.asList("x", items));
+
+        byte[] data = encode(factory, list);
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+
+        assertFalse(text.contains("java.util.LinkedList"));
+        assertFalse(text.contains(InvoiceLineItem.class.getName()));
+        assertTrue(text.contains("[li"));
+
+        Object value = decode(factory, data);
+
+        assertEquals(LinkedList.class, value.getClass());
+        assertEquals("x", ((List<?>) value).get(0));
+        assertArrayEquals(items, (Object[]) ((List<?>) value).get(1));
+    }
+
+    @Test
+    void testConflictingAliases() {
+        Hessian2SerializerFactory factory = new Hessian2SerializerFactory();
+        factory.addTypeAlias(InvoiceLineItem.class);
+        factory.addTypeAlias(InvoiceLineItem.class, "li");
+
+        assertThrows(IllegalArgumentException.class, () -> factory.addTypeAlias(LinkedList.class, "li"));
+        assertThrows(IllegalArgumentException.class, () -> factory.addTypeAlias(InvoiceLineItem.class, "other"));
+        assertThrows(IllegalArgumentException.class, () -> factory.addTypeAlias(LinkedList.class, "[ll"));
+        assertThrows(IllegalArgumentException.class, () -> factory.addTypeAlias(LinkedList.class));
+
+        assertEquals("li", factory.getTypeAlias(InvoiceLineItem.class.getName()));
+        assertEquals("[[li", factory.getTypeAlias("[[" + InvoiceLineItem.class.getName()));
+        assertEquals("java.util.LinkedList", factory.getTypeAlias("java.util.LinkedList"));
+    }
+}
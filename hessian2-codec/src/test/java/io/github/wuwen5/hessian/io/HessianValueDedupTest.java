@@ -0,0 +1,146 @@
+package io.github.wuwen5.hessian.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class HessianValueDedupTest {
+
+    static final class Money implements Serializable {
+        private final String currency;
+        private final long amount;
+
+        Money(String currency, long amount) {
+            this.currency = currency;
+            this.amount = amount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Money)) {
+                return false;
+            }
+
+            Money m = (Money) o;
+
+            return currency.equals(m.currency) && amount == m.amount;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(currency, amount);
+        }
+    }
+
+    private static List<Object> createValues() {
+        List<Object> values = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            values.add(new BigDecimal("1234567.89"));
+            values.add(LocalDate.of(2024, 1, 1 + i % 3));
+            values.add(new Money("EUR", 100 + i % 2));
+        }
+
+        return values;
+    }
+
+    private static Hessian2SerializerFactory createFactory() {
+        Hessian2SerializerFactory factory = new Hessian2SerializerFactory();
+        factory.addValueDedupType(BigDecimal.class);
+        factory.addValueDedupType(LocalDate.class);
+        factory.addValueDedupType(Money.class);
+
+        return factory;
+    }
+
+    private static byte[] encode(Hessian2SerializerFactory factory, Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setSerializerFactory(factory);
+        out.writeObject(value);
+        out.close();
+
+        return bos.toByteArray();
+    }
+
+    private static List<?> decode(byte[] data) throws IOException {
+        return (List<?>) new HessianDecoder(new ByteArrayInputStream(data)).readObject();
+    }
+
+    @Test
+    void testEqualValuesAreShared() throws IOException {
+        List<Object> values = createValues();
+
+        byte[] plain = encode(new Hessian2SerializerFactory(), values);
+        byte[] data = encode(createFactory(), values);
+
+        assertTrue(data.length < plain.length / 2, data.length + " < " + plain.length);
+
+        List<?> result = decode(data);
+
+        assertEquals(values, result);
+        assertSame(result.get(0), result.get(3));
+        assertSame(result.get(2), result.get(8));
+        assertNotSame(result.get(2), result.get(5));
+    }
+
+    @Test
+    void testDisabledByDefault() throws IOException {
+        List<Object> values = createValues();
+
+        List<?> result = decode(encode(new Hessian2SerializerFactory(), values));
+
+        assertEquals(values, result);
+        assertNotSame(result.get(0), result.get(3));
+    }
+
+    @Test
+    void testBoundedTable() throws IOException {
+        Hessian2SerializerFactory factory = createFactory();
+        factory.setValueDedupSize(1);
+
+        List<Object> values = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            values.add(new BigDecimal("1.5"));
+            values.add(new BigDecimal("2.5"));
+        }
+
+        // each value evicts the other, so nothing is shared
+        byte[] data = encode(factory, values);
+
+        assertArrayEquals(encode(new Hessian2SerializerFactory(), values), data);
+        assertEquals(values, decode(data));
+    }
+
+    @Test
+    void testReset() throws IOException {
+        Hessian2SerializerFactory factory = createFactory();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.setSerializerFactory(factory);
+        out.writeObject(new BigDecimal("9.99"));
+        out.resetReferences();
+        out.writeObject(new BigDecimal("9.99"));
+        out.close();
+
+        HessianDecoder in = new HessianDecoder(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(new BigDecimal("9.99"), in.readObject());
+        in.resetReferences();
+        assertEquals(new BigDecimal("9.99"), in.readObject());
+    }
+}
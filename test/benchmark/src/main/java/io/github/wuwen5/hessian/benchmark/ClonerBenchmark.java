@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.benchmark;
+
+import io.github.wuwen5.hessian.io.HessianCloner;
+import io.github.wuwen5.hessian.io.HessianDecoder;
+import io.github.wuwen5.hessian.io.HessianEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Deep copy of a cached object graph by {@link HessianCloner} against a
+ * Hessian byte round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClonerBenchmark {
+    @Param({"10", "1000"})
+    private int lines;
+
+    private HessianCloner cloner;
+
+    private Order order;
+
+    public static class Order implements Serializable {
+        String id;
+        String customer;
+        LocalDate date;
+        List<Line> lines = new ArrayList<>();
+        Map<String, String> attributes = new HashMap<>();
+    }
+
+    public static class Line implements Serializable {
+        int number;
+        String product;
+        long quantity;
+        double price;
+        boolean shipped;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cloner = new HessianCloner();
+
+        order = new Order();
+        order.id = "order-1";
+        order.customer = "customer-1";
+        order.date = LocalDate.of(2024, 1, 1);
+        order.attributes.put("channel", "web");
+
+        for (int i = 0; i < lines; i++) {
+            Line line = new Line();
+            line.number = i;
+            line.product = "product-" + (i % 50);
+            line.quantity = i % 7;
+            line.price = i * 1.25;
+            line.shipped = i % 2 == 0;
+            order.lines.add(line);
+        }
+    }
+
+    @Benchmark
+    public Object copy() throws IOException {
+        return cloner.copy(order);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianEncoder out = new HessianEncoder(bos);
+        out.writeObject(order);
+        out.close();
+
+        return new HessianDecoder(new ByteArrayInputStream(bos.toByteArray())).readObject();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(ClonerBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.wuwen5.hessian.benchmark;
+
+import com.caucho.hessian.io.Deflation;
+import com.caucho.hessian.io.HessianRpcInput;
+import com.caucho.hessian.io.HessianRpcOutput;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * CPU cost of the {@link Deflation} envelope per compression level and
+ * message size.
+ *
+ * <p>Time per operation divided by <code>rows</code> gives the CPU cost
+ * per message; the raw and compressed sizes of each configuration are
+ * reported as the <code>rawBytes</code> and <code>wrappedBytes</code>
+ * counters of {@link #wrap}, so the two can be read together as the
+ * CPU-per-byte trade-off.  The 2-row message is smaller than the
+ * 512-byte threshold, so those configurations measure the stored
+ * (uncompressed) bypass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeflationBenchmark {
+    @Param({"1", "6", "9"})
+    private int level;
+
+    @Param({"2", "64", "2048"})
+    private int rows;
+
+    @Param({"0", "512"})
+    private int threshold;
+
+    private Deflation deflation;
+
+    private List<Map<String, Object>> message;
+
+    private byte[] wrapped;
+
+    private int rawSize;
+
+    /**
+     * Message sizes, reported next to the timings of {@link #wrap}.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long rawBytes;
+        public long wrappedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        deflation = new Deflation();
+        deflation.setLevel(level);
+        deflation.setThreshold(threshold);
+
+        message = new ArrayList<>();
+
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", i);
+            row.put("name", "customer-" + i);
+            row.put("email", "customer-" + i + "@example.com");
+            row.put("balance", i * 17.25);
+            row.put("active", i % 3 != 0);
+
+            message.add(row);
+        }
+
+        wrapped = wrap(new Sizes());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = new HessianRpcOutput(bos);
+        out.writeObject(message);
+        out.close();
+
+        rawSize = bos.size();
+    }
+
+    @Benchmark
+    public byte[] wrap(Sizes sizes) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HessianRpcOutput out = deflation.wrap(new HessianRpcOutput(bos));
+
+        out.writeObject(message);
+        out.close();
+
+        byte[] data = bos.toByteArray();
+
+        sizes.rawBytes = rawSize;
+        sizes.wrappedBytes = data.length;
+
+        return data;
+    }
+
+    @Benchmark
+    public Object unwrap() throws IOException {
+        HessianRpcInput in = deflation.unwrap(new HessianRpcInput(new ByteArrayInputStream(wrapped)));
+
+        Object value = in.readObject();
+        in.close();
+
+        return value;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(DeflationBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}